@@ -285,6 +285,7 @@ void InvertedIndex::readRecordsFile(const string& basename) {
     pos2 = line.find("\n", pos1);
     record.ee = line.substr(pos1, pos2 - pos1);
 
+    _keyIds[record.key] = _records.size();
     _records.push_back(record);
   }
   recordsFile.close();
@@ -415,6 +416,16 @@ void InvertedIndex::resolveId(int id, Record** record) {
   *record = &_records[id];
 }
 
+// _____________________________________________________________________________
+bool InvertedIndex::resolveKey(const string& key, int* id) {
+  dense_hash_map<string, int>::const_iterator it = _keyIds.find(key);
+  if (key.empty() || it == _keyIds.end()) {
+    return false;
+  }
+  *id = it->second;
+  return true;
+}
+
 // _____________________________________________________________________________
 void InvertedIndex::add(const string& term, int id) {
   // Add the doc-id to inverted list only, if given term isn't empty
@@ -24,6 +24,7 @@ class InvertedIndex {
   // Default constructor
   InvertedIndex() {
     _invertedIndex.set_empty_key("");
+    _keyIds.set_empty_key("");
   }
 
   // public method to build the inverted index. Checks, if serialized file
@@ -57,6 +58,10 @@ class InvertedIndex {
   // Returns the according record for given id
   void resolveId(int id, Record** record);
 
+  // Returns the id of the record with the given key in *id. Returns false, if
+  // there is no such record.
+  bool resolveKey(const string& key, int* id);
+
   size_t size() {
     return _invertedIndex.size();
   }
@@ -80,6 +85,9 @@ class InvertedIndex {
 
   // The records in memory.
   vector<Record> _records;
+
+  // Maps the keys of the records to their ids.
+  dense_hash_map<string, int> _keyIds;
 };
 
 #endif  // DBLPMATCHING_INVERTEDINDEX_H_
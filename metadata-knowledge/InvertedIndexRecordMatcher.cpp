@@ -366,29 +366,40 @@ void InvertedIndexRecordMatcher::resolveId(int id, Record** record) {
   _invertedIndex.resolveId(id, record);
 }
 
+// _____________________________________________________________________________
+bool InvertedIndexRecordMatcher::resolveKey(const string& key, int* id) {
+  return _invertedIndex.resolveKey(key, id);
+}
+
 // _____________________________________________________________________________
 size_t InvertedIndexRecordMatcher::getNumOfDocuments(const Query& query) {
   dense_hash_map<string, string>::const_iterator parametersIt;
 
   for (parametersIt = query.parameters->begin(); parametersIt
       != query.parameters->end(); parametersIt++) {
-    string normalized;
-    vector<string> tmp;
-    RecordMatcherUtil::normalize(parametersIt->second, &tmp);
-    RecordMatcherUtil::sortAndUniq(&tmp);
-    RecordMatcherUtil::toString(tmp, &normalized);
-    vector<int>* invertedList;
-
-    if (!normalized.empty()) {
-      if (parametersIt->first == "na") {
-        _invertedIndex.get("author:" + normalized, &invertedList);
-      } else if (parametersIt->first == "nt") {
-        _invertedIndex.get("title:" + normalized, &invertedList);
-      }
-      assert(invertedList != NULL);
-      return invertedList->size();
-    } else {
-      return 0;
+    if (parametersIt->first == "na" || parametersIt->first == "nt") {
+      return getNumOfDocuments(parametersIt->first, parametersIt->second);
+    }
+  }
+  return 0;
+}
+
+// _____________________________________________________________________________
+size_t InvertedIndexRecordMatcher::getNumOfDocuments(const string& type,
+    const string& word) {
+  string normalized;
+  vector<string> tmp;
+  RecordMatcherUtil::normalize(word, &tmp);
+  RecordMatcherUtil::sortAndUniq(&tmp);
+  RecordMatcherUtil::toString(tmp, &normalized);
+  vector<int>* invertedList = NULL;
+
+  if (!normalized.empty()) {
+    if (type == "na") {
+      _invertedIndex.get("author:" + normalized, &invertedList);
+    } else if (type == "nt") {
+      _invertedIndex.get("title:" + normalized, &invertedList);
     }
   }
+  return invertedList != NULL ? invertedList->size() : 0;
 }
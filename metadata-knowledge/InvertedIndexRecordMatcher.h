@@ -41,9 +41,16 @@ public:
   // Returns the number of documents that contain the given query.
   size_t getNumOfDocuments(const Query& query);
 
+  // Returns the number of documents that contain the given word. The type is
+  // either "nt" (title word) or "na" (author word).
+  size_t getNumOfDocuments(const string& type, const string& word);
+
   // Resolves an id to key.
   void resolveId(int id, Record** record);
 
+  // Resolves a key to the id of the record.
+  bool resolveKey(const string& key, int* id);
+
   bool verbose;
   bool printRuntimes;
  private:
@@ -32,9 +32,17 @@ class RecordMatcherBase {
   // Returns the number of documents that contain the given query.
   virtual size_t getNumOfDocuments(const Query& query) = 0;
 
+  // Returns the number of documents that contain the given word. The type is
+  // either "nt" (title word) or "na" (author word).
+  virtual size_t getNumOfDocuments(const string& type, const string& word) = 0;
+
   // Resolves an id to key.
   virtual void resolveId(int id, Record** record) = 0;
 
+  // Resolves a key to the id of the record. Returns false, if there is no
+  // record with the given key.
+  virtual bool resolveKey(const string& key, int* id) { return false; }
+
   bool verbose;
 };
 
@@ -12,6 +12,8 @@
 #include <stdlib.h>
 #include <unistd.h>
 #include <google/dense_hash_map>
+#include <algorithm>
+#include <set>
 #include <string>
 #include <vector>
 #include <sstream>
@@ -42,8 +44,8 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
   cout << "Done!" << endl;
 
   int socket_client;
-  // Buffer for reading user's request
-  char buf[MAX_LINE_LENGTH];
+  // The complete request of the user.
+  string request;
 
   // listen for socket connections
   listen(socket_server, 5);
@@ -60,14 +62,28 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
     }
     //    cout << "Request accepted" << endl;
 
-    dense_hash_map<string, string> parameter;
-    parameter.set_empty_key("");
-
-    while (read(socket_client, buf, 1024)) {
+    // Flag that indicates whether this process serves a keep-alive
+    // connection, forked from the server process.
+    bool isChild = false;
+    // The bytes, that were read from the connection, but don't belong to a
+    // processed request yet.
+    string pending;
+    while (readRequest(socket_client, &pending, &request)) {
       gettimeofday(&overallStart, 0);
       gettimeofday(&start, 0);
       // Extract Parameters from request and put them in a map
-      getParameter(buf, &parameter);
+      dense_hash_map<string, string> parameter;
+      parameter.set_empty_key("");
+      parameter.set_deleted_key("\t");
+      getParameter(request, &parameter);
+      bool keepAlive = isKeepAlive(request);
+
+      // The maximal number of records ("l"), the fields of the records ("f")
+      // and the key of a single record ("key") aren't words of the query.
+      string limit, fields, key;
+      takeParameter("l", &parameter, &limit);
+      takeParameter("f", &parameter, &fields);
+      takeParameter("key", &parameter, &key);
 
       // Fetch value for parameter-key "q"
       Query query(&parameter);
@@ -95,9 +111,30 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
       gettimeofday(&start, 0);
       dense_hash_map<string, string>::iterator it1 = parameter.find("nt");
       dense_hash_map<string, string>::iterator it2 = parameter.find("na");
-      if (it1 != parameter.end() || it2 != parameter.end()) {
+      dense_hash_map<string, string>::iterator it3 = parameter.find("nb");
+      if (it3 != parameter.end()) {
+        // Batched query: "nb=word1$word2$...". Resolve the title hits and the
+        // author hits for all words at once.
+        vector<string> words;
+        RecordMatcherUtil::split(it3->second, "$", &words);
+        vector<pair<size_t, size_t> > numOfHits;
+        vector<string>::const_iterator wordsIt;
+        for (wordsIt = words.begin(); wordsIt != words.end(); wordsIt++) {
+          numOfHits.push_back(std::make_pair(
+              recordMatcher->getNumOfDocuments("nt", *wordsIt),
+              recordMatcher->getNumOfDocuments("na", *wordsIt)));
+        }
+        createXMLResponse(numOfHits, &response);
+      } else if (it1 != parameter.end() || it2 != parameter.end()) {
         size_t numOfHits = recordMatcher->getNumOfDocuments(query);
         createXMLResponse(numOfHits, &response);
+      } else if (!key.empty()) {
+        // Lookup of a single record by its key.
+        int id;
+        if (recordMatcher->resolveKey(key, &id)) {
+          recordScores.push_back(std::make_pair(id, 0.0));
+        }
+        createXMLResponse(recordScores, recordMatcher, 0, fields, &response);
       } else {
         // Process the query: find best matching for query
         //      cout << "+query: " << query.parameters->size() << endl;
@@ -111,7 +148,8 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
 
         gettimeofday(&start, 0);
         // create the xml-response
-        createXMLResponse(recordScores, recordMatcher, &response);
+        createXMLResponse(recordScores, recordMatcher, atoi(limit.c_str()),
+            fields, &response);
         gettimeofday(&end, 0);
         timeInMs = ((end.tv_sec - start.tv_sec) * 1000000 + end.tv_usec
             - start.tv_usec) / 1000.0;
@@ -120,6 +158,8 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
         }
       }
 
+      addHttpHeader(keepAlive, &response);
+
       gettimeofday(&start, 0);
       // send the response and check, how many bytes were sent
       int bytes = send(socket_client, response.c_str(), response.size(), 0);
@@ -140,16 +180,101 @@ void RecordMatcherSocket::start(int port, RecordMatcherBase* recordMatcher,
           cout << "Overall time needed: " << overallTimeInMs << "ms." << endl;
         }
 
-        break;
+        if (!keepAlive) {
+          break;
+        }
+
+        // The client wants to reuse the connection. Serve it in a child
+        // process, such that the server can accept further connections in
+        // the meantime. The child exits, if the client closes the connection
+        // or if the connection was idle for KEEP_ALIVE_TIMEOUT seconds.
+        if (!isChild) {
+          pid_t pid = fork();
+          if (pid != 0) {
+            // Parent (or fork failed): close the connection.
+            break;
+          }
+          isChild = true;
+          close(socket_server);
+          timeval timeout;
+          timeout.tv_sec = KEEP_ALIVE_TIMEOUT;
+          timeout.tv_usec = 0;
+          setsockopt(socket_client, SOL_SOCKET, SO_RCVTIMEO, &timeout,
+              sizeof(timeout));
+        }
       }
     }
     close(socket_client);
+    if (isChild) {
+      exit(0);
+    }
   }
 }
 
+// _____________________________________________________________________________
+bool RecordMatcherSocket::readRequest(int socket_client, string* pending,
+    string* request) {
+  // Buffer for reading user's request
+  char buf[MAX_LINE_LENGTH];
+  while (true) {
+    // The header of a request ends with an empty line.
+    size_t end = pending->find("\r\n\r\n");
+    if (end != string::npos) {
+      end += 4;
+    } else {
+      end = pending->find("\n\n");
+      if (end != string::npos) {
+        end += 2;
+      }
+    }
+    if (end == string::npos && pending->size() > MAX_REQUEST_LENGTH) {
+      // Don't buffer arbitrary long requests.
+      end = pending->size();
+    }
+    if (end != string::npos) {
+      request->assign(*pending, 0, end);
+      pending->erase(0, end);
+      return true;
+    }
+    ssize_t numOfBytes = read(socket_client, buf, sizeof(buf));
+    if (numOfBytes <= 0) {
+      // The connection was closed (or timed out). Process an incomplete
+      // request of a client, that doesn't send the empty line.
+      if (pending->empty()) {
+        return false;
+      }
+      request->swap(*pending);
+      pending->clear();
+      return true;
+    }
+    pending->append(buf, numOfBytes);
+  }
+}
+
+// _____________________________________________________________________________
+bool RecordMatcherSocket::isKeepAlive(const string& http_request) {
+  size_t pos = http_request.find("\r\n\r\n");
+  string header = http_request.substr(0, pos);
+  std::transform(header.begin(), header.end(), header.begin(), ::tolower);
+  return header.find("connection: keep-alive") != string::npos;
+}
+
+// _____________________________________________________________________________
+void RecordMatcherSocket::addHttpHeader(bool keepAlive, string* response) {
+  stringstream stream;
+  stream << "HTTP/1.1 200 OK\n";
+  stream << "Content-Type: text/xml; charset=UTF-8\n";
+  stream << "Content-Length: " << response->size() << "\n";
+  stream << "Connection: " << (keepAlive ? "keep-alive" : "close") << "\n";
+  stream << "\n";
+  response->insert(0, stream.str());
+}
+
 // _____________________________________________________________________________
 int RecordMatcherSocket::startServer(int port) {
   signal(SIGPIPE, SIG_IGN);
+  // Don't leave zombies of the processes serving keep-alive connections.
+  signal(SIGCHLD, SIG_IGN);
 
   struct sockaddr_in server;
   int socket_server = socket(AF_INET, SOCK_STREAM, 0);
@@ -177,8 +302,6 @@ int RecordMatcherSocket::startServer(int port) {
 // _____________________________________________________________________________
 void RecordMatcherSocket::createXMLResponse(size_t numOfHits, string* response) {
   stringstream stream;
-  stream << "HTTP/1.1 200 OK";
-  stream << "\n\n";
   stream << "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" << endl;
 
   stream << "<result hits=\"" << numOfHits << "\">" << endl;
@@ -188,13 +311,37 @@ void RecordMatcherSocket::createXMLResponse(size_t numOfHits, string* response)
   *response = stream.str();
 }
 
+// _____________________________________________________________________________
+void RecordMatcherSocket::createXMLResponse(
+    const vector<pair<size_t, size_t> >& numOfHits, string* response) {
+  stringstream stream;
+  stream << "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" << endl;
+
+  stream << "<result terms=\"" << numOfHits.size() << "\">" << endl;
+  vector<pair<size_t, size_t> >::const_iterator it;
+  for (it = numOfHits.begin(); it != numOfHits.end(); it++) {
+    stream << "<term nt=\"" << it->first << "\" na=\"" << it->second << "\"/>";
+    stream << endl;
+  }
+  stream << "</result>";
+  stream << "\n";
+
+  *response = stream.str();
+}
+
 // _____________________________________________________________________________
 void RecordMatcherSocket::createXMLResponse(
     const vector<pair<int, double> >& recordScores,
-    RecordMatcherBase* recordMatcher, string* response) {
+    RecordMatcherBase* recordMatcher, size_t limit, const string& fields,
+    string* response) {
+  // An empty list of fields means all fields.
+  vector<string> fieldsList;
+  RecordMatcherUtil::split(fields, ",", &fieldsList);
+  std::set<string> fieldsSet(fieldsList.begin(), fieldsList.end());
+  fieldsSet.erase("");
+  bool all = fieldsSet.empty();
+
   stringstream stream;
-  stream << "HTTP/1.1 200 OK";
-  stream << "\n\n";
   stream << "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" << endl;
   // Define xml entities (stolen from dblp.dtd).
   stream << "<!DOCTYPE dblp [" << endl;
@@ -268,29 +415,39 @@ void RecordMatcherSocket::createXMLResponse(
 
   stream << "<result hits=\"" << recordScores.size() << "\">" << endl;
   vector<pair<int, double> >::const_iterator it;
+  size_t numOfRecords = 0;
   for (it = recordScores.begin(); it != recordScores.end(); it++) {
+    if (limit > 0 && numOfRecords++ >= limit) {
+      break;
+    }
     Record* record;
     recordMatcher->resolveId(it->first, &record);
-    string title = xmlEncode(record->title);
-    stream << "<record score=\"";
-    stream << it->second;
-    stream << "\" key=\"";
-    stream << record->key;
-    stream << "\" title=\"";
-    stream << title;
-    stream << "\" authors=\"";
-    stream << record->authors;
-    stream << "\" year=\"";
-    stream << record->year;
-    stream << "\" journal=\"";
-    stream << record->journal;
-    stream << "\" pages=\"";
-    stream << record->pages;
-    stream << "\" url=\"";
-    stream << record->url;
-    stream << "\" ee=\"";
-    stream << record->ee;
-    stream << "\"/>";
+    stream << "<record score=\"" << it->second << "\"";
+    if (all || fieldsSet.count("key")) {
+      stream << " key=\"" << record->key << "\"";
+    }
+    if (all || fieldsSet.count("title")) {
+      stream << " title=\"" << xmlEncode(record->title) << "\"";
+    }
+    if (all || fieldsSet.count("authors")) {
+      stream << " authors=\"" << record->authors << "\"";
+    }
+    if (all || fieldsSet.count("year")) {
+      stream << " year=\"" << record->year << "\"";
+    }
+    if (all || fieldsSet.count("journal")) {
+      stream << " journal=\"" << record->journal << "\"";
+    }
+    if (all || fieldsSet.count("pages")) {
+      stream << " pages=\"" << record->pages << "\"";
+    }
+    if (all || fieldsSet.count("url")) {
+      stream << " url=\"" << record->url << "\"";
+    }
+    if (all || fieldsSet.count("ee")) {
+      stream << " ee=\"" << record->ee << "\"";
+    }
+    stream << "/>";
     stream << endl;
   }
   stream << "</result>";
@@ -344,6 +501,16 @@ void RecordMatcherSocket::getParameter(const string& http_request,
   }
 }
 
+// _____________________________________________________________________________
+void RecordMatcherSocket::takeParameter(const string& key,
+    dense_hash_map<string, string>* parameter, string* value) {
+  dense_hash_map<string, string>::iterator it = parameter->find(key);
+  if (it != parameter->end()) {
+    *value = it->second;
+    parameter->erase(it);
+  }
+}
+
 // ____________________________________________________________________________
 string RecordMatcherSocket::xmlEncode(const string& data) {
   stringstream ss;
@@ -18,6 +18,14 @@ using std::flush;
 using std::vector;
 using std::map;
 
+// The number of seconds, a keep-alive connection may be idle before it is
+// closed by the server.
+const int KEEP_ALIVE_TIMEOUT = 60;
+
+// The maximal number of bytes of a request, that are buffered until the end
+// of its header is found.
+const size_t MAX_REQUEST_LENGTH = 65536;
+
 class RecordMatcherSocket {
  public:
   RecordMatcherSocket() {
@@ -40,13 +48,41 @@ class RecordMatcherSocket {
   void getParameter(const string& http_request,
       dense_hash_map<string, string>* parameter);
 
-  // create the xml-response, shown to user
+  // Removes the parameter with the given key from the given parameters and
+  // writes its value to *value (if there is such a parameter).
+  void takeParameter(const string& key,
+      dense_hash_map<string, string>* parameter, string* value);
+
+  // Reads the next request from the given connection into *request. A request
+  // may arrive in several chunks, so the bytes are read into *pending until
+  // the empty line, that ends the header, is found. The bytes behind it are
+  // kept in *pending for the next request. Returns false, if the connection
+  // was closed (or timed out) before a further request arrived.
+  bool readRequest(int socket_client, string* pending, string* request);
+
+  // Returns true, if the client asked to keep the connection alive.
+  bool isKeepAlive(const string& http_request);
+
+  // Prepends the http-header to the given response. The header contains the
+  // length of the response, such that the client knows where the response
+  // ends on a keep-alive connection.
+  void addHttpHeader(bool keepAlive, string* response);
+
+  // create the xml-response, shown to user. Contains at most limit records
+  // (0 for no limit) and only the given comma-separated fields of the records
+  // (empty for all fields).
   void createXMLResponse(const vector<pair<int, double> >& recordScores,
-      RecordMatcherBase* recordMatcher, string* response);
+      RecordMatcherBase* recordMatcher, size_t limit, const string& fields,
+      string* response);
 
   // create the xml-response, shown to user
   void createXMLResponse(size_t numOfHits, string* response);
 
+  // create the xml-response for a batched num-of-hits query (one pair of
+  // title hits and author hits per queried word).
+  void createXMLResponse(const vector<pair<size_t, size_t> >& numOfHits,
+      string* response);
+
   string decodeUrl(string& url);
 
   // xml-encoding for given string
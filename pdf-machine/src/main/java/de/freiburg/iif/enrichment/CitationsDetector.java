@@ -6,9 +6,10 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.util.TextPosition;
 
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
 import de.freiburg.iif.model.HasMetadata;
+import de.freiburg.iif.model.PageGeometry;
 import de.freiburg.iif.model.Region;
 
 /**
@@ -30,49 +31,114 @@ public class CitationsDetector {
    * reference.
    */
   public List<Citation> detect(List<HasMetadata> records, List<Region> lines) {
-    List<Citation> list = new ArrayList<Citation>();
-    
-    for (Region line : lines) {
-      List<TextPosition> textPositions = line.getTextPositions();
-      // Try to find the areas of all citations in free text.
-      Matcher m = citationsPattern.matcher(line.getText());
+    CitationsCollector collector = createCollector();
+    collector.addLines(lines);
+    return collector.getCitations(records);
+  }
+
+  /**
+   * Creates a listener, that detects the citation areas in the pages, as soon
+   * as they are extracted. The citations are assigned to the references
+   * afterwards (see CitationsCollector.getCitations()), so the pages don't
+   * have to be kept until the references are matched.
+   * 
+   * @return the collector.
+   */
+  public CitationsCollector createCollector() {
+    return new CitationsCollector();
+  }
+  
+  /**
+   * The listener, that collects the citation areas of the extracted pages.
+   * Only the areas and the ids of the cited references are kept, not the
+   * lines.
+   * 
+   * @author Claudius Korzen
+   *
+   */
+  public class CitationsCollector implements PageListener {
+    /** The citation areas (without the cited references). */
+    protected List<Citation> areas = new ArrayList<Citation>();
+    /** The 0-based ids of the references, cited by the areas. */
+    protected List<Integer> referenceIds = new ArrayList<Integer>();
+
+    /**
+     * The constructor.
+     */
+    protected CitationsCollector() {
+    }
 
-      while (m.find()) {
-        // The index of citation start in line.
-        int start = Math.max(m.start(), 0);
-        // The index of citation end in line.
-        int end = Math.min(m.end(), textPositions.size());
-        // The unique id, identifying the related reference. Subtract 1, because
-        // the ids are 1-based.
-        int referenceId = Integer.parseInt(m.group(1)) - 1;
-        // The page number.
-        int pageNum = line.getPageNumber();
-        
-        if (start < textPositions.size() && end - 1 < textPositions.size()) {
-          // The first text position of citation.
-          TextPosition startPosition = textPositions.get(start);
-          // The last text position of citation.
-          TextPosition endPosition = textPositions.get(end - 1);
-              
-          // Determine the citation area (i.e. the lower left and the upper right).
-          PDRectangle rect = new PDRectangle();
-          rect.setLowerLeftX(startPosition.getX());
-          rect.setLowerLeftY(startPosition.getY() + 2);
-          float width = endPosition.getCharacter() != null ? endPosition.getWidth() : 0;
-          float height = startPosition.getCharacter() != null ? Math.max(startPosition.getHeight(), startPosition.getFontSize()) : 0;
-          rect.setUpperRightX(endPosition.getX() + width);
-          rect.setUpperRightY(endPosition.getY() - height);
-          
-          // Ensure that referenceId doesn't excced the number of references.
-          if (referenceId < records.size()) {
-            HasMetadata entry = records.get(referenceId);
-            list.add(new Citation(pageNum - 1, rect, entry));
+    @Override
+    public void pageExtracted(int pageNumber, List<Region> lines) {
+      addLines(lines);
+    }
+
+    /**
+     * Detects the citation areas in the given lines.
+     * 
+     * @param lines the extracted text lines.
+     */
+    public void addLines(List<Region> lines) {
+      for (Region line : lines) {
+        PageGeometry geometry = line.getGeometry();
+        int numOfPositions = geometry != null ? line.getNumOfPositions() : 0;
+        // Try to find the areas of all citations in free text.
+        Matcher m = citationsPattern.matcher(line.getText());
+
+        while (m.find()) {
+          // The index of citation start in line.
+          int start = Math.max(m.start(), 0);
+          // The index of citation end in line.
+          int end = Math.min(m.end(), numOfPositions);
+          // The unique id, identifying the related reference. Subtract 1,
+          // because the ids are 1-based.
+          int referenceId = Integer.parseInt(m.group(1)) - 1;
+          // The page number.
+          int pageNum = line.getPageNumber();
+
+          if (start < numOfPositions && end - 1 < numOfPositions) {
+            // The index of the first position of citation in the geometry.
+            int startPosition = line.getFirstPosition() + start;
+            // The index of the last position of citation in the geometry.
+            int endPosition = line.getFirstPosition() + end - 1;
+
+            // Determine the citation area (i.e. the lower left and the upper
+            // right).
+            PDRectangle rect = new PDRectangle();
+            rect.setLowerLeftX(geometry.getX(startPosition));
+            rect.setLowerLeftY(geometry.getY(startPosition) + 2);
+            float width = geometry.getWidth(endPosition);
+            float height = Math.max(geometry.getHeight(startPosition),
+                geometry.getFontsize(startPosition));
+            rect.setUpperRightX(geometry.getX(endPosition) + width);
+            rect.setUpperRightY(geometry.getY(endPosition) - height);
+
+            areas.add(new Citation(pageNum - 1, rect, null));
+            referenceIds.add(referenceId);
           }
         }
       }
     }
-    
-    return list;
+
+    /**
+     * Returns the detected citations, that refer to the given references.
+     * 
+     * @param records the extracted references.
+     * @return the citations.
+     */
+    public List<Citation> getCitations(List<HasMetadata> records) {
+      List<Citation> list = new ArrayList<Citation>();
+      for (int i = 0; i < areas.size(); i++) {
+        int referenceId = referenceIds.get(i);
+        // Ensure that referenceId doesn't excced the number of references.
+        if (referenceId < records.size()) {
+          Citation area = areas.get(i);
+          list.add(new Citation(area.page, area.rectangle,
+              records.get(referenceId)));
+        }
+      }
+      return list;
+    }
   }
   
   public class Citation {
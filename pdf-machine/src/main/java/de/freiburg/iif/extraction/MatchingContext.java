@@ -0,0 +1,147 @@
+package de.freiburg.iif.extraction;
+
+import java.util.List;
+
+import de.freiburg.iif.model.Region;
+
+/**
+ * The class MatchingContext, that holds the state of a single document while
+ * it is matched by a MetadataMatcher (the extracted lines, the fulltext and
+ * the runtimes of the matching phases). A new context is created for each
+ * document, such that a single matcher can match many documents concurrently.
+ *
+ * The fulltext is produced from the lines, once it is requested.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class MatchingContext {
+  /** The extracted lines. */
+  protected List<Region> lines;
+  /** The fulltext (null, if it wasn't requested yet). */
+  protected String fulltext;
+  /** The runtimes. */
+  protected long[] runtimes;
+
+  /**
+   * The constructor.
+   *
+   * @param lines
+   *          the extracted lines of the document.
+   * @param numOfRuntimes
+   *          the number of measured runtimes.
+   */
+  public MatchingContext(List<Region> lines, int numOfRuntimes) {
+    this.lines = lines;
+    this.runtimes = new long[numOfRuntimes];
+  }
+
+  /**
+   * Returns the extracted lines.
+   *
+   * @return the extracted lines.
+   */
+  public List<Region> getLines() {
+    return lines;
+  }
+
+  /**
+   * Sets the extracted lines.
+   *
+   * @param lines
+   *          the extracted lines.
+   */
+  public synchronized void setLines(List<Region> lines) {
+    this.lines = lines;
+    this.fulltext = null;
+  }
+
+  /**
+   * Returns the fulltext, that is the texts of the lines, separated by
+   * whitespaces.
+   *
+   * @return the fulltext.
+   */
+  public synchronized String getFulltext() {
+    if (fulltext == null) {
+      StringBuilder sb = new StringBuilder();
+      appendFulltext(sb);
+      fulltext = sb.toString();
+    }
+    return fulltext;
+  }
+
+  /**
+   * Appends the fulltext to the given StringBuilder.
+   * 
+   * @param sb
+   *          the StringBuilder.
+   */
+  protected void appendFulltext(StringBuilder sb) {
+    appendText(sb, getFulltextLines());
+  }
+
+  /**
+   * Appends the texts of the given lines, separated by whitespaces, to the
+   * given StringBuilder.
+   * 
+   * @param sb
+   *          the StringBuilder.
+   * @param lines
+   *          the lines to append.
+   */
+  public static void appendText(StringBuilder sb, List<Region> lines) {
+    if (lines != null) {
+      for (Region line : lines) {
+        if (line != null) {
+          sb.append(line.getText());
+          sb.append(" ");
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the lines, from which the fulltext is produced.
+   *
+   * @return the lines of the fulltext.
+   */
+  protected List<Region> getFulltextLines() {
+    return lines;
+  }
+
+  /**
+   * Returns the runtimes.
+   *
+   * @return the runtimes.
+   */
+  public synchronized long[] getRuntimes() {
+    return runtimes;
+  }
+
+  /**
+   * Sets the runtime with the given index.
+   *
+   * @param index
+   *          the index of the runtime.
+   * @param runtime
+   *          the runtime.
+   */
+  public synchronized void setRuntime(int index, long runtime) {
+    runtimes[index] = runtime;
+  }
+
+  /**
+   * Adds the given runtime to the runtime with the given index. The phases of
+   * a document may run in several threads, so the runtimes are summed up over
+   * all threads.
+   *
+   * @param index
+   *          the index of the runtime.
+   * @param runtime
+   *          the runtime to add.
+   */
+  public synchronized void addRuntime(int index, long runtime) {
+    runtimes[index] += runtime;
+  }
+}
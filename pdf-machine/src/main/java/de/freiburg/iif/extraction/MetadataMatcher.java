@@ -120,9 +120,14 @@ public interface MetadataMatcher {
   public String getFulltext();
   
   /**
-   * Returns the extracted fulltext.
+   * Returns the lines of the last matched document, on which the matching was
+   * based. If the matcher extracted the lines itself, it may keep only the
+   * relevant part of them: the ReferencesMetadataMatcher keeps only the lines
+   * from the first page with a bibliography header to the end of the document
+   * (from the last such page, if the pages are scanned from the end).
+   * The fulltext (see getFulltext()) covers the whole document in any case.
    * 
-   * @return the extracted fulltext.
+   * @return the lines of the last matched document.
    */
   public List<Region> getLines();
 }
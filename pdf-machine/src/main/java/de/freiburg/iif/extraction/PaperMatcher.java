@@ -2,16 +2,24 @@ package de.freiburg.iif.extraction;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
 
+import com.google.inject.Inject;
+
 import de.freiburg.iif.enrichment.CitationsDetector;
 import de.freiburg.iif.enrichment.CitationsDetector.Citation;
+import de.freiburg.iif.enrichment.CitationsDetector.CitationsCollector;
 import de.freiburg.iif.extraction.metadata.DocumentMetadataMatcher2;
+import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
 import de.freiburg.iif.extraction.references.ReferencesMetadataMatcher;
+import de.freiburg.iif.extraction.references.ReferencesMetadataMatcher.BibliographyCollector;
 import de.freiburg.iif.extraction.stripper.PdfBoxStripper;
 import de.freiburg.iif.extraction.stripper.PdfStripper;
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
 import de.freiburg.iif.model.HasMetadata;
 import de.freiburg.iif.model.Region;
 
@@ -28,7 +36,7 @@ public class PaperMatcher {
   /** The matcher for the metadata */
   protected MetadataMatcher metadataMatcher;
   /** The matcher for the references */
-  protected MetadataMatcher referencesMatcher;
+  protected ReferencesMetadataMatcher referencesMatcher;
   /** The citations detector */
   protected CitationsDetector citationsDetector;
   /** The matched metadata */
@@ -46,9 +54,34 @@ public class PaperMatcher {
    * The constructor.
    */
   public PaperMatcher() {
+    this(new InvertedIndexMetadataKnowledge());
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param mk
+   *          the implementation of MetadataKnowledge, shared by the matchers.
+   */
+  public PaperMatcher(MetadataKnowledge mk) {
+    this(new DocumentMetadataMatcher2(mk), new ReferencesMetadataMatcher(mk));
+  }
+
+  /**
+   * The constructor. The matchers are thread-safe, so they can be shared by
+   * all PaperMatchers.
+   * 
+   * @param metadataMatcher
+   *          the matcher for the metadata.
+   * @param referencesMatcher
+   *          the matcher for the references.
+   */
+  @Inject
+  public PaperMatcher(DocumentMetadataMatcher2 metadataMatcher,
+    ReferencesMetadataMatcher referencesMatcher) {
     this.pdfExtraction = new PdfBoxStripper();
-    this.metadataMatcher = new DocumentMetadataMatcher2();
-    this.referencesMatcher = new ReferencesMetadataMatcher();
+    this.metadataMatcher = metadataMatcher;
+    this.referencesMatcher = referencesMatcher;
     this.citationsDetector = new CitationsDetector();
   }
 
@@ -72,9 +105,32 @@ public class PaperMatcher {
     boolean matchReferences, boolean extractCitations) throws IOException {
     if (matchMetadata || matchReferences) {
       if (doc != null) {
+        // Process the pages, as soon as they are extracted. Only the lines of
+        // the first page (for the metadata), the lines of the bibliography
+        // and the citation areas are kept.
+        final List<Region> firstPageLines = new ArrayList<Region>();
+        final BibliographyCollector bibliography =
+            referencesMatcher.createBibliographyCollector();
+        final CitationsCollector citations =
+            citationsDetector.createCollector();
         // If references shouldn't be matched, extract only the first page.
         int endPage = matchReferences ? Integer.MAX_VALUE : 1;
-        setLines(pdfExtraction.extractLines(doc, 1, endPage, true));
+        try {
+          pdfExtraction.extractPageLines(doc, 1, endPage, true,
+              new PageListener() {
+                @Override
+                public void pageExtracted(int pageNumber, List<Region> lines) {
+                  if (pageNumber == 1) {
+                    firstPageLines.addAll(lines);
+                  }
+                  bibliography.pageExtracted(pageNumber, lines);
+                  citations.pageExtracted(pageNumber, lines);
+                }
+              });
+        } finally {
+          doc.close();
+        }
+        setLines(firstPageLines);
 
         if (matchMetadata) {
           List<HasMetadata> records = metadataMatcher.match(getLines(), false, false, 0);
@@ -83,11 +139,12 @@ public class PaperMatcher {
           }
         }
         if (matchReferences) { 
-          setReferences(referencesMatcher.match(getLines(), false, false, 0));
+          setReferences(referencesMatcher.match(bibliography, false, false, 0));
           setFulltext(referencesMatcher.getFulltext());
+          setLines(referencesMatcher.getLines());
         }
         if (extractCitations) {
-          setCitations(citationsDetector.detect(getReferences(), getLines()));
+          setCitations(citations.getCitations(getReferences()));
         }
       }
     }
@@ -160,7 +217,9 @@ public class PaperMatcher {
   }
   
   /**
-   * Returns the extracted lines.
+   * Returns the extracted lines, that were kept for the matching: the lines
+   * from the page of the first bibliography header on, if the references were
+   * matched, and the lines of the first page otherwise.
    * 
    * @return the extracted lines.
    */
@@ -166,7 +166,7 @@ public class DocumentMetadataMatcher implements MetadataMatcher {
           for (int l = 0; l < Math.min(10, candidates.size()); l++) {
             HasMetadata candidate = candidates.get(l);
             if (!isStopTitle(candidate.getTitle())) {
-              double score = scoreCandidate(candidate, query, size);
+              double score = scoreCandidate(candidate, query, size, maxScore);
 
               if (score > maxScore) {
                 LOG.debug("CAND : " + candidate + " " + score);
@@ -411,6 +411,27 @@ public class DocumentMetadataMatcher implements MetadataMatcher {
    */
   protected double scoreCandidate(HasMetadata candidate, String query,
     double fontSize) {
+    return scoreCandidate(candidate, query, fontSize,
+        Double.NEGATIVE_INFINITY);
+  }
+
+  /**
+   * Scores a matching candidate. If the candidate can't exceed the given
+   * minimal score, the computation of the title distance is stopped early and
+   * the returned score is only an upper bound (that doesn't exceed minScore).
+   * 
+   * @param candidate
+   *          the candidate to score.
+   * @param query
+   *          the query, from which the candidate resulted.
+   * @param fontSize
+   *          the fontsize of the query.
+   * @param minScore
+   *          the score to exceed.
+   * @return the score of the candidate.
+   */
+  protected double scoreCandidate(HasMetadata candidate, String query,
+    double fontSize, double minScore) {
     double score = -1;
 
     if (candidate != null && query != null) {
@@ -422,18 +443,20 @@ public class DocumentMetadataMatcher implements MetadataMatcher {
       // System.out.println("min/max " + ((double)
       // Math.min(candidate.getTitle().length(), query.length()) /
       // Math.max(candidate.getTitle().length(), query.length())));
-      double titleScore =
-          StringSimilarity.levenshtein(candidate.getTitle(), query);
-      titleScore =
-          -1
-              * (titleScore / Math.max(candidate.getTitle().length(),
-                  query.length())) + 1;
-
       if (candidate.getScore() > .5) {
         // MAYBE: double titleScore = candidate.getScore /
         double authorScore = scoreAuthors(candidate);
         double yearScore = header.contains("" + candidate.getYear()) ? 1 : 0;
         double journalScore = header.contains(candidate.getJournal()) ? 2 : 0;
+
+        int maxLength = Math.max(candidate.getTitle().length(),
+            query.length());
+        int maxDistance = getMaxTitleDistance(maxLength,
+            authorScore * fontSize, yearScore + journalScore, minScore);
+        double titleScore = StringSimilarity.levenshtein(candidate.getTitle(),
+            query, maxDistance);
+        titleScore = -1 * (titleScore / maxLength) + 1;
+
         score =
             (authorScore * titleScore * titleScore * fontSize) + yearScore
                 + journalScore;
@@ -451,6 +474,35 @@ public class DocumentMetadataMatcher implements MetadataMatcher {
     return score;
   }
 
+  /**
+   * Returns the maximal distance between the title of a candidate and the
+   * query, such that the candidate (with score factor * titleScore^2 + rest)
+   * can still exceed the given minimal score.
+   * 
+   * @param maxLength
+   *          the maximal length of the title and the query.
+   * @param factor
+   *          the factor of the squared title score.
+   * @param rest
+   *          the remaining score.
+   * @param minScore
+   *          the score to exceed.
+   * @return the maximal distance of interest.
+   */
+  protected int getMaxTitleDistance(int maxLength, double factor, double rest,
+    double minScore) {
+    if (factor <= 0 || minScore - rest <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    double minTitleScore = Math.sqrt((minScore - rest) / factor);
+    if (minTitleScore >= 1) {
+      // Even a title distance of 0 can't exceed the minimal score.
+      return 0;
+    }
+    // Add 1 to be robust against rounding errors.
+    return (int) Math.ceil(maxLength * (1 - minTitleScore)) + 1;
+  }
+
   /**
    * Computes a score for the authors of the given candidate.
    * 
@@ -20,11 +20,16 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
+import com.google.inject.Inject;
+
+import de.freiburg.iif.extraction.MatchingContext;
 import de.freiburg.iif.extraction.MetadataMatcher;
 import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeField;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQuery;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
 import de.freiburg.iif.extraction.stripper.PdfBoxStripper;
 import de.freiburg.iif.extraction.stripper.PdfStripper;
 import de.freiburg.iif.model.HasMetadata;
@@ -40,38 +45,48 @@ import de.freiburg.iif.utils.StringSimilarity;
  * ordinary HTTP requests to it. The result is a xml file, containing the
  * result.
  * 
+ * The state of a document is held by a DocumentMatchingContext, that is bound
+ * to the thread, which matches the document. So a single instance can match
+ * many documents concurrently. The methods getFulltext() and getLines() return
+ * the state of the last document, that was matched by the calling thread.
+ * 
  * @author Claudius Korzen
  * 
  */
 public class DocumentMetadataMatcher2 implements MetadataMatcher {
+  /** The maximal number of candidates to score. */
+  protected static final int MAX_NUM_OF_SCORED_CANDIDATES = 10;
   /** The interface to the metadata knowledge base */
   protected MetadataKnowledge mk;
   /** The interface to the pdf extraction tool */
   protected PdfStripper ex;
-  /** The text of the first page */
-  protected StringBuilder textOfFirstPage;
-  /** The numbers contained in the first page */
-  protected List<Integer> numbers;
   /** The stop titles (titles of candidates, that we won't consider). */
   protected Set<String> stopTitles;
-  /** The StringBuilder for the fulltext */
-  protected StringBuilder fulltext;
   /** The log4j logger */
   protected Log LOG;
-  /** The extracted lines */
-  protected List<Region> lines;
+  /** The contexts of the documents, that are matched by the threads. */
+  protected ThreadLocal<DocumentMatchingContext> contexts;
   
   /**
    * The constructor.
    */
   public DocumentMetadataMatcher2() {
-    this.mk = new InvertedIndexMetadataKnowledge();
+    this(new InvertedIndexMetadataKnowledge());
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param mk
+   *          the implementation of MetadataKnowledge.
+   */
+  @Inject
+  public DocumentMetadataMatcher2(MetadataKnowledge mk) {
+    this.mk = mk;
     this.ex = new PdfBoxStripper();
-    this.textOfFirstPage = new StringBuilder();
-    this.numbers = new ArrayList<Integer>();
-    this.stopTitles = readStopTitlesFile();
+    this.stopTitles = StopTitlesHolder.STOP_TITLES;
     this.LOG = LogFactory.getLog(DocumentMetadataMatcher2.class);
-    this.fulltext = new StringBuilder();
+    this.contexts = new ThreadLocal<DocumentMatchingContext>();
   }
 
   @Override
@@ -95,7 +110,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
   @Override
   public List<HasMetadata> match(PDDocument doc, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
-    lines = ex.extractLines(doc, 1, 1, false);
+    List<Region> lines = ex.extractLines(doc, 1, 1, false);
     return match(lines, strict, disableMK, minWaitInterval);
   }
 
@@ -111,8 +126,9 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
    */
   public List<HasMetadata> match(List<Region> lines, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
-    textOfFirstPage.setLength(0);
-    numbers.clear();
+    // Start a new context for the document.
+    DocumentMatchingContext context = new DocumentMatchingContext(lines);
+    contexts.set(context);
 
     // Fetch only the line of the first page.
     lines = filterFirstPageLines(lines);
@@ -120,7 +136,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
     // Compute the most common fontsize in the first page.
     Stats stats = computeStats(lines);
     
-    LOG.debug("FULLTEXT: " + textOfFirstPage);
+    LOG.debug("FULLTEXT: " + context.textOfFirstPage);
     
     // Sort the lines by fontsizes
     Collections.sort(lines, new FontsizeComparator());
@@ -152,12 +168,8 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
     if (lines != null) {
       List<Region> filtered = new ArrayList<Region>();
       for (Region line : lines) {
-        if (line != null) {
-          if (line.getPageNumber() == 1) {
-            filtered.add(line);
-          }
-          fulltext.append(line.getText());
-          fulltext.append(" ");
+        if (line != null && line.getPageNumber() == 1) {
+          filtered.add(line);
         }
       }
       return filtered;
@@ -178,6 +190,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
     int mostCommontPitchsize = -1;
 
     if (lines != null && lines.size() > 0) {
+      DocumentMatchingContext context = getContext();
       // Count the various fontsizes.
       Map<Integer, Integer> fontsizes = new HashMap<Integer, Integer>();
       Map<Integer, Integer> linepitches = new HashMap<Integer, Integer>();
@@ -202,8 +215,8 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
           linepitches.put(yDiff, count2 + 1);
         }
 
-        textOfFirstPage.append(line.getText());
-        textOfFirstPage.append(" ");
+        context.textOfFirstPage.append(line.getText());
+        context.textOfFirstPage.append(" ");
 
         Pattern p = Patterns.NUMBERS_PATTERN;
         Matcher m = p.matcher(line.getText());
@@ -211,7 +224,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
         while (m.find()) {
           try {
             int number = Integer.parseInt(m.group());
-            numbers.add(number);
+            context.numbers.add(number);
           } catch (Exception e) {
             // Nothing to do.
           }
@@ -262,6 +275,8 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
 
     MetadataKnowledgeQuery query = new MetadataKnowledgeQuery();
 
+    // Collect the words of all emphasized lines.
+    List<String> words = new ArrayList<String>();
     for (int i = 0; i < lines.size(); i++) {
       Region prevLine = i > 0 ? lines.get(i - 1) : null;
       Region line = lines.get(i);
@@ -276,33 +291,41 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
           Matcher m = p.matcher(line.getText());
 
           while (m.find()) {
-            String word = m.group().trim();
-            int numTitleHits = 0;
-            if (numOfTitleWords < 10) {
-              numTitleHits =
-                  mk.getNumOfHits(MetadataKnowledgeQueryType.TITLE, word, 0);
-            }
-            int numAuthorHits = 0;
-            char firstChar = word.charAt(0);
-            if (Character.isUpperCase(firstChar) && numOfAuthorWords < 10) {
-              numAuthorHits =
-                  mk.getNumOfHits(MetadataKnowledgeQueryType.AUTHORS, word, 0);
-            }
-
-            if (numAuthorHits > 0) {
-              query.add(MetadataKnowledgeQueryType.AUTHORS, word);
-              numOfAuthorWords++;
-            }
-
-            if (numTitleHits > 0) {
-              query.add(MetadataKnowledgeQueryType.TITLE, word);
-              numOfTitleWords++;
-            }
+            words.add(m.group().trim());
           }
         }
       }
     }
 
+    // Resolve the number of hits of all words in a single batch.
+    Map<String, NumOfHits> hits =
+        words.isEmpty() ? new HashMap<String, NumOfHits>() : mk.getNumOfHits(
+            words, 0);
+
+    for (String word : words) {
+      NumOfHits numOfHits = hits.get(word);
+      int numTitleHits = 0;
+      if (numOfTitleWords < 10 && numOfHits != null) {
+        numTitleHits = numOfHits.numOfTitleHits;
+      }
+      int numAuthorHits = 0;
+      char firstChar = word.charAt(0);
+      if (Character.isUpperCase(firstChar) && numOfAuthorWords < 10
+          && numOfHits != null) {
+        numAuthorHits = numOfHits.numOfAuthorHits;
+      }
+
+      if (numAuthorHits > 0) {
+        query.add(MetadataKnowledgeQueryType.AUTHORS, word);
+        numOfAuthorWords++;
+      }
+
+      if (numTitleHits > 0) {
+        query.add(MetadataKnowledgeQueryType.TITLE, word);
+        numOfTitleWords++;
+      }
+    }
+
     query.create();
     return query;
   }
@@ -355,12 +378,20 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
    */
   protected HasMetadata getLeadingCandidate(MetadataKnowledgeQuery query)
     throws IOException {
+    // Fetch only the fields, that are needed to score the candidates. The
+    // full record is fetched for the leading candidate only.
+    query.setLimit(MAX_NUM_OF_SCORED_CANDIDATES);
+    query.setFields(MetadataKnowledgeField.SCORING_FIELDS);
     List<HasMetadata> candidates = mk.query(query, 0);
     LOG.debug(query);
     float maxScore = 0;
     HasMetadata mostLikelyCandidate = null;
     if (candidates != null) {
-      for (int i = 0; i < Math.min(10, candidates.size()); i++) {
+      DocumentMatchingContext context = getContext();
+      context.textOfFirstPageChars = StringSimilarity.toLowerCaseChars(
+          context.textOfFirstPage.toString());
+      for (int i = 0; i < Math.min(MAX_NUM_OF_SCORED_CANDIDATES,
+          candidates.size()); i++) {
         HasMetadata candidate = candidates.get(i);
         if (candidate != null && !isStopTitle(candidate.getTitle())) {
           float score = scoreCandidate(candidate);
@@ -372,7 +403,36 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
         }
       }
     }
-    return mostLikelyCandidate;
+    return fetchFullRecord(mostLikelyCandidate);
+  }
+
+  /**
+   * Fetches all fields of the given (projected) record from the metadata
+   * knowledge base. The score of the record is kept.
+   * 
+   * @param record
+   *          the record to complete.
+   * @return the complete record or the given record, if there is no record
+   *         with the key of the given record.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected HasMetadata fetchFullRecord(HasMetadata record)
+    throws IOException {
+    if (record == null || record.getKey() == null) {
+      return record;
+    }
+    List<HasMetadata> records =
+        mk.query(MetadataKnowledgeQueryType.KEY, record.getKey(), 0);
+    if (records != null) {
+      for (HasMetadata fullRecord : records) {
+        if (record.getKey().equals(fullRecord.getKey())) {
+          fullRecord.setScore(record.getScore());
+          return fullRecord;
+        }
+      }
+    }
+    return record;
   }
 
   /**
@@ -403,12 +463,15 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
     float venueScore = 0;
     
     if (candidate != null) {
+      DocumentMatchingContext context = getContext();
+      char[] textOfFirstPageChars = context.textOfFirstPageChars;
+      List<Integer> numbers = context.numbers;
       LOG.debug("CAND : " + candidate);
-      float[] simResult =
-          StringSimilarity.smithWaterman(candidate.getTitle(),
-              textOfFirstPage.toString());
+      int simScore = StringSimilarity.smithWaterman(
+          StringSimilarity.toLowerCaseChars(candidate.getTitle()),
+          textOfFirstPageChars, null, null);
       titleScore =
-          simResult[0]
+          simScore
               / StringSimilarity
                   .getMaxSmithWatermanScore(candidate.getTitle());
       
@@ -424,12 +487,12 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
           String lastname = authorWords[authorWords.length - 1];
 
           if (!lastname.isEmpty()) {
-            simResult =
-                StringSimilarity.smithWaterman(lastname,
-                    textOfFirstPage.toString());
+            simScore = StringSimilarity.smithWaterman(
+                StringSimilarity.toLowerCaseChars(lastname),
+                textOfFirstPageChars, null, null);
             float maxAuthorScore =
                 StringSimilarity.getMaxSmithWatermanScore(lastname);
-            float authorScore = simResult[0] / maxAuthorScore;
+            float authorScore = simScore / maxAuthorScore;
 
             // if (i == 0) {
             // LOG.info("    score of firstAuthor: " + authorScore);
@@ -447,12 +510,13 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
         }
       }
 
-      simResult = StringSimilarity.smithWaterman(candidate.getJournal(),
-              textOfFirstPage.toString());
+      simScore = StringSimilarity.smithWaterman(
+          StringSimilarity.toLowerCaseChars(candidate.getJournal()),
+          textOfFirstPageChars, null, null);
       float maxVenueScore =
           StringSimilarity.getMaxSmithWatermanScore(candidate.getJournal());
       
-      if ((simResult[0] / maxVenueScore) == 1) {
+      if ((simScore / maxVenueScore) == 1) {
         venueScore = 0.1f;
       }
 
@@ -476,7 +540,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
    *          the text to process.
    * @return the simplified string.
    */
-  protected String clearSpecialChars(String text) {
+  protected static String clearSpecialChars(String text) {
     // return text.replaceAll("[^a-zA-Z-,.]+", " ");
     return text.replaceAll("[^a-zA-Z0-9]+", " ");
   }
@@ -499,9 +563,9 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
    * 
    * @return as set containing the stoptitles in stoptitles file.
    */
-  protected Set<String> readStopTitlesFile() {
+  protected static Set<String> readStopTitlesFile() {
     try (BufferedReader br = new BufferedReader(new InputStreamReader(
-        this.getClass().getResourceAsStream("stoptitles")))) {
+        DocumentMetadataMatcher2.class.getResourceAsStream("stoptitles")))) {
       Set<String> stopTitles = new HashSet<String>();
   
       String line = null;
@@ -512,7 +576,7 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
       } catch (Exception e) {
         e.printStackTrace();
       }
-      return stopTitles;
+      return Collections.unmodifiableSet(stopTitles);
     } catch (Exception e) {
       e.printStackTrace();
       return null;
@@ -553,9 +617,24 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
     }
   }
 
+  /**
+   * Returns the context of the document, that is matched by the current
+   * thread. Creates a new context, if the thread didn't match a document yet.
+   * 
+   * @return the context of the current thread.
+   */
+  protected DocumentMatchingContext getContext() {
+    DocumentMatchingContext context = contexts.get();
+    if (context == null) {
+      context = new DocumentMatchingContext(null);
+      contexts.set(context);
+    }
+    return context;
+  }
+
   @Override
   public String getFulltext() {
-    return fulltext.toString();
+    return getContext().getFulltext();
   }
 
   @Override
@@ -566,6 +645,45 @@ public class DocumentMetadataMatcher2 implements MetadataMatcher {
   
   @Override
   public List<Region> getLines() {
-    return lines;
+    return getContext().getLines();
+  }
+
+  /**
+   * The stop titles, that are read once and shared by all matchers (they are
+   * read on first use).
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class StopTitlesHolder {
+    /** The stop titles. */
+    protected static final Set<String> STOP_TITLES = readStopTitlesFile();
+  }
+
+  /**
+   * The context of a document, that is matched by a DocumentMetadataMatcher2.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class DocumentMatchingContext extends MatchingContext {
+    /** The text of the first page */
+    protected StringBuilder textOfFirstPage;
+    /** The lower-cased chars of the text of the first page. */
+    protected char[] textOfFirstPageChars;
+    /** The numbers contained in the first page */
+    protected List<Integer> numbers;
+
+    /**
+     * The constructor.
+     * 
+     * @param lines
+     *          the extracted lines of the document.
+     */
+    protected DocumentMatchingContext(List<Region> lines) {
+      super(lines, 0);
+      this.textOfFirstPage = new StringBuilder();
+      this.numbers = new ArrayList<Integer>();
+    }
   }
 }
\ No newline at end of file
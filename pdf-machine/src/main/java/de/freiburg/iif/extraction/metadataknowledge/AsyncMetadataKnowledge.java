@@ -0,0 +1,52 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * A metadata knowledge base, that can be queried asynchronously. The methods
+ * return immediately, so a caller can issue the queries of all references of
+ * a document at once and collect the results afterwards. Exceptions of the
+ * queries are thrown by Future.get() (wrapped into an ExecutionException).
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public interface AsyncMetadataKnowledge extends MetadataKnowledge {
+  /**
+   * Query the metadata knowledge base asynchronously.
+   * 
+   * @param type
+   *          the type of the query parameter.
+   * @param value
+   *          the value of the query parameter.
+   * @return the future list of candidates from the metadata knowledge base.
+   */
+  public Future<List<HasMetadata>> queryAsync(MetadataKnowledgeQueryType type,
+    String value, int minWaitInterval);
+
+  /**
+   * Query the metadata knowledge base asynchronously.
+   * 
+   * @param query
+   *          the query.
+   * @return the future list of candidates from the metadata knowledge base.
+   */
+  public Future<List<HasMetadata>> queryAsync(MetadataKnowledgeQuery query,
+    int minWaitInterval);
+
+  /**
+   * Returns the number of title hits and the number of author hits for each of
+   * the given words asynchronously.
+   * 
+   * @param words
+   *          the words to look up.
+   * @return the future map, that maps each given word to its number of hits.
+   */
+  public Future<Map<String, NumOfHits>> getNumOfHitsAsync(
+    Collection<String> words, int minWaitInterval);
+}
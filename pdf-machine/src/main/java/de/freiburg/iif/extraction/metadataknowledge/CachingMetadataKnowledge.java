@@ -0,0 +1,361 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import de.freiburg.iif.model.HasMetadata;
+import de.freiburg.iif.utils.SegmentedLruCache;
+
+/**
+ * A MetadataKnowledge, that caches the number of hits of single terms and
+ * delegates all other queries to an underlying MetadataKnowledge. The same
+ * words (like "Proceedings" or common surnames) are looked up again and again,
+ * within a document and across documents, so the cache should be shared by
+ * all matchers.
+ *
+ * If the underlying MetadataKnowledge is asynchronous, the asynchronous
+ * queries are passed through. Otherwise they are answered synchronously.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class CachingMetadataKnowledge implements AsyncMetadataKnowledge {
+  /** The default maximal number of cached terms. */
+  public static final int DEFAULT_CACHE_SIZE = 100000;
+  /** The underlying metadata knowledge. */
+  protected MetadataKnowledge mk;
+  /** The cache, that maps (query type, term) to the number of hits. */
+  protected SegmentedLruCache<String, Integer> cache;
+
+  /**
+   * Creates a new CachingMetadataKnowledge with the default cache size.
+   *
+   * @param mk
+   *          the underlying metadata knowledge.
+   */
+  public CachingMetadataKnowledge(MetadataKnowledge mk) {
+    this(mk, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a new CachingMetadataKnowledge.
+   *
+   * @param mk
+   *          the underlying metadata knowledge.
+   * @param cacheSize
+   *          the maximal number of cached terms.
+   */
+  public CachingMetadataKnowledge(MetadataKnowledge mk, int cacheSize) {
+    this.mk = mk;
+    this.cache = new SegmentedLruCache<String, Integer>(cacheSize);
+  }
+
+  @Override
+  public List<HasMetadata> query(MetadataKnowledgeQueryType type,
+    String value, int minWaitInterval) throws IOException {
+    return mk.query(type, value, minWaitInterval);
+  }
+
+  @Override
+  public List<HasMetadata> query(MetadataKnowledgeQuery query,
+    int minWaitInterval) throws IOException {
+    return mk.query(query, minWaitInterval);
+  }
+
+  @Override
+  public int getNumOfHits(MetadataKnowledgeQueryType type, String value,
+    int minWaitInterval) throws IOException {
+    String key = getCacheKey(type, value);
+    Integer numOfHits = cache.get(key);
+    if (numOfHits == null) {
+      numOfHits = mk.getNumOfHits(type, value, minWaitInterval);
+      cache.put(key, numOfHits);
+    }
+    return numOfHits;
+  }
+
+  @Override
+  public int getNumOfHits(MetadataKnowledgeQuery query, int minWaitInterval)
+    throws IOException {
+    Set<Entry<MetadataKnowledgeQueryType, String>> params = query.getParams();
+    if (params.size() != 1) {
+      // Only cache queries for a single term.
+      return mk.getNumOfHits(query, minWaitInterval);
+    }
+    Entry<MetadataKnowledgeQueryType, String> param = params.iterator().next();
+    String key = getCacheKey(param.getKey(), param.getValue());
+    Integer numOfHits = cache.get(key);
+    if (numOfHits == null) {
+      numOfHits = mk.getNumOfHits(query, minWaitInterval);
+      cache.put(key, numOfHits);
+    }
+    return numOfHits;
+  }
+
+  @Override
+  public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+    int minWaitInterval) throws IOException {
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    // Resolve the words, that aren't cached, with a single batch.
+    Set<String> missingWords = lookup(words, result);
+    if (!missingWords.isEmpty()) {
+      fill(missingWords, mk.getNumOfHits(missingWords, minWaitInterval),
+          result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns true, if the asynchronous queries are really answered
+   * asynchronously, that means if the underlying MetadataKnowledge is
+   * asynchronous. Otherwise the asynchronous queries are answered in the
+   * calling thread.
+   *
+   * @return true, if the asynchronous queries are answered asynchronously.
+   */
+  public boolean isAsynchronous() {
+    if (mk instanceof CachingMetadataKnowledge) {
+      return ((CachingMetadataKnowledge) mk).isAsynchronous();
+    }
+    return mk instanceof AsyncMetadataKnowledge;
+  }
+
+  @Override
+  public Future<List<HasMetadata>> queryAsync(
+    final MetadataKnowledgeQueryType type, final String value,
+    final int minWaitInterval) {
+    if (mk instanceof AsyncMetadataKnowledge) {
+      return ((AsyncMetadataKnowledge) mk).queryAsync(type, value,
+          minWaitInterval);
+    }
+    return runNow(new Callable<List<HasMetadata>>() {
+      @Override
+      public List<HasMetadata> call() throws IOException {
+        return query(type, value, minWaitInterval);
+      }
+    });
+  }
+
+  @Override
+  public Future<List<HasMetadata>> queryAsync(
+    final MetadataKnowledgeQuery query, final int minWaitInterval) {
+    if (mk instanceof AsyncMetadataKnowledge) {
+      return ((AsyncMetadataKnowledge) mk).queryAsync(query, minWaitInterval);
+    }
+    return runNow(new Callable<List<HasMetadata>>() {
+      @Override
+      public List<HasMetadata> call() throws IOException {
+        return query(query, minWaitInterval);
+      }
+    });
+  }
+
+  @Override
+  public Future<Map<String, NumOfHits>> getNumOfHitsAsync(
+    final Collection<String> words, final int minWaitInterval) {
+    if (!(mk instanceof AsyncMetadataKnowledge)) {
+      return runNow(new Callable<Map<String, NumOfHits>>() {
+        @Override
+        public Map<String, NumOfHits> call() throws IOException {
+          return getNumOfHits(words, minWaitInterval);
+        }
+      });
+    }
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    Set<String> missingWords = lookup(words, result);
+    Future<Map<String, NumOfHits>> missingHits = null;
+    if (!missingWords.isEmpty()) {
+      missingHits = ((AsyncMetadataKnowledge) mk).getNumOfHitsAsync(
+          missingWords, minWaitInterval);
+    }
+    return new NumOfHitsFuture(result, missingWords, missingHits);
+  }
+
+  /**
+   * Puts the number of hits of the cached words into the given map and returns
+   * the words, that aren't cached.
+   *
+   * @param words
+   *          the words to look up.
+   * @param result
+   *          the map to fill.
+   * @return the words, that aren't cached.
+   */
+  protected Set<String> lookup(Collection<String> words,
+    Map<String, NumOfHits> result) {
+    Set<String> missingWords = new LinkedHashSet<String>();
+    if (words == null) {
+      return missingWords;
+    }
+    for (String word : words) {
+      if (word == null || result.containsKey(word)) {
+        continue;
+      }
+      Integer titleHits = cache.get(getCacheKey(
+          MetadataKnowledgeQueryType.NUMOFHITS_TITLE, word));
+      Integer authorHits = cache.get(getCacheKey(
+          MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, word));
+      if (titleHits != null && authorHits != null) {
+        result.put(word, new NumOfHits(titleHits, authorHits));
+      } else {
+        missingWords.add(word);
+      }
+    }
+    return missingWords;
+  }
+
+  /**
+   * Caches the given number of hits of the given words and puts them into the
+   * given map.
+   *
+   * @param words
+   *          the words, that weren't cached.
+   * @param hits
+   *          the number of hits of the words.
+   * @param result
+   *          the map to fill.
+   */
+  protected void fill(Set<String> words, Map<String, NumOfHits> hits,
+    Map<String, NumOfHits> result) {
+    for (String word : words) {
+      NumOfHits numOfHits = hits != null ? hits.get(word) : null;
+      if (numOfHits == null) {
+        numOfHits = new NumOfHits(0, 0);
+      }
+      cache.put(getCacheKey(MetadataKnowledgeQueryType.NUMOFHITS_TITLE,
+          word), numOfHits.numOfTitleHits);
+      cache.put(getCacheKey(MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS,
+          word), numOfHits.numOfAuthorHits);
+      result.put(word, numOfHits);
+    }
+  }
+
+  /**
+   * Runs the given task in the current thread and returns its result as
+   * future.
+   *
+   * @param task
+   *          the task to run.
+   * @return the (completed) future.
+   */
+  protected static <V> Future<V> runNow(Callable<V> task) {
+    FutureTask<V> future = new FutureTask<V>(task);
+    future.run();
+    return future;
+  }
+
+  /**
+   * Returns the key of the given query type and term in the cache.
+   *
+   * @param type
+   *          the query type.
+   * @param term
+   *          the term.
+   * @return the key in the cache.
+   */
+  protected String getCacheKey(MetadataKnowledgeQueryType type, String term) {
+    return type.paramKey + "=" + term;
+  }
+
+  /**
+   * Returns the cache (e.g. to read its counters).
+   *
+   * @return the cache.
+   */
+  public SegmentedLruCache<String, Integer> getCache() {
+    return cache;
+  }
+
+  /**
+   * Returns the underlying metadata knowledge.
+   *
+   * @return the underlying metadata knowledge.
+   */
+  public MetadataKnowledge getMetadataKnowledge() {
+    return mk;
+  }
+
+  /**
+   * The future result of an asynchronous num-of-hits lookup. Combines the
+   * cached words with the words resolved by the underlying metadata knowledge
+   * and caches the latter, once they are available.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected class NumOfHitsFuture implements Future<Map<String, NumOfHits>> {
+    /** The number of hits of the cached words. */
+    protected Map<String, NumOfHits> result;
+    /** The words, that weren't cached. */
+    protected Set<String> missingWords;
+    /** The future number of hits of the missing words (null if none). */
+    protected Future<Map<String, NumOfHits>> missingHits;
+    /** The flag that indicates whether the missing words were filled in. */
+    protected boolean isFilled;
+
+    /**
+     * The constructor.
+     *
+     * @param result
+     *          the number of hits of the cached words.
+     * @param missingWords
+     *          the words, that weren't cached.
+     * @param missingHits
+     *          the future number of hits of the missing words.
+     */
+    protected NumOfHitsFuture(Map<String, NumOfHits> result,
+      Set<String> missingWords, Future<Map<String, NumOfHits>> missingHits) {
+      this.result = result;
+      this.missingWords = missingWords;
+      this.missingHits = missingHits;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      return missingHits != null && missingHits.cancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return missingHits != null && missingHits.isCancelled();
+    }
+
+    @Override
+    public boolean isDone() {
+      return missingHits == null || missingHits.isDone();
+    }
+
+    @Override
+    public synchronized Map<String, NumOfHits> get()
+      throws InterruptedException, ExecutionException {
+      if (!isFilled && missingHits != null) {
+        fill(missingWords, missingHits.get(), result);
+      }
+      isFilled = true;
+      return result;
+    }
+
+    @Override
+    public synchronized Map<String, NumOfHits> get(long timeout,
+      TimeUnit unit) throws InterruptedException, ExecutionException,
+      TimeoutException {
+      if (!isFilled && missingHits != null) {
+        fill(missingWords, missingHits.get(timeout, unit), result);
+      }
+      isFilled = true;
+      return result;
+    }
+  }
+}
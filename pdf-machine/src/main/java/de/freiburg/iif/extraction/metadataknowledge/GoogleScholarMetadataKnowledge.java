@@ -10,7 +10,10 @@ import java.net.Socket;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
 
@@ -76,6 +79,10 @@ public class GoogleScholarMetadataKnowledge implements MetadataKnowledge {
   public List<HasMetadata> query(MetadataKnowledgeQueryType type,
     String value, int minWaitInterval) throws IOException {
     this.minWaitInterval = minWaitInterval;
+    if (type == MetadataKnowledgeQueryType.KEY) {
+      // Google Scholar doesn't know the keys of dblp.
+      return new ArrayList<HasMetadata>();
+    }
     return queryGoogleScholar(value);
   }
 
@@ -101,6 +108,19 @@ public class GoogleScholarMetadataKnowledge implements MetadataKnowledge {
     return 0;
   }
 
+  @Override
+  public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+    int minWaitInterval) throws IOException {
+    // Not supported. Behave like getNumOfHits() for each single word.
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    if (words != null) {
+      for (String word : words) {
+        result.put(word, new NumOfHits(0, 0));
+      }
+    }
+    return result;
+  }
+
   /**
    * Query Google Scholar.
    * 
@@ -0,0 +1,619 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of persistent (keep-alive) connections to the socket of the inverted
+ * index. Instead of opening a new connection for each query, the connections
+ * are reused, such that the tcp setup and teardown is saved for the most
+ * queries. The pool is thread-safe and can be shared by several matchers.
+ *
+ * If the index closes a connection (e.g. because it doesn't support keep-alive
+ * or because the connection was idle too long), the pool opens a new one. A
+ * request on a pooled connection is repeated on a new connection only, if the
+ * connection turned out to be closed before any byte of the response arrived
+ * (see StaleConnectionException), but never after a read timeout.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class IndexConnectionPool {
+  /** The default maximal number of connections. */
+  public static final int DEFAULT_MAX_POOL_SIZE = 8;
+  /** The default time in ms, an idle connection is kept in the pool. */
+  public static final long DEFAULT_MAX_IDLE_TIME = 30000;
+  /** The default connect and read timeout in ms. */
+  public static final int DEFAULT_TIMEOUT = 10000;
+  /**
+   * The maximal length of a request, that is sent with keep-alive. Older
+   * versions of the index read a request in a single chunk of 1024 bytes and
+   * answer the rest of a longer request as a further (empty) request, which
+   * would be read as the response of the next request on the connection.
+   */
+  public static final int MAX_KEEP_ALIVE_REQUEST_LENGTH = 1024;
+  /** The charset to encode non-ascii characters of the request. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+  /** The maximal number of connections (idle and in use). */
+  protected final int maxPoolSize;
+  /** The time in ms, an idle connection is kept in the pool. */
+  protected final long maxIdleTime;
+  /** The connect and read timeout per request in ms. */
+  protected final int timeout;
+  /** The semaphore that limits the number of connections in use. */
+  protected final Semaphore permits;
+  /** The idle connections, per host and port. */
+  protected final Map<String, Deque<IndexConnection>> idleConnections;
+  /** The executor of asynchronous requests (one thread per connection). */
+  protected ExecutorService executor;
+
+  /**
+   * Creates a new connection pool with the default settings.
+   */
+  public IndexConnectionPool() {
+    this(DEFAULT_MAX_POOL_SIZE, DEFAULT_MAX_IDLE_TIME, DEFAULT_TIMEOUT);
+  }
+
+  /**
+   * Creates a new connection pool.
+   *
+   * @param maxPoolSize
+   *          the maximal number of connections.
+   * @param maxIdleTime
+   *          the time in ms, an idle connection is kept in the pool.
+   * @param timeout
+   *          the connect and read timeout per request in ms.
+   */
+  public IndexConnectionPool(int maxPoolSize, long maxIdleTime, int timeout) {
+    if (maxPoolSize < 1) {
+      throw new IllegalArgumentException("The pool size must be positive.");
+    }
+    this.maxPoolSize = maxPoolSize;
+    this.maxIdleTime = maxIdleTime;
+    this.timeout = timeout;
+    this.permits = new Semaphore(maxPoolSize, true);
+    this.idleConnections = new HashMap<String, Deque<IndexConnection>>();
+  }
+
+  /**
+   * Sends a GET-request for the given url and returns the body of the
+   * response. Blocks, if all connections are in use, but at most for the
+   * configured timeout.
+   *
+   * @param url
+   *          the url to request.
+   * @return the body of the response.
+   * @throws IOException
+   *           if the request fails or times out.
+   */
+  public InputStream execute(URL url) throws IOException {
+    if (url == null) {
+      return null;
+    }
+
+    try {
+      if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+        throw new IOException("No connection available for " + url);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a connection.");
+    }
+
+    try {
+      String host = url.getHost();
+      int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+      byte[] request = createRequest(url);
+      if (request.length > MAX_KEEP_ALIVE_REQUEST_LENGTH) {
+        // Let the index close the connection after the response.
+        request = createRequest(url, false);
+      }
+
+      IndexConnection connection = pollIdleConnection(host, port);
+      if (connection != null) {
+        // A pooled connection may be closed by the index in the meantime.
+        // In this case, retry the request with a new connection.
+        try {
+          return execute(connection, request);
+        } catch (StaleConnectionException e) {
+          connection.close();
+        }
+      }
+      return execute(new IndexConnection(host, port, timeout), request);
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Sends the request on the given connection and reads the response.
+   * Returns the connection to the pool, if it can be reused.
+   *
+   * @param connection
+   *          the connection to use.
+   * @param request
+   *          the request to send.
+   * @return the body of the response.
+   * @throws IOException
+   *           if sending the request or reading the response fails.
+   */
+  protected InputStream execute(IndexConnection connection, byte[] request)
+    throws IOException {
+    try {
+      byte[] response = connection.send(request);
+      if (connection.isReusable()) {
+        releaseConnection(connection);
+      } else {
+        connection.close();
+      }
+      return new ResponseStream(response, 0, response.length);
+    } catch (IOException e) {
+      connection.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns an idle connection to the given host and port, or null if there
+   * is no such connection. Connections that were idle for too long are closed.
+   *
+   * @param host
+   *          the host.
+   * @param port
+   *          the port.
+   * @return an idle connection or null.
+   */
+  protected synchronized IndexConnection pollIdleConnection(String host,
+    int port) {
+    evictIdleConnections();
+    Deque<IndexConnection> connections = idleConnections.get(host + ":" + port);
+    // Prefer the connection, that was used most recently.
+    return connections != null ? connections.pollLast() : null;
+  }
+
+  /**
+   * Puts the given connection back into the pool.
+   *
+   * @param connection
+   *          the connection.
+   */
+  protected synchronized void releaseConnection(IndexConnection connection) {
+    String key = connection.host + ":" + connection.port;
+    Deque<IndexConnection> connections = idleConnections.get(key);
+    if (connections == null) {
+      connections = new ArrayDeque<IndexConnection>();
+      idleConnections.put(key, connections);
+    }
+    connection.lastUsed = System.currentTimeMillis();
+    connections.addLast(connection);
+    // Don't keep more idle connections than the pool size.
+    while (connections.size() > maxPoolSize) {
+      connections.pollFirst().close();
+    }
+  }
+
+  /**
+   * Closes all connections, that were idle for longer than the max idle time.
+   */
+  public synchronized void evictIdleConnections() {
+    long now = System.currentTimeMillis();
+    for (Deque<IndexConnection> connections : idleConnections.values()) {
+      Iterator<IndexConnection> it = connections.iterator();
+      while (it.hasNext()) {
+        IndexConnection connection = it.next();
+        if (now - connection.lastUsed > maxIdleTime) {
+          connection.close();
+          it.remove();
+        }
+      }
+    }
+  }
+
+  /**
+   * Closes all idle connections and stops the executor of asynchronous
+   * requests.
+   */
+  public synchronized void close() {
+    for (Deque<IndexConnection> connections : idleConnections.values()) {
+      for (IndexConnection connection : connections) {
+        connection.close();
+      }
+    }
+    idleConnections.clear();
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Returns the executor, that executes asynchronous requests to the index.
+   * The executor has as many threads as the pool has connections, such that
+   * further requests are queued in the executor. But as the connections are
+   * shared with synchronous requests, a thread of the executor may still wait
+   * for a connection (at most for the timeout).
+   *
+   * @return the executor of asynchronous requests.
+   */
+  public synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(maxPoolSize,
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "IndexConnectionPool request");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return executor;
+  }
+
+  /**
+   * Returns the maximal number of connections.
+   *
+   * @return the maximal number of connections.
+   */
+  public int getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  /**
+   * Returns the number of idle connections in the pool.
+   *
+   * @return the number of idle connections.
+   */
+  public synchronized int getNumOfIdleConnections() {
+    int num = 0;
+    for (Deque<IndexConnection> connections : idleConnections.values()) {
+      num += connections.size();
+    }
+    return num;
+  }
+
+  /**
+   * Creates the http request for the given url. The index expects the request
+   * line to end with " HTTP/1.1\r\n" and decodes only %-escaped utf-8 bytes,
+   * so only non-ascii characters are escaped.
+   *
+   * @param url
+   *          the url.
+   * @return the request.
+   */
+  protected byte[] createRequest(URL url) {
+    return createRequest(url, true);
+  }
+
+  /**
+   * Creates the http request for the given url (see createRequest(URL)).
+   *
+   * @param url
+   *          the url.
+   * @param keepAlive
+   *          true, to ask the index to keep the connection alive.
+   * @return the request.
+   */
+  protected byte[] createRequest(URL url, boolean keepAlive) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("GET ");
+    sb.append(url.getFile().isEmpty() ? "/" : url.getFile());
+    sb.append(" HTTP/1.1\r\n");
+    sb.append("Host: ").append(url.getHost()).append("\r\n");
+    sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close")
+        .append("\r\n");
+    sb.append("\r\n");
+
+    ByteArrayOutputStream request = new ByteArrayOutputStream(sb.length());
+    encode(sb, request);
+    return request.toByteArray();
+  }
+
+  /**
+   * Writes the given text to the given stream, where the non-ascii characters
+   * are escaped as %-encoded utf-8 bytes.
+   *
+   * @param text
+   *          the text to encode.
+   * @param out
+   *          the stream to write to.
+   */
+  protected static void encode(CharSequence text, ByteArrayOutputStream out) {
+    for (int i = 0; i < text.length();) {
+      // Encode the code point as a whole, such that surrogate pairs are
+      // encoded as a single character.
+      int codePoint = Character.codePointAt(text, i);
+      i += Character.charCount(codePoint);
+      if (codePoint < 128) {
+        out.write(codePoint);
+      } else {
+        byte[] bytes = new String(Character.toChars(codePoint)).getBytes(UTF8);
+        for (byte b : bytes) {
+          String hex = Integer.toHexString(b & 0xFF).toUpperCase();
+          out.write('%');
+          out.write(hex.length() < 2 ? '0' : hex.charAt(0));
+          out.write(hex.charAt(hex.length() - 1));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the given text in a request (see
+   * createRequest()).
+   *
+   * @param text
+   *          the text.
+   * @return the number of bytes of the encoded text.
+   */
+  public static int getEncodedLength(CharSequence text) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(text.length());
+    encode(text, out);
+    return out.size();
+  }
+
+  /**
+   * The body of a response. Gives the parser access to the bytes, without
+   * copying them.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  public static class ResponseStream extends ByteArrayInputStream {
+    /**
+     * The constructor.
+     *
+     * @param buf
+     *          the bytes of the response.
+     * @param offset
+     *          the offset of the response in the array.
+     * @param length
+     *          the length of the response.
+     */
+    public ResponseStream(byte[] buf, int offset, int length) {
+      super(buf, offset, length);
+    }
+
+    /**
+     * Returns the underlying array (must not be modified).
+     *
+     * @return the underlying array.
+     */
+    public byte[] getBuffer() {
+      return buf;
+    }
+
+    /**
+     * Returns the offset of the unread bytes in the array.
+     *
+     * @return the offset of the unread bytes.
+     */
+    public int getOffset() {
+      return pos;
+    }
+
+    /**
+     * Returns the end of the response in the array.
+     *
+     * @return the end of the response.
+     */
+    public int getEnd() {
+      return count;
+    }
+  }
+
+  /**
+   * The exception, that is thrown if a connection was closed by the index,
+   * before any byte of the response arrived. The request can be repeated on
+   * a new connection in this case.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class StaleConnectionException extends IOException {
+    /** The serial version uid. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The constructor.
+     *
+     * @param message
+     *          the message.
+     * @param cause
+     *          the cause (may be null).
+     */
+    protected StaleConnectionException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  /**
+   * A single connection to the index.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class IndexConnection {
+    /** The host of the index. */
+    protected final String host;
+    /** The port of the index. */
+    protected final int port;
+    /** The underlying socket. */
+    protected final Socket socket;
+    /** The stream to read the responses from. */
+    protected final InputStream in;
+    /** The stream to write the requests to. */
+    protected final OutputStream out;
+    /** The time, the connection was used the last time. */
+    protected long lastUsed;
+    /** The flag that indicates whether the connection can be reused. */
+    protected boolean reusable;
+
+    /**
+     * Opens a new connection to the given host and port.
+     *
+     * @param host
+     *          the host.
+     * @param port
+     *          the port.
+     * @param timeout
+     *          the connect and read timeout in ms.
+     * @throws IOException
+     *           if opening the connection fails.
+     */
+    protected IndexConnection(String host, int port, int timeout)
+      throws IOException {
+      this.host = host;
+      this.port = port;
+      this.socket = new Socket();
+      this.socket.setTcpNoDelay(true);
+      this.socket.setKeepAlive(true);
+      this.socket.connect(new InetSocketAddress(host, port), timeout);
+      this.socket.setSoTimeout(timeout);
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = socket.getOutputStream();
+    }
+
+    /**
+     * Sends the given request and returns the body of the response.
+     *
+     * @param request
+     *          the request.
+     * @return the body of the response.
+     * @throws StaleConnectionException
+     *           if the connection was closed, before the response arrived.
+     * @throws IOException
+     *           if sending the request or reading the response fails.
+     */
+    protected byte[] send(byte[] request) throws IOException {
+      try {
+        out.write(request);
+        out.flush();
+        // Wait for the first byte of the response, to find out whether the
+        // connection is still open.
+        in.mark(1);
+        if (in.read() < 0) {
+          throw new StaleConnectionException("Connection closed by the index.",
+              null);
+        }
+        in.reset();
+      } catch (SocketTimeoutException e) {
+        // The index may still process the request, so don't repeat it.
+        throw e;
+      } catch (StaleConnectionException e) {
+        throw e;
+      } catch (IOException e) {
+        throw new StaleConnectionException("Connection reset by the index.",
+            e);
+      }
+
+      // Read the status line and the headers.
+      String statusLine = readLine();
+      if (statusLine == null) {
+        throw new IOException("Connection closed by the index.");
+      }
+      int contentLength = -1;
+      boolean keepAlive = true;
+      String line;
+      while ((line = readLine()) != null && !line.isEmpty()) {
+        int pos = line.indexOf(':');
+        if (pos > -1) {
+          String name = line.substring(0, pos).trim();
+          String value = line.substring(pos + 1).trim();
+          if ("Content-Length".equalsIgnoreCase(name)) {
+            contentLength = Integer.parseInt(value);
+          } else if ("Connection".equalsIgnoreCase(name)) {
+            keepAlive = !"close".equalsIgnoreCase(value);
+          }
+        }
+      }
+
+      if (contentLength > -1) {
+        // Read the body directly into an array of the exact length.
+        byte[] body = new byte[contentLength];
+        int length = 0;
+        while (length < contentLength) {
+          int n = in.read(body, length, contentLength - length);
+          if (n < 0) {
+            throw new IOException("Unexpected end of response.");
+          }
+          length += n;
+        }
+        reusable = keepAlive;
+        return body;
+      }
+
+      // Without a content length, the response ends with the connection.
+      ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = in.read(buffer)) > -1) {
+        body.write(buffer, 0, n);
+      }
+      reusable = false;
+      return body.toByteArray();
+    }
+
+    /**
+     * Reads a single line of the header. Lines may end with "\n" or "\r\n".
+     *
+     * @return the line or null, if the end of the stream is reached.
+     * @throws IOException
+     *           if reading fails.
+     */
+    protected String readLine() throws IOException {
+      StringBuilder sb = new StringBuilder();
+      int b;
+      while ((b = in.read()) > -1) {
+        if (b == '\n') {
+          int length = sb.length();
+          if (length > 0 && sb.charAt(length - 1) == '\r') {
+            sb.setLength(length - 1);
+          }
+          return sb.toString();
+        }
+        sb.append((char) b);
+      }
+      return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    /**
+     * Returns true, if the connection can be reused for further requests.
+     *
+     * @return true, if the connection can be reused.
+     */
+    protected boolean isReusable() {
+      return reusable && !socket.isClosed();
+    }
+
+    /**
+     * Closes the connection.
+     */
+    protected void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Nothing to do.
+      }
+    }
+  }
+}
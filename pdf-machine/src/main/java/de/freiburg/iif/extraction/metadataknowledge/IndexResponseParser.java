@@ -0,0 +1,582 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringEscapeUtils;
+
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeField;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
+import de.freiburg.iif.model.DblpRecord;
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * Parses the xml responses of the inverted index in a single pass over the
+ * bytes of the response. The attributes are decoded directly into the fields
+ * of the records, without creating intermediate strings for lines or
+ * substrings, and character entities are only resolved, if a value contains
+ * an '&amp;'.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class IndexResponseParser {
+  /** The charset of values with non-ascii characters. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+  /** The charset of values with ascii characters only. */
+  protected static final Charset ASCII = Charset.forName("ISO-8859-1");
+  /** The start of a record element. */
+  protected static final byte[] RECORD = bytes("<record");
+  /** The start of a result element. */
+  protected static final byte[] RESULT = bytes("<result");
+  /** The start of a term element. */
+  protected static final byte[] TERM = bytes("<term");
+  /** The attribute of the score. */
+  protected static final byte[] SCORE = bytes("score");
+  /** The attribute of the key. */
+  protected static final byte[] KEY = bytes("key");
+  /** The attribute of the title. */
+  protected static final byte[] TITLE = bytes("title");
+  /** The attribute of the authors. */
+  protected static final byte[] AUTHORS = bytes("authors");
+  /** The attribute of the year. */
+  protected static final byte[] YEAR = bytes("year");
+  /** The attribute of the journal. */
+  protected static final byte[] JOURNAL = bytes("journal");
+  /** The attribute of the pages. */
+  protected static final byte[] PAGES = bytes("pages");
+  /** The attribute of the url. */
+  protected static final byte[] URL = bytes("url");
+  /** The attribute of the ee. */
+  protected static final byte[] EE = bytes("ee");
+  /** The attribute of the number of hits. */
+  protected static final byte[] HITS = bytes("hits");
+  /** The attribute of the number of title hits. */
+  protected static final byte[] NUM_TITLE_HITS = bytes("nt");
+  /** The attribute of the number of author hits. */
+  protected static final byte[] NUM_AUTHOR_HITS = bytes("na");
+
+  /**
+   * Parses the records of the given response.
+   *
+   * @param is
+   *          the response of the index.
+   * @param maxNumOfRecords
+   *          the number of records, after which the parsing is stopped.
+   * @return the records (at most maxNumOfRecords).
+   * @throws IOException
+   *           if reading the response fails.
+   */
+  public static List<HasMetadata> parseRecords(InputStream is,
+    int maxNumOfRecords) throws IOException {
+    return parseRecords(is, maxNumOfRecords, null);
+  }
+
+  /**
+   * Parses the given fields of the records of the given response. All other
+   * attributes are skipped without decoding them.
+   *
+   * @param is
+   *          the response of the index.
+   * @param maxNumOfRecords
+   *          the number of records, after which the parsing is stopped.
+   * @param fields
+   *          the fields to parse or null, to parse all fields.
+   * @return the records (at most maxNumOfRecords).
+   * @throws IOException
+   *           if reading the response fails.
+   */
+  public static List<HasMetadata> parseRecords(InputStream is,
+    int maxNumOfRecords, Set<MetadataKnowledgeField> fields)
+    throws IOException {
+    Response response = Response.of(is);
+    return parseRecords(response.buf, response.off, response.end,
+        maxNumOfRecords, fields);
+  }
+
+  /**
+   * Parses the records of the given response.
+   *
+   * @param buf
+   *          the bytes of the response.
+   * @param off
+   *          the offset of the response in the array.
+   * @param end
+   *          the end of the response in the array (exclusive).
+   * @param maxNumOfRecords
+   *          the number of records, after which the parsing is stopped.
+   * @return the records (at most maxNumOfRecords).
+   */
+  public static List<HasMetadata> parseRecords(byte[] buf, int off, int end,
+    int maxNumOfRecords) {
+    return parseRecords(buf, off, end, maxNumOfRecords, null);
+  }
+
+  /**
+   * Parses the given fields of the records of the given response.
+   *
+   * @param buf
+   *          the bytes of the response.
+   * @param off
+   *          the offset of the response in the array.
+   * @param end
+   *          the end of the response in the array (exclusive).
+   * @param maxNumOfRecords
+   *          the number of records, after which the parsing is stopped.
+   * @param fields
+   *          the fields to parse or null, to parse all fields.
+   * @return the records (at most maxNumOfRecords).
+   */
+  public static List<HasMetadata> parseRecords(byte[] buf, int off, int end,
+    int maxNumOfRecords, Set<MetadataKnowledgeField> fields) {
+    // The attributes of fields, that aren't requested, are skipped.
+    boolean parseKey = isRequested(fields, MetadataKnowledgeField.KEY);
+    boolean parseTitle = isRequested(fields, MetadataKnowledgeField.TITLE);
+    boolean parseAuthors = isRequested(fields, MetadataKnowledgeField.AUTHORS);
+    boolean parseYear = isRequested(fields, MetadataKnowledgeField.YEAR);
+    boolean parseJournal = isRequested(fields, MetadataKnowledgeField.JOURNAL);
+    boolean parsePages = isRequested(fields, MetadataKnowledgeField.PAGES);
+    boolean parseUrl = isRequested(fields, MetadataKnowledgeField.URL);
+    boolean parseEe = isRequested(fields, MetadataKnowledgeField.EE);
+    List<HasMetadata> records = new ArrayList<HasMetadata>();
+    int[] attr = new int[4];
+    int pos = off;
+    while (records.size() < maxNumOfRecords
+        && (pos = indexOf(buf, pos, end, RECORD)) > -1) {
+      pos += RECORD.length;
+      DblpRecord record = new DblpRecord();
+      record.setYear(-1);
+
+      // Parse the attributes up to the end of the element.
+      while ((pos = nextAttribute(buf, pos, end, attr)) > -1) {
+        int nameStart = attr[0];
+        int nameEnd = attr[1];
+        int valueStart = attr[2];
+        int valueEnd = attr[3];
+        if (equals(buf, nameStart, nameEnd, SCORE)) {
+          record.setScore(parseDouble(buf, valueStart, valueEnd));
+        } else if (parseKey && equals(buf, nameStart, nameEnd, KEY)) {
+          record.setKey(decode(buf, valueStart, valueEnd));
+        } else if (parseTitle && equals(buf, nameStart, nameEnd, TITLE)) {
+          record.setTitle(decode(buf, valueStart, valueEnd));
+        } else if (parseAuthors && equals(buf, nameStart, nameEnd, AUTHORS)) {
+          record.setAuthors(parseAuthors(buf, valueStart, valueEnd));
+        } else if (parseYear && equals(buf, nameStart, nameEnd, YEAR)) {
+          record.setYear(parseInt(buf, valueStart, valueEnd));
+        } else if (parseJournal && equals(buf, nameStart, nameEnd, JOURNAL)) {
+          record.setJournal(decode(buf, valueStart, valueEnd));
+        } else if (parsePages && equals(buf, nameStart, nameEnd, PAGES)) {
+          parsePages(buf, valueStart, valueEnd, record);
+        } else if (parseUrl && equals(buf, nameStart, nameEnd, URL)) {
+          record.setUrl(decode(buf, valueStart, valueEnd));
+        } else if (parseEe && equals(buf, nameStart, nameEnd, EE)) {
+          record.setEe(decode(buf, valueStart, valueEnd));
+        }
+      }
+      pos = -pos - 1;
+      records.add(record);
+    }
+    return records;
+  }
+
+  /**
+   * Parses the number of hits of the given response.
+   *
+   * @param is
+   *          the response of the index.
+   * @return the number of hits.
+   * @throws IOException
+   *           if reading the response fails.
+   */
+  public static int parseNumOfHits(InputStream is) throws IOException {
+    Response response = Response.of(is);
+    byte[] buf = response.buf;
+    int pos = indexOf(buf, response.off, response.end, RESULT);
+    if (pos < 0) {
+      return 0;
+    }
+    pos += RESULT.length;
+    int[] attr = new int[4];
+    while ((pos = nextAttribute(buf, pos, response.end, attr)) > -1) {
+      if (equals(buf, attr[0], attr[1], HITS)) {
+        return Math.max(0, parseInt(buf, attr[2], attr[3]));
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Parses the response of a batched num-of-hits query. The response contains
+   * one term-element per queried word, in the order of the query.
+   *
+   * @param is
+   *          the response of the index.
+   * @return the number of hits per queried word.
+   * @throws IOException
+   *           if reading the response fails.
+   */
+  public static List<NumOfHits> parseBatchedNumOfHits(InputStream is)
+    throws IOException {
+    Response response = Response.of(is);
+    byte[] buf = response.buf;
+    List<NumOfHits> list = new ArrayList<NumOfHits>();
+    int pos = response.off;
+    int[] attr = new int[4];
+    while ((pos = indexOf(buf, pos, response.end, TERM)) > -1) {
+      pos += TERM.length;
+      int numOfTitleHits = 0;
+      int numOfAuthorHits = 0;
+      while ((pos = nextAttribute(buf, pos, response.end, attr)) > -1) {
+        if (equals(buf, attr[0], attr[1], NUM_TITLE_HITS)) {
+          numOfTitleHits = Math.max(0, parseInt(buf, attr[2], attr[3]));
+        } else if (equals(buf, attr[0], attr[1], NUM_AUTHOR_HITS)) {
+          numOfAuthorHits = Math.max(0, parseInt(buf, attr[2], attr[3]));
+        }
+      }
+      pos = -pos - 1;
+      list.add(new NumOfHits(numOfTitleHits, numOfAuthorHits));
+    }
+    return list;
+  }
+
+  /**
+   * Returns true, if the given field is contained in the given fields.
+   *
+   * @param fields
+   *          the requested fields or null, if all fields are requested.
+   * @param field
+   *          the field to check.
+   * @return true, if the given field is requested.
+   */
+  protected static boolean isRequested(Set<MetadataKnowledgeField> fields,
+    MetadataKnowledgeField field) {
+    return fields == null || fields.contains(field);
+  }
+
+  /**
+   * Finds the next attribute of the current element. Fills the given array
+   * with the start and end of the name and the start and end of the value of
+   * the attribute.
+   *
+   * @param buf
+   *          the bytes of the response.
+   * @param pos
+   *          the position to start from.
+   * @param end
+   *          the end of the response.
+   * @param attr
+   *          the array to fill.
+   * @return the position behind the attribute or, if there are no further
+   *         attributes, (-p - 1) with p the position behind the element.
+   */
+  protected static int nextAttribute(byte[] buf, int pos, int end, int[] attr) {
+    while (pos < end) {
+      byte b = buf[pos];
+      if (b == '>') {
+        return -(pos + 1) - 1;
+      }
+      if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '/') {
+        pos++;
+        continue;
+      }
+      // The name of the attribute.
+      attr[0] = pos;
+      while (pos < end && buf[pos] != '=' && buf[pos] != '>') {
+        pos++;
+      }
+      attr[1] = pos;
+      if (pos >= end || buf[pos] == '>') {
+        continue;
+      }
+      // The value of the attribute.
+      while (pos < end && buf[pos] != '"') {
+        pos++;
+      }
+      attr[2] = ++pos;
+      while (pos < end && buf[pos] != '"') {
+        pos++;
+      }
+      attr[3] = Math.min(pos, end);
+      return pos + 1;
+    }
+    return -end - 1;
+  }
+
+  /**
+   * Returns the position of the first occurrence of the given pattern.
+   *
+   * @param buf
+   *          the bytes to search.
+   * @param from
+   *          the position to start from.
+   * @param end
+   *          the end of the range to search.
+   * @param pattern
+   *          the pattern.
+   * @return the position of the pattern or -1 if there is no such pattern.
+   */
+  protected static int indexOf(byte[] buf, int from, int end, byte[] pattern) {
+    byte first = pattern[0];
+    int max = end - pattern.length;
+    for (int i = from; i <= max; i++) {
+      if (buf[i] != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < pattern.length && buf[i + j] == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true, if the given range equals the given name.
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @param name
+   *          the name.
+   * @return true, if the given range equals the given name.
+   */
+  protected static boolean equals(byte[] buf, int start, int end, byte[] name) {
+    if (end - start != name.length) {
+      return false;
+    }
+    for (int i = 0; i < name.length; i++) {
+      if (buf[start + i] != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the given range into a string. Resolves the character entities,
+   * if the range contains an '&amp;'.
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @return the decoded string.
+   */
+  protected static String decode(byte[] buf, int start, int end) {
+    boolean isAscii = true;
+    boolean hasEntities = false;
+    for (int i = start; i < end; i++) {
+      byte b = buf[i];
+      if (b < 0) {
+        isAscii = false;
+      } else if (b == '&') {
+        hasEntities = true;
+      }
+    }
+    String s = new String(buf, start, end - start, isAscii ? ASCII : UTF8);
+    if (hasEntities) {
+      // Values can contain HTML character entities (like "&aacute;").
+      s = StringEscapeUtils.unescapeXml(StringEscapeUtils.unescapeHtml4(s));
+    }
+    return s;
+  }
+
+  /**
+   * Parses the authors of the given range. The individual authors are
+   * separated by "$". Trailing empty authors are ignored (as by String.split).
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @return the authors.
+   */
+  protected static List<String> parseAuthors(byte[] buf, int start, int end) {
+    List<String> authors = new ArrayList<String>();
+    if (start == end) {
+      authors.add("");
+      return authors;
+    }
+    int numOfEmptyAuthors = 0;
+    int authorStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buf[i] == '$') {
+        if (i == authorStart) {
+          numOfEmptyAuthors++;
+        } else {
+          for (; numOfEmptyAuthors > 0; numOfEmptyAuthors--) {
+            authors.add("");
+          }
+          authors.add(decode(buf, authorStart, i));
+        }
+        authorStart = i + 1;
+      }
+    }
+    return authors;
+  }
+
+  /**
+   * Parses the pages of the given range (like "42-68") into the start page
+   * and the end page of the given record.
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @param record
+   *          the record to fill.
+   */
+  protected static void parsePages(byte[] buf, int start, int end,
+    DblpRecord record) {
+    int dash = start;
+    while (dash < end && buf[dash] != '-') {
+      dash++;
+    }
+    int endPageEnd = dash + 1;
+    while (endPageEnd < end && buf[endPageEnd] != '-') {
+      endPageEnd++;
+    }
+    // As String.split("-"): there must be something behind the first dash.
+    boolean hasEndFragment = false;
+    for (int i = dash + 1; i < end; i++) {
+      if (buf[i] != '-') {
+        hasEndFragment = true;
+        break;
+      }
+    }
+    if (!hasEndFragment) {
+      record.setStartPage(-1);
+      record.setEndPage(-1);
+      return;
+    }
+    record.setStartPage(parseInt(buf, start, dash));
+    record.setEndPage(parseInt(buf, dash + 1, Math.min(endPageEnd, end)));
+  }
+
+  /**
+   * Parses the given range as int.
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @return the int or -1 if the range isn't a non-negative int.
+   */
+  protected static int parseInt(byte[] buf, int start, int end) {
+    if (start >= end || end - start > 9) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = 10 * value + digit;
+    }
+    return value;
+  }
+
+  /**
+   * Parses the given range as double.
+   *
+   * @param buf
+   *          the bytes.
+   * @param start
+   *          the start of the range.
+   * @param end
+   *          the end of the range.
+   * @return the double.
+   */
+  protected static double parseDouble(byte[] buf, int start, int end) {
+    long value = 0;
+    long divisor = 1;
+    boolean isFraction = false;
+    for (int i = start; i < end; i++) {
+      byte b = buf[i];
+      if (b == '.' && !isFraction) {
+        isFraction = true;
+      } else if (b >= '0' && b <= '9' && divisor < 1000000000L) {
+        value = 10 * value + (b - '0');
+        if (isFraction) {
+          divisor *= 10;
+        }
+      } else {
+        // Exponents, signs and long fractions are left to the jdk.
+        return Double.parseDouble(new String(buf, start, end - start, ASCII));
+      }
+    }
+    return (double) value / divisor;
+  }
+
+  /**
+   * Returns the ascii bytes of the given string.
+   *
+   * @param s
+   *          the string.
+   * @return the bytes of the string.
+   */
+  protected static byte[] bytes(String s) {
+    return s.getBytes(ASCII);
+  }
+
+  /**
+   * The bytes of a response.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Response {
+    /** The bytes. */
+    protected byte[] buf;
+    /** The offset of the response in the bytes. */
+    protected int off;
+    /** The end of the response in the bytes. */
+    protected int end;
+
+    /**
+     * Returns the bytes of the given response. Reuses the buffer of the
+     * responses of the connection pool.
+     *
+     * @param is
+     *          the response.
+     * @return the bytes of the response.
+     * @throws IOException
+     *           if reading the response fails.
+     */
+    protected static Response of(InputStream is) throws IOException {
+      Response response = new Response();
+      if (is instanceof IndexConnectionPool.ResponseStream) {
+        IndexConnectionPool.ResponseStream rs =
+            (IndexConnectionPool.ResponseStream) is;
+        response.buf = rs.getBuffer();
+        response.off = rs.getOffset();
+        response.end = rs.getEnd();
+      } else {
+        response.buf = is != null ? IOUtils.toByteArray(is) : new byte[0];
+        response.off = 0;
+        response.end = response.buf.length;
+      }
+      return response;
+    }
+  }
+}
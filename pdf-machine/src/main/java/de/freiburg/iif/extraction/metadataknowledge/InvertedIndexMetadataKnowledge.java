@@ -1,18 +1,19 @@
 package de.freiburg.iif.extraction.metadataknowledge;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
-import org.apache.commons.lang3.StringEscapeUtils;
-
-import de.freiburg.iif.model.DblpRecord;
 import de.freiburg.iif.model.HasMetadata;
 
 /**
@@ -22,15 +23,79 @@ import de.freiburg.iif.model.HasMetadata;
  * @author Claudius Korzen
  * 
  */
-public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
+public class InvertedIndexMetadataKnowledge implements
+    AsyncMetadataKnowledge {
   // TODO: Move the properties to an properties-file.
   /** The hostname of socket of inverted index */
   protected static final String host =
       "http://stromboli.informatik.uni-freiburg.de";
   /** The port of socket of inverted index. */
   protected static final int port = 6200;
+  /**
+   * The separator of the individual words in a batched num-of-hits query. The
+   * character is a special char for the index, so it never occurs in a word.
+   */
+  protected static final String BATCH_SEPARATOR = "$";
+  /**
+   * The maximal length in bytes of the request of a batched num-of-hits query
+   * (including the request line and the headers). The socket of the index
+   * reads a request with a single read of 1024 bytes, so larger batches are
+   * split into several requests.
+   */
+  protected static final int MAX_REQUEST_LENGTH = 1024;
+  /** The connection pool, shared by all instances by default. */
+  protected static IndexConnectionPool sharedConnectionPool;
   /** The flag that indicates whether the verbose mode is enabled. */
   protected boolean verbose;
+  /** The pool of keep-alive connections to the index. */
+  protected IndexConnectionPool connectionPool;
+
+  /**
+   * Creates a new InvertedIndexMetadataKnowledge, that uses the shared
+   * connection pool.
+   */
+  public InvertedIndexMetadataKnowledge() {
+    this(getSharedConnectionPool());
+  }
+
+  /**
+   * Creates a new InvertedIndexMetadataKnowledge, that uses the given
+   * connection pool.
+   * 
+   * @param connectionPool
+   *          the pool of connections to the index.
+   */
+  public InvertedIndexMetadataKnowledge(IndexConnectionPool connectionPool) {
+    this.connectionPool = connectionPool;
+  }
+
+  /**
+   * Returns the connection pool, that is shared by all instances created with
+   * the default constructor.
+   * 
+   * @return the shared connection pool.
+   */
+  public static synchronized IndexConnectionPool getSharedConnectionPool() {
+    if (sharedConnectionPool == null) {
+      sharedConnectionPool = new IndexConnectionPool();
+    }
+    return sharedConnectionPool;
+  }
+
+  /**
+   * Replaces the shared connection pool (e.g. to configure the pool size or
+   * the timeouts). Closes the idle connections of the previous pool.
+   * 
+   * @param connectionPool
+   *          the new shared connection pool.
+   */
+  public static synchronized void setSharedConnectionPool(
+    IndexConnectionPool connectionPool) {
+    if (sharedConnectionPool != null && sharedConnectionPool != connectionPool) {
+      sharedConnectionPool.close();
+    }
+    sharedConnectionPool = connectionPool;
+  }
 
   @Override
   public List<HasMetadata> query(MetadataKnowledgeQueryType type,
@@ -47,7 +112,10 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
   public List<HasMetadata> query(MetadataKnowledgeQuery query,
     int minWaitInterval) throws IOException {
     InputStream is = queryIndex(query);
-    List<HasMetadata> response = parseIndexResponse(is);
+    // The index may ignore the limit and the fields, so apply them again.
+    int limit = query.getLimit() > 0 ? query.getLimit() : Integer.MAX_VALUE;
+    List<HasMetadata> response =
+        IndexResponseParser.parseRecords(is, limit, query.getFields());
     // Don't forget to close the stream.
     is.close();
     return response;
@@ -74,6 +142,132 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
     return numOfHits;
   }
 
+  @Override
+  public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+    int minWaitInterval) throws IOException {
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    if (words != null) {
+      // Remove duplicates and empty words, but keep the order.
+      Set<String> uniqueWords = new LinkedHashSet<String>();
+      for (String word : words) {
+        if (word == null) {
+          continue;
+        }
+        if (word.trim().isEmpty() || word.contains(BATCH_SEPARATOR)) {
+          result.put(word, new NumOfHits(0, 0));
+        } else {
+          uniqueWords.add(word);
+        }
+      }
+
+      // Size the batches by their encoded requests: the non-ascii characters
+      // are %-escaped as utf-8 bytes, so they take up to 12 bytes.
+      List<String> batch = new ArrayList<String>();
+      int emptyRequestLength =
+          connectionPool.createRequest(createBatchUrl(batch)).length;
+      int requestLength = emptyRequestLength;
+      for (String word : uniqueWords) {
+        int wordLength = IndexConnectionPool.getEncodedLength(word)
+            + (batch.isEmpty() ? 0 : BATCH_SEPARATOR.length());
+        if (!batch.isEmpty()
+            && requestLength + wordLength > MAX_REQUEST_LENGTH) {
+          queryNumOfHits(batch, result);
+          batch.clear();
+          requestLength = emptyRequestLength;
+          wordLength = IndexConnectionPool.getEncodedLength(word);
+        }
+        batch.add(word);
+        requestLength += wordLength;
+      }
+      if (!batch.isEmpty()) {
+        queryNumOfHits(batch, result);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Future<List<HasMetadata>> queryAsync(
+    final MetadataKnowledgeQueryType type, final String value,
+    final int minWaitInterval) {
+    return connectionPool.getExecutor().submit(
+        new Callable<List<HasMetadata>>() {
+          @Override
+          public List<HasMetadata> call() throws IOException {
+            return query(type, value, minWaitInterval);
+          }
+        });
+  }
+
+  @Override
+  public Future<List<HasMetadata>> queryAsync(
+    final MetadataKnowledgeQuery query, final int minWaitInterval) {
+    return connectionPool.getExecutor().submit(
+        new Callable<List<HasMetadata>>() {
+          @Override
+          public List<HasMetadata> call() throws IOException {
+            return query(query, minWaitInterval);
+          }
+        });
+  }
+
+  @Override
+  public Future<Map<String, NumOfHits>> getNumOfHitsAsync(
+    final Collection<String> words, final int minWaitInterval) {
+    return connectionPool.getExecutor().submit(
+        new Callable<Map<String, NumOfHits>>() {
+          @Override
+          public Map<String, NumOfHits> call() throws IOException {
+            return getNumOfHits(words, minWaitInterval);
+          }
+        });
+  }
+
+  /**
+   * Resolves the number of hits for the given words with a single request to
+   * the index and puts them into the given map.
+   * 
+   * @param words
+   *          the words to resolve.
+   * @param result
+   *          the map to fill.
+   * @throws IOException
+   *           if querying the index fails.
+   */
+  protected void queryNumOfHits(List<String> words,
+    Map<String, NumOfHits> result) throws IOException {
+    InputStream is = queryIndex(createBatchUrl(words));
+    List<NumOfHits> numOfHits = parseBatchedNumOfHits(is);
+    // Don't forget to close the stream.
+    is.close();
+
+    for (int i = 0; i < words.size(); i++) {
+      NumOfHits hits = i < numOfHits.size() ? numOfHits.get(i) : null;
+      result.put(words.get(i), hits != null ? hits : new NumOfHits(0, 0));
+    }
+  }
+
+  /**
+   * Creates the url of a batched num-of-hits query for the given words.
+   * 
+   * @param words
+   *          the words to resolve.
+   * @return the url.
+   * @throws IOException
+   *           if the url is malformed.
+   */
+  protected URL createBatchUrl(List<String> words) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < words.size(); i++) {
+      if (i > 0) {
+        sb.append(BATCH_SEPARATOR);
+      }
+      sb.append(words.get(i));
+    }
+    return new URL(host + ":" + port + "/?"
+        + MetadataKnowledgeQueryType.NUMOFHITS_BATCH.paramKey + "=" + sb);
+  }
+
   /**
    * Queries the inverted index with the given paramKey and the given
    * paramValue.
@@ -101,7 +295,8 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
    */
   protected InputStream queryIndex(URL url) throws IOException {
     if (url != null) {
-      InputStream is = url.openStream();
+      // Reuse a warm connection from the pool instead of opening a new one.
+      InputStream is = connectionPool.execute(url);
       return is;
     }
     return null;
@@ -131,6 +326,26 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
         isFirstParam = false;
       }
 
+      if (query.getLimit() > 0) {
+        sb.append(isFirstParam ? "" : "&");
+        sb.append(MetadataKnowledgeQueryType.LIMIT.paramKey);
+        sb.append("=");
+        sb.append(query.getLimit());
+        isFirstParam = false;
+      }
+
+      if (query.getFields() != null) {
+        sb.append(isFirstParam ? "" : "&");
+        sb.append(MetadataKnowledgeQueryType.FIELDS.paramKey);
+        sb.append("=");
+        boolean isFirstField = true;
+        for (MetadataKnowledgeField field : query.getFields()) {
+          sb.append(isFirstField ? "" : ",");
+          sb.append(field.attribute);
+          isFirstField = false;
+        }
+      }
+
       return new URL(host + ":" + port + "/?" + sb.toString());
     }
     return null;
@@ -147,118 +362,24 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
    */
   protected List<HasMetadata> parseIndexResponse(InputStream is)
     throws IOException {
-    List<HasMetadata> list = new ArrayList<HasMetadata>();
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-      String line;
-      // Parse the response line by line.
-      while ((line = br.readLine()) != null) {
-        int pos1 = line.indexOf("<record");
-        int pos2;
-  
-        if (pos1 > -1) {
-          // Extract the score of the record.
-          pos1 = line.indexOf("score=\"", pos1) + 7;
-          pos2 = line.indexOf("\"", pos1);
-          double score = Double.parseDouble(line.substring(pos1, pos2));
-  
-          // Extract the key of the record.
-          pos1 = line.indexOf("key=\"", pos2) + 5;
-          pos2 = line.indexOf("\"", pos1);
-          String key = line.substring(pos1, pos2);
-  
-          // Extract the title of the record.
-          pos1 = line.indexOf("title=\"", pos2) + 7;
-          pos2 = line.indexOf("\"", pos1);
-          // Title can contain HTML character entities (like "&aacute;). Unescape
-          // them.
-          String title = line.substring(pos1, pos2);
-          title = StringEscapeUtils.unescapeHtml4(title);
-          title = StringEscapeUtils.unescapeXml(title);
-  
-          // Extract the authors of the record. The individual authors are
-          // seperated by "$".
-          pos1 = line.indexOf("authors=\"", pos2) + 9;
-          pos2 = line.indexOf("\"", pos1);
-          // Authors can contain HTML character entities (like "&aacute;).
-          // Unescape them.
-          String authorsValue = line.substring(pos1, pos2);
-          authorsValue = StringEscapeUtils.unescapeHtml4(authorsValue);
-          authorsValue = StringEscapeUtils.unescapeXml(authorsValue);
-          String[] authorArr = authorsValue.split("\\$");
-          List<String> authors = new ArrayList<String>(Arrays.asList(authorArr));
-  
-          // Extract the year of the record.
-          pos1 = line.indexOf("year=\"", pos2) + 6;
-          pos2 = line.indexOf("\"", pos1);
-          String yearStr = line.substring(pos1, pos2);
-          int year = -1;
-          if (!yearStr.trim().isEmpty()) {
-            year = Integer.parseInt(yearStr);
-          }
-  
-          // Extract the journal of the record.
-          pos1 = line.indexOf("journal=\"", pos2) + 9;
-          pos2 = line.indexOf("\"", pos1);
-          String journal = line.substring(pos1, pos2);
-          journal = StringEscapeUtils.unescapeHtml4(journal);
-          journal = StringEscapeUtils.unescapeXml(journal);
-  
-          // Extract the journal of the record.
-          pos1 = line.indexOf("pages=\"", pos2) + 7;
-          pos2 = line.indexOf("\"", pos1);
-          String pages = line.substring(pos1, pos2);
-          int startPage = -1;
-          int endPage = -1;
-          if (!pages.isEmpty()) {
-            String[] fragments = pages.split("-");
-            if (fragments.length >= 2) {
-              if (!fragments[0].isEmpty()) {
-                try {
-                  startPage = Integer.parseInt(fragments[0]);
-                } catch (Exception e) {
-                  // TODO: Something to do?
-                }
-              }
-  
-              if (!fragments[1].isEmpty()) {
-                try {
-                  endPage = Integer.parseInt(fragments[1]);
-                } catch (Exception e) {
-                  // TODO: Something to do?
-                }
-              }
-            }
-          }
-  
-          // Extract the journal of the record.
-          pos1 = line.indexOf("url=\"", pos2) + 5;
-          pos2 = line.indexOf("\"", pos1);
-          String url = line.substring(pos1, pos2);
-          
-          // Extract the journal of the record.
-          pos1 = line.indexOf("ee=\"", pos2) + 4;
-          pos2 = line.indexOf("\"", pos1);
-          String ee = line.substring(pos1, pos2);
-                  
-          // Create a new record.
-          DblpRecord record = new DblpRecord();
-          record.setScore(score);
-          record.setKey(key);
-          record.setTitle(title);
-          record.setAuthors(authors);
-          record.setYear(year);
-          record.setJournal(journal);
-          record.setStartPage(startPage);
-          record.setEndPage(endPage);
-          record.setEe(ee);
-          record.setUrl(url);
-          
-          list.add(record);
-        }
-      }
-    }
+    return parseIndexResponse(is, Integer.MAX_VALUE);
+  }
 
-    return list;
+  /**
+   * Parses the first records of the response from the index. As the records
+   * are sorted by their scores, these are the best records.
+   * 
+   * @param is
+   *          the response from the index.
+   * @param maxNumOfRecords
+   *          the number of records, after which the parsing is stopped.
+   * @return list of records, that are included in the response.
+   * @throws IOException
+   *           if the parsing of the response fails.
+   */
+  protected List<HasMetadata> parseIndexResponse(InputStream is,
+    int maxNumOfRecords) throws IOException {
+    return IndexResponseParser.parseRecords(is, maxNumOfRecords);
   }
 
   /**
@@ -271,24 +392,22 @@ public class InvertedIndexMetadataKnowledge implements MetadataKnowledge {
    *           if the parsing of the response fails.
    */
   private int parseNumOfHits(InputStream is) throws IOException {
-    try (BufferedReader br = new BufferedReader(new InputStreamReader(is))) {
-      int numOfHits = 0;
-      String line;
-      // Parse the response line by line.
-      while ((line = br.readLine()) != null) {
-        int pos1 = line.indexOf("<result");
-        int pos2;
-  
-        if (pos1 > -1) {
-          pos1 = line.indexOf("hits=\"") + 6;
-          pos2 = line.indexOf("\"", pos1);
-  
-          numOfHits = Integer.parseInt(line.substring(pos1, pos2));
-          break;
-        }
-      }
-      return numOfHits;
-    }
+    return IndexResponseParser.parseNumOfHits(is);
+  }
+
+  /**
+   * Parses the response of a batched num-of-hits query. The response contains
+   * one term-element per queried word, in the order of the query.
+   * 
+   * @param is
+   *          the response from the index.
+   * @return the number of hits per queried word.
+   * @throws IOException
+   *           if the parsing of the response fails.
+   */
+  private List<NumOfHits> parseBatchedNumOfHits(InputStream is)
+    throws IOException {
+    return IndexResponseParser.parseBatchedNumOfHits(is);
   }
 
   /**
@@ -0,0 +1,188 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.freiburg.iif.extraction.metadataknowledge.index.DblpXmlReader;
+import de.freiburg.iif.extraction.metadataknowledge.index.InMemoryIndex;
+import de.freiburg.iif.extraction.metadataknowledge.index.Index;
+import de.freiburg.iif.extraction.metadataknowledge.index.IndexRecord;
+import de.freiburg.iif.extraction.metadataknowledge.index.IndexSearcher;
+import de.freiburg.iif.extraction.metadataknowledge.index.MappedIndex;
+import de.freiburg.iif.extraction.metadataknowledge.index.SegmentedIndex;
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * A MetadataKnowledge, that answers the queries with an inverted index inside
+ * of the JVM, instead of sending them to the socket of the C++ index. The
+ * queries are answered with the same semantics as by the C++ index.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class LocalIndexMetadataKnowledge implements MetadataKnowledge {
+  /** The index. */
+  protected Index index;
+  /** The searcher on the index. */
+  protected IndexSearcher searcher;
+
+  /**
+   * Creates a new LocalIndexMetadataKnowledge on the given index.
+   * 
+   * @param index
+   *          the index.
+   */
+  public LocalIndexMetadataKnowledge(Index index) {
+    this.index = index;
+    this.searcher = new IndexSearcher(index);
+  }
+
+  /**
+   * Creates a new LocalIndexMetadataKnowledge on the given file. If the file
+   * is a directory, it is opened as SegmentedIndex. If the file is an index
+   * file (written by MappedIndexWriter), it is mapped into memory. Otherwise,
+   * the file is expected to be a dblp.xml, from which an index is built in the
+   * heap.
+   * 
+   * @param file
+   *          the index directory, the index file or the dblp.xml file.
+   * @throws IOException
+   *           if reading the file fails.
+   */
+  public LocalIndexMetadataKnowledge(File file) throws IOException {
+    this(openIndex(file));
+  }
+
+  /**
+   * Opens the given index directory or index file or builds an index from
+   * the given dblp.xml file.
+   * 
+   * @param file
+   *          the index directory, the index file or the dblp.xml file.
+   * @return the index.
+   * @throws IOException
+   *           if reading the file fails.
+   */
+  public static Index openIndex(File file) throws IOException {
+    if (file.isDirectory()) {
+      return new SegmentedIndex(file);
+    }
+    if (MappedIndex.isIndexFile(file)) {
+      return new MappedIndex(file);
+    }
+    return buildIndex(new FileInputStream(file));
+  }
+
+  /**
+   * Builds an index from the given dblp.xml stream. Closes the stream.
+   * 
+   * @param dblpXml
+   *          the stream of the dblp.xml.
+   * @return the index.
+   * @throws IOException
+   *           if reading the stream fails.
+   */
+  public static InMemoryIndex buildIndex(InputStream dblpXml)
+    throws IOException {
+    InMemoryIndex index = new InMemoryIndex();
+    try (DblpXmlReader reader = new DblpXmlReader(dblpXml)) {
+      IndexRecord record;
+      while ((record = reader.next()) != null) {
+        index.add(record);
+      }
+    }
+    return index;
+  }
+
+  @Override
+  public List<HasMetadata> query(MetadataKnowledgeQueryType type,
+    String value, int minWaitInterval) throws IOException {
+    return searcher.search(Collections.singletonList(createParam(type, value)));
+  }
+
+  @Override
+  public List<HasMetadata> query(MetadataKnowledgeQuery query,
+    int minWaitInterval) throws IOException {
+    // The records are read from the index anyway, so the fields of the
+    // query aren't considered.
+    return searcher.search(query.getParams(), query.getLimit());
+  }
+
+  @Override
+  public int getNumOfHits(MetadataKnowledgeQueryType type, String value,
+    int minWaitInterval) throws IOException {
+    switch (type) {
+    case NUMOFHITS_TITLE:
+    case NUMOFHITS_AUTHORS:
+      return searcher.getNumOfRecords(type, value);
+    default:
+      // As the C++ index: the number of returned records.
+      return query(type, value, minWaitInterval).size();
+    }
+  }
+
+  @Override
+  public int getNumOfHits(MetadataKnowledgeQuery query, int minWaitInterval)
+    throws IOException {
+    for (Entry<MetadataKnowledgeQueryType, String> param : query.getParams()) {
+      switch (param.getKey()) {
+      case NUMOFHITS_TITLE:
+      case NUMOFHITS_AUTHORS:
+        return searcher.getNumOfRecords(param.getKey(), param.getValue());
+      default:
+        break;
+      }
+    }
+    return query(query, minWaitInterval).size();
+  }
+
+  @Override
+  public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+    int minWaitInterval) throws IOException {
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    if (words != null) {
+      for (String word : words) {
+        if (word != null && !result.containsKey(word)) {
+          result.put(word, new NumOfHits(
+              searcher.getNumOfRecords(
+                  MetadataKnowledgeQueryType.NUMOFHITS_TITLE, word),
+              searcher.getNumOfRecords(
+                  MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, word)));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index.
+   * 
+   * @return the index.
+   */
+  public Index getIndex() {
+    return index;
+  }
+
+  /**
+   * Creates a query parameter.
+   * 
+   * @param type
+   *          the type of the parameter.
+   * @param value
+   *          the value of the parameter.
+   * @return the parameter.
+   */
+  protected Entry<MetadataKnowledgeQueryType, String> createParam(
+    MetadataKnowledgeQueryType type, String value) {
+    return new SimpleEntry<MetadataKnowledgeQueryType, String>(type, value);
+  }
+}
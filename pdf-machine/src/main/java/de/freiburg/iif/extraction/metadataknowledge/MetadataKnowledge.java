@@ -2,6 +2,9 @@ package de.freiburg.iif.extraction.metadataknowledge;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,6 +71,52 @@ public interface MetadataKnowledge {
    */
   public int getNumOfHits(MetadataKnowledgeQuery query, int minWaitInterval) throws IOException;
 
+  /**
+   * Returns the number of title hits and the number of author hits for each of
+   * the given words at once. Implementations should resolve all words with as
+   * few requests as possible.
+   * 
+   * @param words
+   *          the words to look up.
+   * @return a map, that maps each given word to its number of hits.
+   * @throws IOException
+   *           if querying fails.
+   */
+  public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+    int minWaitInterval) throws IOException;
+
+  /**
+   * Class holding the number of title hits and the number of author hits of a
+   * single word.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  public class NumOfHits {
+    /** The number of hits for the word as title word */
+    public int numOfTitleHits;
+    /** The number of hits for the word as author word */
+    public int numOfAuthorHits;
+
+    /**
+     * The constructor.
+     * 
+     * @param numOfTitleHits
+     *          the number of hits for the word as title word.
+     * @param numOfAuthorHits
+     *          the number of hits for the word as author word.
+     */
+    public NumOfHits(int numOfTitleHits, int numOfAuthorHits) {
+      this.numOfTitleHits = numOfTitleHits;
+      this.numOfAuthorHits = numOfAuthorHits;
+    }
+
+    @Override
+    public String toString() {
+      return "[t: " + numOfTitleHits + ", a: " + numOfAuthorHits + "]";
+    }
+  }
+
   /**
    * Class representing a query to the metadata knowledge.
    * 
@@ -85,6 +134,10 @@ public interface MetadataKnowledge {
     protected StringBuilder year;
     /** The StringBuilder for the other-parameter */
     protected StringBuilder other;
+    /** The maximal number of records to return (0 for no limit) */
+    protected int limit;
+    /** The fields of the records to return (null for all fields) */
+    protected Set<MetadataKnowledgeField> fields;
 
     /**
      * The constructor.
@@ -195,12 +248,95 @@ public interface MetadataKnowledge {
       return query.containsKey(key);
     }
 
+    /**
+     * Returns the maximal number of records to return.
+     * 
+     * @return the maximal number of records or 0, if there is no limit.
+     */
+    public int getLimit() {
+      return limit;
+    }
+
+    /**
+     * Sets the maximal number of records to return. As the records are sorted
+     * by their scores, these are the best records.
+     * 
+     * @param limit
+     *          the maximal number of records or 0 for no limit.
+     */
+    public void setLimit(int limit) {
+      this.limit = Math.max(0, limit);
+    }
+
+    /**
+     * Returns the fields of the records to return.
+     * 
+     * @return the fields or null, if all fields should be returned.
+     */
+    public Set<MetadataKnowledgeField> getFields() {
+      return fields;
+    }
+
+    /**
+     * Restricts the returned records to the given fields. Fields, that aren't
+     * contained, may be left empty by the metadata knowledge.
+     * 
+     * @param fields
+     *          the fields or null, to return all fields.
+     */
+    public void setFields(Set<MetadataKnowledgeField> fields) {
+      this.fields = fields != null ? EnumSet.copyOf(fields) : null;
+    }
+
     @Override
     public String toString() {
       return query.toString();
     }
   }
 
+  /**
+   * Enumeration of the fields of a record, to restrict a query to.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  public enum MetadataKnowledgeField {
+    /** The field "key" */
+    KEY("key"),
+    /** The field "title" */
+    TITLE("title"),
+    /** The field "authors" */
+    AUTHORS("authors"),
+    /** The field "year" */
+    YEAR("year"),
+    /** The field "journal" */
+    JOURNAL("journal"),
+    /** The field "pages" */
+    PAGES("pages"),
+    /** The field "url" */
+    URL("url"),
+    /** The field "ee" */
+    EE("ee");
+
+    /** The fields, that are needed to score a record against an extract */
+    public static final Set<MetadataKnowledgeField> SCORING_FIELDS =
+        Collections.unmodifiableSet(EnumSet.of(KEY, TITLE, AUTHORS, YEAR,
+            JOURNAL, PAGES));
+
+    /** The name of the field in the response of the index */
+    public String attribute;
+
+    /**
+     * The constructor.
+     * 
+     * @param attribute
+     *          the name of the field in the response of the index.
+     */
+    private MetadataKnowledgeField(String attribute) {
+      this.attribute = attribute;
+    }
+  }
+
   /**
    * Enumeration of query types.
    * 
@@ -221,7 +357,15 @@ public interface MetadataKnowledge {
     /** The query type "number of hits for an author-word" */
     NUMOFHITS_AUTHORS("na"),
     /** The query type "number of hits for an title-word" */
-    NUMOFHITS_TITLE("nt");
+    NUMOFHITS_TITLE("nt"),
+    /** The query type "number of title- and author-hits for several words" */
+    NUMOFHITS_BATCH("nb"),
+    /** The query type "record with the given key" */
+    KEY("key"),
+    /** The parameter "maximal number of records" */
+    LIMIT("l"),
+    /** The parameter "fields of the records" */
+    FIELDS("f");
 
     /** The url-parameter key */
     public String paramKey;
@@ -0,0 +1,470 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.freiburg.iif.extraction.metadataknowledge.index.InMemoryIndex.PostingList;
+
+/**
+ * Imports a dblp.xml into an index file, that can be opened by MappedIndex.
+ * 
+ * The xml is parsed by a single streaming parser, while the records are
+ * tokenized by several worker threads, in batches. Each worker collects the
+ * posting lists of its batches in a buffer and writes the buffer to a
+ * temporary segment file, once it holds a given number of postings. At the
+ * end, the segments are merged into the index file. The records are written
+ * to the index file directly, so the memory consumption is bounded by the
+ * number of workers and the size of the segments, regardless of the size of
+ * the dblp.xml.
+ * 
+ * An importer can run only one import at a time.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class DblpImporter {
+  /** The log. */
+  protected static final Log LOG = LogFactory.getLog(DblpImporter.class);
+  /** The default number of records, that are tokenized by a single task. */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  /** The default number of postings, a worker buffers before writing them. */
+  public static final int DEFAULT_MAX_POSTINGS_PER_SEGMENT = 5000000;
+  /** The number of records, after which the progress is reported. */
+  protected static final int PROGRESS_INTERVAL = 100000;
+  /** The number of worker threads. */
+  protected int numOfWorkers;
+  /** The number of records, that are tokenized by a single task. */
+  protected int batchSize;
+  /** The number of postings, a worker buffers before writing them. */
+  protected int maxPostingsPerSegment;
+  /** The directory of the segments (null for the default temp directory). */
+  protected File tmpDir;
+  /** The segment files of the current import. */
+  protected List<File> segments;
+  /** The first error, that occurred in a worker. */
+  protected AtomicReference<Throwable> error;
+
+  /**
+   * Creates a new importer with a worker per processor and default settings.
+   */
+  public DblpImporter() {
+    this(Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE,
+        DEFAULT_MAX_POSTINGS_PER_SEGMENT, null);
+  }
+
+  /**
+   * Creates a new importer.
+   * 
+   * @param numOfWorkers
+   *          the number of worker threads.
+   * @param batchSize
+   *          the number of records, that are tokenized by a single task.
+   * @param maxPostingsPerSegment
+   *          the number of postings, a worker buffers before writing them to
+   *          a segment.
+   * @param tmpDir
+   *          the directory of the segments (null for the default temp
+   *          directory).
+   */
+  public DblpImporter(int numOfWorkers, int batchSize,
+    int maxPostingsPerSegment, File tmpDir) {
+    if (numOfWorkers < 1 || batchSize < 1 || maxPostingsPerSegment < 1) {
+      throw new IllegalArgumentException("The number of workers, the batch "
+          + "size and the segment size must be positive.");
+    }
+    this.numOfWorkers = numOfWorkers;
+    this.batchSize = batchSize;
+    this.maxPostingsPerSegment = maxPostingsPerSegment;
+    this.tmpDir = tmpDir;
+  }
+
+  /**
+   * Imports the given dblp.xml into the given index file. Closes the stream.
+   * 
+   * @param dblpXml
+   *          the stream of the dblp.xml.
+   * @param indexFile
+   *          the index file to write.
+   * @return the number of imported records.
+   * @throws IOException
+   *           if reading the dblp.xml or writing the index fails.
+   */
+  public synchronized int importXml(InputStream dblpXml, File indexFile)
+    throws IOException {
+    long start = System.currentTimeMillis();
+    segments = Collections.synchronizedList(new ArrayList<File>());
+    error = new AtomicReference<Throwable>();
+
+    // Limit the number of pending batches, to bound the memory.
+    Semaphore pendingBatches = new Semaphore(2 * numOfWorkers);
+    BlockingQueue<SegmentBuffer> buffers =
+        new ArrayBlockingQueue<SegmentBuffer>(numOfWorkers);
+    for (int i = 0; i < numOfWorkers; i++) {
+      buffers.add(new SegmentBuffer());
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(numOfWorkers);
+
+    CountingInputStream is = new CountingInputStream(new BufferedInputStream(
+        dblpXml, 1 << 16));
+    int numOfRecords = 0;
+    try (DblpXmlReader reader = new DblpXmlReader(is);
+        MappedIndexWriter writer = new MappedIndexWriter(indexFile)) {
+      List<IndexRecord> batch = new ArrayList<IndexRecord>(batchSize);
+      IndexRecord record;
+      while ((record = reader.next()) != null) {
+        writer.addRecord(record);
+        batch.add(record);
+        numOfRecords++;
+        if (batch.size() == batchSize) {
+          submit(executor, pendingBatches, buffers, batch,
+              numOfRecords - batch.size());
+          batch = new ArrayList<IndexRecord>(batchSize);
+        }
+        if (numOfRecords % PROGRESS_INTERVAL == 0) {
+          LOG.info(getProgress("Read", numOfRecords, is.getByteCount(), start));
+        }
+      }
+      if (!batch.isEmpty()) {
+        submit(executor, pendingBatches, buffers, batch,
+            numOfRecords - batch.size());
+      }
+
+      // Wait for the workers and write the remaining buffers.
+      executor.shutdown();
+      try {
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+          checkError();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while importing.", e);
+      }
+      checkError();
+      for (SegmentBuffer buffer : buffers) {
+        buffer.flush();
+      }
+
+      LOG.info(getProgress("Tokenized", numOfRecords, is.getByteCount(),
+          start) + " Merging " + segments.size() + " segments.");
+      merge(segments, writer);
+    } finally {
+      executor.shutdownNow();
+      for (File segment : segments) {
+        if (!segment.delete()) {
+          segment.deleteOnExit();
+        }
+      }
+    }
+    LOG.info(getProgress("Imported", numOfRecords, is.getByteCount(), start));
+    return numOfRecords;
+  }
+
+  /**
+   * Submits a task, that tokenizes the given batch of records. Blocks, if
+   * there are too many pending batches.
+   * 
+   * @param executor
+   *          the executor.
+   * @param pendingBatches
+   *          the semaphore, that limits the number of pending batches.
+   * @param buffers
+   *          the buffers of the workers.
+   * @param batch
+   *          the records.
+   * @param firstId
+   *          the id of the first record of the batch.
+   * @throws IOException
+   *           if a worker failed.
+   */
+  protected void submit(ExecutorService executor,
+    final Semaphore pendingBatches, final BlockingQueue<SegmentBuffer> buffers,
+    final List<IndexRecord> batch, final int firstId) throws IOException {
+    checkError();
+    try {
+      pendingBatches.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing.", e);
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          SegmentBuffer buffer = buffers.take();
+          try {
+            for (int i = 0; i < batch.size(); i++) {
+              buffer.add(firstId + i, batch.get(i));
+            }
+            if (buffer.isFull()) {
+              buffer.flush();
+            }
+          } finally {
+            buffers.add(buffer);
+          }
+        } catch (Throwable t) {
+          error.compareAndSet(null, t);
+        } finally {
+          pendingBatches.release();
+        }
+      }
+    });
+  }
+
+  /**
+   * Throws an IOException, if a worker failed.
+   * 
+   * @throws IOException
+   *           if a worker failed.
+   */
+  protected void checkError() throws IOException {
+    Throwable t = error.get();
+    if (t != null) {
+      throw new IOException("Couldn't tokenize the records.", t);
+    }
+  }
+
+  /**
+   * Merges the given segments and writes the terms and their posting lists to
+   * the given writer.
+   * 
+   * @param segmentFiles
+   *          the segment files.
+   * @param writer
+   *          the writer of the index.
+   * @throws IOException
+   *           if reading the segments or writing the index fails.
+   */
+  protected void merge(List<File> segmentFiles, MappedIndexWriter writer)
+    throws IOException {
+    List<MappedIndex> segments = new ArrayList<MappedIndex>();
+    PriorityQueue<SegmentCursor> queue = new PriorityQueue<SegmentCursor>(
+        Math.max(1, segmentFiles.size()), SegmentCursor.COMPARATOR);
+    try {
+      for (File segmentFile : segmentFiles) {
+        MappedIndex segment = new MappedIndex(segmentFile);
+        segments.add(segment);
+        SegmentCursor cursor = new SegmentCursor(segment);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+
+      int[] postings = new int[1024];
+      while (!queue.isEmpty()) {
+        SegmentCursor first = queue.peek();
+        String term = first.term;
+        byte[] termBytes = first.termBytes;
+        int length = 0;
+        // Collect the postings of the term from all segments.
+        while (!queue.isEmpty() && Arrays.equals(queue.peek().termBytes,
+            termBytes)) {
+          SegmentCursor cursor = queue.poll();
+          int[] segmentPostings = cursor.segment.getPostings(cursor.termId);
+          if (length + segmentPostings.length > postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(2 * postings.length,
+                length + segmentPostings.length));
+          }
+          System.arraycopy(segmentPostings, 0, postings, length,
+              segmentPostings.length);
+          length += segmentPostings.length;
+          if (cursor.next()) {
+            queue.add(cursor);
+          }
+        }
+        // The segments hold disjoint sets of records.
+        Arrays.sort(postings, 0, length);
+        writer.addTerm(term, postings, length);
+      }
+    } finally {
+      for (MappedIndex segment : segments) {
+        segment.close();
+      }
+    }
+  }
+
+  /**
+   * Returns a message about the progress of the import.
+   * 
+   * @param action
+   *          the action, that was done.
+   * @param numOfRecords
+   *          the number of processed records.
+   * @param numOfBytes
+   *          the number of read bytes.
+   * @param start
+   *          the start time of the import.
+   * @return the message.
+   */
+  protected String getProgress(String action, int numOfRecords,
+    long numOfBytes, long start) {
+    double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+    double megabytes = numOfBytes / (1024.0 * 1024.0);
+    return String.format(Locale.ENGLISH, "%s %d records (%.1f MB) in %.1fs: "
+        + "%.0f records/s, %.1f MB/s.", action, numOfRecords, megabytes,
+        seconds, numOfRecords / seconds, megabytes / seconds);
+  }
+
+  /**
+   * The posting lists of a worker, that weren't written to a segment yet.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected class SegmentBuffer {
+    /** The posting lists, per term. */
+    protected Map<String, PostingList> postings =
+        new HashMap<String, PostingList>();
+    /** The number of postings. */
+    protected int numOfPostings;
+
+    /**
+     * Adds the terms of the given record.
+     * 
+     * @param id
+     *          the id of the record.
+     * @param record
+     *          the record.
+     */
+    protected void add(int id, IndexRecord record) {
+      for (String term : record.getTerms()) {
+        PostingList list = postings.get(term);
+        if (list == null) {
+          list = new PostingList();
+          postings.put(term, list);
+        }
+        int size = list.size;
+        list.add(id);
+        numOfPostings += list.size - size;
+      }
+    }
+
+    /**
+     * Returns true, if the buffer should be written to a segment.
+     * 
+     * @return true, if the buffer is full.
+     */
+    protected boolean isFull() {
+      return numOfPostings >= maxPostingsPerSegment;
+    }
+
+    /**
+     * Writes the buffer to a new segment and clears it.
+     * 
+     * @throws IOException
+     *           if writing the segment fails.
+     */
+    protected void flush() throws IOException {
+      if (postings.isEmpty()) {
+        return;
+      }
+      File segment = File.createTempFile("segment", ".idx", tmpDir);
+      segments.add(segment);
+      List<String> terms = new ArrayList<String>(postings.keySet());
+      Collections.sort(terms, MappedIndexWriter.TERM_COMPARATOR);
+      try (MappedIndexWriter writer = new MappedIndexWriter(segment)) {
+        for (String term : terms) {
+          // The batches may be processed in any order.
+          int[] ids = postings.get(term).toArray();
+          Arrays.sort(ids);
+          writer.addTerm(term, ids);
+        }
+      }
+      postings = new HashMap<String, PostingList>();
+      numOfPostings = 0;
+    }
+  }
+
+  /**
+   * A cursor on the terms of a segment.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class SegmentCursor {
+    /** The order of the cursors, by their current terms. */
+    protected static final Comparator<SegmentCursor> COMPARATOR =
+        new Comparator<SegmentCursor>() {
+          @Override
+          public int compare(SegmentCursor c1, SegmentCursor c2) {
+            return MappedIndexWriter.compareBytes(c1.termBytes, c2.termBytes);
+          }
+        };
+    /** The segment. */
+    protected MappedIndex segment;
+    /** The id of the current term. */
+    protected int termId = -1;
+    /** The current term. */
+    protected String term;
+    /** The utf-8 bytes of the current term. */
+    protected byte[] termBytes;
+
+    /**
+     * Creates a new cursor, positioned before the first term.
+     * 
+     * @param segment
+     *          the segment.
+     */
+    protected SegmentCursor(MappedIndex segment) {
+      this.segment = segment;
+    }
+
+    /**
+     * Moves the cursor to the next term.
+     * 
+     * @return false, if there are no further terms.
+     */
+    protected boolean next() {
+      if (++termId >= segment.getNumOfTerms()) {
+        return false;
+      }
+      term = segment.getTerm(termId);
+      termBytes = term.getBytes(MappedIndexWriter.UTF8);
+      return true;
+    }
+  }
+
+  /**
+   * Imports a dblp.xml into an index file.
+   * 
+   * @param args
+   *          the path of the dblp.xml, the path of the index file and
+   *          optionally the directory of the temporary segments.
+   * @throws IOException
+   *           if reading or writing fails.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println("Usage: DblpImporter <dblp.xml> <index file> "
+          + "[<tmp dir>]");
+      return;
+    }
+    File tmpDir = args.length > 2 ? new File(args[2]) : null;
+    DblpImporter importer = new DblpImporter(
+        Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE,
+        DEFAULT_MAX_POSTINGS_PER_SEGMENT, tmpDir);
+    importer.importXml(new FileInputStream(args[0]), new File(args[1]));
+  }
+}
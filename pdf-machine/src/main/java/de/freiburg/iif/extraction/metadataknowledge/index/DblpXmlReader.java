@@ -0,0 +1,205 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the records from a dblp.xml file with a streaming (StAX) parser, so
+ * only the current record is held in memory. The character entities (like
+ * "&amp;eacute;") are resolved with the dblp.dtd, that is shipped with this
+ * class, so the dtd doesn't have to lie next to the dblp.xml. Other external
+ * entities are never fetched, but resolved to empty text. As in the C++
+ * index (InvertedIndex::createRecordsFile), only the records of the types in
+ * {@link #RECORD_TYPES} are read.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class DblpXmlReader implements Closeable {
+  /** The elements, that identify a record. */
+  protected static final Set<String> RECORD_TYPES = new HashSet<String>(
+      Arrays.asList("article", "inproceedings", "book", "phdthesis",
+          "mastersthesis", "incollection", "proceedings"));
+  /** The name of the dtd of dblp.xml. */
+  protected static final String DTD_FILE = "dblp.dtd";
+  /**
+   * The maximal number of entity expansions. dblp.xml contains millions of
+   * entity references, so the limit of the jdk is raised, but kept finite to
+   * stop documents with recursively expanding entities.
+   */
+  protected static final String MAX_ENTITY_EXPANSIONS = "1000000000";
+  /** The properties of the limits of the jdk for entity expansions. */
+  protected static final String[] ENTITY_LIMIT_PROPERTIES = {
+      "http://www.oracle.com/xml/jaxp/properties/entityExpansionLimit",
+      "http://www.oracle.com/xml/jaxp/properties/totalEntitySizeLimit",
+      "jdk.xml.entityExpansionLimit", "jdk.xml.totalEntitySizeLimit" };
+  /** The stream of the dblp.xml. */
+  protected InputStream is;
+  /** The xml parser. */
+  protected XMLStreamReader reader;
+
+  /**
+   * Creates a new reader for the given dblp.xml stream.
+   * 
+   * @param is
+   *          the stream of the dblp.xml.
+   * @throws IOException
+   *           if the parser can't be created.
+   */
+  public DblpXmlReader(InputStream is) throws IOException {
+    this.is = is;
+    try {
+      this.reader = createInputFactory().createXMLStreamReader(is);
+    } catch (XMLStreamException e) {
+      throw new IOException("Couldn't create the xml parser.", e);
+    }
+  }
+
+  /**
+   * Creates the factory of the xml parser, that resolves the dblp.dtd.
+   * 
+   * @return the factory.
+   */
+  protected XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, true);
+    factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    // dblp.xml contains millions of entity references.
+    for (String property : ENTITY_LIMIT_PROPERTIES) {
+      try {
+        factory.setProperty(property, MAX_ENTITY_EXPANSIONS);
+      } catch (IllegalArgumentException e) {
+        // The property isn't supported by the parser.
+      }
+    }
+    factory.setXMLResolver(new XMLResolver() {
+      @Override
+      public Object resolveEntity(String publicId, String systemId,
+        String baseUri, String namespace) throws XMLStreamException {
+        if (systemId != null && systemId.endsWith(DTD_FILE)) {
+          return DblpXmlReader.class.getResourceAsStream(DTD_FILE);
+        }
+        // Don't let the parser fetch any other external entity.
+        return new ByteArrayInputStream(new byte[0]);
+      }
+    });
+    return factory;
+  }
+
+  /**
+   * Reads the next record.
+   * 
+   * @return the next record or null, if there are no further records.
+   * @throws IOException
+   *           if reading the stream fails.
+   */
+  public IndexRecord next() throws IOException {
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT
+            && RECORD_TYPES.contains(reader.getLocalName())) {
+          return readRecord();
+        }
+      }
+      return null;
+    } catch (XMLStreamException e) {
+      throw new IOException("Couldn't parse the dblp.xml.", e);
+    }
+  }
+
+  /**
+   * Reads the record, that starts at the current element.
+   * 
+   * @return the record.
+   * @throws XMLStreamException
+   *           if parsing fails.
+   */
+  protected IndexRecord readRecord() throws XMLStreamException {
+    IndexRecord record = new IndexRecord();
+    String key = reader.getAttributeValue(null, "key");
+    record.key = key != null ? key : "";
+
+    StringBuilder authors = new StringBuilder();
+    while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+      String element = reader.getLocalName();
+      String value = readText();
+      if ("author".equals(element)) {
+        if (authors.length() > 0) {
+          authors.append(IndexRecord.AUTHORS_SEPARATOR);
+        }
+        authors.append(value);
+      } else if ("title".equals(element)) {
+        record.title = value;
+      } else if ("year".equals(element)) {
+        record.year = value;
+      } else if ("journal".equals(element) || "booktitle".equals(element)
+          || "publisher".equals(element)) {
+        record.journal = value;
+      } else if ("pages".equals(element)) {
+        record.pages = value;
+      } else if ("url".equals(element)) {
+        record.url = value;
+      } else if ("ee".equals(element)) {
+        record.ee = value;
+      }
+    }
+    record.authors = authors.toString();
+    return record;
+  }
+
+  /**
+   * Returns the text of the current element, including the text of nested
+   * elements (like &lt;i&gt; or &lt;sub&gt; in titles). Moves the parser to
+   * the end of the current element.
+   * 
+   * @return the text of the current element.
+   * @throws XMLStreamException
+   *           if parsing fails.
+   */
+  protected String readText() throws XMLStreamException {
+    StringBuilder text = new StringBuilder();
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        depth++;
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        depth--;
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+      case XMLStreamConstants.SPACE:
+        text.append(reader.getTextCharacters(), reader.getTextStart(),
+            reader.getTextLength());
+        break;
+      default:
+        break;
+      }
+    }
+    return text.toString();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      reader.close();
+    } catch (XMLStreamException e) {
+      // Nothing to do.
+    }
+    is.close();
+  }
+}
@@ -0,0 +1,153 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index, that holds its records and posting lists in the heap.
+ * Records are added one by one; a record occurs at most once in each posting
+ * list. Adding records is not thread-safe, but once built, the index can be
+ * queried by several threads.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class InMemoryIndex implements Index {
+  /** An empty posting list. */
+  protected static final int[] EMPTY_POSTINGS = new int[0];
+  /** The records, indexed by their id. */
+  protected List<IndexRecord> records;
+  /** The posting lists, per term. */
+  protected Map<String, PostingList> postings;
+
+  /**
+   * Creates a new, empty index.
+   */
+  public InMemoryIndex() {
+    this.records = new ArrayList<IndexRecord>();
+    this.postings = new HashMap<String, PostingList>();
+  }
+
+  /**
+   * Adds the given record to the index.
+   * 
+   * @param record
+   *          the record to add.
+   * @return the id of the record.
+   */
+  public int add(IndexRecord record) {
+    int id = records.size();
+    records.add(record);
+
+    for (String term : record.getTerms()) {
+      addPosting(term, id);
+    }
+    return id;
+  }
+
+  /**
+   * Adds the given id to the posting list of the given term.
+   * 
+   * @param term
+   *          the term.
+   * @param id
+   *          the id of the record.
+   */
+  protected void addPosting(String term, int id) {
+    PostingList list = postings.get(term);
+    if (list == null) {
+      list = new PostingList();
+      postings.put(term, list);
+    }
+    list.add(id);
+  }
+
+  @Override
+  public int[] getPostings(String term) {
+    PostingList list = postings.get(term);
+    return list != null ? list.toArray() : EMPTY_POSTINGS;
+  }
+
+  @Override
+  public int getNumOfPostings(String term) {
+    PostingList list = postings.get(term);
+    return list != null ? list.size : 0;
+  }
+
+  @Override
+  public IndexRecord getRecord(int id) {
+    return records.get(id);
+  }
+
+  @Override
+  public Index getSnapshot() {
+    return this;
+  }
+
+  @Override
+  public int getNumOfRecords() {
+    return records.size();
+  }
+
+  /**
+   * Returns the number of terms in the index.
+   * 
+   * @return the number of terms.
+   */
+  public int getNumOfTerms() {
+    return postings.size();
+  }
+
+  /**
+   * Returns all terms of the index.
+   * 
+   * @return the terms of the index.
+   */
+  public List<String> getTerms() {
+    return new ArrayList<String>(postings.keySet());
+  }
+
+  /**
+   * A growable list of record ids, in ascending order.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class PostingList {
+    /** The ids. */
+    protected int[] ids = new int[2];
+    /** The number of ids. */
+    protected int size;
+
+    /**
+     * Appends the given id, if it isn't already the last id of the list.
+     * 
+     * @param id
+     *          the id to add.
+     */
+    protected void add(int id) {
+      if (size > 0 && ids[size - 1] == id) {
+        return;
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    /**
+     * Returns the ids as an array of exact length.
+     * 
+     * @return the ids.
+     */
+    protected int[] toArray() {
+      if (ids.length != size) {
+        ids = Arrays.copyOf(ids, size);
+      }
+      return ids;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+/**
+ * The interface of an inverted index over dblp records. The terms are the
+ * normalized words of the titles, the authors and the years of the records,
+ * each with and without the prefix "title:", "author:" or "year:". Further,
+ * each record is indexed under its key, with the prefix "key:".
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public interface Index {
+  /** The prefix of the terms of titles. */
+  public static final String TITLE_PREFIX = "title:";
+  /** The prefix of the terms of authors. */
+  public static final String AUTHOR_PREFIX = "author:";
+  /** The prefix of the terms of years. */
+  public static final String YEAR_PREFIX = "year:";
+  /** The prefix of the (not normalized) keys of the records. */
+  public static final String KEY_PREFIX = "key:";
+
+  /**
+   * Returns the ids of the records, that contain the given term, in ascending
+   * order. The returned array must not be modified.
+   * 
+   * @param term
+   *          the term.
+   * @return the ids of the records (an empty array if there are no such
+   *         records).
+   */
+  public int[] getPostings(String term);
+
+  /**
+   * Returns the number of records, that contain the given term.
+   * 
+   * @param term
+   *          the term.
+   * @return the number of records, that contain the given term.
+   */
+  public int getNumOfPostings(String term);
+
+  /**
+   * Returns the record with the given id.
+   * 
+   * @param id
+   *          the id of the record.
+   * @return the record.
+   */
+  public IndexRecord getRecord(int id);
+
+  /**
+   * Returns the number of records in the index.
+   * 
+   * @return the number of records.
+   */
+  public int getNumOfRecords();
+
+  /**
+   * Returns a consistent view of the index, that isn't affected by later
+   * updates. Indexes, that can't be updated, return themselves.
+   * 
+   * @return a consistent view of the index.
+   */
+  public Index getSnapshot();
+}
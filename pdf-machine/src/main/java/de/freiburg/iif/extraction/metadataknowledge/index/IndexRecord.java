@@ -0,0 +1,135 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.freiburg.iif.model.DblpRecord;
+
+/**
+ * A record of the local index, holding the fields of a dblp record as plain
+ * strings (with resolved character entities). The individual authors are
+ * separated by "$", as in the records file of the C++ index.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class IndexRecord {
+  /** The separator of the individual authors. */
+  public static final String AUTHORS_SEPARATOR = "$";
+  /** The key of the record. */
+  public String key = "";
+  /** The authors of the record, separated by "$". */
+  public String authors = "";
+  /** The year of the record. */
+  public String year = "";
+  /** The title of the record. */
+  public String title = "";
+  /** The journal (or booktitle or publisher) of the record. */
+  public String journal = "";
+  /** The pages of the record (like "42-68"). */
+  public String pages = "";
+  /** The url of the record. */
+  public String url = "";
+  /** The ee of the record. */
+  public String ee = "";
+
+  /**
+   * Creates a new DblpRecord with the values of this record.
+   * 
+   * @param score
+   *          the score of the record.
+   * @return a new DblpRecord.
+   */
+  public DblpRecord toDblpRecord(double score) {
+    DblpRecord record = new DblpRecord();
+    record.setScore(score);
+    record.setKey(key);
+    record.setTitle(title);
+    record.setAuthors(new ArrayList<String>(Arrays.asList(authors
+        .split("\\$"))));
+    int yearValue = -1;
+    if (!year.trim().isEmpty()) {
+      try {
+        yearValue = Integer.parseInt(year.trim());
+      } catch (NumberFormatException e) {
+        // Nothing to do.
+      }
+    }
+    record.setYear(yearValue);
+    record.setJournal(journal);
+    String[] fragments = pages.split("-");
+    if (fragments.length >= 2) {
+      record.setStartPage(parsePage(fragments[0]));
+      record.setEndPage(parsePage(fragments[1]));
+    }
+    record.setUrl(url);
+    record.setEe(ee);
+    return record;
+  }
+
+  /**
+   * Parses the given page number.
+   * 
+   * @param page
+   *          the string to parse.
+   * @return the page number or -1 if the string isn't a number.
+   */
+  protected int parsePage(String page) {
+    try {
+      return Integer.parseInt(page.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the individual authors of the record.
+   * 
+   * @return the individual authors.
+   */
+  public List<String> getAuthors() {
+    return Arrays.asList(authors.split("\\$"));
+  }
+
+  /**
+   * Returns the terms, under which the record is indexed: the normalized words
+   * of the title, the authors and the year, each with and without its prefix,
+   * and the key. A term may occur several times.
+   * 
+   * @return the terms of the record.
+   */
+  public List<String> getTerms() {
+    List<String> terms = new ArrayList<String>();
+    addTerms(terms, title, Index.TITLE_PREFIX);
+    addTerms(terms, authors, Index.AUTHOR_PREFIX);
+    addTerms(terms, year, Index.YEAR_PREFIX);
+    if (!key.isEmpty()) {
+      terms.add(Index.KEY_PREFIX + key);
+    }
+    return terms;
+  }
+
+  /**
+   * Adds the normalized words of the given text to the given list, each with
+   * and without the given prefix.
+   * 
+   * @param terms
+   *          the list to fill.
+   * @param text
+   *          the text to normalize.
+   * @param prefix
+   *          the prefix.
+   */
+  protected void addTerms(List<String> terms, String text, String prefix) {
+    for (String term : TermNormalizer.normalize(text)) {
+      terms.add(term);
+      terms.add(prefix + term);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return key + "\t" + authors + "\t" + year + "\t" + title;
+  }
+}
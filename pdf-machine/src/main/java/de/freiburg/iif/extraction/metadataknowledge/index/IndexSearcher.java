@@ -0,0 +1,310 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * Answers queries on an Index with the same semantics as the C++ index
+ * (InvertedIndexRecordMatcher): the posting lists of the query words are
+ * merged per parameter type (authors, title, others), the merged lists are
+ * intersected, and each candidate is scored by the number of query words it
+ * contains. At most 100 records are returned; after the first 10 records, the
+ * result is cut off as soon as the score changes.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class IndexSearcher {
+  /** The number of results, after which the result is cut off. */
+  protected static final int MIN_NUM_OF_RESULTS = 10;
+  /** The maximal number of results. */
+  protected static final int MAX_NUM_OF_RESULTS = 100;
+  /** The index to search. */
+  protected Index index;
+
+  /**
+   * Creates a new searcher on the given index.
+   * 
+   * @param index
+   *          the index to search.
+   */
+  public IndexSearcher(Index index) {
+    this.index = index;
+  }
+
+  /**
+   * Returns the best matching records for the given query parameters.
+   * 
+   * @param params
+   *          the query parameters.
+   * @return the best matching records, sorted by their scores.
+   */
+  public List<HasMetadata> search(
+    Iterable<Entry<MetadataKnowledgeQueryType, String>> params) {
+    return search(params, 0);
+  }
+
+  /**
+   * Returns the best matching records for the given query parameters.
+   * 
+   * @param params
+   *          the query parameters.
+   * @param limit
+   *          the maximal number of records to return (0 for no limit).
+   * @return the best matching records, sorted by their scores.
+   */
+  public List<HasMetadata> search(
+    Iterable<Entry<MetadataKnowledgeQueryType, String>> params, int limit) {
+    // Use the same view of the index for all lookups of the query.
+    Index index = this.index.getSnapshot();
+    List<int[]> authorLists = new ArrayList<int[]>();
+    List<int[]> titleLists = new ArrayList<int[]>();
+    List<int[]> otherLists = new ArrayList<int[]>();
+
+    for (Entry<MetadataKnowledgeQueryType, String> param : params) {
+      if (param.getKey() == MetadataKnowledgeQueryType.KEY) {
+        // Keys aren't normalized.
+        otherLists.add(index.getPostings(Index.KEY_PREFIX
+            + param.getValue().trim()));
+        continue;
+      }
+      for (String word : TermNormalizer.normalizeUnique(param.getValue())) {
+        switch (param.getKey()) {
+        case AUTHORS:
+          authorLists.add(index.getPostings(Index.AUTHOR_PREFIX + word));
+          break;
+        case TITLE:
+          titleLists.add(index.getPostings(Index.TITLE_PREFIX + word));
+          break;
+        default:
+          otherLists.add(index.getPostings(word));
+          break;
+        }
+      }
+    }
+
+    // Merge the lists per type and intersect the merged lists.
+    List<Candidates> merged = new ArrayList<Candidates>();
+    if (!titleLists.isEmpty()) {
+      merged.add(merge(titleLists));
+    }
+    if (!authorLists.isEmpty()) {
+      merged.add(merge(authorLists));
+    }
+    if (!otherLists.isEmpty()) {
+      merged.add(merge(otherLists));
+    }
+    Candidates candidates = merged.isEmpty() ? new Candidates(0)
+        : merged.get(0);
+    for (int i = 1; i < merged.size(); i++) {
+      candidates = intersect(candidates, merged.get(i));
+    }
+
+    return getBestCandidates(index, candidates, limit);
+  }
+
+  /**
+   * Returns the number of records, that contain the given word as title word
+   * (NUMOFHITS_TITLE) or as author word (NUMOFHITS_AUTHORS).
+   * 
+   * @param type
+   *          the query type.
+   * @param word
+   *          the word.
+   * @return the number of records, that contain the given word.
+   */
+  public int getNumOfRecords(MetadataKnowledgeQueryType type, String word) {
+    StringBuilder normalized = new StringBuilder();
+    for (String term : TermNormalizer.normalizeUnique(word)) {
+      if (normalized.length() > 0) {
+        normalized.append(" ");
+      }
+      normalized.append(term);
+    }
+    if (normalized.length() == 0) {
+      return 0;
+    }
+
+    switch (type) {
+    case NUMOFHITS_AUTHORS:
+      return index.getNumOfPostings(Index.AUTHOR_PREFIX + normalized);
+    case NUMOFHITS_TITLE:
+      return index.getNumOfPostings(Index.TITLE_PREFIX + normalized);
+    default:
+      return 0;
+    }
+  }
+
+  /**
+   * Returns the candidates with the best scores. The score of a candidate is
+   * the number of query words it contains.
+   * 
+   * @param index
+   *          the index, the candidates were found in.
+   * @param candidates
+   *          the candidates.
+   * @param limit
+   *          the maximal number of records to return (0 for no limit).
+   * @return the records of the candidates with the best scores.
+   */
+  protected List<HasMetadata> getBestCandidates(Index index,
+    final Candidates candidates, int limit) {
+    int maxNumOfResults = limit > 0 ? Math.min(limit, MAX_NUM_OF_RESULTS)
+        : MAX_NUM_OF_RESULTS;
+    // Sort the candidates by their scores (desc). Candidates with equal
+    // scores are sorted by their ids.
+    Integer[] order = new Integer[candidates.size];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i, Integer j) {
+        return candidates.occs[j] - candidates.occs[i];
+      }
+    });
+
+    List<HasMetadata> result = new ArrayList<HasMetadata>();
+    int prevScore = -1;
+    for (int i = 0; i < order.length; i++) {
+      int score = candidates.occs[order[i]];
+      if (score != prevScore && result.size() >= MIN_NUM_OF_RESULTS) {
+        break;
+      }
+      IndexRecord record = index.getRecord(candidates.ids[order[i]]);
+      result.add(record.toDblpRecord(score));
+      prevScore = score;
+      if (result.size() == maxNumOfResults) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Merges the given posting lists. Each id of the result is annotated with
+   * the number of lists, that contain the id.
+   * 
+   * @param lists
+   *          the posting lists to merge.
+   * @return the merged list, sorted by ids.
+   */
+  protected Candidates merge(final List<int[]> lists) {
+    int totalSize = 0;
+    for (int[] list : lists) {
+      totalSize += list.length;
+    }
+    Candidates result = new Candidates(totalSize);
+    final int[] positions = new int[lists.size()];
+
+    // A priority queue of the lists, ordered by their current elements.
+    PriorityQueue<Integer> pq = new PriorityQueue<Integer>(Math.max(1,
+        lists.size()), new Comparator<Integer>() {
+      @Override
+      public int compare(Integer i, Integer j) {
+        int a = lists.get(i)[positions[i]];
+        int b = lists.get(j)[positions[j]];
+        return a < b ? -1 : (a == b ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < lists.size(); i++) {
+      if (lists.get(i).length > 0) {
+        pq.add(i);
+      }
+    }
+
+    while (!pq.isEmpty()) {
+      int i = pq.peek();
+      int element = lists.get(i)[positions[i]];
+      int occ = 0;
+      // Count the occurrences of the element.
+      while (!pq.isEmpty()
+          && lists.get(pq.peek())[positions[pq.peek()]] == element) {
+        int j = pq.poll();
+        occ++;
+        positions[j]++;
+        if (positions[j] < lists.get(j).length) {
+          pq.add(j);
+        }
+      }
+      result.add(element, occ);
+    }
+    return result;
+  }
+
+  /**
+   * Intersects the given candidates. The occurrences of common ids are summed
+   * up.
+   * 
+   * @param list1
+   *          the first candidates.
+   * @param list2
+   *          the second candidates.
+   * @return the intersection, sorted by ids.
+   */
+  protected Candidates intersect(Candidates list1, Candidates list2) {
+    Candidates result = new Candidates(Math.min(list1.size, list2.size));
+    int i = 0;
+    int j = 0;
+    while (i < list1.size && j < list2.size) {
+      if (list1.ids[i] < list2.ids[j]) {
+        i++;
+      } else if (list1.ids[i] > list2.ids[j]) {
+        j++;
+      } else {
+        result.add(list1.ids[i], list1.occs[i] + list2.occs[j]);
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A list of candidate ids, each with the number of query words it contains.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class Candidates {
+    /** The ids of the candidates. */
+    protected int[] ids;
+    /** The occurrences of the candidates. */
+    protected int[] occs;
+    /** The number of candidates. */
+    protected int size;
+
+    /**
+     * Creates a new list of candidates with the given capacity.
+     * 
+     * @param capacity
+     *          the capacity.
+     */
+    protected Candidates(int capacity) {
+      this.ids = new int[capacity];
+      this.occs = new int[capacity];
+    }
+
+    /**
+     * Appends the given candidate.
+     * 
+     * @param id
+     *          the id of the candidate.
+     * @param occ
+     *          the occurrences of the candidate.
+     */
+    protected void add(int id, int occ) {
+      ids[size] = id;
+      occs[size] = occ;
+      size++;
+    }
+  }
+}
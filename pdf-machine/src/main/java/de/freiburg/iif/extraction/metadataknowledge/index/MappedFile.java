@@ -0,0 +1,136 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only file, mapped into memory. A single MappedByteBuffer can't be
+ * larger than 2GB, so the file is mapped in chunks of 1GB. All methods read
+ * at absolute positions, so the file can be read by several threads at once.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class MappedFile implements Closeable {
+  /** The number of bits of the size of a chunk. */
+  protected static final int CHUNK_BITS = 30;
+  /** The size of a chunk. */
+  protected static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  /** The mask to compute the position inside of a chunk. */
+  protected static final long CHUNK_MASK = CHUNK_SIZE - 1;
+  /** The mapped chunks. */
+  protected MappedByteBuffer[] chunks;
+  /** The length of the file. */
+  protected long length;
+
+  /**
+   * Maps the given file into memory.
+   * 
+   * @param file
+   *          the file to map.
+   * @throws IOException
+   *           if mapping the file fails.
+   */
+  public MappedFile(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel()) {
+      this.length = channel.size();
+      int numOfChunks = (int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      this.chunks = new MappedByteBuffer[numOfChunks];
+      for (int i = 0; i < numOfChunks; i++) {
+        long start = i * CHUNK_SIZE;
+        long size = Math.min(CHUNK_SIZE, length - start);
+        chunks[i] = channel.map(MapMode.READ_ONLY, start, size);
+        chunks[i].order(ByteOrder.BIG_ENDIAN);
+      }
+    }
+  }
+
+  /**
+   * Returns the byte at the given position.
+   * 
+   * @param pos
+   *          the position.
+   * @return the byte at the given position.
+   */
+  public byte get(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+  }
+
+  /**
+   * Returns the (big endian) int at the given position.
+   * 
+   * @param pos
+   *          the position.
+   * @return the int at the given position.
+   */
+  public int getInt(long pos) {
+    int offset = (int) (pos & CHUNK_MASK);
+    if (offset + 4 <= CHUNK_SIZE) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].getInt(offset);
+    }
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      value = (value << 8) | (get(pos + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the (big endian) long at the given position.
+   * 
+   * @param pos
+   *          the position.
+   * @return the long at the given position.
+   */
+  public long getLong(long pos) {
+    int offset = (int) (pos & CHUNK_MASK);
+    if (offset + 8 <= CHUNK_SIZE) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].getLong(offset);
+    }
+    long value = 0;
+    for (int i = 0; i < 8; i++) {
+      value = (value << 8) | (get(pos + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Copies the bytes at the given position into the given array.
+   * 
+   * @param pos
+   *          the position.
+   * @param dst
+   *          the array to fill.
+   * @param off
+   *          the offset in the array.
+   * @param len
+   *          the number of bytes to copy.
+   */
+  public void get(long pos, byte[] dst, int off, int len) {
+    for (int i = 0; i < len; i++) {
+      dst[off + i] = get(pos + i);
+    }
+  }
+
+  /**
+   * Returns the length of the file.
+   * 
+   * @return the length of the file.
+   */
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public void close() {
+    // A MappedByteBuffer is unmapped, when it is garbage collected.
+    chunks = new MappedByteBuffer[0];
+  }
+}
@@ -0,0 +1,277 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * An index, that is read from a file written by MappedIndexWriter. The file is
+ * mapped into memory, so opening the index takes no time (regardless of its
+ * size), the pages are loaded by the operating system on demand and are shared
+ * by all processes, that open the same file. The posting lists are stored
+ * compressed (as varint gaps) and are decoded on each lookup. The index is
+ * immutable and can be queried by several threads.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class MappedIndex implements Index, Closeable {
+  /** An empty posting list. */
+  protected static final int[] EMPTY_POSTINGS = new int[0];
+  /** The charset of the terms and records. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+  /** The mapped file. */
+  protected MappedFile file;
+  /** The number of records. */
+  protected int numOfRecords;
+  /** The number of terms. */
+  protected int numOfTerms;
+  /** The offset of the record table. */
+  protected long recordTableOffset;
+  /** The offset of the term table. */
+  protected long termTableOffset;
+
+  /**
+   * Opens the given index file.
+   * 
+   * @param file
+   *          the index file.
+   * @throws IOException
+   *           if the file can't be read or isn't an index file.
+   */
+  public MappedIndex(File file) throws IOException {
+    if (!isIndexFile(file)) {
+      throw new IOException(file + " isn't an index file of version "
+          + MappedIndexWriter.VERSION + ".");
+    }
+    this.file = new MappedFile(file);
+    this.numOfRecords = this.file.getInt(8);
+    this.numOfTerms = this.file.getInt(12);
+    this.recordTableOffset = this.file.getLong(16);
+    this.termTableOffset = this.file.getLong(24);
+  }
+
+  /**
+   * Returns true, if the given file is an index file, that can be opened by
+   * this class.
+   * 
+   * @param file
+   *          the file to check.
+   * @return true, if the given file is an index file.
+   * @throws IOException
+   *           if reading the file fails.
+   */
+  public static boolean isIndexFile(File file) throws IOException {
+    if (!file.isFile() || file.length() < MappedIndexWriter.HEADER_LENGTH) {
+      return false;
+    }
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+      return dis.readInt() == MappedIndexWriter.MAGIC
+          && dis.readInt() == MappedIndexWriter.VERSION;
+    }
+  }
+
+  @Override
+  public int[] getPostings(String term) {
+    int termId = getTermId(term);
+    return termId > -1 ? getPostings(termId) : EMPTY_POSTINGS;
+  }
+
+  @Override
+  public int getNumOfPostings(String term) {
+    int termId = getTermId(term);
+    if (termId < 0) {
+      return 0;
+    }
+    long[] pos = { getTermOffset(termId) };
+    skipString(pos);
+    return readVarInt(pos);
+  }
+
+  /**
+   * Returns the posting list of the term with the given id.
+   * 
+   * @param termId
+   *          the id of the term (its position in the term table).
+   * @return the ids of the records, that contain the term.
+   */
+  public int[] getPostings(int termId) {
+    long[] pos = { getTermOffset(termId) };
+    skipString(pos);
+    int[] postings = new int[readVarInt(pos)];
+    int id = 0;
+    for (int i = 0; i < postings.length; i++) {
+      id += readVarInt(pos);
+      postings[i] = id;
+    }
+    return postings;
+  }
+
+  /**
+   * Returns the term with the given id.
+   * 
+   * @param termId
+   *          the id of the term (its position in the term table).
+   * @return the term.
+   */
+  public String getTerm(int termId) {
+    long[] pos = { getTermOffset(termId) };
+    return readString(pos);
+  }
+
+  /**
+   * Returns the id of the given term, i.e. its position in the term table.
+   * 
+   * @param term
+   *          the term.
+   * @return the id of the term or -1 if the index doesn't contain the term.
+   */
+  public int getTermId(String term) {
+    byte[] bytes = term.getBytes(UTF8);
+    int low = 0;
+    int high = numOfTerms - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareTerm(getTermOffset(mid), bytes);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares the term at the given offset with the given utf-8 bytes, without
+   * decoding the term.
+   * 
+   * @param offset
+   *          the offset of the term.
+   * @param bytes
+   *          the bytes to compare with.
+   * @return a negative number, zero or a positive number, if the term is less
+   *         than, equal to or greater than the given bytes.
+   */
+  protected int compareTerm(long offset, byte[] bytes) {
+    long[] pos = { offset };
+    int length = readVarInt(pos);
+    int minLength = Math.min(length, bytes.length);
+    for (int i = 0; i < minLength; i++) {
+      int diff = (file.get(pos[0] + i) & 0xFF) - (bytes[i] & 0xFF);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return length - bytes.length;
+  }
+
+  @Override
+  public IndexRecord getRecord(int id) {
+    if (id < 0 || id >= numOfRecords) {
+      throw new IndexOutOfBoundsException("No record with id " + id);
+    }
+    long[] pos = { file.getLong(recordTableOffset + 8L * id) };
+    IndexRecord record = new IndexRecord();
+    record.key = readString(pos);
+    record.authors = readString(pos);
+    record.year = readString(pos);
+    record.title = readString(pos);
+    record.journal = readString(pos);
+    record.pages = readString(pos);
+    record.url = readString(pos);
+    record.ee = readString(pos);
+    return record;
+  }
+
+  @Override
+  public Index getSnapshot() {
+    return this;
+  }
+
+  @Override
+  public int getNumOfRecords() {
+    return numOfRecords;
+  }
+
+  /**
+   * Returns the number of terms in the index.
+   * 
+   * @return the number of terms.
+   */
+  public int getNumOfTerms() {
+    return numOfTerms;
+  }
+
+  /**
+   * Returns the offset of the term with the given id.
+   * 
+   * @param termId
+   *          the id of the term.
+   * @return the offset of the term.
+   */
+  protected long getTermOffset(int termId) {
+    if (termId < 0 || termId >= numOfTerms) {
+      throw new IndexOutOfBoundsException("No term with id " + termId);
+    }
+    return file.getLong(termTableOffset + 8L * termId);
+  }
+
+  /**
+   * Reads a varint length and the following utf-8 bytes as string.
+   * 
+   * @param pos
+   *          the position to read from, is advanced behind the string.
+   * @return the string.
+   */
+  protected String readString(long[] pos) {
+    int length = readVarInt(pos);
+    if (length == 0) {
+      return "";
+    }
+    byte[] bytes = new byte[length];
+    file.get(pos[0], bytes, 0, length);
+    pos[0] += length;
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * Skips a varint length and the following bytes.
+   * 
+   * @param pos
+   *          the position to read from, is advanced behind the string.
+   */
+  protected void skipString(long[] pos) {
+    int length = readVarInt(pos);
+    pos[0] += length;
+  }
+
+  /**
+   * Reads a varint.
+   * 
+   * @param pos
+   *          the position to read from, is advanced behind the varint.
+   * @return the value of the varint.
+   */
+  protected int readVarInt(long[] pos) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = file.get(pos[0]++);
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  @Override
+  public void close() {
+    file.close();
+  }
+}
@@ -0,0 +1,317 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * Writes an index into a single file, that can be opened by MappedIndex. The
+ * records have to be added first (in the order of their ids), followed by the
+ * terms (in ascending order of their utf-8 bytes, see
+ * {@link #TERM_COMPARATOR}). The file is written sequentially, only the
+ * offset tables are held in memory.
+ * 
+ * The layout of the file is as follows (all numbers are big endian, varints
+ * are unsigned LEB128):
+ * 
+ * <pre>
+ * header:       magic (int), version (int), #records (int), #terms (int),
+ *               offset of the record table (long),
+ *               offset of the term table (long), padding up to 64 bytes.
+ * records:      per record: key, authors, year, title, journal, pages, url,
+ *               ee, each as varint length + utf-8 bytes.
+ * record table: per record the offset of the record (long).
+ * terms:        per term: varint length + utf-8 bytes of the term,
+ *               varint number of postings, postings as varint gaps.
+ * term table:   per term the offset of the term (long).
+ * </pre>
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class MappedIndexWriter implements Closeable {
+  /** The magic number, that identifies an index file ("ICIX"). */
+  public static final int MAGIC = 0x49434958;
+  /** The version of the file format. */
+  public static final int VERSION = 1;
+  /** The length of the header. */
+  public static final int HEADER_LENGTH = 64;
+  /** The charset of the terms and records. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+  /** The order of the terms in the index file. */
+  public static final Comparator<String> TERM_COMPARATOR =
+      new Comparator<String>() {
+        @Override
+        public int compare(String s1, String s2) {
+          return compareBytes(s1.getBytes(UTF8), s2.getBytes(UTF8));
+        }
+      };
+
+  /** The file to write. */
+  protected File file;
+  /** The stream to the file. */
+  protected CountingOutputStream out;
+  /** The offsets of the records. */
+  protected long[] recordOffsets = new long[1024];
+  /** The number of records. */
+  protected int numOfRecords;
+  /** The offsets of the terms. */
+  protected long[] termOffsets = new long[1024];
+  /** The number of terms. */
+  protected int numOfTerms;
+  /** The utf-8 bytes of the previous term. */
+  protected byte[] previousTerm;
+  /** The offset of the record table (-1 if it isn't written yet). */
+  protected long recordTableOffset = -1;
+
+  /**
+   * Creates a new writer for the given file. An existing file is overwritten.
+   * 
+   * @param file
+   *          the file to write.
+   * @throws IOException
+   *           if the file can't be opened.
+   */
+  public MappedIndexWriter(File file) throws IOException {
+    this.file = file;
+    this.out = new CountingOutputStream(new BufferedOutputStream(
+        new FileOutputStream(file), 1 << 16));
+    // The header is written on close.
+    out.write(new byte[HEADER_LENGTH]);
+  }
+
+  /**
+   * Writes the given index into the given file.
+   * 
+   * @param index
+   *          the index to write.
+   * @param file
+   *          the file to write.
+   * @throws IOException
+   *           if writing the file fails.
+   */
+  public static void write(InMemoryIndex index, File file) throws IOException {
+    try (MappedIndexWriter writer = new MappedIndexWriter(file)) {
+      for (int i = 0; i < index.getNumOfRecords(); i++) {
+        writer.addRecord(index.getRecord(i));
+      }
+      List<String> terms = index.getTerms();
+      Collections.sort(terms, TERM_COMPARATOR);
+      for (String term : terms) {
+        writer.addTerm(term, index.getPostings(term));
+      }
+    }
+  }
+
+  /**
+   * Appends the given record. The id of the record is the number of records
+   * added before.
+   * 
+   * @param record
+   *          the record to add.
+   * @throws IOException
+   *           if writing the record fails.
+   */
+  public void addRecord(IndexRecord record) throws IOException {
+    if (recordTableOffset > -1) {
+      throw new IllegalStateException("The records must be added before the "
+          + "terms.");
+    }
+    if (numOfRecords == recordOffsets.length) {
+      recordOffsets = Arrays.copyOf(recordOffsets, numOfRecords * 2);
+    }
+    recordOffsets[numOfRecords++] = out.getByteCount();
+    writeString(record.key);
+    writeString(record.authors);
+    writeString(record.year);
+    writeString(record.title);
+    writeString(record.journal);
+    writeString(record.pages);
+    writeString(record.url);
+    writeString(record.ee);
+  }
+
+  /**
+   * Appends the given term with its posting list. The terms must be added in
+   * ascending order.
+   * 
+   * @param term
+   *          the term.
+   * @param postings
+   *          the ids of the records, that contain the term, in ascending
+   *          order.
+   * @throws IOException
+   *           if writing the term fails.
+   */
+  public void addTerm(String term, int[] postings) throws IOException {
+    addTerm(term, postings, postings.length);
+  }
+
+  /**
+   * Appends the given term with the first ids of the given array as posting
+   * list. The terms must be added in ascending order.
+   * 
+   * @param term
+   *          the term.
+   * @param postings
+   *          the ids of the records, that contain the term, in ascending
+   *          order.
+   * @param length
+   *          the number of ids to write.
+   * @throws IOException
+   *           if writing the term fails.
+   */
+  public void addTerm(String term, int[] postings, int length)
+    throws IOException {
+    byte[] bytes = term.getBytes(UTF8);
+    if (previousTerm != null && compareBytes(previousTerm, bytes) >= 0) {
+      throw new IllegalArgumentException("The terms must be added in "
+          + "ascending order: " + term);
+    }
+    previousTerm = bytes;
+    writeRecordTable();
+
+    if (numOfTerms == termOffsets.length) {
+      termOffsets = Arrays.copyOf(termOffsets, numOfTerms * 2);
+    }
+    termOffsets[numOfTerms++] = out.getByteCount();
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+    writeVarInt(out, length);
+    int previous = 0;
+    for (int i = 0; i < length; i++) {
+      if (i > 0 && postings[i] <= previous) {
+        throw new IllegalArgumentException("The postings of " + term
+            + " aren't in ascending order.");
+      }
+      writeVarInt(out, postings[i] - previous);
+      previous = postings[i];
+    }
+  }
+
+  /**
+   * Writes the term table and the header and closes the file.
+   * 
+   * @throws IOException
+   *           if writing the file fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (out == null) {
+      return;
+    }
+    writeRecordTable();
+    long termTableOffset = out.getByteCount();
+    writeLongs(termOffsets, numOfTerms);
+    out.close();
+    out = null;
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+      raf.writeInt(numOfRecords);
+      raf.writeInt(numOfTerms);
+      raf.writeLong(recordTableOffset);
+      raf.writeLong(termTableOffset);
+    }
+  }
+
+  /**
+   * Writes the record table, if it isn't written yet.
+   * 
+   * @throws IOException
+   *           if writing the table fails.
+   */
+  protected void writeRecordTable() throws IOException {
+    if (recordTableOffset < 0) {
+      recordTableOffset = out.getByteCount();
+      writeLongs(recordOffsets, numOfRecords);
+    }
+  }
+
+  /**
+   * Writes the first values of the given array.
+   * 
+   * @param values
+   *          the values to write.
+   * @param length
+   *          the number of values to write.
+   * @throws IOException
+   *           if writing fails.
+   */
+  protected void writeLongs(long[] values, int length) throws IOException {
+    for (int i = 0; i < length; i++) {
+      long value = values[i];
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        out.write((int) (value >>> shift));
+      }
+    }
+  }
+
+  /**
+   * Writes the given string as varint length and utf-8 bytes.
+   * 
+   * @param s
+   *          the string to write.
+   * @throws IOException
+   *           if writing fails.
+   */
+  protected void writeString(String s) throws IOException {
+    byte[] bytes = (s != null ? s : "").getBytes(UTF8);
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Writes the given non-negative int as varint: 7 bits per byte, the highest
+   * bit is set in all bytes but the last.
+   * 
+   * @param os
+   *          the stream to write to.
+   * @param value
+   *          the value to write.
+   * @throws IOException
+   *           if writing fails.
+   */
+  public static void writeVarInt(OutputStream os, int value)
+    throws IOException {
+    while ((value & ~0x7F) != 0) {
+      os.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    os.write(value);
+  }
+
+  /**
+   * Compares the given byte arrays lexicographically, with the bytes taken as
+   * unsigned values. For utf-8 bytes, this is the order of the code points.
+   * 
+   * @param b1
+   *          the first array.
+   * @param b2
+   *          the second array.
+   * @return a negative number, zero or a positive number, if the first array
+   *         is less than, equal to or greater than the second.
+   */
+  public static int compareBytes(byte[] b1, byte[] b2) {
+    int length = Math.min(b1.length, b2.length);
+    for (int i = 0; i < length; i++) {
+      int diff = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return b1.length - b2.length;
+  }
+}
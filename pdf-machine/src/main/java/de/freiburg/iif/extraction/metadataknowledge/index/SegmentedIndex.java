@@ -0,0 +1,836 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import de.freiburg.iif.extraction.metadataknowledge.index.DblpImporter.SegmentCursor;
+
+/**
+ * An index, that consists of several segments (in the format of MappedIndex)
+ * in a directory and can be updated without rebuilding it.
+ *
+ * An update (e.g. a daily dblp delta) is imported into a new, small segment.
+ * Records of older segments with the same key as a new record, as well as
+ * explicitly deleted records, are marked as deleted in a tombstone bitset of
+ * their segment. Queries are answered across all segments; the ids of the
+ * records of a segment are shifted by the number of ids of the preceding
+ * segments. A compaction merges all segments into a single one and drops the
+ * deleted records.
+ *
+ * The current state of the index is an immutable snapshot, that is replaced on
+ * each update. So queries are never blocked by updates and all users of the
+ * index see the updates immediately. The list of the segments and their
+ * tombstones is stored in the file "segments", that is replaced atomically,
+ * such that the index survives a crash during an update.
+ *
+ * Optionally, a background thread imports the files, that are put into the
+ * directory "incoming" (dblp.xml deltas as "*.xml" and lists of deleted keys,
+ * one per line, as "*.deleted") and compacts the index, if it has too many
+ * segments. The directory must not be updated by several processes at once.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class SegmentedIndex implements Index, Closeable {
+  /** The log. */
+  protected static final Log LOG = LogFactory.getLog(SegmentedIndex.class);
+  /** The name of the file, that lists the segments. */
+  public static final String MANIFEST_FILE = "segments";
+  /** The name of the directory with the updates to import. */
+  public static final String INCOMING_DIR = "incoming";
+  /** The extension of deltas in the incoming directory. */
+  public static final String DELTA_EXTENSION = ".xml";
+  /** The extension of lists of deleted keys in the incoming directory. */
+  public static final String DELETED_EXTENSION = ".deleted";
+  /** The default number of segments, above which the index is compacted. */
+  public static final int DEFAULT_MAX_NUM_OF_SEGMENTS = 8;
+  /** The default interval of the background maintenance in ms. */
+  public static final long DEFAULT_MAINTENANCE_INTERVAL = 60000;
+  /** An empty posting list. */
+  protected static final int[] EMPTY_POSTINGS = new int[0];
+  /** The charset of the manifest. */
+  protected static final Charset UTF8 = Charset.forName("UTF-8");
+  /** The directory of the index. */
+  protected File dir;
+  /** The number of segments, above which the index is compacted. */
+  protected int maxNumOfSegments;
+  /** The current state of the index. */
+  protected volatile Snapshot snapshot;
+  /** The number of the next file to create. */
+  protected int nextFileNumber;
+  /** The listeners, that are notified about updates. */
+  protected List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  /** The executor of the background maintenance. */
+  protected ScheduledExecutorService maintenance;
+
+  /**
+   * Opens the index in the given directory. Creates an empty index, if the
+   * directory doesn't contain an index.
+   *
+   * @param dir
+   *          the directory of the index.
+   * @throws IOException
+   *           if reading the index fails.
+   */
+  public SegmentedIndex(File dir) throws IOException {
+    this(dir, DEFAULT_MAX_NUM_OF_SEGMENTS);
+  }
+
+  /**
+   * Opens the index in the given directory. Creates an empty index, if the
+   * directory doesn't contain an index.
+   *
+   * @param dir
+   *          the directory of the index.
+   * @param maxNumOfSegments
+   *          the number of segments, above which the index is compacted by
+   *          the background maintenance.
+   * @throws IOException
+   *           if reading the index fails.
+   */
+  public SegmentedIndex(File dir, int maxNumOfSegments) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Couldn't create the directory " + dir);
+    }
+    this.dir = dir;
+    this.maxNumOfSegments = maxNumOfSegments;
+    this.snapshot = readManifest();
+    deleteUnreferencedFiles();
+  }
+
+  // ___________________________________________________________________________
+  // Updates.
+
+  /**
+   * Imports the given delta and deletes the records with the given keys. The
+   * records of the delta replace existing records with the same key. The
+   * deletions are applied to the existing records only.
+   *
+   * @param deltaXml
+   *          the stream of the delta in dblp.xml format (may be null). The
+   *          stream is closed.
+   * @param deletedKeys
+   *          the keys of the records to delete (may be null).
+   * @throws IOException
+   *           if importing the delta fails.
+   */
+  public synchronized void update(InputStream deltaXml,
+    Collection<String> deletedKeys) throws IOException {
+    Snapshot current = snapshot;
+    List<Segment> segments = new ArrayList<Segment>(current.segments);
+    // The tombstones of the changed segments (copies of the current ones).
+    Map<Segment, BitSet> changed = new HashMap<Segment, BitSet>();
+
+    if (deletedKeys != null) {
+      for (String key : deletedKeys) {
+        delete(segments, changed, key, Integer.MAX_VALUE);
+      }
+    }
+
+    Segment newSegment = null;
+    if (deltaXml != null) {
+      File file = new File(dir, nextFileName(".idx"));
+      DblpImporter importer = new DblpImporter(1,
+          DblpImporter.DEFAULT_BATCH_SIZE,
+          DblpImporter.DEFAULT_MAX_POSTINGS_PER_SEGMENT, dir);
+      if (importer.importXml(deltaXml, file) > 0) {
+        newSegment = new Segment(file.getName(), new MappedIndex(file),
+            new BitSet(), null);
+        segments.add(newSegment);
+        // Delete the older versions of the new records.
+        for (int id = 0; id < newSegment.index.getNumOfRecords(); id++) {
+          delete(segments, changed, newSegment.index.getRecord(id).key, id);
+        }
+      } else {
+        deleteFile(file);
+      }
+    }
+
+    if (newSegment == null && changed.isEmpty()) {
+      return;
+    }
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      BitSet deletes = changed.get(segment);
+      if (deletes != null) {
+        String deletesName = nextFileName(".del");
+        writeDeletes(new File(dir, deletesName), deletes);
+        segments.set(i, new Segment(segment.name, segment.index, deletes,
+            deletesName));
+      }
+    }
+    publish(new Snapshot(segments), current);
+  }
+
+  /**
+   * Deletes the records with the given keys.
+   *
+   * @param keys
+   *          the keys of the records to delete.
+   * @throws IOException
+   *           if writing the tombstones fails.
+   */
+  public void delete(Collection<String> keys) throws IOException {
+    update(null, keys);
+  }
+
+  /**
+   * Marks the records with the given key as deleted, up to the given id in
+   * the last segment.
+   *
+   * @param segments
+   *          the segments.
+   * @param changed
+   *          the changed tombstones, per segment.
+   * @param key
+   *          the key of the records to delete.
+   * @param maxIdInLastSegment
+   *          the id in the last segment, up to which (exclusive) the records
+   *          are deleted.
+   */
+  protected void delete(List<Segment> segments, Map<Segment, BitSet> changed,
+    String key, int maxIdInLastSegment) {
+    for (int i = 0; i < segments.size(); i++) {
+      Segment segment = segments.get(i);
+      int maxId = i == segments.size() - 1 ? maxIdInLastSegment
+          : Integer.MAX_VALUE;
+      for (int id : segment.index.getPostings(KEY_PREFIX + key)) {
+        if (id >= maxId) {
+          break;
+        }
+        BitSet deletes = changed.get(segment);
+        if (deletes == null) {
+          deletes = (BitSet) segment.deletes.clone();
+          changed.put(segment, deletes);
+        }
+        deletes.set(id);
+      }
+    }
+  }
+
+  /**
+   * Merges all segments into a single segment, without the deleted records.
+   * Updates are blocked during the compaction, queries are not.
+   *
+   * @return true, if the index was compacted.
+   * @throws IOException
+   *           if writing the new segment fails.
+   */
+  public synchronized boolean compact() throws IOException {
+    Snapshot current = snapshot;
+    List<Segment> segments = current.segments;
+    if (segments.isEmpty()
+        || (segments.size() == 1 && segments.get(0).deletes.isEmpty())) {
+      return false;
+    }
+    long start = System.currentTimeMillis();
+
+    File file = new File(dir, nextFileName(".idx"));
+    try (MappedIndexWriter writer = new MappedIndexWriter(file)) {
+      // Write the remaining records and map their old ids to the new ids.
+      int[][] newIds = new int[segments.size()][];
+      int numOfRecords = 0;
+      for (int i = 0; i < segments.size(); i++) {
+        Segment segment = segments.get(i);
+        newIds[i] = new int[segment.index.getNumOfRecords()];
+        for (int id = 0; id < newIds[i].length; id++) {
+          if (segment.deletes.get(id)) {
+            newIds[i][id] = -1;
+          } else {
+            writer.addRecord(segment.index.getRecord(id));
+            newIds[i][id] = numOfRecords++;
+          }
+        }
+      }
+
+      // Merge the terms of the segments.
+      PriorityQueue<SegmentCursor> queue = new PriorityQueue<SegmentCursor>(
+          segments.size(), SegmentCursor.COMPARATOR);
+      Map<SegmentCursor, Integer> positions =
+          new HashMap<SegmentCursor, Integer>();
+      for (int i = 0; i < segments.size(); i++) {
+        SegmentCursor cursor = new SegmentCursor(segments.get(i).index);
+        positions.put(cursor, i);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+      int[] postings = new int[1024];
+      while (!queue.isEmpty()) {
+        SegmentCursor first = queue.peek();
+        String term = first.term;
+        byte[] termBytes = first.termBytes;
+        int length = 0;
+        while (!queue.isEmpty()
+            && Arrays.equals(queue.peek().termBytes, termBytes)) {
+          SegmentCursor cursor = queue.poll();
+          int[] map = newIds[positions.get(cursor)];
+          int[] segmentPostings = cursor.segment.getPostings(cursor.termId);
+          if (length + segmentPostings.length > postings.length) {
+            postings = Arrays.copyOf(postings, Math.max(2 * postings.length,
+                length + segmentPostings.length));
+          }
+          for (int id : segmentPostings) {
+            if (map[id] > -1) {
+              postings[length++] = map[id];
+            }
+          }
+          if (cursor.next()) {
+            queue.add(cursor);
+          }
+        }
+        if (length > 0) {
+          Arrays.sort(postings, 0, length);
+          writer.addTerm(term, postings, length);
+        }
+      }
+    } catch (IOException e) {
+      deleteFile(file);
+      throw e;
+    }
+
+    List<Segment> compacted = new ArrayList<Segment>();
+    compacted.add(new Segment(file.getName(), new MappedIndex(file),
+        new BitSet(), null));
+    publish(new Snapshot(compacted), current);
+    LOG.info("Compacted " + segments.size() + " segments in "
+        + (System.currentTimeMillis() - start) + "ms.");
+    return true;
+  }
+
+  /**
+   * Returns true, if the index has more segments than allowed.
+   *
+   * @return true, if the index should be compacted.
+   */
+  public boolean needsCompaction() {
+    return snapshot.segments.size() > maxNumOfSegments;
+  }
+
+  /**
+   * Imports the files in the incoming directory (in the order of their
+   * names) and deletes them.
+   *
+   * @return the number of imported files.
+   * @throws IOException
+   *           if importing a file fails.
+   */
+  public synchronized int importIncoming() throws IOException {
+    File[] files = new File(dir, INCOMING_DIR).listFiles();
+    if (files == null) {
+      return 0;
+    }
+    Arrays.sort(files);
+    int numOfImportedFiles = 0;
+    for (File file : files) {
+      String name = file.getName();
+      if (name.endsWith(DELTA_EXTENSION)) {
+        update(new FileInputStream(file), null);
+      } else if (name.endsWith(DELETED_EXTENSION)) {
+        delete(readLines(file));
+      } else {
+        continue;
+      }
+      LOG.info("Imported " + file);
+      deleteFile(file);
+      numOfImportedFiles++;
+    }
+    return numOfImportedFiles;
+  }
+
+  /**
+   * Starts a background thread, that periodically imports the incoming files
+   * and compacts the index, if needed.
+   *
+   * @param interval
+   *          the interval in ms.
+   */
+  public synchronized void startMaintenance(long interval) {
+    if (maintenance != null) {
+      return;
+    }
+    maintenance = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "SegmentedIndex maintenance");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    maintenance.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          importIncoming();
+          if (needsCompaction()) {
+            compact();
+          }
+        } catch (IOException e) {
+          LOG.error("The maintenance of the index " + dir + " failed.", e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background maintenance.
+   */
+  @Override
+  public synchronized void close() {
+    if (maintenance != null) {
+      maintenance.shutdownNow();
+      maintenance = null;
+    }
+  }
+
+  /**
+   * Writes the manifest, replaces the current snapshot with the given one,
+   * deletes the obsolete files and notifies the listeners.
+   *
+   * @param newSnapshot
+   *          the new snapshot.
+   * @param oldSnapshot
+   *          the replaced snapshot.
+   * @throws IOException
+   *           if writing the manifest fails.
+   */
+  protected void publish(Snapshot newSnapshot, Snapshot oldSnapshot)
+    throws IOException {
+    writeManifest(newSnapshot);
+    snapshot = newSnapshot;
+
+    // Queries on the old snapshot still work on the mapped files.
+    Set<String> referenced = newSnapshot.getFileNames();
+    for (String name : oldSnapshot.getFileNames()) {
+      if (!referenced.contains(name)) {
+        deleteFile(new File(dir, name));
+      }
+    }
+    for (Listener listener : listeners) {
+      listener.indexChanged(this);
+    }
+  }
+
+  // ___________________________________________________________________________
+  // Files.
+
+  /**
+   * Returns the name of a new file in the index directory.
+   *
+   * @param extension
+   *          the extension of the file.
+   * @return the name of the new file.
+   */
+  protected String nextFileName(String extension) {
+    return String.format("segment-%08d%s", nextFileNumber++, extension);
+  }
+
+  /**
+   * Reads the manifest. Returns an empty snapshot, if there is no manifest.
+   *
+   * @return the snapshot of the manifest.
+   * @throws IOException
+   *           if reading the manifest or a segment fails.
+   */
+  protected Snapshot readManifest() throws IOException {
+    List<Segment> segments = new ArrayList<Segment>();
+    File manifest = new File(dir, MANIFEST_FILE);
+    if (manifest.isFile()) {
+      List<String> lines = readLines(manifest);
+      nextFileNumber = Integer.parseInt(lines.get(0).trim());
+      for (String line : lines.subList(1, lines.size())) {
+        String[] fields = line.trim().split(" ");
+        MappedIndex index = new MappedIndex(new File(dir, fields[0]));
+        String deletesName = fields.length > 1 ? fields[1] : null;
+        BitSet deletes = deletesName != null ? readDeletes(new File(dir,
+            deletesName)) : new BitSet();
+        segments.add(new Segment(fields[0], index, deletes, deletesName));
+      }
+    }
+    return new Snapshot(segments);
+  }
+
+  /**
+   * Writes the manifest of the given snapshot, by replacing the file
+   * atomically.
+   *
+   * @param snapshot
+   *          the snapshot.
+   * @throws IOException
+   *           if writing the manifest fails.
+   */
+  protected void writeManifest(Snapshot snapshot) throws IOException {
+    File tmp = new File(dir, MANIFEST_FILE + ".tmp");
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(tmp), UTF8))) {
+      writer.write(nextFileNumber + "\n");
+      for (Segment segment : snapshot.segments) {
+        writer.write(segment.name);
+        if (segment.deletesName != null) {
+          writer.write(" " + segment.deletesName);
+        }
+        writer.write("\n");
+      }
+    }
+    Files.move(tmp.toPath(), new File(dir, MANIFEST_FILE).toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Deletes the segment files, that aren't referenced by the manifest (e.g.
+   * because an update was interrupted).
+   */
+  protected void deleteUnreferencedFiles() {
+    Set<String> referenced = snapshot.getFileNames();
+    File[] files = dir.listFiles();
+    for (File file : files != null ? files : new File[0]) {
+      String name = file.getName();
+      if (file.isFile() && name.startsWith("segment")
+          && !name.equals(MANIFEST_FILE) && !referenced.contains(name)) {
+        deleteFile(file);
+      }
+    }
+  }
+
+  /**
+   * Reads the tombstones from the given file.
+   *
+   * @param file
+   *          the file.
+   * @return the tombstones.
+   * @throws IOException
+   *           if reading the file fails.
+   */
+  protected BitSet readDeletes(File file) throws IOException {
+    try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+      long[] words = new long[dis.readInt()];
+      for (int i = 0; i < words.length; i++) {
+        words[i] = dis.readLong();
+      }
+      return BitSet.valueOf(words);
+    }
+  }
+
+  /**
+   * Writes the given tombstones to the given file.
+   *
+   * @param file
+   *          the file.
+   * @param deletes
+   *          the tombstones.
+   * @throws IOException
+   *           if writing the file fails.
+   */
+  protected void writeDeletes(File file, BitSet deletes) throws IOException {
+    try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(
+        file))) {
+      long[] words = deletes.toLongArray();
+      dos.writeInt(words.length);
+      for (long word : words) {
+        dos.writeLong(word);
+      }
+    }
+  }
+
+  /**
+   * Reads the non-empty lines of the given file.
+   *
+   * @param file
+   *          the file.
+   * @return the lines.
+   * @throws IOException
+   *           if reading the file fails.
+   */
+  protected List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(file), UTF8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.trim().isEmpty()) {
+          lines.add(line.trim());
+        }
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Deletes the given file.
+   *
+   * @param file
+   *          the file.
+   */
+  protected void deleteFile(File file) {
+    if (file.exists() && !file.delete()) {
+      file.deleteOnExit();
+    }
+  }
+
+  // ___________________________________________________________________________
+  // Queries.
+
+  /**
+   * Adds a listener, that is notified about updates of the index.
+   *
+   * @param listener
+   *          the listener.
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes the given listener.
+   *
+   * @param listener
+   *          the listener.
+   */
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the number of segments.
+   *
+   * @return the number of segments.
+   */
+  public int getNumOfSegments() {
+    return snapshot.segments.size();
+  }
+
+  @Override
+  public int[] getPostings(String term) {
+    return snapshot.getPostings(term);
+  }
+
+  @Override
+  public int getNumOfPostings(String term) {
+    return snapshot.getNumOfPostings(term);
+  }
+
+  @Override
+  public IndexRecord getRecord(int id) {
+    return snapshot.getRecord(id);
+  }
+
+  @Override
+  public int getNumOfRecords() {
+    return snapshot.getNumOfRecords();
+  }
+
+  @Override
+  public Index getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * The interface of a listener, that is notified about updates.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  public static interface Listener {
+    /**
+     * Is called after the given index was updated.
+     *
+     * @param index
+     *          the updated index.
+     */
+    public void indexChanged(SegmentedIndex index);
+  }
+
+  /**
+   * A segment of the index with its tombstones.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Segment {
+    /** The file name of the segment. */
+    protected final String name;
+    /** The segment. */
+    protected final MappedIndex index;
+    /** The ids of the deleted records (must not be modified). */
+    protected final BitSet deletes;
+    /** The file name of the tombstones (null if there are none). */
+    protected final String deletesName;
+
+    /**
+     * The constructor.
+     *
+     * @param name
+     *          the file name of the segment.
+     * @param index
+     *          the segment.
+     * @param deletes
+     *          the ids of the deleted records.
+     * @param deletesName
+     *          the file name of the tombstones (null if there are none).
+     */
+    protected Segment(String name, MappedIndex index, BitSet deletes,
+      String deletesName) {
+      this.name = name;
+      this.index = index;
+      this.deletes = deletes;
+      this.deletesName = deletesName;
+    }
+  }
+
+  /**
+   * An immutable state of the index.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Snapshot implements Index {
+    /** The segments. */
+    protected final List<Segment> segments;
+    /** The first id of each segment. */
+    protected final int[] bases;
+    /** The number of records, that aren't deleted. */
+    protected final int numOfRecords;
+
+    /**
+     * The constructor.
+     *
+     * @param segments
+     *          the segments.
+     */
+    protected Snapshot(List<Segment> segments) {
+      this.segments = Collections.unmodifiableList(segments);
+      this.bases = new int[segments.size()];
+      int base = 0;
+      int numOfRecords = 0;
+      for (int i = 0; i < segments.size(); i++) {
+        Segment segment = segments.get(i);
+        bases[i] = base;
+        base += segment.index.getNumOfRecords();
+        numOfRecords += segment.index.getNumOfRecords()
+            - segment.deletes.cardinality();
+      }
+      this.numOfRecords = numOfRecords;
+    }
+
+    @Override
+    public int[] getPostings(String term) {
+      if (segments.size() == 1 && segments.get(0).deletes.isEmpty()) {
+        return segments.get(0).index.getPostings(term);
+      }
+      int[] result = EMPTY_POSTINGS;
+      int size = 0;
+      for (int i = 0; i < segments.size(); i++) {
+        Segment segment = segments.get(i);
+        int[] postings = segment.index.getPostings(term);
+        if (size + postings.length > result.length) {
+          result = Arrays.copyOf(result, size + postings.length);
+        }
+        for (int id : postings) {
+          if (!segment.deletes.get(id)) {
+            result[size++] = bases[i] + id;
+          }
+        }
+      }
+      return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    @Override
+    public int getNumOfPostings(String term) {
+      int numOfPostings = 0;
+      for (Segment segment : segments) {
+        if (segment.deletes.isEmpty()) {
+          numOfPostings += segment.index.getNumOfPostings(term);
+        } else {
+          for (int id : segment.index.getPostings(term)) {
+            if (!segment.deletes.get(id)) {
+              numOfPostings++;
+            }
+          }
+        }
+      }
+      return numOfPostings;
+    }
+
+    @Override
+    public IndexRecord getRecord(int id) {
+      int i = Arrays.binarySearch(bases, id);
+      if (i < 0) {
+        i = -i - 2;
+      }
+      // Skip empty segments with the same base.
+      while (i < bases.length - 1 && bases[i + 1] <= id) {
+        i++;
+      }
+      if (i < 0) {
+        throw new IndexOutOfBoundsException("No record with id " + id);
+      }
+      return segments.get(i).index.getRecord(id - bases[i]);
+    }
+
+    /**
+     * Returns the number of records, that aren't deleted. The ids of the
+     * records may be larger.
+     *
+     * @return the number of records, that aren't deleted.
+     */
+    @Override
+    public int getNumOfRecords() {
+      return numOfRecords;
+    }
+
+    @Override
+    public Index getSnapshot() {
+      return this;
+    }
+
+    /**
+     * Returns the names of the files of this snapshot.
+     *
+     * @return the names of the files.
+     */
+    protected Set<String> getFileNames() {
+      Set<String> names = new HashSet<String>();
+      for (Segment segment : segments) {
+        names.add(segment.name);
+        if (segment.deletesName != null) {
+          names.add(segment.deletesName);
+        }
+      }
+      return names;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The class TermNormalizer that splits texts into the terms of the index, in
+ * the same way as the C++ index in metadata-knowledge does: the text is
+ * lowercased, the diacritics are removed, the text is split at each character,
+ * which is neither a letter nor a digit, and stopwords are dropped.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class TermNormalizer {
+  /** The name of the file containing the stopwords (one per line). */
+  protected static final String STOPWORDS_FILE = "stopwords";
+  /** The stopwords. */
+  protected static Set<String> stopWords;
+
+  /**
+   * Splits the given text into its terms. The terms are returned in the order
+   * of their occurrence, duplicates are kept.
+   * 
+   * @param text
+   *          the text to normalize.
+   * @return the terms of the text.
+   */
+  public static List<String> normalize(String text) {
+    List<String> terms = new ArrayList<String>();
+    if (text == null || text.isEmpty()) {
+      return terms;
+    }
+
+    String lowercased = deaccent(text.toLowerCase());
+    int start = -1;
+    for (int i = 0; i <= lowercased.length(); i++) {
+      boolean isWordChar = i < lowercased.length()
+          && Character.isLetterOrDigit(lowercased.charAt(i));
+      if (isWordChar && start < 0) {
+        start = i;
+      } else if (!isWordChar && start > -1) {
+        String term = lowercased.substring(start, i);
+        if (!isStopWord(term)) {
+          terms.add(term);
+        }
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Splits the given text into its terms. The terms are sorted and
+   * duplicates are removed.
+   * 
+   * @param text
+   *          the text to normalize.
+   * @return the sorted, unique terms of the text.
+   */
+  public static List<String> normalizeUnique(String text) {
+    return new ArrayList<String>(new TreeSet<String>(normalize(text)));
+  }
+
+  /**
+   * Removes the diacritics from the given text (e.g. "é" -> "e").
+   * 
+   * @param text
+   *          the text to process.
+   * @return the text without diacritics.
+   */
+  public static String deaccent(String text) {
+    boolean isAscii = true;
+    for (int i = 0; i < text.length() && isAscii; i++) {
+      isAscii = text.charAt(i) < 128;
+    }
+    if (isAscii) {
+      return text;
+    }
+
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+    StringBuilder sb = new StringBuilder(decomposed.length());
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;
+      }
+      // The letters, that have no decomposition (as in the C++ index).
+      switch (c) {
+      case '\u00e6':
+        sb.append('a');
+        break;
+      case '\u00f0':
+        sb.append('d');
+        break;
+      case '\u00f8':
+        sb.append('o');
+        break;
+      case '\u00fe':
+        sb.append('p');
+        break;
+      default:
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns true, if the given term is a stopword.
+   * 
+   * @param term
+   *          the term to check.
+   * @return true, if the given term is a stopword.
+   */
+  public static boolean isStopWord(String term) {
+    return getStopWords().contains(term);
+  }
+
+  /**
+   * Returns the stopwords. Reads the stopwords file on the first call.
+   * 
+   * @return the stopwords.
+   */
+  protected static synchronized Set<String> getStopWords() {
+    if (stopWords == null) {
+      Set<String> words = new HashSet<String>();
+      InputStream is = TermNormalizer.class.getResourceAsStream(STOPWORDS_FILE);
+      if (is != null) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(is,
+            "UTF-8"))) {
+          String line;
+          while ((line = br.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+              words.add(line.trim());
+            }
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      stopWords = Collections.unmodifiableSet(words);
+    }
+    return stopWords;
+  }
+}
@@ -12,12 +12,27 @@ import static de.freiburg.iif.utils.Patterns.YEAR_PATTERN;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -25,21 +40,29 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
 
+import com.google.inject.Inject;
+
+import de.freiburg.iif.extraction.MatchingContext;
 import de.freiburg.iif.extraction.MetadataMatcher;
 import de.freiburg.iif.extraction.metadata.DocumentMetadataMatcher.Stats;
+import de.freiburg.iif.extraction.metadataknowledge.AsyncMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.CachingMetadataKnowledge;
 import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeField;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQuery;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
 import de.freiburg.iif.extraction.stripper.PdfBoxStripper;
 import de.freiburg.iif.extraction.stripper.PdfStripper;
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
 import de.freiburg.iif.model.DblpRecord;
 import de.freiburg.iif.model.HasMetadata;
 import de.freiburg.iif.model.Region;
 import de.freiburg.iif.model.Score;
 import de.freiburg.iif.utils.Patterns;
+import de.freiburg.iif.utils.ReferenceScorer;
 import de.freiburg.iif.utils.Semantics;
-import de.freiburg.iif.utils.StringSimilarity;
 
 /**
  * The class ReferencesMetadataMatcher, that implements MetadataMatcher and can
@@ -49,46 +72,84 @@ import de.freiburg.iif.utils.StringSimilarity;
  * ordinary HTTP requests to it. The result is a xml file, containing the
  * result.
  * 
+ * The state of a document is held by a ReferencesMatchingContext, that is
+ * bound to the thread, which matches the document. So a single instance can
+ * match many documents concurrently. The methods getFulltext(), getRuntimes()
+ * and getLines() return the state of the last document, that was matched by
+ * the calling thread.
+ * 
+ * On matching a document, the pages are streamed through the extraction, such
+ * that only the lines from the page of the first bibliography header to the
+ * end of the document are kept (see getLines()). Of the pages in front, only
+ * the text is kept for the fulltext. In the reverse scan mode (see
+ * setReverseScan()), only the pages from the last page with a bibliography
+ * header to the end of a document are extracted.
+ * 
  * @author Claudius Korzen
  * 
  */
 public class ReferencesMetadataMatcher implements MetadataMatcher {
+  /** Finds all words (including diacritics) with length >=2 (except "and"). */
+  protected static final Pattern LAST_WORD_PATTERN = Pattern
+      .compile("[\\p{L}\\p{M}0-9]{2,}\\b(?<!\\band)");
+  /** The maximal number of records to score per reference. */
+  protected static final int MAX_NUM_OF_SCORED_RECORDS = 1000;
   /** The log4j logger */
   protected Log LOG;
   /** The interface to the metadata knowledge base */
   protected MetadataKnowledge mk;
   /** The interface to the pdf extraction tool */
   protected PdfStripper ex;
-  /** The most common position of the first author in a line */
-  protected int mostCommonPosFirstAuthor;
-  /** The StringBuilder for fulltext */
-  protected StringBuilder fulltext;
-  /** The runtimes */
-  protected long[] runtimes;
-  /** The textlines */
-  protected List<Region> lines;
+  /** The contexts of the documents, that are matched by the threads. */
+  protected ThreadLocal<ReferencesMatchingContext> contexts;
+  /** The maximal number of threads, that match references in parallel. */
+  protected int parallelism;
+  /** The executor, that matches the references of all documents. */
+  protected ExecutorService executor;
+  /** The number of records, that were aligned against a reference. */
+  protected AtomicLong numOfScoredRecords;
+  /** The number of records, that were rejected by their upper bound. */
+  protected AtomicLong numOfPrunedRecords;
+  /** The flag that indicates whether the bibliography is located from the end. */
+  protected boolean isReverseScan;
 
   /**
    * The constructor of ReferencesMetadataMatcher.
    */
   public ReferencesMetadataMatcher() {
-    this.mk = new InvertedIndexMetadataKnowledge();
+    this(new InvertedIndexMetadataKnowledge());
+  }
+
+  /**
+   * The constructor of ReferencesMetadataMatcher.
+   * 
+   * @param mk
+   *          the implementation of MetadataKnowledge.
+   */
+  @Inject
+  public ReferencesMetadataMatcher(MetadataKnowledge mk) {
+    this.mk = mk;
     this.ex = new PdfBoxStripper();
     this.LOG = LogFactory.getLog(ReferencesMetadataMatcher.class);
-    this.mostCommonPosFirstAuthor = -1;
-    this.fulltext = new StringBuilder();
-    this.runtimes = new long[6];
+    this.contexts = new ThreadLocal<ReferencesMatchingContext>();
+    this.parallelism = Runtime.getRuntime().availableProcessors();
+    this.numOfScoredRecords = new AtomicLong();
+    this.numOfPrunedRecords = new AtomicLong();
   }
 
   @Override
   public List<HasMetadata> match(String pdfFilePath, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
-    return match(PDDocument.load(pdfFilePath), strict, disableMK, minWaitInterval);
+    return match(new File(pdfFilePath), strict, disableMK, minWaitInterval);
   }
 
   @Override
   public List<HasMetadata> match(File file, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
+    if (isReverseScan) {
+      return matchFromEnd(PDDocument.load(file), file, strict, disableMK,
+          minWaitInterval);
+    }
     return match(PDDocument.load(file), strict, disableMK, minWaitInterval);
   }
   
@@ -101,13 +162,179 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
   @Override
   public List<HasMetadata> match(PDDocument doc, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
+    if (isReverseScan) {
+      return matchFromEnd(doc, null, strict, disableMK, minWaitInterval);
+    }
+    long start = System.currentTimeMillis();
+    BibliographyCollector collector = createBibliographyCollector();
+    try {
+      ex.extractPageLines(doc, 1, Integer.MAX_VALUE, true, collector);
+    } finally {
+      doc.close();
+    }
+    long end = System.currentTimeMillis();
+
+    List<HasMetadata> records =
+        match(collector, strict, disableMK, minWaitInterval);
+    getContext().setRuntime(1, end - start);
+    return records;
+  }
+
+  /**
+   * Tries to find the referred metadata records on the basis of the lines,
+   * that were collected by the given collector (see
+   * createBibliographyCollector()).
+   * 
+   * @param collector
+   *          the collector, that was passed all pages of a document.
+   * @return the matched metadata records.
+   * @throws IOException
+   *           if the matching process fails.
+   */
+  public List<HasMetadata> match(BibliographyCollector collector,
+    boolean strict, boolean disableMK, int minWaitInterval)
+    throws IOException {
+    List<HasMetadata> records =
+        match(collector.lines, strict, disableMK, minWaitInterval);
+    getContext().setTextOfSkippedPages(
+        collector.textOfSkippedPages.toString());
+    return records;
+  }
+
+  /**
+   * Creates a listener, that collects the lines of the pages of a document,
+   * which are needed to match the references (see match(BibliographyCollector,
+   * ...)).
+   * 
+   * @return the collector.
+   */
+  public BibliographyCollector createBibliographyCollector() {
+    return new BibliographyCollector();
+  }
+
+  /**
+   * Tries to find the referred metadata records of the given document. The
+   * pages are extracted from the end of the document backwards, until a page
+   * with a bibliography header is found. The bibliography is located within
+   * the lines from this page to the end, so if there are several bibliography
+   * headers in the document, the last page with such a header is considered.
+   * 
+   * The pages in front of the bibliography are needed for the fulltext only.
+   * If the document was loaded from a file, they are extracted from the file
+   * on demand (see getFulltext()). Otherwise, only their text is extracted
+   * right away. The document is closed in any case.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param file
+   *          the file, from which the document was loaded (may be null).
+   * @return the matched metadata records.
+   * @throws IOException
+   *           if the matching process fails.
+   */
+  protected List<HasMetadata> matchFromEnd(PDDocument doc, File file,
+    boolean strict, boolean disableMK, int minWaitInterval)
+    throws IOException {
+    List<Region> lines = new ArrayList<Region>();
+    int firstPage = doc.getNumberOfPages() + 1;
+    StringBuilder textOfSkippedPages = null;
     long start = System.currentTimeMillis();
-    List<Region> lines = ex.extractLines(doc, 1, Integer.MAX_VALUE, true);
+    try {
+      List<List<Region>> pages = new ArrayList<List<Region>>();
+      while (firstPage > 1) {
+        firstPage--;
+        List<Region> pageLines = ex.extractPageLines(doc, firstPage,
+            firstPage, true);
+        pages.add(pageLines);
+        if (containsBibliographyHeader(pageLines)) {
+          break;
+        }
+      }
+      for (int i = pages.size() - 1; i >= 0; i--) {
+        lines.addAll(pages.get(i));
+      }
+      if (firstPage > 1 && file == null) {
+        // The document can't be reloaded, so extract the text right away.
+        final StringBuilder text = new StringBuilder();
+        ex.extractPageLines(doc, 1, firstPage - 1, true, new PageListener() {
+          @Override
+          public void pageExtracted(int pageNumber, List<Region> lines) {
+            MatchingContext.appendText(text, lines);
+          }
+        });
+        textOfSkippedPages = text;
+      }
+    } finally {
+      doc.close();
+    }
     long end = System.currentTimeMillis();
 
-    runtimes[1] = end - start;
+    List<HasMetadata> records =
+        match(lines, strict, disableMK, minWaitInterval);
+    ReferencesMatchingContext context = getContext();
+    context.setRuntime(1, end - start);
+    if (textOfSkippedPages != null) {
+      context.setTextOfSkippedPages(textOfSkippedPages.toString());
+    } else if (firstPage > 1) {
+      // Extract the pages in front of the bibliography on demand.
+      context.setSkippedPages(ex, file, firstPage - 1);
+    }
+    return records;
+  }
+
+  /**
+   * Returns true, if the given lines contain a bibliography header.
+   * 
+   * @param lines
+   *          the lines to analyze.
+   * @return true, if there is a bibliography header.
+   */
+  protected boolean containsBibliographyHeader(List<Region> lines) {
+    if (lines != null) {
+      for (Region line : lines) {
+        if (line != null && Semantics.isBibliographyHeader(line.getText())) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The listener, that collects the lines of the pages from the first page
+   * with a bibliography header to the end of a document, such that the
+   * bibliography starts at the first header like in match(List<Region>, ...)
+   * (in contrast to matchFromEnd()). Of the pages in front, only the text is
+   * collected.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  public class BibliographyCollector implements PageListener {
+    /** The lines from the first page with a bibliography header. */
+    protected List<Region> lines = new ArrayList<Region>();
+    /** The text of the pages in front of the collected lines. */
+    protected StringBuilder textOfSkippedPages = new StringBuilder();
+    /** The flag that indicates whether a bibliography header was found. */
+    protected boolean isBibliographyHeaderDetected;
+
+    /**
+     * The constructor.
+     */
+    protected BibliographyCollector() {
+    }
 
-    return match(lines, strict, disableMK, minWaitInterval);
+    @Override
+    public void pageExtracted(int pageNumber, List<Region> lines) {
+      if (!isBibliographyHeaderDetected) {
+        isBibliographyHeaderDetected = containsBibliographyHeader(lines);
+      }
+      if (isBibliographyHeaderDetected) {
+        this.lines.addAll(lines);
+      } else {
+        MatchingContext.appendText(textOfSkippedPages, lines);
+      }
+    }
   }
 
   /**
@@ -122,23 +349,18 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    */
   public List<HasMetadata> match(List<Region> lines, boolean strict,
     boolean disableMK, int minWaitInterval) throws IOException {
-    setLines(lines);
-    
-    fulltext.setLength(0);
-
-    runtimes[2] = 0;
-    runtimes[3] = 0;
-    runtimes[4] = 0;
-    runtimes[5] = 0;
+    // Start a new context for the document.
+    contexts.set(new ReferencesMatchingContext(lines));
 
     /** Locate the bibliography */
     long start = System.currentTimeMillis();
-    List<Region> bibliography = getBibliographyLines(lines);
+    Map<String, NumOfHits> hits = new HashMap<String, NumOfHits>();
+    List<Region> bibliography = getBibliographyLines(lines, hits);
     long end = System.currentTimeMillis();
 
-    runtimes[2] += (end - start);
+    addRuntime(2, end - start);
 
-    return identify(bibliography, /* stats */null);
+    return identify(bibliography, hits, /* stats */null);
   }
 
   /**
@@ -148,13 +370,18 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    * 
    * @param lines
    *          the extracted lines from the pdf file.
+   * @param hits
+   *          the map, to which the resolved number of hits of the words of the
+   *          bibliography are added (including the first and the last words of
+   *          the lines).
    * @return the lines of the bibliography.
    * @throws IOException
    *           if querying the metadata knowledge on author identification
    *           fails.
    */
-  protected List<Region> getBibliographyLines(List<Region> lines)
-    throws IOException {
+  protected List<Region> getBibliographyLines(List<Region> lines,
+    Map<String, NumOfHits> hits) throws IOException {
+    ReferencesMatchingContext context = getContext();
     Map<Integer, Integer> posFirstAuthorMap = new HashMap<Integer, Integer>();
     List<Region> bibLines = new ArrayList<Region>();
 
@@ -165,16 +392,6 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
         Region line = lines.get(i);
         if (line != null) {
           if (isBibliographyHeaderDetected) {
-            // Compute the position of the first author in the line.
-            int posOfFirstAuthor = getPosOfFirstAuthor(line);
-            if (posOfFirstAuthor >= 0) {
-              int key = posOfFirstAuthor > 0 ? 1 : 0;
-              int count =
-                  posFirstAuthorMap.containsKey(key) ? posFirstAuthorMap
-                      .get(key) : 0;
-              // Put the position into the map.
-              posFirstAuthorMap.put(key, count + 1);
-            }
             bibLines.add(line);
           } else {
             String text = line.getText();
@@ -182,18 +399,40 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
               isBibliographyHeaderDetected = true;
             }
           }
-          fulltext.append(line.getText());
-          fulltext.append(" ");
         }
       }
     }
 
+    // Resolve all words of the bibliography, that are classified later (the
+    // first and the last words of the lines and the words of the queries), in
+    // a single batch.
+    Collection<String> words = getFirstWords(bibLines);
+    words.addAll(getLastWords(bibLines));
+    for (Region line : bibLines) {
+      if (line.getText() != null) {
+        words.addAll(getLongWords(line.getText()));
+      }
+    }
+    hits.putAll(getNumOfHits(words));
+
+    for (Region line : bibLines) {
+      // Compute the position of the first author in the line.
+      int posOfFirstAuthor = getPosOfFirstAuthor(line, hits);
+      if (posOfFirstAuthor >= 0) {
+        int key = posOfFirstAuthor > 0 ? 1 : 0;
+        int count =
+            posFirstAuthorMap.containsKey(key) ? posFirstAuthorMap.get(key) : 0;
+        // Put the position into the map.
+        posFirstAuthorMap.put(key, count + 1);
+      }
+    }
+
     // Compute the most common position of the first author in a line.
     int mostCommonPosFirstAuthorOcc = -1;
     for (Entry<Integer, Integer> stat : posFirstAuthorMap.entrySet()) {
       if (stat.getValue() > mostCommonPosFirstAuthorOcc) {
         mostCommonPosFirstAuthorOcc = stat.getValue();
-        mostCommonPosFirstAuthor = stat.getKey();
+        context.mostCommonPosFirstAuthor = stat.getKey();
       }
     }
     return bibLines;
@@ -210,6 +449,24 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    *           if querying the metadata knowledge fails.
    */
   public int getPosOfFirstAuthor(Region line) throws IOException {
+    return getPosOfFirstAuthor(line, null);
+  }
+
+  /**
+   * Computes the position of the first author in a line. The number of hits of
+   * the words are taken from the given map, if they are contained.
+   * 
+   * @param line
+   *          the line to analyze.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return the position of the fitrst author in a line (-1 if there is no
+   *         author in the line).
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected int getPosOfFirstAuthor(Region line, Map<String, NumOfHits> hits)
+    throws IOException {
     if (line != null) {
       String text = line.getText();
       if (text != null) {
@@ -224,7 +481,7 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
           if (!text.isEmpty()) {
             char firstChar = text.charAt(0);
             if (!Character.isUpperCase(firstChar)) { return -1; }
-            int type = getType(text);
+            int type = getType(text, hits);
 
             switch (type) {
             case 0: // The text isn't a title and isn't an author.
@@ -252,34 +509,54 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
   }
 
   /**
-   * Returns the type of the given text.
+   * Returns the type of the given text. The type of a word is computed only
+   * once per document (see ReferencesMatchingContext.wordTypes).
    * 
    * @param text
    *          the text to analyze.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
    * @return the type of text.
    * @throws IOException
    *           if querying the metadata knowledge fails.
    */
   // TODO: Rename this method to a more reasonable name.
-  private int getType(String text) throws IOException {
-    int numOfTitleHits = 0;
-    int numOfAuthorHits = 0;
-
+  private int getType(String text, Map<String, NumOfHits> hits)
+    throws IOException {
     if (text != null && !text.trim().isEmpty()) {
-      // Query the metadata knowledge.
-      numOfTitleHits =
-          mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_TITLE, text, 0);
-      numOfAuthorHits =
-          mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, text, 0);
+      Map<String, Integer> wordTypes = getContext().wordTypes;
+      Integer type = wordTypes.get(text);
+      if (type == null) {
+        // Query the metadata knowledge.
+        type = getType(getNumOfHits(text, hits));
+        wordTypes.put(text, type);
+      }
+      return type;
+    }
+    return 0;
+  }
+
+  /**
+   * Returns the type of a text with the given number of hits: 0, if the text
+   * isn't a title and isn't an author; 1, if the text is a title; 2, if the
+   * text is an author and 3, if the text can be a title and an author.
+   * 
+   * @param numOfHits
+   *          the number of hits of the text.
+   * @return the type of the text.
+   */
+  protected int getType(NumOfHits numOfHits) {
+    int numOfTitleHits = numOfHits.numOfTitleHits;
+    int numOfAuthorHits = numOfHits.numOfAuthorHits;
 
-      if ((numOfTitleHits > 0 && numOfAuthorHits < 2)
-          || (numOfTitleHits > 1000 * numOfAuthorHits)) { return 1; }
+    if ((numOfTitleHits > 0 && numOfAuthorHits < 2)
+        || (numOfTitleHits > 1000 * numOfAuthorHits)) { return 1; }
 
-      if ((numOfAuthorHits > 1 && numOfTitleHits == 0)
-          || numOfAuthorHits > 100) { return 2; }
+    if ((numOfAuthorHits > 1 && numOfTitleHits == 0)
+        || numOfAuthorHits > 100) { return 2; }
+
+    if (numOfAuthorHits > 1 && numOfTitleHits > 0) { return 3; }
 
-      if (numOfAuthorHits > 1 && numOfTitleHits > 0) { return 3; }
-    }
     return 0;
     // if (text != null && !text.trim().isEmpty()) {
     // // Query the metadata knowledge.
@@ -305,6 +582,9 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    * 
    * @param lines
    *          the lines to analyze.
+   * @param hits
+   *          the number of hits of the first and the last words of the lines
+   *          (see getBibliographyLines()).
    * @param stats
    *          the statistics about the most common fontsize and the most common
    *          line pitches.
@@ -313,13 +593,14 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    *           if identifying the metadata records fails.
    * 
    */
-  private List<HasMetadata> identify(List<Region> lines, Stats stats)
-    throws IOException {
-    List<HasMetadata> records = new ArrayList<HasMetadata>();
+  private List<HasMetadata> identify(List<Region> lines,
+    Map<String, NumOfHits> hits, Stats stats) throws IOException {
+    List<String> references = new ArrayList<String>();
+    List<List<Object[]>> referencesLineCoordinates =
+        new ArrayList<List<Object[]>>();
     StringBuffer sb = new StringBuffer();
-    HasMetadata match = null;
     List<Object[]> lineCoordinates = new ArrayList<Object[]>();
-    
+
     for (int i = 0; i < lines.size(); i++) {
       Region prevLine = i > 0 ? lines.get(i - 1) : null;
       Region line = lines.get(i);
@@ -331,18 +612,15 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
         
         /** Determine the type of the line */
         long start = System.currentTimeMillis();
-        line.setType(getReferenceLineType2(prevLine, line, nextLine));
+        line.setType(getReferenceLineType2(prevLine, line, nextLine, hits));
         long end = System.currentTimeMillis();
 
-        runtimes[2] += (end - start);
+        addRuntime(2, end - start);
                
         switch (line.getType()) {
           case HEADER:
-            match = matchReference(sb.toString());
-            if (match != null) {
-              match.setLineCoordinates(lineCoordinates);
-              records.add(match);
-            }
+            references.add(sb.toString());
+            referencesLineCoordinates.add(lineCoordinates);
             lineCoordinates = new ArrayList<Object[]>();
             sb.setLength(0);
             sb.append(line.getText());
@@ -364,11 +642,19 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
         lineCoordinates.add(lineCoords);        
       }
     }
-    // Don't forget to add the last match.
-    match = matchReference(sb.toString());
-    if (match != null) {
-      match.setLineCoordinates(lineCoordinates);
-      records.add(match);
+    // Don't forget to add the last reference.
+    references.add(sb.toString());
+    referencesLineCoordinates.add(lineCoordinates);
+
+    // Match all references at once.
+    List<HasMetadata> matches = matchReferences(references);
+    List<HasMetadata> records = new ArrayList<HasMetadata>();
+    for (int i = 0; i < matches.size(); i++) {
+      HasMetadata match = matches.get(i);
+      if (match != null) {
+        match.setLineCoordinates(referencesLineCoordinates.get(i));
+        records.add(match);
+      }
     }
     return records;
   }
@@ -506,6 +792,28 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    */
   protected ReferenceLineType getReferenceLineType2(Region prevLine,
     Region line, Region nextLine) throws IOException {
+    return getReferenceLineType2(prevLine, line, nextLine, null);
+  }
+
+  /**
+   * Returns the type of the given reference line. The number of hits of the
+   * words are taken from the given map, if they are contained.
+   * 
+   * @param prevLine
+   *          the previous line of line to process.
+   * @param line
+   *          the line to process.
+   * @param nextLine
+   *          the next line of line to process.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return the type of line.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected ReferenceLineType getReferenceLineType2(Region prevLine,
+    Region line, Region nextLine, Map<String, NumOfHits> hits)
+    throws IOException {
     ReferenceLineType type = line != null ? line.getType() : null;
     ReferenceLineType prevType = prevLine != null ? prevLine.getType() : null;
 
@@ -558,9 +866,9 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
 
     boolean startsWithReferencesAnchor = startsWithReferenceAnchor(line);
     boolean isPrevLineEnd = prevType == ReferenceLineType.END;
-    boolean startsWithAuthor = startsWithAuthor2(line);
+    boolean startsWithAuthor = startsWithAuthor2(line, hits);
     boolean prevEndsWithOpenString = endsWithOpenString(prevLine);
-    boolean prevEndsWithAuthor = endsWithAuthor(prevLine);
+    boolean prevEndsWithAuthor = endsWithAuthor(prevLine, hits);
     boolean startsWithLowercaseWord = startsWithLowercaseWord(line);
 
     if (type == null) {
@@ -771,7 +1079,25 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    *           if querying the metadata knowledge fails.
    */
   protected boolean startsWithAuthor2(Region line) throws IOException {
-    int posOfFirstAuthor = getPosOfFirstAuthor(line);
+    return startsWithAuthor2(line, null);
+  }
+
+  /**
+   * Returns true, if the line starts with an author and the position of the
+   * author is equal to mostCommonPosFirstAuthor.
+   * 
+   * @param line
+   *          the line to analyze.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return true, if the line starts with an author.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected boolean startsWithAuthor2(Region line, Map<String, NumOfHits> hits)
+    throws IOException {
+    int posOfFirstAuthor = getPosOfFirstAuthor(line, hits);
+    int mostCommonPosFirstAuthor = getContext().mostCommonPosFirstAuthor;
     if (posOfFirstAuthor == 0 && mostCommonPosFirstAuthor == 0
         || posOfFirstAuthor > 0 && mostCommonPosFirstAuthor > 0) {
       return true;
@@ -836,29 +1162,121 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    *           if querying the metadata knowledge fails.
    */
   protected boolean endsWithAuthor(Region line) throws IOException {
-    // Finds all words (including diacritics) with length >=2 (except "and").
-    Pattern p = Pattern.compile("[\\p{L}\\p{M}0-9]{2,}\\b(?<!\\band)");
+    return endsWithAuthor(line, null);
+  }
+
+  /**
+   * This method determines, if the given line ends with an author name. The
+   * number of hits of the words are taken from the given map, if they are
+   * contained.
+   * 
+   * @param line
+   *          the line to analyze.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return true, if the given string ends with an author name.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected boolean endsWithAuthor(Region line, Map<String, NumOfHits> hits)
+    throws IOException {
+    String lastWord = getLastWord(line);
+    // Consider the word only when the first character is in uppercase.
+    if (lastWord != null) {
+      char firstChar = lastWord.charAt(0);
+      if (Character.isUpperCase(firstChar)) { return isAuthor(lastWord, hits); }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the first word of the given line, that is considered by
+   * getPosOfFirstAuthor().
+   * 
+   * @param line
+   *          the line to analyze.
+   * @return the first word of the line or null, if there is no such word.
+   */
+  protected String getFirstWord(Region line) {
+    if (line != null) {
+      String text = line.getText();
+      if (text != null) {
+        Matcher m = FIRST_WORD_IN_LINE_PATTERN.matcher(text.trim());
+        if (m.find() && !m.group(2).isEmpty()) { return m.group(2); }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the last word of the given line, that is considered by
+   * endsWithAuthor().
+   * 
+   * @param line
+   *          the line to analyze.
+   * @return the last word of the line or null, if there is no such word.
+   */
+  protected String getLastWord(Region line) {
     if (line != null) {
       String text = line.getText();
       if (text != null) {
         text = text.trim();
         if (!text.isEmpty()) {
-          Matcher m = p.matcher(text);
+          Matcher m = LAST_WORD_PATTERN.matcher(text);
           String lastWord = "";
           while (m.find()) {
             // Extract the last word.
             lastWord = text.substring(m.start(), m.end());
           }
+          if (!lastWord.isEmpty()) { return lastWord; }
+        }
+      }
+    }
+    return null;
+  }
 
-          // Consider the word only when the first character is in uppercase.
-          if (!lastWord.isEmpty()) {
-            char firstChar = lastWord.charAt(0);
-            if (Character.isUpperCase(firstChar)) { return isAuthor(lastWord); }
-          }
+  /**
+   * Returns the first words of the given lines, whose first characters are in
+   * uppercase (these are the only words which getPosOfFirstAuthor() have to
+   * look up in the metadata knowledge).
+   * 
+   * @param lines
+   *          the lines to process.
+   * @return the first words of the lines.
+   */
+  protected Collection<String> getFirstWords(List<Region> lines) {
+    Collection<String> words = new LinkedHashSet<String>();
+    if (lines != null) {
+      for (Region line : lines) {
+        String word = getFirstWord(line);
+        if (word != null && Character.isUpperCase(word.charAt(0))) {
+          words.add(word);
         }
       }
     }
-    return false;
+    return words;
+  }
+
+  /**
+   * Returns the last words of the given lines, whose first characters are in
+   * uppercase (these are the only words which endsWithAuthor() have to look up
+   * in the metadata knowledge).
+   * 
+   * @param lines
+   *          the lines to process.
+   * @return the last words of the lines.
+   */
+  protected Collection<String> getLastWords(List<Region> lines) {
+    Collection<String> words = new LinkedHashSet<String>();
+    if (lines != null) {
+      for (Region line : lines) {
+        String word = getLastWord(line);
+        if (word != null && Character.isUpperCase(word.charAt(0))) {
+          words.add(word);
+        }
+      }
+    }
+    return words;
   }
 
   /**
@@ -951,322 +1369,650 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
       MetadataKnowledgeQuery query = createMetadataKnowledgeQuery(reference);
       long end = System.currentTimeMillis();
 
-      runtimes[3] += (end - start);
+      addRuntime(3, end - start);
 
       if (query != null) {
         LOG.debug(" Query: " + query);
         // Get leading records doesn't return a null value.
         HasMetadata match = getLeadingRecord(query, reference);
-        if (match.getKey() == null) {
-          LOG.debug("  No match found.");
-          // No leading match found. Retry the matching process without
-          // others.
-          if (query.contains(MetadataKnowledgeQueryType.OTHER)) {
-            LOG.debug("  Remove other-parameter.");
-            query.remove(MetadataKnowledgeQueryType.OTHER);
-            LOG.debug(" Query: " + query);
-            match = getLeadingRecord(query, reference);
-          }
-
-          if (match.getKey() == null) {
-            LOG.debug("  No match found.");
-            // No leading match found. Retry the matching process without
-            // authors.
-            // if (query.contains(MetadataKnowledgeQueryType.AUTHORS)) {
-            if (query.contains(MetadataKnowledgeQueryType.TITLE)) {
-              LOG.debug("  Remove title-parameter.");
-              // query.remove(MetadataKnowledgeQueryType.AUTHORS);
-              query.remove(MetadataKnowledgeQueryType.TITLE);
-              match = getLeadingRecord(query, reference);
-            }
-          }
-        }
-        return match;
+        return rematchReference(query, reference, match);
       }
     }
     return null;
   }
 
   /**
-   * Creates the query for the given reference to query the metadata knowledge
-   * query.
+   * Matches the given references to records of the metadata knowledge base.
+   * The references are independent of each other, so they are matched in
+   * parallel by the executor of the matcher (see getExecutor()). If the
+   * metadata knowledge is asynchronous, the queries of all references are
+   * issued at once, before the candidates of the references are scored.
+   * Otherwise each reference is queried and scored by a single task.
    * 
-   * @param reference
-   *          the reference to process.
-   * @return the metadata knowledge query.
+   * @param references
+   *          the strings to match.
+   * @return the matched metadata records, in the order of the given
+   *         references (null for references, that couldn't be matched).
    * @throws IOException
-   *           if creating the query fails.
+   *           if matching the given strings fails.
    */
-  protected MetadataKnowledgeQuery createMetadataKnowledgeQuery(
-    String reference) throws IOException {
-    if (reference != null) {
-      MetadataKnowledgeQuery query = new MetadataKnowledgeQuery();
-
-      Matcher m = LONG_WORDS_PATTERN.matcher(reference);
-//      int numOfAuthorWords = 0;
-      int numOfTitleWords = 0;
-      int numOfOtherWords = 0;
-
-      // Pattern p = Pattern.compile("[A-Z]{1}[a-z]{1,}");
-      // Matcher m2 = p.matcher(reference);
-      // while (m2.find()) {
-      // String word = m2.group().trim();
-      // if (!word.isEmpty()) {
-      // int type = getType(word);
-      //
-      // if (type == 2 && numOfTitleWords == 0) {
-      // query.add(MetadataKnowledgeQueryType.AUTHORS, word);
-      // numOfAuthorWords++;
-      // }
-      // }
-      // }
-
-      while (m.find()) {
-        String word = m.group().trim();
-        if (!word.isEmpty()) {
-          char firstChar = word.charAt(0);
-
-          // int numOfTitleHits =
-          // mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_TITLE, word);
-          // int numOfAuthorHits =
-          // mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS,
-          // word);
-          //
-          // boolean isTitle = numOfTitleHits > 0 && numOfAuthorHits < 50 &&
-          // numOfTitleHits > numOfAuthorHits;
-          // boolean isAuthor = numOfAuthorHits > 0;
-          int type = getType(word);
-          if (type == 3) {
-            if (word.length() > 3 /* && numOfTitleHits < 20000 */) {
-              query.add(MetadataKnowledgeQueryType.AUTHORS, word);
-              query.add(MetadataKnowledgeQueryType.TITLE, word);
-              numOfTitleWords++;
-//              numOfAuthorWords++;
-            }
-          } else if (type == 1) {
-            if (word.length() > 3 /* && numOfTitleHits < 20000 */) {
-              query.add(MetadataKnowledgeQueryType.TITLE, word);
-              numOfTitleWords++;
-            }
-          } else if (type == 2) {
-            if (numOfTitleWords == 0 && Character.isUpperCase(firstChar)) {
-              query.add(MetadataKnowledgeQueryType.AUTHORS, word);
-//              numOfAuthorWords++;
-            }
+  public List<HasMetadata> matchReferences(final List<String> references)
+    throws IOException {
+    int numOfReferences = references.size();
+    ExecutorService executor = getExecutor(numOfReferences);
+    List<Future<HasMetadata>> matches = new ArrayList<Future<HasMetadata>>();
+
+    // Look up the words of all references in a single batch (the words,
+    // that were already resolved for the document, aren't looked up again).
+    List<List<String>> words = new ArrayList<List<String>>();
+    Collection<String> allWords = new LinkedHashSet<String>();
+    for (String reference : references) {
+      List<String> referenceWords = null;
+      if (reference != null && !reference.isEmpty()) {
+        referenceWords = getLongWords(reference);
+        allWords.addAll(referenceWords);
+      }
+      words.add(referenceWords);
+    }
+    Map<String, NumOfHits> hits = getNumOfHits(allWords);
+
+    if (!isAsynchronous(mk)) {
+      // Query and score each reference in a single task (the words of the
+      // references are memoized for the document by now).
+      for (final String reference : references) {
+        matches.add(submit(executor, new Callable<HasMetadata>() {
+          @Override
+          public HasMetadata call() throws IOException {
+            return matchReference(reference);
           }
-        }
-        if (numOfTitleWords + numOfTitleWords + numOfOtherWords >= 10) {
-          break;
-        }
+        }));
       }
+      return joinAll(matches);
+    }
+    final AsyncMetadataKnowledge amk = (AsyncMetadataKnowledge) mk;
 
-      query.create();
+    // Create the queries of all references.
+    long start = System.currentTimeMillis();
+    List<MetadataKnowledgeQuery> queries =
+        new ArrayList<MetadataKnowledgeQuery>();
+    List<Future<List<HasMetadata>>> records =
+        new ArrayList<Future<List<HasMetadata>>>();
+    for (int i = 0; i < numOfReferences; i++) {
+      MetadataKnowledgeQuery query = null;
+      Future<List<HasMetadata>> candidates = null;
+      if (words.get(i) != null) {
+        query = createMetadataKnowledgeQuery(words.get(i), hits);
+        prepareQuery(query);
+        candidates = amk.queryAsync(query, 0);
+      }
+      queries.add(query);
+      records.add(candidates);
+    }
+    long end = System.currentTimeMillis();
+    addRuntime(3, end - start);
 
-      return query;
+    // Score the candidates of all references.
+    for (int i = 0; i < numOfReferences; i++) {
+      if (records.get(i) == null) {
+        matches.add(null);
+        continue;
+      }
+      final String reference = references.get(i);
+      final MetadataKnowledgeQuery query = queries.get(i);
+      final Future<List<HasMetadata>> candidates = records.get(i);
+      matches.add(submit(executor, new Callable<HasMetadata>() {
+        @Override
+        public HasMetadata call() throws IOException {
+          return matchReference(amk, query, reference, candidates);
+        }
+      }));
     }
-    return null;
+    return joinAll(matches);
   }
 
   /**
-   * Returns the matching record, if exists (that means there is a record, whose
-   * score is large enough to be consodered as match).
+   * Selects the leading record from the given candidates of the given
+   * reference and fetches its full record. Retries the less frequent relaxed
+   * queries synchronously, if there is no leading record.
    * 
+   * @param amk
+   *          the asynchronous metadata knowledge.
    * @param query
-   *          the metadata knowledge query.
+   *          the query, from which the candidates resulted.
    * @param reference
-   *          the extracted reference.
-   * @return the matching record if exists. Null otherwise.
+   *          the string to match.
+   * @param candidates
+   *          the future candidates.
+   * @return the matched metadata record.
    * @throws IOException
-   *           if querying the metadata knowledge fails.
+   *           if matching the given string fails.
    */
-  protected HasMetadata getLeadingRecord(MetadataKnowledgeQuery query,
-    String reference) throws IOException {
-    if (query != null && reference != null) {
-      long start = System.currentTimeMillis();
-      List<HasMetadata> records = mk.query(query, 0);
-      long end = System.currentTimeMillis();
+  protected HasMetadata matchReference(AsyncMetadataKnowledge amk,
+    MetadataKnowledgeQuery query, String reference,
+    Future<List<HasMetadata>> candidates) throws IOException {
+    long start = System.currentTimeMillis();
+    List<HasMetadata> records = join(candidates);
+    long end = System.currentTimeMillis();
+    addRuntime(4, end - start);
 
-      runtimes[4] += (end - start);
-
-      HasMetadata match = new DblpRecord();
-
-      if (records != null) {
-        // Score the records and return the record with the highest score.
-        for (int i = 0; i < Math.min(records.size(), 1000); i++) {
-          HasMetadata record = records.get(i);
-
-          start = System.currentTimeMillis();
-          Score score = scoreRecord(reference, record);
-          end = System.currentTimeMillis();
-          runtimes[5] += (end - start);
-
-          if (score != null) {
-            float titleScore = score.titleScore;
-            float authorsScore = score.authorScore;
-            float yearScore = score.yearScore;
-            float journalScore = score.journalScore;
-            float pageScore = score.pageScore;
-
-            // float totalScore = metadataScore + publicationScore + pageScore;
-
-            LOG.debug("   " + record);
-            LOG.debug("     t: " + titleScore + " a: " + authorsScore + " y: "
-                + yearScore + ", j: " + journalScore + ", p: " + pageScore);
-
-            float totalScore =
-                titleScore + authorsScore + yearScore + journalScore
-                    + pageScore;
-
-            boolean isLeading = false;
-            if (yearScore > 0) {
-              if ((titleScore > 0.75 && (titleScore * authorsScore) > 0.35)
-                  || totalScore > 3.5) {
-                isLeading = true;
-              }
-              // if (titleScore > 0.9) { isLeading = true; }
-              // // if (firstHalfTitleScore > 0.9 && secondHalfTitleScore > 0.2
-              // && authorScore > 0.5) { isLeading = true; }
-              // if (titleScore > 0.75 && authorScore > 0.5) { isLeading = true;
-              // }
-            }
+    HasMetadata match = selectLeadingRecord(records, reference);
+    match.setRaw(reference);
+    if (match.getKey() == null) {
+      // No leading match found. Retry the relaxed queries.
+      return rematchReference(query, reference, match);
+    }
+    // Replace the match by its full record.
+    HasMetadata fullRecord = getRecord(join(amk.queryAsync(
+        MetadataKnowledgeQueryType.KEY, match.getKey(), 0)), match.getKey());
+    if (fullRecord != null) {
+      fullRecord.setScore(match.getScore());
+      fullRecord.setRaw(match.getRaw());
+      return fullRecord;
+    }
+    return match;
+  }
+
+  /**
+   * Returns true, if the given metadata knowledge answers asynchronous queries
+   * really asynchronously (and not in the calling thread).
+   * 
+   * @param mk
+   *          the metadata knowledge.
+   * @return true, if the metadata knowledge is asynchronous.
+   */
+  protected boolean isAsynchronous(MetadataKnowledge mk) {
+    if (mk instanceof CachingMetadataKnowledge) {
+      return ((CachingMetadataKnowledge) mk).isAsynchronous();
+    }
+    return mk instanceof AsyncMetadataKnowledge;
+  }
 
-            // Check, if the current score exceeds the maxScore.
-            if (isLeading && totalScore > match.getScore()) { // MAYBE:
-                                                              // titleScore?
-              record.setScore(totalScore);
-              match = record;
+  /**
+   * Returns the executor to match the given number of references or null, if
+   * the references should be matched in the current thread. The executor is
+   * shared by all documents, that are matched by this matcher, so the number
+   * of threads is bounded by getParallelism() in total (and not per
+   * document).
+   * 
+   * @param numOfReferences
+   *          the number of references.
+   * @return the executor or null.
+   */
+  protected synchronized ExecutorService getExecutor(int numOfReferences) {
+    if (parallelism <= 1 || numOfReferences <= 1) {
+      return null;
+    }
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(parallelism,
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "ReferencesMetadataMatcher");
+              thread.setDaemon(true);
+              return thread;
             }
+          });
+    }
+    return executor;
+  }
+
+  /**
+   * Submits the given task to the given executor. Runs the task in the
+   * current thread, if the executor is null. Otherwise, the task runs in the
+   * context of the document of the current thread.
+   * 
+   * @param executor
+   *          the executor or null.
+   * @param task
+   *          the task.
+   * @return the future result of the task.
+   */
+  protected <V> Future<V> submit(ExecutorService executor,
+    final Callable<V> task) {
+    if (executor != null) {
+      final ReferencesMatchingContext context = getContext();
+      return executor.submit(new Callable<V>() {
+        @Override
+        public V call() throws Exception {
+          contexts.set(context);
+          try {
+            return task.call();
+          } finally {
+            contexts.remove();
           }
         }
+      });
+    }
+    FutureTask<V> future = new FutureTask<V>(task);
+    future.run();
+    return future;
+  }
+
+  /**
+   * Waits for the given futures and returns their results, in the same order.
+   * 
+   * @param futures
+   *          the futures (may contain null).
+   * @return the results (null for null futures).
+   * @throws IOException
+   *           if a computation failed or was interrupted.
+   */
+  protected static <V> List<V> joinAll(List<Future<V>> futures)
+    throws IOException {
+    List<V> results = new ArrayList<V>(futures.size());
+    for (Future<V> future : futures) {
+      results.add(future != null ? join(future) : null);
+    }
+    return results;
+  }
+
+  /**
+   * Retries the matching of the given reference with relaxed queries, if the
+   * given match isn't a match (that means, it has no key).
+   * 
+   * @param query
+   *          the query of the first attempt.
+   * @param reference
+   *          the string to match.
+   * @param match
+   *          the result of the first attempt.
+   * @return the matched metadata record.
+   * @throws IOException
+   *           if matching the given string fails.
+   */
+  protected HasMetadata rematchReference(MetadataKnowledgeQuery query,
+    String reference, HasMetadata match) throws IOException {
+    if (match.getKey() == null) {
+      LOG.debug("  No match found.");
+      // No leading match found. Retry the matching process without
+      // others.
+      if (query.contains(MetadataKnowledgeQueryType.OTHER)) {
+        LOG.debug("  Remove other-parameter.");
+        query.remove(MetadataKnowledgeQueryType.OTHER);
+        LOG.debug(" Query: " + query);
+        match = getLeadingRecord(query, reference);
       }
-      match.setRaw(reference);
-      return match;
+
+      if (match.getKey() == null) {
+        LOG.debug("  No match found.");
+        // No leading match found. Retry the matching process without
+        // authors.
+        // if (query.contains(MetadataKnowledgeQueryType.AUTHORS)) {
+        if (query.contains(MetadataKnowledgeQueryType.TITLE)) {
+          LOG.debug("  Remove title-parameter.");
+          // query.remove(MetadataKnowledgeQueryType.AUTHORS);
+          query.remove(MetadataKnowledgeQueryType.TITLE);
+          match = getLeadingRecord(query, reference);
+        }
+      }
+    }
+    return match;
+  }
+
+  /**
+   * Waits for the given future and returns its result.
+   * 
+   * @param future
+   *          the future.
+   * @return the result of the future.
+   * @throws IOException
+   *           if the computation of the future failed or was interrupted.
+   */
+  protected static <V> V join(Future<V> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while querying the "
+          + "metadata knowledge.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Creates the query for the given reference to query the metadata knowledge
+   * query.
+   * 
+   * @param reference
+   *          the reference to process.
+   * @return the metadata knowledge query.
+   * @throws IOException
+   *           if creating the query fails.
+   */
+  protected MetadataKnowledgeQuery createMetadataKnowledgeQuery(
+    String reference) throws IOException {
+    if (reference != null) {
+      // Resolve all words of the reference in a single batch.
+      List<String> words = getLongWords(reference);
+      return createMetadataKnowledgeQuery(words, getNumOfHits(words));
     }
     return null;
   }
 
   /**
-   * Scores a record against a extracted reference.
+   * Returns the words of the given reference, that are considered for the
+   * query.
    * 
    * @param reference
-   *          the extracted reference.
-   * @param record
-   *          the record to score.
-   * @return the score fort he record.
+   *          the reference to process.
+   * @return the words of the reference.
    */
-  protected Score scoreRecord(String reference, HasMetadata record) {
-    if (record != null && reference != null) {
-      float authorsScore = 0;
-      float startPageScore = 0;
-      float endPageScore = 0;
+  protected List<String> getLongWords(String reference) {
+    List<String> words = new ArrayList<String>();
+    Matcher m = LONG_WORDS_PATTERN.matcher(reference);
+    while (m.find()) {
+      String word = m.group().trim();
+      if (!word.isEmpty()) {
+        words.add(word);
+      }
+    }
+    return words;
+  }
 
-      /** The numbers contained in the first page */
-      List<Integer> numbers = new ArrayList<Integer>();
-      Pattern p = Patterns.NUMBERS_PATTERN;
-      Matcher m = p.matcher(reference);
+  /**
+   * Creates the query for the given words of a reference.
+   * 
+   * @param words
+   *          the words of the reference.
+   * @param hits
+   *          the number of hits of the words.
+   * @return the metadata knowledge query.
+   * @throws IOException
+   *           if creating the query fails.
+   */
+  protected MetadataKnowledgeQuery createMetadataKnowledgeQuery(
+    List<String> words, Map<String, NumOfHits> hits) throws IOException {
+    MetadataKnowledgeQuery query = new MetadataKnowledgeQuery();
 
-      while (m.find()) {
-        try {
-          int number = Integer.parseInt(m.group());
-          numbers.add(number);
-        } catch (Exception e) {
-          // Nothing to do.
-        }
-      }
+//      int numOfAuthorWords = 0;
+    int numOfTitleWords = 0;
+    int numOfOtherWords = 0;
+
+    // Pattern p = Pattern.compile("[A-Z]{1}[a-z]{1,}");
+    // Matcher m2 = p.matcher(reference);
+    // while (m2.find()) {
+    // String word = m2.group().trim();
+    // if (!word.isEmpty()) {
+    // int type = getType(word);
+    //
+    // if (type == 2 && numOfTitleWords == 0) {
+    // query.add(MetadataKnowledgeQueryType.AUTHORS, word);
+    // numOfAuthorWords++;
+    // }
+    // }
+    // }
 
-      if (record.getStartPage() > 0) {
-        if (numbers.contains(record.getStartPage())) {
-          startPageScore = 1;
-        } else {
-          startPageScore = -1;
+    for (String word : words) {
+      if (!word.isEmpty()) {
+        char firstChar = word.charAt(0);
+
+        // int numOfTitleHits =
+        // mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_TITLE, word);
+        // int numOfAuthorHits =
+        // mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS,
+        // word);
+        //
+        // boolean isTitle = numOfTitleHits > 0 && numOfAuthorHits < 50 &&
+        // numOfTitleHits > numOfAuthorHits;
+        // boolean isAuthor = numOfAuthorHits > 0;
+        int type = getType(word, hits);
+        if (type == 3) {
+          if (word.length() > 3 /* && numOfTitleHits < 20000 */) {
+            query.add(MetadataKnowledgeQueryType.AUTHORS, word);
+            query.add(MetadataKnowledgeQueryType.TITLE, word);
+            numOfTitleWords++;
+//              numOfAuthorWords++;
+          }
+        } else if (type == 1) {
+          if (word.length() > 3 /* && numOfTitleHits < 20000 */) {
+            query.add(MetadataKnowledgeQueryType.TITLE, word);
+            numOfTitleWords++;
+          }
+        } else if (type == 2) {
+          if (numOfTitleWords == 0 && Character.isUpperCase(firstChar)) {
+            query.add(MetadataKnowledgeQueryType.AUTHORS, word);
+//              numOfAuthorWords++;
+          }
         }
       }
+      if (numOfTitleWords + numOfTitleWords + numOfOtherWords >= 10) {
+        break;
+      }
+    }
+
+    query.create();
+
+    return query;
+  }
+
+  /**
+   * Returns the matching record, if exists (that means there is a record, whose
+   * score is large enough to be consodered as match).
+   * 
+   * @param query
+   *          the metadata knowledge query.
+   * @param reference
+   *          the extracted reference.
+   * @return the matching record if exists. Null otherwise.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected HasMetadata getLeadingRecord(MetadataKnowledgeQuery query,
+    String reference) throws IOException {
+    if (query != null && reference != null) {
+      prepareQuery(query);
 
-      if (record.getEndPage() > 0) {
-        if (numbers.contains(record.getEndPage())) {
-          endPageScore = 1;
+      long start = System.currentTimeMillis();
+      List<HasMetadata> records = mk.query(query, 0);
+      long end = System.currentTimeMillis();
+
+      addRuntime(4, end - start);
+
+      HasMetadata match = fetchFullRecord(selectLeadingRecord(records,
+          reference));
+      match.setRaw(reference);
+      return match;
+    }
+    return null;
+  }
+
+  /**
+   * Restricts the given query to the records and the fields, that are needed
+   * to score the records. The full record is fetched for the match only.
+   * 
+   * @param query
+   *          the query to restrict.
+   */
+  protected void prepareQuery(MetadataKnowledgeQuery query) {
+    query.setLimit(MAX_NUM_OF_SCORED_RECORDS);
+    query.setFields(MetadataKnowledgeField.SCORING_FIELDS);
+  }
+
+  /**
+   * Scores the given records against the given reference and returns the
+   * record with the highest score, if its score is large enough to be
+   * considered as match. Of several records with the highest score, the first
+   * one is returned.
+   * 
+   * The records are processed in descending order of the upper bounds of
+   * their total scores (see ReferenceScorer.getUpperBound()), which are cheap
+   * to compute. Records, whose upper bound isn't large enough to be leading,
+   * aren't aligned at all, and the processing stops as soon as no remaining
+   * record can exceed the score of the current match.
+   * 
+   * @param records
+   *          the records to score.
+   * @param reference
+   *          the extracted reference.
+   * @return the matching record or an empty record (without key), if there is
+   *         no matching record.
+   */
+  protected HasMetadata selectLeadingRecord(List<HasMetadata> records,
+    String reference) {
+    HasMetadata match = new DblpRecord();
+
+    if (records != null && reference != null) {
+      long start = System.currentTimeMillis();
+      // Prepare the reference only once for all records.
+      ReferenceScorer scorer = new ReferenceScorer(reference);
+
+      int numOfRecords = Math.min(records.size(), MAX_NUM_OF_SCORED_RECORDS);
+      final float[] upperBounds = new float[numOfRecords];
+      Integer[] order = new Integer[numOfRecords];
+      for (int i = 0; i < numOfRecords; i++) {
+        Score upperBound = scorer.getUpperBound(records.get(i));
+        // Reject the record, if even its upper bound can't be leading.
+        if (upperBound != null && isLeading(upperBound)) {
+          upperBounds[i] = getTotalScore(upperBound);
         } else {
-          endPageScore = -1;
+          upperBounds[i] = Float.NEGATIVE_INFINITY;
         }
+        order[i] = i;
       }
-      float pageScore = 0;
-      if (startPageScore < 0 && endPageScore < 0) {
-        pageScore = -1;
-      } else if (startPageScore > 0 || endPageScore > 0) {
-        pageScore = 1;
-      }
-
-      // Compute the authorsScore.
-      List<String> authors = record.getAuthors();
-      int numAuthors = 0;
-      if (authors != null) {
-        for (int i = 0; i < authors.size(); i++) {
-          String author = authors.get(i);
-          // Score the lastname of each author
-          String[] authorWords = author.split(" ");
-          String lastname = authorWords[authorWords.length - 1];
-
-          if (!lastname.isEmpty()) {
-            float[] simResult =
-                StringSimilarity.smithWaterman(lastname,
-                    reference.substring(0, reference.length() / 2));
-            float maxAuthorScore =
-                StringSimilarity.getMaxSmithWatermanScore(lastname);
-            float authorScore = simResult[0] / maxAuthorScore;
-
-            // if (i == 0) {
-            // LOG.info("    score of firstAuthor: " + authorScore);
-            // }
-            // if (i == 0 && authorScore < 0.5f) {
-            // break;
-            // }
-            authorsScore += authorScore;
-
-            numAuthors++;
-          }
+      // Sort the records by their upper bounds (the sort is stable).
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer i1, Integer i2) {
+          return Float.compare(upperBounds[i2], upperBounds[i1]);
         }
-        if (numAuthors != 0) {
-          authorsScore /= numAuthors;
+      });
+
+      int matchIndex = -1;
+      for (int k = 0; k < numOfRecords; k++) {
+        int i = order[k];
+        // Stop, if no remaining record can exceed the current match (a record
+        // with the same score replaces the match, if it is in front of it).
+        if (upperBounds[i] == Float.NEGATIVE_INFINITY
+            || (matchIndex >= 0 && upperBounds[i] < match.getScore())) {
+          numOfPrunedRecords.addAndGet(numOfRecords - k);
+          break;
+        }
+        HasMetadata record = records.get(i);
+        Score score = scorer.score(record);
+        numOfScoredRecords.incrementAndGet();
+
+        LOG.debug("   " + record);
+        LOG.debug("     t: " + score.titleScore + " a: " + score.authorScore
+            + " y: " + score.yearScore + ", j: " + score.journalScore
+            + ", p: " + score.pageScore);
+
+        // Check, if the current score exceeds the maxScore.
+        float totalScore = getTotalScore(score);
+        if (isLeading(score) && (totalScore > match.getScore()
+            || (totalScore == match.getScore() && i < matchIndex))) {
+          record.setScore(totalScore);
+          match = record;
+          matchIndex = i;
         }
       }
+      long end = System.currentTimeMillis();
+      addRuntime(5, end - start);
+    }
+    return match;
+  }
 
-      // Compute the titleScore.
-      float titleScore = 0;
-      String title = record.getTitle();
-      if (title != null && !title.isEmpty()) {
-        // String[] titleFragments = title.split("\\s{1,}-\\s{1,}");
-        // title = titleFragments[0];
-
-        float[] simResult = StringSimilarity.smithWaterman(reference, title);
-        titleScore = simResult[0];
-        float maxTitleScore = StringSimilarity.getMaxSmithWatermanScore(title);
-        titleScore = titleScore / maxTitleScore;
+  /**
+   * Returns true, if a record with the given score is large enough to be
+   * considered as match. The result is monotone in each field of the score,
+   * such that it can be applied to upper bounds of scores.
+   * 
+   * @param score
+   *          the score of the record.
+   * @return true, if the score is large enough to be considered as match.
+   */
+  protected boolean isLeading(Score score) {
+    boolean isLeading = false;
+    if (score.yearScore > 0) {
+      if ((score.titleScore > 0.75
+          && (score.titleScore * score.authorScore) > 0.35)
+          || getTotalScore(score) > 3.5) {
+        isLeading = true;
       }
+      // if (titleScore > 0.9) { isLeading = true; }
+      // // if (firstHalfTitleScore > 0.9 && secondHalfTitleScore > 0.2
+      // && authorScore > 0.5) { isLeading = true; }
+      // if (titleScore > 0.75 && authorScore > 0.5) { isLeading = true;
+      // }
+    }
+    return isLeading;
+  }
 
-      // Compute the journalScore.
-      float journalScore = 0;
-      String journal = record.getJournal();
-      if (journal != null && !journal.isEmpty()) {
-        float[] simResult = StringSimilarity.smithWaterman(reference, journal);
-        journalScore = simResult[0];
-        float maxJournalScore =
-            StringSimilarity.getMaxSmithWatermanScore(journal);
-        journalScore = journalScore / maxJournalScore;
-      }
+  /**
+   * Returns the total score of a record with the given score.
+   * 
+   * @param score
+   *          the score of the record.
+   * @return the total score.
+   */
+  protected float getTotalScore(Score score) {
+    // float totalScore = metadataScore + publicationScore + pageScore;
+    return score.titleScore + score.authorScore + score.yearScore
+        + score.journalScore + score.pageScore;
+  }
 
-      float yearScore = 1;
-      m = YEAR_PATTERN.matcher(reference);
-      if (m.find()) {
-        int year = Integer.parseInt(m.group(0));
+  /**
+   * Fetches all fields of the given (projected) record from the metadata
+   * knowledge base. The score of the record is kept.
+   * 
+   * @param record
+   *          the record to complete.
+   * @return the complete record or the given record, if there is no record
+   *         with the key of the given record.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected HasMetadata fetchFullRecord(HasMetadata record)
+    throws IOException {
+    if (record == null || record.getKey() == null) {
+      return record;
+    }
+    HasMetadata fullRecord = getRecord(
+        mk.query(MetadataKnowledgeQueryType.KEY, record.getKey(), 0),
+        record.getKey());
+    if (fullRecord == null) {
+      return record;
+    }
+    fullRecord.setScore(record.getScore());
+    return fullRecord;
+  }
 
-        if (year > 2015 || year < record.getYear() - 1
-            || year > record.getYear() + 1) {
-          yearScore = 0;
+  /**
+   * Returns the record with the given key from the given records.
+   * 
+   * @param records
+   *          the records.
+   * @param key
+   *          the key.
+   * @return the record with the given key or null, if there is no such record.
+   */
+  protected HasMetadata getRecord(List<HasMetadata> records, String key) {
+    if (records != null) {
+      for (HasMetadata record : records) {
+        if (key.equals(record.getKey())) {
+          return record;
         }
       }
+    }
+    return null;
+  }
 
-      return new Score(titleScore, authorsScore, yearScore, journalScore,
-          pageScore);
+  /**
+   * Scores a record against a extracted reference. To score several records
+   * against the same reference, use a single ReferenceScorer instead.
+   * 
+   * @param reference
+   *          the extracted reference.
+   * @param record
+   *          the record to score.
+   * @return the score fort he record.
+   */
+  protected Score scoreRecord(String reference, HasMetadata record) {
+    if (record != null && reference != null) {
+      return new ReferenceScorer(reference).score(record);
     }
     return null;
   }
@@ -1503,12 +2249,28 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
    *           if querying the metadata knowledge fails.
    */
   protected boolean isAuthor(String word) throws IOException {
+    return isAuthor(word, null);
+  }
+
+  /**
+   * Returns true, if the given text describes an author. The number of hits of
+   * the word is taken from the given map, if it is contained.
+   * 
+   * @param word
+   *          the text to analyze (without punctuation marks).
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return true, if the given text describes an author.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected boolean isAuthor(String word, Map<String, NumOfHits> hits)
+    throws IOException {
     if (word != null && !word.trim().isEmpty()) {
       // Query the metadata knowledge.
-      int numOfAuthorHits =
-          mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, word, 0);
-      int numOfTitleHits =
-          mk.getNumOfHits(MetadataKnowledgeQueryType.NUMOFHITS_TITLE, word, 0);
+      NumOfHits numOfHits = getNumOfHits(word, hits);
+      int numOfAuthorHits = numOfHits.numOfAuthorHits;
+      int numOfTitleHits = numOfHits.numOfTitleHits;
 
       LOG.debug("numOfAuthorHits: " + numOfAuthorHits);
       LOG.debug("numOfTitleHits: " + numOfTitleHits);
@@ -1519,6 +2281,71 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
     return false;
   }
 
+  /**
+   * Resolves the number of title hits and author hits for all given words with
+   * a single batched request to the metadata knowledge. The words, that were
+   * already resolved for the current document, aren't requested again.
+   * 
+   * @param words
+   *          the words to resolve.
+   * @return a map, that maps each word to its number of hits.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected Map<String, NumOfHits> getNumOfHits(Collection<String> words)
+    throws IOException {
+    Map<String, NumOfHits> result = new HashMap<String, NumOfHits>();
+    if (words == null || words.isEmpty()) {
+      return result;
+    }
+    Map<String, NumOfHits> resolvedWords = getContext().numOfHits;
+    Set<String> missingWords = new LinkedHashSet<String>();
+    for (String word : words) {
+      if (word != null) {
+        NumOfHits numOfHits = resolvedWords.get(word);
+        if (numOfHits != null) {
+          result.put(word, numOfHits);
+        } else {
+          missingWords.add(word);
+        }
+      }
+    }
+    if (!missingWords.isEmpty()) {
+      Map<String, NumOfHits> hits = mk.getNumOfHits(missingWords, 0);
+      for (String word : missingWords) {
+        NumOfHits numOfHits = hits != null ? hits.get(word) : null;
+        if (numOfHits == null) {
+          numOfHits = new NumOfHits(0, 0);
+        }
+        resolvedWords.put(word, numOfHits);
+        result.put(word, numOfHits);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of hits for the given word. The number is taken from
+   * the given map, if it is contained. Otherwise the metadata knowledge is
+   * queried.
+   * 
+   * @param word
+   *          the word to resolve.
+   * @param hits
+   *          the already resolved number of hits of words (may be null).
+   * @return the number of hits of the word.
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  protected NumOfHits getNumOfHits(String word, Map<String, NumOfHits> hits)
+    throws IOException {
+    NumOfHits numOfHits = hits != null ? hits.get(word) : null;
+    if (numOfHits == null) {
+      numOfHits = getNumOfHits(Collections.singleton(word)).get(word);
+    }
+    return numOfHits != null ? numOfHits : new NumOfHits(0, 0);
+  }
+
   /**
    * Enumeration of various types for a line.
    * 
@@ -1582,26 +2409,226 @@ public class ReferencesMetadataMatcher implements MetadataMatcher {
     }
   }
 
+  /**
+   * Returns the context of the document, that is matched by the current
+   * thread. Creates a new context, if the thread didn't match a document yet
+   * (e.g. if matchReference() is called directly).
+   * 
+   * @return the context of the current thread.
+   */
+  protected ReferencesMatchingContext getContext() {
+    ReferencesMatchingContext context = contexts.get();
+    if (context == null) {
+      context = new ReferencesMatchingContext(null);
+      contexts.set(context);
+    }
+    return context;
+  }
+
   /**
    * Returns the extracted fulltext.
    * 
    * @return the extracted fulltext.
    */
   public String getFulltext() {
-    return fulltext.toString();
+    return getContext().getFulltext();
   }
 
   @Override
   public long[] getRuntimes() {
-    return runtimes;
+    return getContext().getRuntimes();
+  }
+
+  /**
+   * Adds the given runtime to the runtimes of the current document. The
+   * references are matched in parallel, so the runtimes of the matching phase
+   * are summed up over all threads.
+   * 
+   * @param index
+   *          the index of the runtime.
+   * @param runtime
+   *          the runtime to add.
+   */
+  protected void addRuntime(int index, long runtime) {
+    getContext().addRuntime(index, runtime);
+  }
+
+  /**
+   * Returns the maximal number of threads, that match the references of the
+   * documents in parallel.
+   * 
+   * @return the maximal number of threads.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the maximal number of threads, that match the references of the
+   * documents in parallel (1 to match them in the calling thread). The
+   * threads are shared by all documents, that are matched concurrently.
+   * 
+   * @param parallelism
+   *          the maximal number of threads.
+   */
+  public synchronized void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+    if (executor != null) {
+      // The running tasks are completed by the previous executor.
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Returns true, if the bibliography of a document is located by scanning
+   * its pages from the end.
+   * 
+   * @return true, if the reverse scan mode is enabled.
+   */
+  public boolean isReverseScan() {
+    return isReverseScan;
+  }
+
+  /**
+   * Enables or disables the reverse scan mode, in which the bibliography of a
+   * document is located by scanning its pages from the end, such that only
+   * the pages of the bibliography are extracted (see matchFromEnd()). If a
+   * document has several bibliography headers, only the bibliography of the
+   * last page with a header is matched in this mode, while the default mode
+   * starts at the first header.
+   * 
+   * @param isReverseScan
+   *          true, to enable the reverse scan mode.
+   */
+  public void setReverseScan(boolean isReverseScan) {
+    this.isReverseScan = isReverseScan;
+  }
+
+  /**
+   * Returns the number of records, that were aligned against a reference.
+   * 
+   * @return the number of scored records.
+   */
+  public long getNumOfScoredRecords() {
+    return numOfScoredRecords.get();
+  }
+
+  /**
+   * Returns the number of records, that were rejected without alignment,
+   * because their upper bound of the score wasn't large enough.
+   * 
+   * @return the number of pruned records.
+   */
+  public long getNumOfPrunedRecords() {
+    return numOfPrunedRecords.get();
   }
   
   public void setLines(List<Region> lines) {
-    this.lines = lines;
+    getContext().setLines(lines);
   }
   
   @Override
   public List<Region> getLines() {
-    return lines;
+    return getContext().getLines();
+  }
+
+  /**
+   * The context of a document, that is matched by a ReferencesMetadataMatcher.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class ReferencesMatchingContext extends MatchingContext {
+    /** The most common position of the first author in a line */
+    protected int mostCommonPosFirstAuthor;
+    /**
+     * The number of hits of the words of the document, that were resolved.
+     * Within a bibliography, the same words (like "Proceedings" or the names
+     * of co-authors) are classified again and again, but looked up once.
+     */
+    protected Map<String, NumOfHits> numOfHits;
+    /** The types of the words of the document (see getType()). */
+    protected Map<String, Integer> wordTypes;
+    /** The pdf extraction tool to extract the skipped pages. */
+    protected PdfStripper stripper;
+    /** The file of the skipped pages (null, if there are none). */
+    protected File file;
+    /** The number of pages in front of the extracted lines. */
+    protected int numOfSkippedPages;
+    /** The text of the pages in front of the lines (null, if unknown). */
+    protected String textOfSkippedPages;
+
+    /**
+     * The constructor.
+     * 
+     * @param lines
+     *          the extracted lines of the document.
+     */
+    protected ReferencesMatchingContext(List<Region> lines) {
+      super(lines, 6);
+      this.mostCommonPosFirstAuthor = -1;
+      // The references of a document are matched in parallel.
+      this.numOfHits = new ConcurrentHashMap<String, NumOfHits>();
+      this.wordTypes = new ConcurrentHashMap<String, Integer>();
+    }
+
+    /**
+     * Sets the pages in front of the extracted lines, that are extracted from
+     * the given file on demand.
+     * 
+     * @param stripper
+     *          the pdf extraction tool.
+     * @param file
+     *          the pdf file.
+     * @param numOfSkippedPages
+     *          the number of the pages in front of the extracted lines.
+     */
+    protected synchronized void setSkippedPages(PdfStripper stripper,
+      File file, int numOfSkippedPages) {
+      this.stripper = stripper;
+      this.file = file;
+      this.numOfSkippedPages = numOfSkippedPages;
+    }
+
+    /**
+     * Sets the text of the pages in front of the extracted lines.
+     * 
+     * @param textOfSkippedPages
+     *          the text of the skipped pages.
+     */
+    protected synchronized void setTextOfSkippedPages(
+      String textOfSkippedPages) {
+      this.textOfSkippedPages = textOfSkippedPages;
+      this.fulltext = null;
+    }
+
+    @Override
+    protected void appendFulltext(StringBuilder sb) {
+      if (textOfSkippedPages != null) {
+        sb.append(textOfSkippedPages);
+      }
+      super.appendFulltext(sb);
+    }
+
+    @Override
+    protected List<Region> getFulltextLines() {
+      if (file == null) {
+        return lines;
+      }
+      try {
+        List<Region> fulltextLines = new ArrayList<Region>();
+        fulltextLines.addAll(stripper.extractLines(file, 1, numOfSkippedPages,
+            true));
+        if (lines != null) {
+          fulltextLines.addAll(lines);
+        }
+        return fulltextLines;
+      } catch (IOException e) {
+        LogFactory.getLog(ReferencesMetadataMatcher.class).warn(
+            "Couldn't extract the pages in front of the bibliography.", e);
+        return lines;
+      }
+    }
   }
 }
\ No newline at end of file
@@ -14,6 +14,11 @@ import org.apache.commons.logging.LogFactory;
 
 import de.freiburg.iif.enrichment.CitationsDetector.Citation;
 import de.freiburg.iif.extraction.PaperMatcher;
+import de.freiburg.iif.extraction.metadata.DocumentMetadataMatcher2;
+import de.freiburg.iif.extraction.metadataknowledge.CachingMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
+import de.freiburg.iif.extraction.references.ReferencesMetadataMatcher;
+import de.freiburg.iif.guice.MetadataKnowledgeProvider;
 import de.freiburg.iif.model.HasMetadata;
 
 /**
@@ -23,6 +28,18 @@ import de.freiburg.iif.model.HasMetadata;
  *
  */
 public class Pdf2MetadataTransformer {
+  /**
+   * The metadata knowledge. It is shared by all requests, such that all
+   * requests share the same cache.
+   */
+  private static MetadataKnowledge mk = new MetadataKnowledgeProvider(
+      CachingMetadataKnowledge.DEFAULT_CACHE_SIZE).get();
+  /** The metadata matcher, that is shared by all requests. */
+  private static DocumentMetadataMatcher2 metadataMatcher =
+      new DocumentMetadataMatcher2(mk);
+  /** The references matcher, that is shared by all requests. */
+  private static ReferencesMetadataMatcher referencesMatcher =
+      new ReferencesMetadataMatcher(mk);
   /** The extractor */
   private PaperMatcher matcher;
 //  /** The extractor */
@@ -44,7 +61,7 @@ public class Pdf2MetadataTransformer {
    * The constructor.
    */
   public Pdf2MetadataTransformer() {
-    this.matcher = new PaperMatcher();
+    this.matcher = new PaperMatcher(metadataMatcher, referencesMatcher);
 //    this.enricher = new PdfEnricher();
   }
   
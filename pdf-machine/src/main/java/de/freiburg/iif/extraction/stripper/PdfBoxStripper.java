@@ -2,8 +2,16 @@ package de.freiburg.iif.extraction.stripper;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.jempbox.xmp.XMPMetadata;
 import org.apache.jempbox.xmp.XMPSchemaDublinCore;
@@ -18,39 +26,57 @@ import de.freiburg.iif.model.Region;
 /**
  * The implementation of PdfExtraction using PdfBox.
  * 
+ * The pages of a pdf file can be extracted in parallel (see
+ * setParallelism(), the pages are extracted sequentially by default). The
+ * page range is then split into consecutive parts, which are extracted by own
+ * strippers on own handles of the file (a PDDocument isn't thread-safe), and
+ * the lines of the parts are concatenated in the order of the pages. As the
+ * lines of a page are computed from this page only, the result is the same as
+ * the result of a sequential extraction. An already loaded PDDocument is
+ * always extracted sequentially, because further handles of it can only be
+ * loaded from its source.
+ * 
+ * To process the pages, as soon as they are extracted, the lines can be
+ * streamed page by page to a PageListener (see extractPageLines()).
+ * 
  * @author Claudius Korzen
  */
 public class PdfBoxStripper implements PdfStripper {
+  /** The maximal number of threads, that extract the pages of a document. */
+  protected int parallelism;
+
+  /**
+   * The constructor. The pages are extracted sequentially.
+   */
+  public PdfBoxStripper() {
+    this(1);
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param parallelism
+   *          the maximal number of threads, that extract the pages of a
+   *          document in parallel.
+   */
+  public PdfBoxStripper(int parallelism) {
+    setParallelism(parallelism);
+  }
 
   @Override
-  public List<Region> extractLines(File file, int startPage, int endPage,
-    boolean splitLines) throws IOException {
+  public List<Region> extractLines(final File file, int startPage,
+    int endPage, boolean splitLines) throws IOException {
 //    File tmp = File.createTempFile("icecite-", "ra");
 //    PDDocument doc = PDDocument.loadNonSeq(file, new RandomAccessFile(tmp, "rw"));
-    PDDocument doc = PDDocument.load(file);
+    PDDocument doc = load(file);
     
     try {
-      // Check, if document is decrpyted.
-      if (doc.isEncrypted()) {
-        try {
-          doc.decrypt("");
-          doc.setAllSecurityToBeRemoved(true);
-        } catch (Exception e) {
-          throw new IOException("The document is encrypted, and can't be decrypted.", e);
+      return extractPageLines(doc, new Callable<PDDocument>() {
+        @Override
+        public PDDocument call() throws IOException {
+          return load(file);
         }
-      }
-          
-      PdfBoxTextLineStripper stripper = new PdfBoxTextLineStripper(doc);
-  
-      // Don't abort on parsing errors.
-      stripper.setForceParsing(true);
-      // Extract only the textlines of first page.
-      stripper.setStartPage(startPage);
-      stripper.setEndPage(endPage);
-      stripper.setSplitLine(splitLines);
-  
-      List<Region> lines = stripper.getLines();
-      return lines;
+      }, startPage, endPage, splitLines);
     } finally {
       doc.close();
     }
@@ -61,19 +87,255 @@ public class PdfBoxStripper implements PdfStripper {
     public
     List<Region> extractLines(PDDocument doc, int startPage, int endPage,
       boolean splitLines) throws IOException {
+    List<Region> lines = extractPageLines(doc, startPage, endPage, splitLines);
+    doc.close();
+
+    return lines;
+  }
+
+  /**
+   * Extracts the textlines of the given pages from the given document. The
+   * pages are extracted sequentially (regardless of the parallelism), because
+   * the source of the document is unknown.
+   */
+  @Override
+  public List<Region> extractPageLines(PDDocument doc, int startPage,
+    int endPage, boolean splitLines) throws IOException {
+    return extractLinesOfPages(doc, startPage, endPage, splitLines);
+  }
+
+  /**
+   * Extracts the textlines of the given pages from the given document and
+   * passes them page by page to the given listener. The pages are extracted
+   * sequentially (regardless of the parallelism) by a single stripper, such
+   * that the listener gets the pages in their order and only the lines of a
+   * single page are held at once.
+   */
+  @Override
+  public void extractPageLines(PDDocument doc, int startPage, int endPage,
+    boolean splitLines, PageListener listener) throws IOException {
+    createStripper(doc, startPage, endPage, splitLines).processLines(listener);
+  }
+
+  /**
+   * Returns the number of parts, into which the given pages of the given
+   * document are split to extract them in parallel.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @return the number of parts (1, if the pages are extracted sequentially).
+   */
+  protected int getNumOfParts(PDDocument doc, int startPage, int endPage) {
+    int numOfPages = Math.min(endPage, doc.getNumberOfPages())
+        - Math.max(1, startPage) + 1;
+    return Math.max(1, Math.min(parallelism, numOfPages));
+  }
+
+  /**
+   * Extracts the textlines of the given pages from the given document. If
+   * the pages are extracted in parallel, the given document is used for the
+   * first part of the pages and the other parts are extracted from documents
+   * created by the given loader (the documents are closed afterwards).
+   * 
+   * @param doc
+   *          the document to process.
+   * @param loader
+   *          the loader of further handles of the document.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @param splitLines
+   *          flag to decide, if lines should be checked if they need to be
+   *          splitted.
+   * @return The list of lines in the given page-interval.
+   * @throws IOException
+   *           if the extraction fails.
+   */
+  protected List<Region> extractPageLines(PDDocument doc,
+    final Callable<PDDocument> loader, int startPage, int endPage,
+    final boolean splitLines) throws IOException {
+    int firstPage = Math.max(1, startPage);
+    int numOfPages = Math.min(endPage, doc.getNumberOfPages()) - firstPage + 1;
+    int numOfParts = getNumOfParts(doc, startPage, endPage);
+    if (numOfParts <= 1) {
+      return extractLinesOfPages(doc, startPage, endPage, splitLines);
+    }
+
+    ExecutorService executor = createExecutor(numOfParts - 1);
+    try {
+      // Extract all parts but the first one in the worker threads.
+      List<Future<List<Region>>> parts = new ArrayList<Future<List<Region>>>();
+      for (int i = 1; i < numOfParts; i++) {
+        final int partStartPage = firstPage + i * numOfPages / numOfParts;
+        final int partEndPage =
+            firstPage + (i + 1) * numOfPages / numOfParts - 1;
+        parts.add(executor.submit(new Callable<List<Region>>() {
+          @Override
+          public List<Region> call() throws Exception {
+            PDDocument partDoc = loader.call();
+            try {
+              return extractLinesOfPages(partDoc, partStartPage,
+                  partEndPage, splitLines);
+            } finally {
+              partDoc.close();
+            }
+          }
+        }));
+      }
+      List<Region> lines = extractLinesOfPages(doc, firstPage,
+          firstPage + numOfPages / numOfParts - 1, splitLines);
+      for (Future<List<Region>> part : parts) {
+        lines.addAll(join(part));
+      }
+      return lines;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Extracts the textlines of the given pages from the given document with a
+   * single stripper.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @param splitLines
+   *          flag to decide, if lines should be checked if they need to be
+   *          splitted.
+   * @return The list of lines in the given page-interval.
+   * @throws IOException
+   *           if the extraction fails.
+   */
+  protected List<Region> extractLinesOfPages(PDDocument doc, int startPage,
+    int endPage, boolean splitLines) throws IOException {
+    return createStripper(doc, startPage, endPage, splitLines).getLines();
+  }
+
+  /**
+   * Creates a stripper, that extracts the textlines of the given pages from
+   * the given document.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @param splitLines
+   *          flag to decide, if lines should be checked if they need to be
+   *          splitted.
+   * @return the stripper.
+   * @throws IOException
+   *           if creating the stripper fails.
+   */
+  protected PdfBoxTextLineStripper createStripper(PDDocument doc,
+    int startPage, int endPage, boolean splitLines) throws IOException {
     PdfBoxTextLineStripper stripper = new PdfBoxTextLineStripper(doc);
 
     // Don't abort on parsing errors.
     stripper.setForceParsing(true);
-    // Extract only the textlines of first page.
+    // Extract only the textlines of the given pages.
     stripper.setStartPage(startPage);
     stripper.setEndPage(endPage);
     stripper.setSplitLine(splitLines);
 
-    List<Region> lines = stripper.getLines();        
-    doc.close();
+    return stripper;
+  }
 
-    return lines;
+  /**
+   * Loads the given pdf file and decrypts it, if necessary.
+   * 
+   * @param file
+   *          the pdf file to load.
+   * @return the loaded document.
+   * @throws IOException
+   *           if loading or decrypting the document fails.
+   */
+  protected PDDocument load(File file) throws IOException {
+    PDDocument doc = PDDocument.load(file);
+    // Check, if document is decrpyted.
+    if (doc.isEncrypted()) {
+      try {
+        doc.decrypt("");
+        doc.setAllSecurityToBeRemoved(true);
+      } catch (Exception e) {
+        doc.close();
+        throw new IOException("The document is encrypted, and can't be decrypted.", e);
+      }
+    }
+    return doc;
+  }
+
+  /**
+   * Creates the executor with the given number of threads.
+   * 
+   * @param numOfThreads
+   *          the number of threads.
+   * @return the executor.
+   */
+  protected ExecutorService createExecutor(int numOfThreads) {
+    return Executors.newFixedThreadPool(numOfThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "PdfBoxStripper");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Waits for the given future and returns its result.
+   * 
+   * @param future
+   *          the future.
+   * @return the result.
+   * @throws IOException
+   *           if the computation failed or was interrupted.
+   */
+  protected static <V> V join(Future<V> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while extracting the "
+          + "pages.");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Returns the maximal number of threads, that extract the pages of a
+   * document in parallel.
+   * 
+   * @return the maximal number of threads.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the maximal number of threads, that extract the pages of a document
+   * in parallel (1 to extract them sequentially).
+   * 
+   * @param parallelism
+   *          the maximal number of threads.
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
   }
 
   @Override
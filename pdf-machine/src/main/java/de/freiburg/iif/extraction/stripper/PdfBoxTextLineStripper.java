@@ -19,6 +19,8 @@ import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.util.TextNormalize;
 import org.apache.pdfbox.util.TextPosition;
 
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
+import de.freiburg.iif.model.PageGeometry;
 import de.freiburg.iif.model.Region;
 
 
@@ -35,6 +37,9 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
   /** The lines of the current page */
   protected List<Region> linesOfPage;
 
+  /** The geometry of the text positions of the current page */
+  protected PageGeometry geometryOfPage;
+
   // TODO: Move pattern to a separate class.
   /** Pattern to identify captions */
   protected static Pattern CAPTION_PATTERN = Pattern
@@ -71,6 +76,12 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
   /** Flag to decide if lines should be checked, if the have to be splitted */
   protected boolean splitLines;
 
+  /**
+   * The listener, that gets the lines page by page (null, if the lines of all
+   * pages are collected).
+   */
+  protected PageListener pageListener;
+
   /**
    * Constructor of TextLineStripper.
    * 
@@ -153,6 +164,8 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
     if (!splitLines) {
       lines.addAll(linesOfPage);
       linesOfPage.clear();
+      endGeometryOfPage();
+      passLinesOfPage(pageNumber);
       return;
     }
 
@@ -235,6 +248,37 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
     }
 
     linesOfPage.clear();
+    endGeometryOfPage();
+    passLinesOfPage(pageNumber);
+  }
+
+  /**
+   * Completes the geometry of the current page, such that the positions of
+   * the next page are stored in a new geometry.
+   */
+  protected void endGeometryOfPage() {
+    if (geometryOfPage != null) {
+      geometryOfPage.trim();
+      geometryOfPage = null;
+    }
+  }
+
+  /**
+   * Passes the lines of the given page to the page listener (if there is
+   * one). The lines are removed afterwards, such that they aren't kept until
+   * the end of the document.
+   * 
+   * @param pageNumber
+   *          the number of the page.
+   * @throws IOException
+   *           if the listener fails to process the lines.
+   */
+  protected void passLinesOfPage(int pageNumber) throws IOException {
+    if (pageListener != null) {
+      List<Region> linesOfPage = new ArrayList<Region>(lines);
+      lines.clear();
+      pageListener.pageExtracted(pageNumber, linesOfPage);
+    }
   }
 
   /**
@@ -513,11 +557,15 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
           // Build the line: Add whitespaces at the correct positions
           if (pos instanceof WordSeparator) {
             lineBuilder.append(getWordSeparator());
-            fulltext.append(getWordSeparator());
+            if (pageListener == null) {
+              fulltext.append(getWordSeparator());
+            }
           } else {
             text = normalize.normalizePres(text);
             lineBuilder.append(text);
-            fulltext.append(text);
+            if (pageListener == null) {
+              fulltext.append(text);
+            }
           }
 
           if (text != null) {
@@ -670,7 +718,15 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
 //          : false);
       region.setIsInUpperCases(numOfChars > 0 && numOfUpperCases == numOfChars);
       region.setFontFlag(fontFlag);
-      region.setTextPositions(line);
+      // Keep the geometry of the positions instead of the positions.
+      if (geometryOfPage == null) {
+        geometryOfPage = new PageGeometry();
+      }
+      int firstPosition = geometryOfPage.size();
+      for (TextPosition pos : line) {
+        geometryOfPage.add(pos);
+      }
+      region.setPositions(geometryOfPage, firstPosition, line.size());
       
       return region;
     }
@@ -836,6 +892,24 @@ public class PdfBoxTextLineStripper extends PdfBoxTextStripper {
     return lines;
   }
 
+  /**
+   * Passes the lines of the pdf-file page by page to the given listener. The
+   * lines aren't collected and the fulltext isn't built.
+   * 
+   * @param listener
+   *          the listener, that gets the lines of the pages.
+   * @throws IOException
+   *           if the extraction of lines fails.
+   */
+  public void processLines(PageListener listener) throws IOException {
+    this.pageListener = listener;
+    try {
+      getText(document);
+    } finally {
+      this.pageListener = null;
+    }
+  }
+
   /**
    * Returns the fulltext of the pdf file as a string. The fulltext is only
    * available after calling getLines().
@@ -152,7 +152,9 @@ public class PdfBoxTextStripper extends PDFStreamEngine
      */
     protected Vector<List<TextPosition>> charactersByArticle = new Vector<List<TextPosition>>();
 
-    private Map<String, List<TextPosition>> characterListMapping = new HashMap<String, List<TextPosition>>();
+    // XXX(CK): Replaced the lists of the characters by spatial hashes, such
+    // that a duplicate is searched only in the neighbourhood of a character.
+    private Map<String, CharacterGrid> characterGridMapping = new HashMap<String, CharacterGrid>();
 
     /**
      * encoding that text will be written in (or null).
@@ -445,13 +447,24 @@ public class PdfBoxTextStripper extends PDFStreamEngine
                 }
             }
            
-            characterListMapping.clear();
+            characterGridMapping.clear();
             processStream( page, page.findResources(), content );
            
             writePage();
             
             // XXX(CK): Added currentPageNo to endPage
             endPage( page, currentPageNo );
+
+            // XXX(CK): Release the characters of the page, as soon as the page
+            // was processed, instead of keeping them until the next page.
+            for( List<TextPosition> textList : charactersByArticle )
+            {
+                if( textList != null )
+                {
+                    textList.clear();
+                }
+            }
+            characterGridMapping.clear();
         }
 
     }
@@ -908,11 +921,11 @@ public class PdfBoxTextStripper extends PDFStreamEngine
             String textCharacter = text.getCharacter();
             float textX = text.getX();
             float textY = text.getY();
-            List<TextPosition> sameTextCharacters = (List<TextPosition>)characterListMapping.get( textCharacter );
+            CharacterGrid sameTextCharacters = characterGridMapping.get( textCharacter );
             if( sameTextCharacters == null )
             {
-                sameTextCharacters = new ArrayList<TextPosition>();
-                characterListMapping.put( textCharacter, sameTextCharacters );
+                sameTextCharacters = new CharacterGrid();
+                characterGridMapping.put( textCharacter, sameTextCharacters );
             }
 
             // RDD - Here we compute the value that represents the end of the rendered
@@ -926,26 +939,9 @@ public class PdfBoxTextStripper extends PDFStreamEngine
             // an amount to allow for kerning (a percentage of the width of the last
             // character).
             //
-            boolean suppressCharacter = false;
             float tolerance = (text.getWidth()/textCharacter.length())/3.0f;
-            for( int i=0; i<sameTextCharacters.size() && textCharacter != null; i++ )
-            {
-                TextPosition character = sameTextCharacters.get( i );
-                String charCharacter = character.getCharacter();
-                float charX = character.getX();
-                float charY = character.getY();
-                //only want to suppress
-
-                if( charCharacter != null &&
-                        //charCharacter.equals( textCharacter ) &&
-                        within( charX, textX, tolerance ) &&
-                        within( charY,
-                                textY,
-                                tolerance ) )
-                {
-                    suppressCharacter = true;
-                }
-            }
+            boolean suppressCharacter =
+                    sameTextCharacters.containsOverlapping( textX, textY, tolerance );
             if( !suppressCharacter )
             {
                 sameTextCharacters.add( text );
@@ -1930,6 +1926,167 @@ public class PdfBoxTextStripper extends PDFStreamEngine
         }
     }
     
+    // XXX(CK): Added the spatial hash of the characters.
+    /**
+     * The positions of the same character on a page, hashed into a grid of
+     * cells of fixed size by their (quantized) coordinates. A position, that
+     * overlaps a given position within a tolerance, can only be contained in
+     * the cells around the given position.
+     *
+     * @author Claudius Korzen
+     *
+     */
+    protected static class CharacterGrid
+    {
+        /** The width and the height of a cell. */
+        protected static final float CELL_SIZE = 8f;
+
+        /** The maximal absolute index of a cell, that is scanned. */
+        protected static final double MAX_CELL = 1L << 40;
+
+        /** The positions per cell. */
+        protected Map<Long, List<TextPosition>> cells = new HashMap<Long, List<TextPosition>>();
+
+        /** All positions (the positions with infinite coordinates aren't hashed). */
+        protected List<TextPosition> positions = new ArrayList<TextPosition>();
+
+        /**
+         * Adds the given position to the grid.
+         *
+         * @param text The position to add.
+         */
+        public void add( TextPosition text )
+        {
+            positions.add( text );
+            float x = text.getX();
+            float y = text.getY();
+            // A position with a NaN or an infinite coordinate is never within
+            // the tolerance of another position.
+            if( !Float.isNaN( x ) && !Float.isInfinite( x )
+                    && !Float.isNaN( y ) && !Float.isInfinite( y ) )
+            {
+                Long key = getKey( getCell( x ), getCell( y ) );
+                List<TextPosition> cell = cells.get( key );
+                if( cell == null )
+                {
+                    cell = new ArrayList<TextPosition>( 2 );
+                    cells.put( key, cell );
+                }
+                cell.add( text );
+            }
+        }
+
+        /**
+         * Returns true, if the grid contains a position, whose coordinates are
+         * both within the given tolerance of the given coordinates.
+         *
+         * @param x The x-coordinate.
+         * @param y The y-coordinate.
+         * @param tolerance The tolerance.
+         * @return true, if there is such a position.
+         */
+        public boolean containsOverlapping( float x, float y, float tolerance )
+        {
+            if( !(tolerance > 0) || positions.isEmpty() )
+            {
+                return false;
+            }
+            // Widen the range by the rounding errors of within().
+            float margin = 4 * Math.ulp( Math.max( Math.abs( x ), Math.abs( y ) ) + tolerance );
+            double minX = Math.floor( (x - tolerance - margin) / CELL_SIZE );
+            double maxX = Math.floor( (x + tolerance + margin) / CELL_SIZE );
+            double minY = Math.floor( (y - tolerance - margin) / CELL_SIZE );
+            double maxY = Math.floor( (y + tolerance + margin) / CELL_SIZE );
+            double numOfCells = (maxX - minX + 1) * (maxY - minY + 1);
+            if( !(numOfCells <= positions.size()) || !(Math.abs( minX ) < MAX_CELL)
+                    || !(Math.abs( maxX ) < MAX_CELL) || !(Math.abs( minY ) < MAX_CELL)
+                    || !(Math.abs( maxY ) < MAX_CELL) )
+            {
+                // Scanning all positions is cheaper than scanning the cells (or
+                // the coordinates are out of the range of the grid).
+                return containsOverlapping( positions, x, y, tolerance );
+            }
+            long minCellX = (long) minX;
+            long maxCellX = (long) maxX;
+            long minCellY = (long) minY;
+            long maxCellY = (long) maxY;
+            for( long cellX = minCellX; cellX <= maxCellX; cellX++ )
+            {
+                for( long cellY = minCellY; cellY <= maxCellY; cellY++ )
+                {
+                    List<TextPosition> cell = cells.get( getKey( cellX, cellY ) );
+                    if( cell != null && containsOverlapping( cell, x, y, tolerance ) )
+                    {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns true, if the given list contains a position, whose
+         * coordinates are both within the given tolerance of the given
+         * coordinates.
+         *
+         * @param texts The positions to check.
+         * @param x The x-coordinate.
+         * @param y The y-coordinate.
+         * @param tolerance The tolerance.
+         * @return true, if there is such a position.
+         */
+        protected boolean containsOverlapping( List<TextPosition> texts, float x, float y, float tolerance )
+        {
+            for( int i=0; i<texts.size(); i++ )
+            {
+                TextPosition character = texts.get( i );
+                if( character.getCharacter() != null &&
+                        within( character.getX(), x, tolerance ) &&
+                        within( character.getY(), y, tolerance ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * This will determine of two floating point numbers are within a
+         * specified variance (see PdfBoxTextStripper.within()).
+         *
+         * @param first The first number to compare to.
+         * @param second The second number to compare to.
+         * @param variance The allowed variance.
+         */
+        protected boolean within( float first, float second, float variance )
+        {
+            return second < first + variance && second > first - variance;
+        }
+
+        /**
+         * Returns the index of the cell of the given coordinate.
+         *
+         * @param coordinate The coordinate.
+         * @return The index of the cell.
+         */
+        protected long getCell( float coordinate )
+        {
+            return (long) Math.floor( coordinate / CELL_SIZE );
+        }
+
+        /**
+         * Returns the key of the given cell.
+         *
+         * @param cellX The index of the cell in x-direction.
+         * @param cellY The index of the cell in y-direction.
+         * @return The key of the cell.
+         */
+        protected Long getKey( long cellX, long cellY )
+        {
+            return Long.valueOf( (cellX << 32) ^ (cellY & 0xffffffffL) );
+        }
+    }
+
     // XXX: Added by CK
     protected void onLineExtracted(List<TextPosition> line, int pageNumber) {
     	// By default nothing to do, override it to define specified behaviour
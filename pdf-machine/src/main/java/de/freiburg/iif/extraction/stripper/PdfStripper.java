@@ -57,6 +57,51 @@ public interface PdfStripper {
   public List<Region> extractLines(PDDocument file, int startPage,
     int endPage, boolean splitLines) throws IOException;
 
+  /**
+   * Extracts the textlines of the given pages from the given document. Unlike
+   * extractLines(), the document isn't closed, such that further pages can be
+   * extracted from it.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @param splitLines
+   *          flag to decide, if lines should be checked if they need to be
+   *          splitted.
+   * @return The list of lines in the given page-interval.
+   * @throws IOException
+   *           if the extraction fails.
+   */
+  public List<Region> extractPageLines(PDDocument doc, int startPage,
+    int endPage, boolean splitLines) throws IOException;
+
+  /**
+   * Extracts the textlines of the given pages from the given document and
+   * passes them page by page to the given listener, as soon as a page was
+   * extracted. The lines of a page aren't kept by the stripper, such that the
+   * memory is bounded by the size of a single page. Like extractPageLines(),
+   * the document isn't closed.
+   * 
+   * @param doc
+   *          the document to process.
+   * @param startPage
+   *          the start page for the extraction.
+   * @param endPage
+   *          the end page for the extraction.
+   * @param splitLines
+   *          flag to decide, if lines should be checked if they need to be
+   *          splitted.
+   * @param listener
+   *          the listener, that gets the lines of the pages.
+   * @throws IOException
+   *           if the extraction fails or the listener fails to process a page.
+   */
+  public void extractPageLines(PDDocument doc, int startPage, int endPage,
+    boolean splitLines, PageListener listener) throws IOException;
+
   /**
    * Imports the given metadata as XMP into the given pdfFile.
    * 
@@ -71,4 +116,26 @@ public interface PdfStripper {
    */
   public void importMetadata(File file, HasMetadata record, String outputDir)
     throws Exception;
+
+  /**
+   * The listener, that gets the lines of the pages, which are extracted by
+   * extractPageLines().
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  public static interface PageListener {
+    /**
+     * Called, when the given page was extracted.
+     * 
+     * @param pageNumber
+     *          the number of the page (1-based).
+     * @param lines
+     *          the lines of the page.
+     * @throws IOException
+     *           if processing the lines fails (the extraction is aborted).
+     */
+    public void pageExtracted(int pageNumber, List<Region> lines)
+      throws IOException;
+  }
 }
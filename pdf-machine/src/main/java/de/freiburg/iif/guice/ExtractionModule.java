@@ -1,5 +1,7 @@
 package de.freiburg.iif.guice;
 
+import java.io.File;
+
 import org.apache.commons.logging.Log;
 
 import com.google.inject.AbstractModule;
@@ -7,8 +9,9 @@ import com.google.inject.Singleton;
 
 import de.freiburg.iif.extraction.MetadataMatcher;
 import de.freiburg.iif.extraction.metadata.DocumentMetadataMatcher2;
-import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.CachingMetadataKnowledge;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
+import de.freiburg.iif.extraction.references.ReferencesMetadataMatcher;
 import de.freiburg.iif.extraction.stripper.PdfBoxStripper;
 import de.freiburg.iif.extraction.stripper.PdfStripper;
 
@@ -18,12 +21,58 @@ import de.freiburg.iif.extraction.stripper.PdfStripper;
  * @author Claudius Korzen
  */
 public class ExtractionModule extends AbstractModule {
+  /** The maximal number of terms in the cache of the metadata knowledge. */
+  protected int cacheSize;
+  /** The file of the local index (null to use the C++ index). */
+  protected File indexFile;
+
+  /**
+   * The constructor.
+   */
+  public ExtractionModule() {
+    this(CachingMetadataKnowledge.DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param cacheSize
+   *          the maximal number of terms in the cache of the metadata knowledge
+   *          (0 to disable the cache).
+   */
+  public ExtractionModule(int cacheSize) {
+    this(cacheSize, null);
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param cacheSize
+   *          the maximal number of terms in the cache of the metadata knowledge
+   *          (0 to disable the cache).
+   * @param indexFile
+   *          the index directory (see SegmentedIndex), the index file (see
+   *          MappedIndexWriter) or the dblp.xml of an index inside of the JVM,
+   *          that is queried instead of the C++ index (null to use the C++
+   *          index).
+   */
+  public ExtractionModule(int cacheSize, File indexFile) {
+    this.cacheSize = cacheSize;
+    this.indexFile = indexFile;
+  }
 
   @Override
   protected void configure() {	  
     bind(Log.class).toProvider(LogProvider.class).in(Singleton.class);
+    // The matchers keep the state of a document in a context per thread, so
+    // a single instance can serve all documents.
+    bind(DocumentMetadataMatcher2.class).in(Singleton.class);
+    bind(ReferencesMetadataMatcher.class).in(Singleton.class);
     bind(MetadataMatcher.class).to(DocumentMetadataMatcher2.class);
-    bind(MetadataKnowledge.class).to(InvertedIndexMetadataKnowledge.class);
+    // A single instance, such that all matchers share the cache.
+    bind(MetadataKnowledge.class)
+        .toProvider(new MetadataKnowledgeProvider(cacheSize, indexFile))
+        .in(Singleton.class);
     bind(PdfStripper.class).to(PdfBoxStripper.class);
   }
 }
@@ -0,0 +1,90 @@
+package de.freiburg.iif.guice;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.google.inject.Provider;
+import com.google.inject.ProvisionException;
+
+import de.freiburg.iif.extraction.metadataknowledge.CachingMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.LocalIndexMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.index.Index;
+import de.freiburg.iif.extraction.metadataknowledge.index.SegmentedIndex;
+
+/**
+ * The class MetadataKnowledgeProvider. Provides the inverted index (either the
+ * C++ index via its socket or an index inside of the JVM, mapped from an
+ * index file or built from a dblp.xml file), with a cache for the number of
+ * hits of terms in front of it.
+ * 
+ * @author Claudius Korzen
+ */
+public class MetadataKnowledgeProvider implements Provider<MetadataKnowledge> {
+  /** The maximal number of cached terms (0 to disable the cache). */
+  protected int cacheSize;
+  /** The file of the local index (null to use the C++ index). */
+  protected File indexFile;
+
+  /**
+   * The constructor.
+   * 
+   * @param cacheSize
+   *          the maximal number of cached terms (0 to disable the cache).
+   */
+  public MetadataKnowledgeProvider(int cacheSize) {
+    this(cacheSize, null);
+  }
+
+  /**
+   * The constructor.
+   * 
+   * @param cacheSize
+   *          the maximal number of cached terms (0 to disable the cache).
+   * @param indexFile
+   *          the index directory, the index file or the dblp.xml of the local
+   *          index (null to use the C++ index).
+   */
+  public MetadataKnowledgeProvider(int cacheSize, File indexFile) {
+    this.cacheSize = cacheSize;
+    this.indexFile = indexFile;
+  }
+
+  @Override
+  public MetadataKnowledge get() {
+    MetadataKnowledge mk;
+    Index index = null;
+    if (indexFile != null) {
+      try {
+        index = LocalIndexMetadataKnowledge.openIndex(indexFile);
+      } catch (IOException e) {
+        throw new ProvisionException("Couldn't open the index " + indexFile, e);
+      }
+      mk = new LocalIndexMetadataKnowledge(index);
+    } else {
+      mk = new InvertedIndexMetadataKnowledge();
+    }
+    if (cacheSize > 0) {
+      mk = new CachingMetadataKnowledge(mk, cacheSize);
+    }
+    if (index instanceof SegmentedIndex) {
+      // Import updates in the background and drop the cached number of hits
+      // on each update, such that the matchers see the updates.
+      SegmentedIndex segmentedIndex = (SegmentedIndex) index;
+      if (mk instanceof CachingMetadataKnowledge) {
+        final CachingMetadataKnowledge cachingMk =
+            (CachingMetadataKnowledge) mk;
+        segmentedIndex.addListener(new SegmentedIndex.Listener() {
+          @Override
+          public void indexChanged(SegmentedIndex index) {
+            cachingMk.getCache().clear();
+          }
+        });
+      }
+      segmentedIndex.startMaintenance(
+          SegmentedIndex.DEFAULT_MAINTENANCE_INTERVAL);
+    }
+    return mk;
+  }
+}
@@ -0,0 +1,224 @@
+package de.freiburg.iif.model;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.apache.pdfbox.util.TextPosition;
+
+/**
+ * The class PageGeometry, that stores the geometry of the text positions of a
+ * page in a compact form: the coordinates and dimensions are stored in
+ * parallel float arrays and the characters in a single char buffer. A line
+ * (see Region) references the range of its positions in the geometry of its
+ * page, instead of keeping the TextPosition objects (which carry fonts,
+ * matrices and widths arrays) alive.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class PageGeometry {
+  /** The initial capacity of the arrays. */
+  protected static final int INITIAL_CAPACITY = 256;
+  /** The x-coordinates of the positions. */
+  protected float[] xs;
+  /** The y-coordinates of the positions. */
+  protected float[] ys;
+  /** The widths of the positions. */
+  protected float[] widths;
+  /** The heights of the positions. */
+  protected float[] heights;
+  /** The font sizes of the positions. */
+  protected float[] fontsizes;
+  /** The characters of all positions. */
+  protected char[] characters;
+  /** The offsets of the characters of the positions in the char buffer. */
+  protected int[] characterOffsets;
+  /** The positions without a character (like word separators). */
+  protected BitSet isWithoutCharacter;
+  /** The number of positions. */
+  protected int size;
+  /** The number of characters in the char buffer. */
+  protected int numOfCharacters;
+
+  /**
+   * The constructor.
+   */
+  public PageGeometry() {
+    this.xs = new float[INITIAL_CAPACITY];
+    this.ys = new float[INITIAL_CAPACITY];
+    this.widths = new float[INITIAL_CAPACITY];
+    this.heights = new float[INITIAL_CAPACITY];
+    this.fontsizes = new float[INITIAL_CAPACITY];
+    this.characters = new char[INITIAL_CAPACITY];
+    this.characterOffsets = new int[INITIAL_CAPACITY + 1];
+    this.isWithoutCharacter = new BitSet();
+  }
+
+  /**
+   * Adds the given position to the geometry. The width, the height and the
+   * font size are only stored for positions with a character.
+   *
+   * @param position
+   *          the position to add (may be null).
+   * @return the index of the position.
+   */
+  public int add(TextPosition position) {
+    ensureCapacity(size + 1);
+    String character = position != null ? position.getCharacter() : null;
+    if (position != null) {
+      xs[size] = position.getX();
+      ys[size] = position.getY();
+    }
+    if (character != null) {
+      widths[size] = position.getWidth();
+      heights[size] = position.getHeight();
+      fontsizes[size] = position.getFontSize();
+      ensureCharacterCapacity(numOfCharacters + character.length());
+      character.getChars(0, character.length(), characters, numOfCharacters);
+      numOfCharacters += character.length();
+    } else {
+      isWithoutCharacter.set(size);
+    }
+    size++;
+    characterOffsets[size] = numOfCharacters;
+    return size - 1;
+  }
+
+  /**
+   * Trims the arrays to the number of positions, once all positions of the
+   * page were added.
+   */
+  public void trim() {
+    xs = Arrays.copyOf(xs, size);
+    ys = Arrays.copyOf(ys, size);
+    widths = Arrays.copyOf(widths, size);
+    heights = Arrays.copyOf(heights, size);
+    fontsizes = Arrays.copyOf(fontsizes, size);
+    characters = Arrays.copyOf(characters, numOfCharacters);
+    characterOffsets = Arrays.copyOf(characterOffsets, size + 1);
+  }
+
+  /**
+   * Ensures, that the arrays can hold the given number of positions.
+   *
+   * @param capacity
+   *          the number of positions.
+   */
+  protected void ensureCapacity(int capacity) {
+    if (capacity > xs.length) {
+      int newCapacity = Math.max(capacity, xs.length * 2);
+      xs = Arrays.copyOf(xs, newCapacity);
+      ys = Arrays.copyOf(ys, newCapacity);
+      widths = Arrays.copyOf(widths, newCapacity);
+      heights = Arrays.copyOf(heights, newCapacity);
+      fontsizes = Arrays.copyOf(fontsizes, newCapacity);
+      characterOffsets = Arrays.copyOf(characterOffsets, newCapacity + 1);
+    }
+  }
+
+  /**
+   * Ensures, that the char buffer can hold the given number of characters.
+   *
+   * @param capacity
+   *          the number of characters.
+   */
+  protected void ensureCharacterCapacity(int capacity) {
+    if (capacity > characters.length) {
+      characters = Arrays.copyOf(characters,
+          Math.max(capacity, characters.length * 2));
+    }
+  }
+
+  /**
+   * Returns the number of positions.
+   *
+   * @return the number of positions.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the x-coordinate of the position with the given index.
+   *
+   * @param index
+   *          the index of the position.
+   * @return the x-coordinate.
+   */
+  public float getX(int index) {
+    return xs[index];
+  }
+
+  /**
+   * Returns the y-coordinate of the position with the given index.
+   *
+   * @param index
+   *          the index of the position.
+   * @return the y-coordinate.
+   */
+  public float getY(int index) {
+    return ys[index];
+  }
+
+  /**
+   * Returns the width of the position with the given index (0, if the
+   * position has no character).
+   *
+   * @param index
+   *          the index of the position.
+   * @return the width.
+   */
+  public float getWidth(int index) {
+    return widths[index];
+  }
+
+  /**
+   * Returns the height of the position with the given index (0, if the
+   * position has no character).
+   *
+   * @param index
+   *          the index of the position.
+   * @return the height.
+   */
+  public float getHeight(int index) {
+    return heights[index];
+  }
+
+  /**
+   * Returns the font size of the position with the given index (0, if the
+   * position has no character).
+   *
+   * @param index
+   *          the index of the position.
+   * @return the font size.
+   */
+  public float getFontsize(int index) {
+    return fontsizes[index];
+  }
+
+  /**
+   * Returns true, if the position with the given index has a character.
+   *
+   * @param index
+   *          the index of the position.
+   * @return true, if the position has a character.
+   */
+  public boolean hasCharacter(int index) {
+    return !isWithoutCharacter.get(index);
+  }
+
+  /**
+   * Returns the character of the position with the given index.
+   *
+   * @param index
+   *          the index of the position.
+   * @return the character (null, if the position has no character).
+   */
+  public String getCharacter(int index) {
+    if (!hasCharacter(index)) {
+      return null;
+    }
+    int offset = characterOffsets[index];
+    return new String(characters, offset, characterOffsets[index + 1] - offset);
+  }
+}
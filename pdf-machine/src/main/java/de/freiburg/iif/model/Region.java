@@ -6,12 +6,30 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.pdmodel.font.PDFont;
-import org.apache.pdfbox.util.TextPosition;
 
 import de.freiburg.iif.extraction.references.ReferencesMetadataMatcher.ReferenceLineType;
 
 // FIXME: Refactor it.
+/**
+ * A region (usually a line) of a page. A region is created for each extracted
+ * line, so the region is kept small: the flags are packed into a bitset, the
+ * rarely used fields are allocated on demand (see OptionalFields) and so is
+ * the list of the included lines.
+ */
 public class Region implements Comparable<Region> {
+  /** The flag that indicates whether the region is the first line in a bib. */
+  protected static final int FIRST_LINE_IN_BIB = 1;
+  /** The flag that indicates whether the region is indented. */
+  protected static final int INDENTED = 1 << 1;
+  /** The flag that indicates whether the region is in uppercases. */
+  protected static final int IN_UPPERCASE = 1 << 2;
+  /** The flag that indicates whether the region is meaningful. */
+  protected static final int MEANINGFUL = 1 << 3;
+  /** The flag that indicates whether the region is pending. */
+  protected static final int PENDING = 1 << 4;
+  /** The log4j logger */
+  protected static final Log LOG = LogFactory.getLog(Region.class);
+
   protected float x;
   protected float y;
   protected float yLowerLeft;
@@ -19,30 +37,22 @@ public class Region implements Comparable<Region> {
   protected float height;
   protected float fontsize;
   protected String text;
-  protected int pageNumber, columnNumber;
-  protected float decorationScore;
-  protected boolean isFirstLineInBib = false;
-  protected boolean isIndented = false;
-  protected boolean isInUppercase = false;
+  protected int pageNumber;
+  protected int flags = PENDING;
   protected int fontFlag = 0;
-  protected float dir;
-  protected String dblpMatching;
   protected PDFont font;
-  protected float numOfUpperCases = 0;
   protected float xOfLineEnd;
-  protected Log LOG = LogFactory.getLog(Region.class);
   protected List<Region> includedLines;
   protected ReferenceLineType type;
-  protected boolean isMeaningful;
-  protected boolean isPending = true;
   protected int index;
-  protected List<TextPosition> textPositions;
+  protected PageGeometry geometry;
+  protected int firstPosition;
+  protected int numOfPositions;
+  /** The rarely used fields (null, if none of them was set). */
+  protected OptionalFields optionalFields;
   
   public Region() {
     this.x = -1;
-
-    this.includedLines = new ArrayList<Region>();
-    this.includedLines.add(this);
   }
 
   public Region(float x, float y, float width, float height) {
@@ -63,7 +73,7 @@ public class Region implements Comparable<Region> {
     this.width = width;
     this.height = height;
     this.pageNumber = pageNumber;
-    this.columnNumber = columnNumber;
+    setColumnNumber(columnNumber);
     this.fontsize = fontsize;
   }
 
@@ -74,7 +84,8 @@ public class Region implements Comparable<Region> {
             "Region[x:%f, y:%f, w:%f, h:%f, X:%f, fs:%f, fn: %s, p:%d, c:%d,  ds:%f, iuc:%b, ff:%d, \"%s\" :]",
             x, y, width, height, xOfLineEnd, fontsize,
             font != null ? font.getBaseFont() : null, pageNumber,
-            columnNumber, decorationScore, isInUppercase, fontFlag, text);
+            getColumnNumber(), getDecorationScore(), isInUpperCase(),
+            fontFlag, text);
 
   }
 
@@ -135,11 +146,13 @@ public class Region implements Comparable<Region> {
   }
 
   public int getColumnNumber() {
-    return columnNumber;
+    return optionalFields != null ? optionalFields.columnNumber : 0;
   }
 
   public void setColumnNumber(int columnNumber) {
-    this.columnNumber = columnNumber;
+    if (columnNumber != 0 || optionalFields != null) {
+      getOptionalFields().columnNumber = columnNumber;
+    }
   }
 
   public boolean isMemberOf(Region... regions) {
@@ -206,21 +219,26 @@ public class Region implements Comparable<Region> {
     // setFontsize((getFontsize() + expandingRegion.getFontsize()) / 2.0f);
     setFontsize(Math.max(getFontsize(), expandingRegion.getFontsize()));
 
-    numOfUpperCases += expandingRegion.getNumOfUpperCases();
+    setNumOfUpperCases(getNumOfUpperCases()
+        + expandingRegion.getNumOfUpperCases());
     LOG.debug("Expanding finished. Resulting region: " + this);
 
   }
 
   public List<Region> getIncludedLines() {
+    if (includedLines == null) {
+      includedLines = new ArrayList<Region>(1);
+      includedLines.add(this);
+    }
     return includedLines;
   }
 
   public boolean isFirstLineInBib() {
-    return isFirstLineInBib;
+    return isSet(FIRST_LINE_IN_BIB);
   }
 
   public void setIsFirstLineInBib(boolean isFirstLineInBib) {
-    this.isFirstLineInBib = isFirstLineInBib;
+    setFlag(FIRST_LINE_IN_BIB, isFirstLineInBib);
   }
 
   public float getFontsize() {
@@ -279,35 +297,41 @@ public class Region implements Comparable<Region> {
   }
 
   public boolean isIndented() {
-    return isIndented;
+    return isSet(INDENTED);
   }
 
   public void setIsIndented(boolean isIndented) {
-    this.isIndented = isIndented;
+    setFlag(INDENTED, isIndented);
   }
 
   public float getDir() {
-    return dir;
+    return optionalFields != null ? optionalFields.dir : 0;
   }
 
   public void setDir(float dir) {
-    this.dir = dir;
+    if (dir != 0 || optionalFields != null) {
+      getOptionalFields().dir = dir;
+    }
   }
 
   public void setDblpMatching(String dblpMatching) {
-    this.dblpMatching = dblpMatching;
+    if (dblpMatching != null || optionalFields != null) {
+      getOptionalFields().dblpMatching = dblpMatching;
+    }
   }
 
   public String getDblpMatching() {
-    return dblpMatching;
+    return optionalFields != null ? optionalFields.dblpMatching : null;
   }
 
   public void setDecorationScore(float score) {
-    decorationScore = score;
+    if (score != 0 || optionalFields != null) {
+      getOptionalFields().decorationScore = score;
+    }
   }
 
   public float getDecorationScore() {
-    return decorationScore;
+    return optionalFields != null ? optionalFields.decorationScore : 0;
   }
 
   public PDFont getFont() {
@@ -319,19 +343,21 @@ public class Region implements Comparable<Region> {
   }
 
   public boolean isInUpperCase() {
-    return isInUppercase;
+    return isSet(IN_UPPERCASE);
   }
 
   public void setIsInUpperCases(boolean isInUppercase) {
-    this.isInUppercase = isInUppercase;
+    setFlag(IN_UPPERCASE, isInUppercase);
   }
 
   public void setNumOfUpperCases(float numOfUpperCases) {
-    this.numOfUpperCases = numOfUpperCases;
+    if (numOfUpperCases != 0 || optionalFields != null) {
+      getOptionalFields().numOfUpperCases = numOfUpperCases;
+    }
   }
 
   public float getNumOfUpperCases() {
-    return numOfUpperCases;
+    return optionalFields != null ? optionalFields.numOfUpperCases : 0;
   }
 
   public float getXOfLineEnd() {
@@ -381,19 +407,58 @@ public class Region implements Comparable<Region> {
   }
 
   public boolean isMeaningful() {
-    return isMeaningful;
+    return isSet(MEANINGFUL);
   }
 
   public void setIsMeaningful(boolean isMeaningful) {
-    this.isMeaningful = isMeaningful;
+    setFlag(MEANINGFUL, isMeaningful);
   }
 
   public boolean isPending() {
-    return isPending;
+    return isSet(PENDING);
   }
 
   public void setIsPending(boolean isPending) {
-    this.isPending = isPending;
+    setFlag(PENDING, isPending);
+  }
+
+  /**
+   * Returns true, if the given flag is set.
+   * 
+   * @param flag
+   *          the flag.
+   * @return true, if the flag is set.
+   */
+  protected boolean isSet(int flag) {
+    return (flags & flag) != 0;
+  }
+
+  /**
+   * Sets or clears the given flag.
+   * 
+   * @param flag
+   *          the flag.
+   * @param value
+   *          true, to set the flag; false, to clear it.
+   */
+  protected void setFlag(int flag, boolean value) {
+    if (value) {
+      flags |= flag;
+    } else {
+      flags &= ~flag;
+    }
+  }
+
+  /**
+   * Returns the rarely used fields and allocates them, if necessary.
+   * 
+   * @return the rarely used fields.
+   */
+  protected OptionalFields getOptionalFields() {
+    if (optionalFields == null) {
+      optionalFields = new OptionalFields();
+    }
+    return optionalFields;
   }
   
   public int getIndex() {
@@ -404,11 +469,50 @@ public class Region implements Comparable<Region> {
     this.index = index;
   }
   
-  public void setTextPositions(List<TextPosition> textPositions) {
-    this.textPositions = textPositions;
+  /**
+   * Sets the positions of the line, given by the range of the positions in
+   * the geometry of the page.
+   * 
+   * @param geometry
+   *          the geometry of the page.
+   * @param firstPosition
+   *          the index of the first position of the line.
+   * @param numOfPositions
+   *          the number of positions of the line.
+   */
+  public void setPositions(PageGeometry geometry, int firstPosition,
+    int numOfPositions) {
+    this.geometry = geometry;
+    this.firstPosition = firstPosition;
+    this.numOfPositions = numOfPositions;
   }
-  
-  public List<TextPosition> getTextPositions() {
-    return textPositions;
+
+  public PageGeometry getGeometry() {
+    return geometry;
   }
-}
\ No newline at end of file
+
+  public int getFirstPosition() {
+    return firstPosition;
+  }
+
+  public int getNumOfPositions() {
+    return numOfPositions;
+  }
+
+  /**
+   * The rarely used fields of a region, which are allocated only if one of
+   * them is set to a value other than the default value.
+   */
+  protected static class OptionalFields {
+    /** The number of the column. */
+    protected int columnNumber;
+    /** The decoration score. */
+    protected float decorationScore;
+    /** The direction of the text. */
+    protected float dir;
+    /** The matching in DBLP. */
+    protected String dblpMatching;
+    /** The number of uppercased characters. */
+    protected float numOfUpperCases;
+  }
+}
@@ -0,0 +1,560 @@
+package de.freiburg.iif.utils;
+
+import static de.freiburg.iif.utils.Patterns.NUMBERS_PATTERN;
+import static de.freiburg.iif.utils.Patterns.YEAR_PATTERN;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+import de.freiburg.iif.model.HasMetadata;
+import de.freiburg.iif.model.Score;
+
+/**
+ * The class ReferenceScorer, that scores many metadata records against a
+ * single extracted reference. Everything, that depends on the reference only
+ * (its lower-cased chars, its query profiles, its numbers and its year) is
+ * computed once, when the scorer is created.
+ *
+ * The query profile of a string holds for each char c the scores of aligning
+ * c with each char of the string, so that the Smith Waterman alignment of a
+ * candidate looks up a precomputed row per char of the candidate instead of
+ * comparing the chars again and again.
+ *
+ * Moreover, the scorer computes cheap upper bounds of the scores, from the
+ * number of chars and bigrams, that a text shares with the reference. They
+ * allow to reject records, that can't be a match, before aligning them.
+ *
+ * A scorer isn't thread-safe, create one per reference and thread.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class ReferenceScorer {
+  /** The extracted reference. */
+  protected String reference;
+  /** The query profile of the reference. */
+  protected QueryProfile referenceProfile;
+  /** The query profile of the first half of the reference. */
+  protected QueryProfile firstHalfProfile;
+  /** The numbers contained in the reference. */
+  protected Set<Integer> numbers;
+  /** The year contained in the reference (or -1, if there is none). */
+  protected int year;
+
+  /**
+   * The constructor.
+   *
+   * @param reference
+   *          the extracted reference.
+   */
+  public ReferenceScorer(String reference) {
+    this.reference = reference;
+    this.referenceProfile =
+        new QueryProfile(StringSimilarity.toLowerCaseChars(reference));
+    this.firstHalfProfile =
+        new QueryProfile(StringSimilarity.toLowerCaseChars(reference
+            .substring(0, reference.length() / 2)));
+    this.numbers = new HashSet<Integer>();
+    this.year = -1;
+
+    Matcher m = NUMBERS_PATTERN.matcher(reference);
+    while (m.find()) {
+      try {
+        numbers.add(Integer.parseInt(m.group()));
+      } catch (Exception e) {
+        // Nothing to do.
+      }
+    }
+
+    m = YEAR_PATTERN.matcher(reference);
+    if (m.find()) {
+      year = Integer.parseInt(m.group(0));
+    }
+  }
+
+  /**
+   * Scores a record against the reference.
+   *
+   * @param record
+   *          the record to score.
+   * @return the score for the record (or null, if the record is null).
+   */
+  public Score score(HasMetadata record) {
+    Score score = getExactScores(record);
+    if (score == null) {
+      return null;
+    }
+
+    // Compute the authorsScore.
+    List<String> authors = record.getAuthors();
+    int numAuthors = 0;
+    if (authors != null) {
+      for (int i = 0; i < authors.size(); i++) {
+        // Score the lastname of each author
+        String[] authorWords = authors.get(i).split(" ");
+        String lastname = authorWords[authorWords.length - 1];
+
+        if (!lastname.isEmpty()) {
+          score.authorScore += scoreAgainstFirstHalf(lastname);
+          numAuthors++;
+        }
+      }
+      if (numAuthors != 0) {
+        score.authorScore /= numAuthors;
+      }
+    }
+
+    // Compute the titleScore.
+    String title = record.getTitle();
+    if (title != null && !title.isEmpty()) {
+      score.titleScore = scoreAgainstReference(title);
+    }
+
+    // Compute the journalScore.
+    String journal = record.getJournal();
+    if (journal != null && !journal.isEmpty()) {
+      score.journalScore = scoreAgainstReference(journal);
+    }
+    return score;
+  }
+
+  /**
+   * Returns a score, that holds the year score and the page score of the
+   * given record, which don't need any alignment. The other scores are 0.
+   *
+   * @param record
+   *          the record to score.
+   * @return the score (or null, if the record is null).
+   */
+  protected Score getExactScores(HasMetadata record) {
+    if (record == null) {
+      return null;
+    }
+
+    float startPageScore = 0;
+    float endPageScore = 0;
+    if (record.getStartPage() > 0) {
+      startPageScore = numbers.contains(record.getStartPage()) ? 1 : -1;
+    }
+    if (record.getEndPage() > 0) {
+      endPageScore = numbers.contains(record.getEndPage()) ? 1 : -1;
+    }
+    float pageScore = 0;
+    if (startPageScore < 0 && endPageScore < 0) {
+      pageScore = -1;
+    } else if (startPageScore > 0 || endPageScore > 0) {
+      pageScore = 1;
+    }
+
+    float yearScore = 1;
+    if (year > -1) {
+      if (year > 2015 || year < record.getYear() - 1
+          || year > record.getYear() + 1) {
+        yearScore = 0;
+      }
+    }
+
+    return new Score(0, 0, yearScore, 0, pageScore);
+  }
+
+  /**
+   * Computes upper bounds of the scores of the given record against the
+   * reference, without aligning the record. Each field of the returned score
+   * is >= the corresponding field of score(record). The year score and the
+   * page score are exact.
+   *
+   * @param record
+   *          the record to process.
+   * @return the upper bounds of the scores (or null, if the record is null).
+   */
+  public Score getUpperBound(HasMetadata record) {
+    Score score = getExactScores(record);
+    if (score == null) {
+      return null;
+    }
+
+    List<String> authors = record.getAuthors();
+    int numAuthors = 0;
+    if (authors != null) {
+      for (int i = 0; i < authors.size(); i++) {
+        String[] authorWords = authors.get(i).split(" ");
+        String lastname = authorWords[authorWords.length - 1];
+
+        if (!lastname.isEmpty()) {
+          score.authorScore += firstHalfProfile.getUpperBound(lastname);
+          numAuthors++;
+        }
+      }
+      if (numAuthors != 0) {
+        score.authorScore /= numAuthors;
+      }
+    }
+
+    String title = record.getTitle();
+    if (title != null && !title.isEmpty()) {
+      score.titleScore = referenceProfile.getUpperBound(title);
+    }
+
+    String journal = record.getJournal();
+    if (journal != null && !journal.isEmpty()) {
+      score.journalScore = referenceProfile.getUpperBound(journal);
+    }
+    return score;
+  }
+
+  /**
+   * Returns the Smith Waterman score of the given text against the reference,
+   * normalized by the maximum attainable score for the text.
+   *
+   * @param text
+   *          the text to score.
+   * @return the normalized Smith Waterman score.
+   */
+  public float scoreAgainstReference(String text) {
+    return referenceProfile.align(StringSimilarity.toLowerCaseChars(text))
+        / StringSimilarity.getMaxSmithWatermanScore(text);
+  }
+
+  /**
+   * Returns the Smith Waterman score of the given text against the first half
+   * of the reference, normalized by the maximum attainable score for the text.
+   *
+   * @param text
+   *          the text to score.
+   * @return the normalized Smith Waterman score.
+   */
+  public float scoreAgainstFirstHalf(String text) {
+    return firstHalfProfile.align(StringSimilarity.toLowerCaseChars(text))
+        / StringSimilarity.getMaxSmithWatermanScore(text);
+  }
+
+  /**
+   * Returns the extracted reference.
+   *
+   * @return the extracted reference.
+   */
+  public String getReference() {
+    return reference;
+  }
+
+  /**
+   * The query profile of a string, used to align many texts against the
+   * string with Smith Waterman.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class QueryProfile {
+    /** The number of chars, whose rows are held in an array. */
+    protected static final int NUM_OF_ASCII_CHARS = 128;
+    /** The (lower-cased) chars of the string. */
+    protected char[] chars;
+    /** The length of the string. */
+    protected int length;
+    /**
+     * The rows of the ascii chars of the string (null for other chars). The
+     * rows are only needed, if the string is too long for the striped
+     * alignment, so they are created on the first scalar alignment.
+     */
+    protected int[][] asciiRows;
+    /** The rows of the non-ascii chars of the string. */
+    protected Map<Character, int[]> otherRows;
+    /** The row of the chars, that don't occur in the string. */
+    protected int[] mismatchRow;
+    /** The buffer for a row of the Smith Waterman matrix. */
+    protected int[] row;
+    /** The chars of the string and their counts. */
+    protected GramCounts unigrams;
+    /** The bigrams of the string and their counts. */
+    protected GramCounts bigrams;
+    /** The striped alignment of the string (null, if it's too long). */
+    protected StripedSmithWaterman striped;
+
+    /**
+     * The constructor.
+     *
+     * @param chars
+     *          the (lower-cased) chars of the string.
+     */
+    protected QueryProfile(char[] chars) {
+      this.chars = chars;
+      this.length = chars.length;
+
+      if (StripedSmithWaterman.isApplicable(chars)) {
+        this.striped = new StripedSmithWaterman(chars);
+      }
+
+      this.unigrams = new GramCounts(length);
+      this.bigrams = new GramCounts(length);
+      for (int j = 0; j < length; j++) {
+        unigrams.add(chars[j]);
+        if (j > 0) {
+          bigrams.add(getBigram(chars[j - 1], chars[j]));
+        }
+      }
+    }
+
+    /**
+     * Returns an upper bound of the normalized Smith Waterman score of the
+     * given text against the string.
+     *
+     * In an alignment with k matches and e mismatches and gaps, the matches
+     * form at most e + 1 runs of identical substrings, and a run of length l
+     * contributes l - 1 bigrams, that the text shares with the string. So with
+     * b shared bigrams, k <= b + e + 1 holds and the score 2k - e is at most
+     * min(2k, k + b + 1), where k is bounded by the number of shared chars.
+     *
+     * @param text
+     *          the text to process.
+     * @return the upper bound of the normalized Smith Waterman score.
+     */
+    protected float getUpperBound(String text) {
+      char[] chars = StringSimilarity.toLowerCaseChars(text);
+      if (length == 0 || chars.length == 0) {
+        return 0;
+      }
+      unigrams.reset();
+      bigrams.reset();
+      int numOfSharedChars = 0;
+      int numOfSharedBigrams = 0;
+      for (int i = 0; i < chars.length; i++) {
+        if (unigrams.take(chars[i])) {
+          numOfSharedChars++;
+        }
+        if (i > 0 && bigrams.take(getBigram(chars[i - 1], chars[i]))) {
+          numOfSharedBigrams++;
+        }
+      }
+      int k = numOfSharedChars;
+      int maxScore = Math.min(2 * k, k + numOfSharedBigrams + 1);
+      return maxScore / StringSimilarity.getMaxSmithWatermanScore(text);
+    }
+
+    /**
+     * Returns the key of the bigram of the given chars.
+     *
+     * @param c1
+     *          the first char.
+     * @param c2
+     *          the second char.
+     * @return the key of the bigram.
+     */
+    protected static int getBigram(char c1, char c2) {
+      return (c1 << 16) | c2;
+    }
+
+    /**
+     * Creates the rows of the chars of the string and the buffer for a row of
+     * the Smith Waterman matrix, that are needed by the scalar alignment.
+     */
+    protected void createRows() {
+      this.asciiRows = new int[NUM_OF_ASCII_CHARS][];
+      this.otherRows = new HashMap<Character, int[]>();
+      this.mismatchRow = new int[length];
+      this.row = new int[length + 1];
+
+      for (int j = 0; j < length; j++) {
+        mismatchRow[j] = StringSimilarity.SMITH_WATERMAN_MISMATCH_MALUS;
+      }
+      for (int j = 0; j < length; j++) {
+        char c = chars[j];
+        int[] charRow = getRow(c);
+        if (charRow == mismatchRow) {
+          charRow = mismatchRow.clone();
+          if (c < NUM_OF_ASCII_CHARS) {
+            asciiRows[c] = charRow;
+          } else {
+            otherRows.put(c, charRow);
+          }
+        }
+        charRow[j] = StringSimilarity.SMITH_WATERMAN_MATCH_BONUS;
+      }
+    }
+
+    /**
+     * Returns the row of the given char, that holds the scores of aligning
+     * the char with each char of the string.
+     *
+     * @param c
+     *          the char.
+     * @return the row of the char.
+     */
+    protected int[] getRow(char c) {
+      int[] charRow =
+          c < NUM_OF_ASCII_CHARS ? asciiRows[c] : otherRows.get(c);
+      return charRow != null ? charRow : mismatchRow;
+    }
+
+    /**
+     * Computes the Smith Waterman score of the given (lower-cased) chars
+     * against the string. The score equals the score of
+     * StringSimilarity.smithWaterman(). Uses the striped alignment, if the
+     * string isn't too long for it.
+     *
+     * @param chars
+     *          the chars to align.
+     * @return the Smith Waterman score.
+     */
+    protected int align(char[] chars) {
+      if (striped != null) {
+        return striped.align(chars);
+      }
+      return alignScalar(chars);
+    }
+
+    /**
+     * Computes the Smith Waterman score of the given (lower-cased) chars
+     * against the string, row by row.
+     *
+     * @param chars
+     *          the chars to align.
+     * @return the Smith Waterman score.
+     */
+    protected int alignScalar(char[] chars) {
+      int score = 0;
+      if (length == 0 || chars.length == 0) {
+        return score;
+      }
+      if (asciiRows == null) {
+        createRows();
+      }
+      for (int j = 0; j <= length; j++) {
+        row[j] = 0;
+      }
+      for (int i = 0; i < chars.length; i++) {
+        int[] charRow = getRow(chars[i]);
+        // The scores of the cells diagonal up-left and left of the current.
+        int diagonal = 0;
+        int left = 0;
+        for (int j = 1; j <= length; j++) {
+          int up = row[j];
+          int value = diagonal + charRow[j - 1];
+          if (up - 1 > value) {
+            value = up - 1;
+          }
+          if (left - 1 > value) {
+            value = left - 1;
+          }
+          if (value < 0) {
+            value = 0;
+          }
+          row[j] = value;
+          diagonal = up;
+          left = value;
+          if (value > score) {
+            score = value;
+          }
+        }
+      }
+      return score;
+    }
+  }
+
+  /**
+   * A multiset of grams (chars or bigrams, given as ints), held in an
+   * open-addressing hash table. The grams can be taken from the multiset
+   * (until reset() is called), in order to compute the number of grams, that
+   * a text shares with the multiset, without allocating any memory.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class GramCounts {
+    /** The grams. */
+    protected int[] keys;
+    /** The counts of the grams (0, if the slot is free). */
+    protected int[] counts;
+    /** The number of taken grams per slot (valid, if the stamp is current). */
+    protected int[] taken;
+    /** The stamps of the taken grams. */
+    protected int[] stamps;
+    /** The current stamp. */
+    protected int stamp;
+
+    /**
+     * The constructor.
+     *
+     * @param expectedSize
+     *          the expected number of (distinct) grams.
+     */
+    protected GramCounts(int expectedSize) {
+      int capacity = 16;
+      while (capacity < 2 * expectedSize) {
+        capacity <<= 1;
+      }
+      this.keys = new int[capacity];
+      this.counts = new int[capacity];
+      this.taken = new int[capacity];
+      this.stamps = new int[capacity];
+      this.stamp = 1;
+    }
+
+    /**
+     * Adds the given gram to the multiset.
+     *
+     * @param gram
+     *          the gram to add.
+     */
+    protected void add(int gram) {
+      int slot = slot(gram);
+      keys[slot] = gram;
+      counts[slot]++;
+    }
+
+    /**
+     * Takes the given gram from the multiset.
+     *
+     * @param gram
+     *          the gram to take.
+     * @return true, if the gram was contained in the multiset (and wasn't
+     *         taken yet); false otherwise.
+     */
+    protected boolean take(int gram) {
+      int slot = slot(gram);
+      if (counts[slot] == 0) {
+        return false;
+      }
+      if (stamps[slot] != stamp) {
+        stamps[slot] = stamp;
+        taken[slot] = 0;
+      }
+      if (taken[slot] < counts[slot]) {
+        taken[slot]++;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Puts back all taken grams.
+     */
+    protected void reset() {
+      if (++stamp == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+    }
+
+    /**
+     * Returns the slot of the given gram, that is the slot containing the
+     * gram or the first free slot.
+     *
+     * @param gram
+     *          the gram.
+     * @return the slot of the gram.
+     */
+    protected int slot(int gram) {
+      int mask = keys.length - 1;
+      int slot = (gram * 0x9E3779B9) >>> 16 & mask;
+      while (counts[slot] != 0 && keys[slot] != gram) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+  }
+}
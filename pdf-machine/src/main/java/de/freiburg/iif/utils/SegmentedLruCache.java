@@ -0,0 +1,307 @@
+package de.freiburg.iif.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded, thread-safe cache with a segmented LRU eviction policy.
+ *
+ * Each segment of the cache consists of a probationary and a protected part.
+ * New entries are put into the probationary part and are moved to the
+ * protected part on their second access. Entries that are demoted from the
+ * protected part go back to the probationary part, and only entries from the
+ * probationary part are evicted. This way, words that are looked up again and
+ * again survive a burst of words that are looked up only once.
+ *
+ * To allow concurrent access, the keys are distributed over several segments
+ * (by their hash code), each guarded by its own lock.
+ *
+ * @author Claudius Korzen
+ *
+ * @param <K>
+ *          the type of the keys.
+ * @param <V>
+ *          the type of the values.
+ */
+public class SegmentedLruCache<K, V> {
+  /** The default number of segments. */
+  public static final int DEFAULT_NUM_OF_SEGMENTS = 16;
+  /** The share of the capacity of a segment, reserved for protected entries. */
+  protected static final float PROTECTED_RATIO = 0.8f;
+  /** The segments of the cache. */
+  protected final Segment<K, V>[] segments;
+  /** The number of lookups, that were answered by the cache. */
+  protected final AtomicLong hitCount = new AtomicLong();
+  /** The number of lookups, that weren't answered by the cache. */
+  protected final AtomicLong missCount = new AtomicLong();
+  /** The number of entries, that were evicted from the cache. */
+  protected final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Creates a new cache with the given capacity.
+   *
+   * @param capacity
+   *          the maximal number of entries.
+   */
+  public SegmentedLruCache(int capacity) {
+    this(capacity, DEFAULT_NUM_OF_SEGMENTS);
+  }
+
+  /**
+   * Creates a new cache with the given capacity and the given number of
+   * segments.
+   *
+   * @param capacity
+   *          the maximal number of entries.
+   * @param numOfSegments
+   *          the number of segments (the level of concurrency).
+   */
+  public SegmentedLruCache(int capacity, int numOfSegments) {
+    if (capacity < 1 || numOfSegments < 1) {
+      throw new IllegalArgumentException("The capacity and the number of "
+          + "segments must be positive.");
+    }
+    numOfSegments = Math.min(numOfSegments, capacity);
+    // A generic array can't be created, so create an array of the wildcard
+    // type, that only ever holds segments of the type Segment<K, V>.
+    @SuppressWarnings("unchecked")
+    Segment<K, V>[] segments =
+        (Segment<K, V>[]) new Segment<?, ?>[numOfSegments];
+    for (int i = 0; i < numOfSegments; i++) {
+      // Distribute the capacity evenly over the segments.
+      int segmentCapacity = capacity / numOfSegments
+          + (i < capacity % numOfSegments ? 1 : 0);
+      segments[i] = new Segment<K, V>(segmentCapacity);
+    }
+    this.segments = segments;
+  }
+
+  /**
+   * Returns the value for the given key or null, if the cache doesn't contain
+   * the key.
+   *
+   * @param key
+   *          the key.
+   * @return the value for the given key or null.
+   */
+  public V get(K key) {
+    V value = getSegment(key).get(key);
+    if (value != null) {
+      hitCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+    }
+    return value;
+  }
+
+  /**
+   * Puts the given key/value-pair into the cache.
+   *
+   * @param key
+   *          the key.
+   * @param value
+   *          the value (must not be null).
+   */
+  public void put(K key, V value) {
+    if (key == null || value == null) {
+      return;
+    }
+    evictionCount.addAndGet(getSegment(key).put(key, value));
+  }
+
+  /**
+   * Removes all entries from the cache. The counters are kept.
+   */
+  public void clear() {
+    for (Segment<K, V> segment : segments) {
+      segment.clear();
+    }
+  }
+
+  /**
+   * Returns the number of entries in the cache.
+   *
+   * @return the number of entries.
+   */
+  public int size() {
+    int size = 0;
+    for (Segment<K, V> segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of lookups, that were answered by the cache.
+   *
+   * @return the number of cache hits.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of lookups, that weren't answered by the cache.
+   *
+   * @return the number of cache misses.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of entries, that were evicted from the cache.
+   *
+   * @return the number of evictions.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return "[size: " + size() + ", hits: " + getHitCount() + ", misses: "
+        + getMissCount() + ", evictions: " + getEvictionCount() + "]";
+  }
+
+  /**
+   * Returns the segment, which is responsible for the given key.
+   *
+   * @param key
+   *          the key.
+   * @return the responsible segment.
+   */
+  protected Segment<K, V> getSegment(Object key) {
+    int hash = key != null ? key.hashCode() : 0;
+    // Spread the bits of the hash code (as in HashMap).
+    hash ^= (hash >>> 16);
+    return segments[(hash & 0x7fffffff) % segments.length];
+  }
+
+  /**
+   * A single segment of the cache.
+   *
+   * @author Claudius Korzen
+   *
+   * @param <K>
+   *          the type of the keys.
+   * @param <V>
+   *          the type of the values.
+   */
+  protected static class Segment<K, V> {
+    /** The maximal number of entries in this segment. */
+    protected final int capacity;
+    /** The maximal number of entries in the protected part. */
+    protected final int protectedCapacity;
+    /** The entries, that were accessed only once (in LRU order). */
+    protected final LinkedHashMap<K, V> probationary;
+    /** The entries, that were accessed several times (in LRU order). */
+    protected final LinkedHashMap<K, V> protectedEntries;
+
+    /**
+     * Creates a new segment with the given capacity.
+     *
+     * @param capacity
+     *          the maximal number of entries.
+     */
+    protected Segment(int capacity) {
+      this.capacity = capacity;
+      this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+      this.probationary = new LinkedHashMap<K, V>(16, 0.75f, true);
+      this.protectedEntries = new LinkedHashMap<K, V>(16, 0.75f, true);
+    }
+
+    /**
+     * Returns the value for the given key or null, if there is no such key.
+     *
+     * @param key
+     *          the key.
+     * @return the value for the given key or null.
+     */
+    protected synchronized V get(K key) {
+      // The access-ordered map moves the entry to the MRU position.
+      V value = protectedEntries.get(key);
+      if (value != null) {
+        return value;
+      }
+      value = probationary.remove(key);
+      if (value != null) {
+        promote(key, value);
+      }
+      return value;
+    }
+
+    /**
+     * Puts the given key/value-pair into the segment.
+     *
+     * @param key
+     *          the key.
+     * @param value
+     *          the value.
+     * @return the number of evicted entries.
+     */
+    protected synchronized int put(K key, V value) {
+      if (protectedEntries.containsKey(key)) {
+        protectedEntries.put(key, value);
+        return 0;
+      }
+      probationary.put(key, value);
+      return evict();
+    }
+
+    /**
+     * Moves the given entry to the protected part. Demotes the least recently
+     * used protected entry, if the protected part is full.
+     *
+     * @param key
+     *          the key.
+     * @param value
+     *          the value.
+     */
+    protected void promote(K key, V value) {
+      protectedEntries.put(key, value);
+      if (protectedEntries.size() > protectedCapacity) {
+        Iterator<Map.Entry<K, V>> it = protectedEntries.entrySet().iterator();
+        Map.Entry<K, V> eldest = it.next();
+        it.remove();
+        probationary.put(eldest.getKey(), eldest.getValue());
+      }
+    }
+
+    /**
+     * Evicts the least recently used probationary entries until the segment
+     * fits into its capacity.
+     *
+     * @return the number of evicted entries.
+     */
+    protected int evict() {
+      int numOfEvictions = 0;
+      Iterator<K> it = probationary.keySet().iterator();
+      while (size() > capacity && it.hasNext()) {
+        it.next();
+        it.remove();
+        numOfEvictions++;
+      }
+      return numOfEvictions;
+    }
+
+    /**
+     * Returns the number of entries in this segment.
+     *
+     * @return the number of entries.
+     */
+    protected synchronized int size() {
+      return probationary.size() + protectedEntries.size();
+    }
+
+    /**
+     * Removes all entries from this segment.
+     */
+    protected synchronized void clear() {
+      probationary.clear();
+      protectedEntries.clear();
+    }
+  }
+}
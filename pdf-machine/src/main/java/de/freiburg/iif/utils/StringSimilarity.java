@@ -1,5 +1,7 @@
 package de.freiburg.iif.utils;
 
+import java.util.Arrays;
+
 /**
  * The class StringSimilarity that provided methods to compare two string by
  * similarity.
@@ -9,56 +11,153 @@ package de.freiburg.iif.utils;
  */
 public class StringSimilarity {
   /** The bonus points for a match in Smith Waterman */
-  private static final float SMITH_WATERMAN_MATCH_BONUS = 2;
+  static final int SMITH_WATERMAN_MATCH_BONUS = 2;
   /** The malus points for a mismatch in Smith Waterman */
-  private static final float SMITH_WATERMAN_MISMATCH_MALUS = -1;
+  static final int SMITH_WATERMAN_MISMATCH_MALUS = -1;
+  /** The row buffers for Smith Waterman, per thread. */
+  private static final ThreadLocal<int[]> ROW_BUFFER =
+      new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          return new int[256];
+        }
+      };
+  /** The bit masks for the Levenshtein-distance, per thread. */
+  private static final ThreadLocal<PatternMasks> PATTERN_MASKS =
+      new ThreadLocal<PatternMasks>() {
+        @Override
+        protected PatternMasks initialValue() {
+          return new PatternMasks();
+        }
+      };
+  /** The buffers for the end positions of Smith Waterman, per thread. */
+  private static final ThreadLocal<int[]> END_BUFFER =
+      new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          return new int[2];
+        }
+      };
 
   /**
-   * Computes the Levenshtein-distance between two given strings via dynamic
-   * programming.
+   * Computes the Levenshtein-distance between two given strings. The strings
+   * are compared case-insensitively.
    * 
    * @param s1
    *          the first string to process.
    * @param s2
    *          the second string to process.
-   * @return the Levenshtein-distance between the two given strings.
+   * @return the Levenshtein-distance between the two given strings or -1, if
+   *         one of the strings is null.
    */
   public static float levenshtein(String s1, String s2) {
+    return levenshtein(s1, s2, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Computes the Levenshtein-distance between two given strings, but stops as
+   * soon as the distance is known to exceed the given bound. The strings are
+   * compared case-insensitively.
+   * 
+   * @param s1
+   *          the first string to process.
+   * @param s2
+   *          the second string to process.
+   * @param maxDistance
+   *          the maximal distance of interest.
+   * @return the Levenshtein-distance, if it is <= maxDistance, maxDistance + 1
+   *         otherwise or -1, if one of the strings is null.
+   */
+  public static int levenshtein(String s1, String s2, int maxDistance) {
     if (s1 != null && s2 != null) {
-      s1 = s1.toLowerCase();
-      s2 = s2.toLowerCase();
+      return levenshtein(toLowerCaseChars(s1), toLowerCaseChars(s2),
+          maxDistance);
+    }
+    return -1;
+  }
+
+  /**
+   * Computes the Levenshtein-distance between two given char arrays with the
+   * bit-parallel algorithm of Myers (in the block-based formulation of
+   * Hyyroe), that simulates a column of the matrix by bit vectors of 64 bits
+   * each. The shorter array is taken as pattern, so that a single bit vector
+   * suffices if its length is <= 64. The computation stops as soon as the
+   * distance is known to exceed the given bound. The chars are compared as
+   * they are.
+   * 
+   * @param s1
+   *          the chars of the first string.
+   * @param s2
+   *          the chars of the second string.
+   * @param maxDistance
+   *          the maximal distance of interest (Integer.MAX_VALUE for no
+   *          bound).
+   * @return the Levenshtein-distance, if it is <= maxDistance and
+   *         maxDistance + 1 otherwise.
+   */
+  public static int levenshtein(char[] s1, char[] s2, int maxDistance) {
+    char[] pattern = s1.length <= s2.length ? s1 : s2;
+    char[] text = s1.length <= s2.length ? s2 : s1;
+    int m = pattern.length;
+    int n = text.length;
+
+    // The distance is at least the difference of the lengths.
+    if (n - m > maxDistance) {
+      return maxDistance + 1;
+    }
+    if (m == 0) {
+      return n;
+    }
 
-      char[] s1Chars = s1.toCharArray();
-      char[] s2Chars = s2.toCharArray();
+    PatternMasks masks = PATTERN_MASKS.get();
+    masks.init(pattern);
+    int numOfBlocks = masks.numOfBlocks;
+    long[] pv = masks.pv;
+    long[] mv = masks.mv;
+    // The bit of the last row of the matrix in the last block.
+    long lastBit = 1L << ((m - 1) & 63);
 
-      int m = s1Chars.length;
-      int n = s2Chars.length;
+    // The score in the last row of the current column.
+    int score = m;
+    for (int j = 0; j < n; j++) {
+      int offset = masks.find(text[j]);
+      // The horizontal delta, entering the current block (D[0][j] = j).
+      int hin = 1;
+      for (int b = 0; b < numOfBlocks; b++) {
+        long eq = offset >= 0 ? masks.eq[offset + b] : 0;
+        long pvb = pv[b];
+        long mvb = mv[b];
 
-      // Initialize the matrix
-      float[][] matrix = new float[m + 1][n + 1];
-      for (int i = 0; i <= m; i++) {
-        matrix[i][0] = i;
-      }
-      for (int j = 0; j <= n; j++) {
-        matrix[0][j] = j;
-      }
+        long xv = eq | mvb;
+        if (hin < 0) {
+          eq |= 1;
+        }
+        long xh = (((eq & pvb) + pvb) ^ pvb) | eq;
+        long ph = mvb | ~(xh | pvb);
+        long mh = pvb & xh;
 
-      for (int i = 1; i <= m; i++) {
-        for (int j = 1; j <= n; j++) {
-          if ((s1Chars[i - 1] != s2Chars[j - 1])) {
-            float addCosts = matrix[i - 1][j] + 1;
-            float deleteCosts = matrix[i][j - 1] + 1;
-            float replaceCosts = matrix[i - 1][j - 1] + 1;
-
-            matrix[i][j] = min(addCosts, deleteCosts, replaceCosts);
-          } else {
-            matrix[i][j] = matrix[i - 1][j - 1];
-          }
+        long outBit = b == numOfBlocks - 1 ? lastBit : Long.MIN_VALUE;
+        int hout = (ph & outBit) != 0 ? 1 : ((mh & outBit) != 0 ? -1 : 0);
+
+        ph <<= 1;
+        mh <<= 1;
+        if (hin < 0) {
+          mh |= 1;
+        } else if (hin > 0) {
+          ph |= 1;
         }
+        pv[b] = mh | ~(xv | ph);
+        mv[b] = ph & xv;
+        hin = hout;
+      }
+      score += hin;
+
+      // Each of the remaining columns lowers the score by at most 1.
+      if (score - (n - j - 1) > maxDistance) {
+        return maxDistance + 1;
       }
-      return matrix[m][n];
     }
-    return -1;
+    return score;
   }
 
   /**
@@ -82,71 +181,120 @@ public class StringSimilarity {
       return result;
     }
 
-    s1 = s1 != null ? s1.toLowerCase() : "";
-    s2 = s2 != null ? s2.toLowerCase() : "";
+    char[] s1Chars = toLowerCaseChars(s1);
+    char[] s2Chars = toLowerCaseChars(s2);
 
-    char[] s1Chars = s1.toCharArray();
-    char[] s2Chars = s2.toCharArray();
+    int[] end = END_BUFFER.get();
+    result[0] = smithWaterman(s1Chars, s2Chars, null, end);
+    result[1] = end[0];
+    result[2] = end[1];
+    return result;
+  }
 
-    int m = s1Chars.length;
-    int n = s2Chars.length;
+  /**
+   * Computes the Smith Waterman similarity between two given char arrays,
+   * without allocating any memory. The scores of the matrix are computed row
+   * by row, keeping only a single row. The chars are compared as they are, so
+   * the caller has to lower-case them (see toLowerCaseChars()).
+   * 
+   * @param s1
+   *          the chars of the first string.
+   * @param s2
+   *          the chars of the second string.
+   * @param row
+   *          the buffer for a row of the matrix (of length >= s2.length + 1)
+   *          or null, to use a buffer of the current thread.
+   * @param end
+   *          the array to fill with the end positions of the best alignment
+   *          in s1 and s2 or null. The positions are {0, 0}, if no chars
+   *          match, and {-1, -1}, if one of the arrays is empty.
+   * @return the Smith Waterman score.
+   */
+  public static int smithWaterman(char[] s1, char[] s2, int[] row, int[] end) {
+    int score = 0;
+    int endI = -1;
+    int endJ = -1;
 
-    // The easy case: length1 == 0 || length2 = 0;
-    if (m == 0 || n == 0) {
-      result[0] = 0;
-      result[1] = -1;
-      result[2] = -1;
-      return result;
-    }
+    int m = s1 != null ? s1.length : 0;
+    int n = s2 != null ? s2.length : 0;
 
-    // Initialize the matrix
-    float[][] matrix = new float[m + 1][n + 1];
-    for (int i = 0; i < m + 1; i++) {
-      matrix[i][0] = 0;
-    }
-    for (int j = 0; j < n + 1; j++) {
-      matrix[0][j] = 0;
-    }
+    if (m > 0 && n > 0) {
+      endI = 0;
+      endJ = 0;
+      if (row == null || row.length < n + 1) {
+        row = getRowBuffer(n + 1);
+      }
+      for (int j = 0; j <= n; j++) {
+        row[j] = 0;
+      }
 
-    // Step 3: Fill the matrix by determining the minimum of the three values
-    // for Replacement, Insertion and Deletion
-    for (int i = 1; i <= m; i++) {
-      for (int j = 1; j <= n; j++) {
-        // If chars are the same: costs = 2, otherwise: costs = -1;
-        float costs =
-            s1Chars[i - 1] == s2Chars[j - 1] ? SMITH_WATERMAN_MATCH_BONUS
-                : SMITH_WATERMAN_MISMATCH_MALUS;
-
-        float replaceCosts = matrix[i - 1][j - 1] + costs; // Replace
-        float addCosts = matrix[i - 1][j] - 1; // insert
-        float deleteCosts = matrix[i][j - 1] - 1; // delete
-
-        // Determine Minimum of the three values
-        matrix[i][j] =
-            Math.max(Math.max(0, replaceCosts),
-                Math.max(addCosts, deleteCosts));
-        if (matrix[i][j] > result[0]) {
-          result[0] = matrix[i][j];
-          result[1] = i;
-          result[2] = j;
+      for (int i = 1; i <= m; i++) {
+        char c = s1[i - 1];
+        // The score of the cell diagonal up-left of the current cell.
+        int diagonal = 0;
+        // The score of the cell left of the current cell.
+        int left = 0;
+        for (int j = 1; j <= n; j++) {
+          int up = row[j];
+          // If chars are the same: costs = 2, otherwise: costs = -1;
+          int value = diagonal + (c == s2[j - 1] ? SMITH_WATERMAN_MATCH_BONUS
+              : SMITH_WATERMAN_MISMATCH_MALUS);
+          if (up - 1 > value) {
+            value = up - 1; // insert
+          }
+          if (left - 1 > value) {
+            value = left - 1; // delete
+          }
+          if (value < 0) {
+            value = 0;
+          }
+          row[j] = value;
+          diagonal = up;
+          left = value;
+
+          if (value > score) {
+            score = value;
+            endI = i;
+            endJ = j;
+          }
         }
       }
     }
 
-    // // Search for starts
-    // int i = (int) result[2];
-    // int j = (int) result[4];
-    //
-    // while (i >= 0 && j >= 0 && matrix[i][j] > 0) {
-    // i--;
-    // j--;
-    // }
-    // result[1] = i - 1;
-    // result[3] = j - 1;
-
-    // TODO: Which one to choose? (Title: first variant, Reference: second one).
-    // return maxScore / (2 * Math.max(m, n));
-    return result;
+    if (end != null) {
+      end[0] = endI;
+      end[1] = endJ;
+    }
+    return score;
+  }
+
+  /**
+   * Returns the chars of the given string in lower case. The result can be
+   * reused for several calls of smithWaterman(char[], char[], int[], int[]).
+   * 
+   * @param s
+   *          the string to process.
+   * @return the lower-cased chars of the string (empty, if s is null).
+   */
+  public static char[] toLowerCaseChars(String s) {
+    return s != null ? s.toLowerCase().toCharArray() : new char[0];
+  }
+
+  /**
+   * Returns the row buffer of the current thread with at least the given
+   * length.
+   * 
+   * @param length
+   *          the minimal length of the buffer.
+   * @return the row buffer.
+   */
+  protected static int[] getRowBuffer(int length) {
+    int[] row = ROW_BUFFER.get();
+    if (row.length < length) {
+      row = new int[Math.max(length, 2 * row.length)];
+      ROW_BUFFER.set(row);
+    }
+    return row;
   }
 
   /**
@@ -165,17 +313,108 @@ public class StringSimilarity {
   }
 
   /**
-   * Returns the minimum of three given floats.
+   * The bit masks of a pattern for the bit-parallel Levenshtein-distance: for
+   * each char of the pattern the positions, where it occurs in the pattern,
+   * and the vertical deltas of the current column of the matrix. The chars
+   * are held in a small open-addressing hash table, which is reused for
+   * several patterns.
+   * 
+   * @author Claudius Korzen
    * 
-   * @param x
-   *          the first floats.
-   * @param y
-   *          the second floats.
-   * @param z
-   *          the third floats.
-   * @return the minimum of three given integers.
    */
-  private static float min(float x, float y, float z) {
-    return Math.min(x, Math.min(y, z));
+  protected static class PatternMasks {
+    /** The number of 64-bit blocks of the current pattern. */
+    protected int numOfBlocks;
+    /** The chars of the hash table. */
+    protected char[] keys = new char[128];
+    /** The stamps of the slots (a slot is used, if its stamp is current). */
+    protected int[] stamps = new int[128];
+    /** The current stamp. */
+    protected int stamp;
+    /** The occurrence masks (numOfBlocks per slot). */
+    protected long[] eq = new long[128];
+    /** The positive vertical deltas of the current column. */
+    protected long[] pv = new long[1];
+    /** The negative vertical deltas of the current column. */
+    protected long[] mv = new long[1];
+
+    /**
+     * Computes the masks for the given pattern.
+     * 
+     * @param pattern
+     *          the pattern.
+     */
+    protected void init(char[] pattern) {
+      int m = pattern.length;
+      numOfBlocks = (m + 63) >>> 6;
+      // Keep the load factor of the hash table <= 0.5.
+      int size = keys.length;
+      while (size < 2 * m) {
+        size <<= 1;
+      }
+      if (size != keys.length) {
+        keys = new char[size];
+        stamps = new int[size];
+        stamp = 0;
+      }
+      if (eq.length < size * numOfBlocks) {
+        eq = new long[size * numOfBlocks];
+      }
+      if (pv.length < numOfBlocks) {
+        pv = new long[numOfBlocks];
+        mv = new long[numOfBlocks];
+      }
+      if (++stamp == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+
+      for (int i = 0; i < m; i++) {
+        int slot = slot(pattern[i]);
+        int offset = slot * numOfBlocks;
+        if (stamps[slot] != stamp) {
+          stamps[slot] = stamp;
+          keys[slot] = pattern[i];
+          for (int b = 0; b < numOfBlocks; b++) {
+            eq[offset + b] = 0;
+          }
+        }
+        eq[offset + (i >>> 6)] |= 1L << (i & 63);
+      }
+      for (int b = 0; b < numOfBlocks; b++) {
+        pv[b] = -1L;
+        mv[b] = 0;
+      }
+    }
+
+    /**
+     * Returns the offset of the masks of the given char or -1, if the char
+     * doesn't occur in the pattern.
+     * 
+     * @param c
+     *          the char.
+     * @return the offset of the masks of the char in eq or -1.
+     */
+    protected int find(char c) {
+      int slot = slot(c);
+      return stamps[slot] == stamp ? slot * numOfBlocks : -1;
+    }
+
+    /**
+     * Returns the slot of the given char, that is the slot containing the
+     * char or the first free slot.
+     * 
+     * @param c
+     *          the char.
+     * @return the slot of the char.
+     */
+    protected int slot(char c) {
+      int mask = keys.length - 1;
+      int slot = (c * 0x9E37) & mask;
+      while (stamps[slot] == stamp && keys[slot] != c) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
   }
 }
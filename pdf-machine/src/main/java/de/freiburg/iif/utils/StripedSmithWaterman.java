@@ -0,0 +1,270 @@
+package de.freiburg.iif.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class StripedSmithWaterman, that computes the Smith Waterman score of
+ * many texts against a fixed query with the striped algorithm of Farrar.
+ *
+ * The query is split into as many segments of equal length as there are
+ * lanes, and the i-th positions of all segments are processed at once,
+ * packed as lanes into a single long (SIMD within a register). Gaps within a
+ * segment, that cross the boundary of a lane, are fixed up by the "lazy F"
+ * loop of Farrar.
+ *
+ * The values in the lanes are unsigned and don't use the top bit of the
+ * lane, such that the top bit can serve as guard bit, which absorbs the
+ * borrows of lane-wise comparisons. As the score is bounded by 2 * the length
+ * of the shorter string, 8 lanes of 8 bits are used for short strings and 4
+ * lanes of 16 bits otherwise (like Farrar, who starts with 8-bit lanes and
+ * switches to 16-bit lanes on overflow).
+ *
+ * The scores equal the scores of StringSimilarity.smithWaterman(). The query
+ * must not be longer than MAX_QUERY_LENGTH (see isApplicable()).
+ *
+ * An instance isn't thread-safe.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class StripedSmithWaterman {
+  /** The maximal length of a query, such that the scores fit into a lane. */
+  public static final int MAX_QUERY_LENGTH = 16000;
+  /** The length of the query. */
+  protected int queryLength;
+  /** The kernel with 8 lanes of 8 bits. */
+  protected Kernel kernel8;
+  /** The kernel with 4 lanes of 16 bits. */
+  protected Kernel kernel16;
+
+  /**
+   * The constructor.
+   *
+   * @param query
+   *          the (lower-cased) chars of the query.
+   */
+  public StripedSmithWaterman(char[] query) {
+    if (!isApplicable(query)) {
+      throw new IllegalArgumentException("The query is too long.");
+    }
+    this.queryLength = query.length;
+    this.kernel8 = new Kernel(query, 8);
+    this.kernel16 = new Kernel(query, 16);
+  }
+
+  /**
+   * Returns true, if the given query isn't too long for this implementation.
+   *
+   * @param query
+   *          the query.
+   * @return true, if the query can be processed by this implementation.
+   */
+  public static boolean isApplicable(char[] query) {
+    return query != null && query.length <= MAX_QUERY_LENGTH;
+  }
+
+  /**
+   * Computes the Smith Waterman score of the given (lower-cased) chars
+   * against the query.
+   *
+   * @param text
+   *          the chars to align.
+   * @return the Smith Waterman score.
+   */
+  public int align(char[] text) {
+    int minLength = Math.min(queryLength, text.length);
+    if (kernel8.isApplicable(minLength)) {
+      return kernel8.align(text);
+    }
+    return kernel16.align(text);
+  }
+
+  /**
+   * The striped alignment with a fixed width of the lanes.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Kernel {
+    /** The number of bits per lane. */
+    protected int laneBits;
+    /** The number of lanes per long. */
+    protected int numOfLanes;
+    /** The guard bits of the lanes. */
+    protected long guardBits;
+    /** The value 1 in each lane. */
+    protected long ones;
+    /** The number of segments, that is the number of positions per lane. */
+    protected int segLength;
+    /** The striped profiles of the ascii chars of the query (or null). */
+    protected long[][] asciiProfiles;
+    /** The striped profiles of the non-ascii chars of the query. */
+    protected Map<Character, long[]> otherProfiles;
+    /** The striped profile of the chars, that don't occur in the query. */
+    protected long[] mismatchProfile;
+    /** The scores of the current column. */
+    protected long[] column;
+
+    /**
+     * The constructor.
+     *
+     * @param query
+     *          the (lower-cased) chars of the query.
+     * @param laneBits
+     *          the number of bits per lane (a divisor of 64).
+     */
+    protected Kernel(char[] query, int laneBits) {
+      this.laneBits = laneBits;
+      this.numOfLanes = 64 / laneBits;
+      for (int lane = 0; lane < numOfLanes; lane++) {
+        this.ones |= 1L << (lane * laneBits);
+      }
+      this.guardBits = ones << (laneBits - 1);
+      this.segLength =
+          Math.max(1, (query.length + numOfLanes - 1) / numOfLanes);
+      this.asciiProfiles = new long[128][];
+      this.otherProfiles = new HashMap<Character, long[]>();
+      // The profiles hold the match bonus resp. the mismatch malus + 1, so
+      // the mismatch profile is empty. The positions beyond the query are
+      // treated as mismatches, too.
+      this.mismatchProfile = new long[segLength];
+      this.column = new long[segLength];
+
+      long matchValue = StringSimilarity.SMITH_WATERMAN_MATCH_BONUS
+          - StringSimilarity.SMITH_WATERMAN_MISMATCH_MALUS;
+      for (int j = 0; j < query.length; j++) {
+        char c = query[j];
+        long[] profile = getProfile(c);
+        if (profile == mismatchProfile) {
+          profile = new long[segLength];
+          if (c < asciiProfiles.length) {
+            asciiProfiles[c] = profile;
+          } else {
+            otherProfiles.put(c, profile);
+          }
+        }
+        int lane = j / segLength;
+        profile[j % segLength] |= matchValue << (lane * laneBits);
+      }
+    }
+
+    /**
+     * Returns true, if the scores of strings, of which the shorter one has
+     * the given length, fit into the lanes of this kernel.
+     *
+     * @param minLength
+     *          the length of the shorter string.
+     * @return true, if the scores fit into the lanes.
+     */
+    protected boolean isApplicable(int minLength) {
+      // The largest value in a lane is score + 1 + the match value (3).
+      int maxValue = StringSimilarity.SMITH_WATERMAN_MATCH_BONUS * minLength
+          + 1 + StringSimilarity.SMITH_WATERMAN_MATCH_BONUS
+          - StringSimilarity.SMITH_WATERMAN_MISMATCH_MALUS;
+      return maxValue < (1 << (laneBits - 1));
+    }
+
+    /**
+     * Computes the Smith Waterman score of the given (lower-cased) chars
+     * against the query.
+     *
+     * @param text
+     *          the chars to align.
+     * @return the Smith Waterman score.
+     */
+    protected int align(char[] text) {
+      // The scores are stored with an offset of 1, such that a score of -1
+      // is representable and no saturated subtraction is needed.
+      long[] h = column;
+      for (int s = 0; s < segLength; s++) {
+        h[s] = ones;
+      }
+      long vMax = ones;
+
+      for (int i = 0; i < text.length; i++) {
+        long[] profile = getProfile(text[i]);
+        // The diagonal of the first segment is the last segment of the
+        // previous column, shifted by one lane.
+        long vDiagonal = (h[segLength - 1] << laneBits) | 1;
+        long vF = 0;
+        for (int s = 0; s < segLength; s++) {
+          long vLeft = h[s];
+          // max(diagonal + match/mismatch, left - 1, up - 1, 0)
+          long vH = max(max(vDiagonal + profile[s], vLeft) - ones, vF);
+          vH = max(vH, ones);
+          vMax = max(vMax, vH);
+          h[s] = vH;
+          vF = vH - ones;
+          vDiagonal = vLeft;
+        }
+
+        // Propagate the vertical gaps across the lanes (lazy F loop).
+        vF <<= laneBits;
+        int s = 0;
+        while (isAnyGreater(vF, h[s])) {
+          long vH = max(h[s], vF);
+          vMax = max(vMax, vH);
+          h[s] = vH;
+          vF = vH - ones;
+          if (++s == segLength) {
+            vF <<= laneBits;
+            s = 0;
+          }
+        }
+      }
+
+      int score = 0;
+      long laneMask = (1L << laneBits) - 1;
+      for (int lane = 0; lane < numOfLanes; lane++) {
+        int value = (int) ((vMax >>> (lane * laneBits)) & laneMask);
+        score = Math.max(score, value - 1);
+      }
+      return score;
+    }
+
+    /**
+     * Returns the striped profile of the given char.
+     *
+     * @param c
+     *          the char.
+     * @return the striped profile of the char.
+     */
+    protected long[] getProfile(char c) {
+      long[] profile = c < asciiProfiles.length ? asciiProfiles[c]
+          : otherProfiles.get(c);
+      return profile != null ? profile : mismatchProfile;
+    }
+
+    /**
+     * Returns the lane-wise maximum of the given vectors.
+     *
+     * @param a
+     *          the first vector.
+     * @param b
+     *          the second vector.
+     * @return the lane-wise maximum.
+     */
+    protected long max(long a, long b) {
+      // The guard bit of a lane remains set, iff a >= b in this lane. Spread
+      // the guard bits to masks of the full lanes.
+      long guards = ((a | guardBits) - b) & guardBits;
+      long mask = guards | (guards - (guards >>> (laneBits - 1)));
+      return (a & mask) | (b & ~mask);
+    }
+
+    /**
+     * Returns true, if a > b in any lane of the given vectors.
+     *
+     * @param a
+     *          the first vector.
+     * @param b
+     *          the second vector.
+     * @return true, if a > b in any lane.
+     */
+    protected boolean isAnyGreater(long a, long b) {
+      // The guard bit of a lane is cleared, iff b < a in this lane.
+      return (~((b | guardBits) - a) & guardBits) != 0;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package de.freiburg.iif.enrichment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.pdfbox.util.TextPosition;
+import org.junit.Test;
+
+import de.freiburg.iif.enrichment.CitationsDetector.Citation;
+import de.freiburg.iif.enrichment.CitationsDetector.CitationsCollector;
+import de.freiburg.iif.model.DblpRecord;
+import de.freiburg.iif.model.HasMetadata;
+import de.freiburg.iif.model.PageGeometry;
+import de.freiburg.iif.model.Region;
+
+/**
+ * Tests for the methods in CitationsDetector.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class CitationsDetectorTest {
+  /**
+   * Test the method detect().
+   */
+  @Test
+  public void testDetect() {
+    PageGeometry geometry = new PageGeometry();
+    // A line in front of the cited line, that shares the geometry.
+    Region prevLine = createLine(geometry, "Foo", 10, 50);
+    Region line = createLine(geometry, "See [2] and [3]", 10, 100);
+    geometry.trim();
+    Assert.assertEquals(18, geometry.size());
+    Assert.assertEquals("[", geometry.getCharacter(7));
+    Assert.assertNull(geometry.getCharacter(6));
+    Assert.assertFalse(geometry.hasCharacter(6));
+
+    List<HasMetadata> records = new ArrayList<HasMetadata>();
+    records.add(new DblpRecord());
+    records.add(new DblpRecord());
+    List<Region> lines = new ArrayList<Region>();
+    lines.add(prevLine);
+    lines.add(line);
+
+    // The citation [3] doesn't refer to a record.
+    List<Citation> citations = new CitationsDetector().detect(records, lines);
+    Assert.assertEquals(1, citations.size());
+    Citation citation = citations.get(0);
+    Assert.assertEquals(2, citation.page);
+    Assert.assertSame(records.get(1), citation.entry);
+    // "[2]" covers the positions 4 to 6 of the line.
+    Assert.assertEquals(10f + 4 * 5, citation.rectangle.getLowerLeftX());
+    Assert.assertEquals(100f + 2, citation.rectangle.getLowerLeftY());
+    Assert.assertEquals(10f + 6 * 5 + 4, citation.rectangle.getUpperRightX());
+    Assert.assertEquals(100f - 9, citation.rectangle.getUpperRightY());
+  }
+
+  /**
+   * Test the method createCollector(), that detects the citation areas page by
+   * page, before the references are known.
+   *
+   * @throws IOException
+   *           if processing a page fails.
+   */
+  @Test
+  public void testCreateCollector() throws IOException {
+    CitationsDetector detector = new CitationsDetector();
+    CitationsCollector collector = detector.createCollector();
+    PageGeometry geometry = new PageGeometry();
+    Region line = createLine(geometry, "See [1] and [3]", 10, 100);
+    geometry.trim();
+    collector.pageExtracted(3, Arrays.asList(line));
+
+    List<HasMetadata> records = new ArrayList<HasMetadata>();
+    records.add(new DblpRecord());
+    records.add(new DblpRecord());
+    List<Citation> citations = collector.getCitations(records);
+    Assert.assertEquals(1, citations.size());
+    Assert.assertSame(records.get(0), citations.get(0).entry);
+    Assert.assertEquals(2, citations.get(0).page);
+    // The same citations as detected on the lines.
+    Citation expected =
+        detector.detect(records, Arrays.asList(line)).get(0);
+    Assert.assertEquals(expected.rectangle.getLowerLeftX(),
+        citations.get(0).rectangle.getLowerLeftX());
+    Assert.assertEquals(expected.rectangle.getUpperRightY(),
+        citations.get(0).rectangle.getUpperRightY());
+  }
+
+  /**
+   * Creates a line with the given text, whose characters are positioned in
+   * steps of 5 from the given x-coordinate, and adds its positions to the
+   * given geometry. Whitespaces are represented by positions without a
+   * character.
+   *
+   * @param geometry
+   *          the geometry of the page.
+   * @param text
+   *          the text of the line.
+   * @param x
+   *          the x-coordinate of the first character.
+   * @param y
+   *          the y-coordinate of the line.
+   * @return the line.
+   */
+  protected Region createLine(PageGeometry geometry, String text, float x,
+    float y) {
+    int firstPosition = geometry.size();
+    for (int i = 0; i < text.length(); i++) {
+      String character =
+          text.charAt(i) == ' ' ? null : text.substring(i, i + 1);
+      geometry.add(new Position(character, x + i * 5, y));
+    }
+    Region line = new Region(x, y, text.length() * 5, 9);
+    line.setText(text);
+    line.setPageNumber(3);
+    line.setPositions(geometry, firstPosition, text.length());
+    return line;
+  }
+
+  /**
+   * A TextPosition with the given character and coordinates, a width of 4,
+   * a height of 7 and a font size of 9.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Position extends TextPosition {
+    /** The character. */
+    protected String character;
+    /** The x-coordinate. */
+    protected float x;
+    /** The y-coordinate. */
+    protected float y;
+
+    /**
+     * The constructor.
+     *
+     * @param character
+     *          the character.
+     * @param x
+     *          the x-coordinate.
+     * @param y
+     *          the y-coordinate.
+     */
+    protected Position(String character, float x, float y) {
+      this.character = character;
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public String getCharacter() {
+      return character;
+    }
+
+    @Override
+    public float getX() {
+      return x;
+    }
+
+    @Override
+    public float getY() {
+      return y;
+    }
+
+    @Override
+    public float getWidth() {
+      return 4;
+    }
+
+    @Override
+    public float getHeight() {
+      return 7;
+    }
+
+    @Override
+    public float getFontSize() {
+      return 9;
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
+
+/**
+ * Tests for the methods in CachingMetadataKnowledge.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class CachingMetadataKnowledgeTest {
+
+  /**
+   * Test the method getNumOfHits() for a single term.
+   * 
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  @Test
+  public void testGetNumOfHits() throws IOException {
+    final List<String> requests = new ArrayList<String>();
+    InvertedIndexMetadataKnowledge index = new InvertedIndexMetadataKnowledge() {
+      @Override
+      public int getNumOfHits(MetadataKnowledgeQueryType type, String value,
+        int minWaitInterval) {
+        requests.add(value);
+        return value.length();
+      }
+    };
+    CachingMetadataKnowledge mk = new CachingMetadataKnowledge(index, 10);
+
+    MetadataKnowledgeQueryType type = MetadataKnowledgeQueryType.NUMOFHITS_TITLE;
+    Assert.assertEquals(11, mk.getNumOfHits(type, "Proceedings", 0));
+    Assert.assertEquals(11, mk.getNumOfHits(type, "Proceedings", 0));
+    Assert.assertEquals(6, mk.getNumOfHits(type, "Korzen", 0));
+    Assert.assertEquals(Arrays.asList("Proceedings", "Korzen"), requests);
+    Assert.assertEquals(1, mk.getCache().getHitCount());
+    Assert.assertEquals(2, mk.getCache().getMissCount());
+  }
+
+  /**
+   * Test the method getNumOfHits() for several words.
+   * 
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  @Test
+  public void testGetNumOfHitsBatched() throws IOException {
+    final List<Collection<String>> requests = new ArrayList<Collection<String>>();
+    InvertedIndexMetadataKnowledge index = new InvertedIndexMetadataKnowledge() {
+      @Override
+      public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+        int minWaitInterval) {
+        requests.add(new ArrayList<String>(words));
+        Map<String, NumOfHits> hits = new HashMap<String, NumOfHits>();
+        for (String word : words) {
+          hits.put(word, new NumOfHits(word.length(), 1));
+        }
+        return hits;
+      }
+    };
+    CachingMetadataKnowledge mk = new CachingMetadataKnowledge(index, 10);
+
+    Map<String, NumOfHits> hits =
+        mk.getNumOfHits(Arrays.asList("Proceedings", "Korzen", "Korzen"), 0);
+    Assert.assertEquals(2, hits.size());
+    Assert.assertEquals(11, hits.get("Proceedings").numOfTitleHits);
+    Assert.assertEquals(1, hits.get("Korzen").numOfAuthorHits);
+
+    hits = mk.getNumOfHits(Arrays.asList("Korzen", "Conference"), 0);
+    Assert.assertEquals(10, hits.get("Conference").numOfTitleHits);
+    Assert.assertEquals(6, hits.get("Korzen").numOfTitleHits);
+
+    // Only the words, that weren't cached, were looked up.
+    Assert.assertEquals(2, requests.size());
+    Assert.assertEquals(Arrays.asList("Proceedings", "Korzen"), requests.get(0));
+    Assert.assertEquals(Arrays.asList("Conference"), requests.get(1));
+
+    // The single lookups share the cache with the batched lookups.
+    Assert.assertEquals(1, mk.getNumOfHits(
+        MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, "Conference", 0));
+  }
+
+  /**
+   * Test the method getNumOfHitsAsync().
+   * 
+   * @throws Exception
+   *           if querying the metadata knowledge fails.
+   */
+  @Test
+  public void testGetNumOfHitsAsync() throws Exception {
+    final List<Collection<String>> requests = new ArrayList<Collection<String>>();
+    IndexConnectionPool pool = new IndexConnectionPool();
+    InvertedIndexMetadataKnowledge index =
+        new InvertedIndexMetadataKnowledge(pool) {
+          @Override
+          public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+            int minWaitInterval) throws IOException {
+            requests.add(new ArrayList<String>(words));
+            if (words.contains("Error")) {
+              throw new IOException("Index not available.");
+            }
+            Map<String, NumOfHits> hits = new HashMap<String, NumOfHits>();
+            for (String word : words) {
+              hits.put(word, new NumOfHits(word.length(), 1));
+            }
+            return hits;
+          }
+        };
+    CachingMetadataKnowledge mk = new CachingMetadataKnowledge(index, 10);
+
+    try {
+      mk.getNumOfHits(Arrays.asList("Korzen"), 0);
+      Map<String, NumOfHits> hits = mk.getNumOfHitsAsync(
+          Arrays.asList("Proceedings", "Korzen"), 0).get();
+      Assert.assertEquals(2, hits.size());
+      Assert.assertEquals(11, hits.get("Proceedings").numOfTitleHits);
+      Assert.assertEquals(6, hits.get("Korzen").numOfTitleHits);
+      // Only the word, that wasn't cached, was looked up asynchronously.
+      Assert.assertEquals(Arrays.asList("Proceedings"), requests.get(1));
+      // The result of the asynchronous lookup was cached.
+      Assert.assertTrue(mk.getNumOfHitsAsync(Arrays.asList("Proceedings"), 0)
+          .isDone());
+      Assert.assertEquals(2, requests.size());
+
+      try {
+        mk.getNumOfHitsAsync(Arrays.asList("Error"), 0).get();
+        Assert.fail("The exception of the lookup wasn't thrown.");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      pool.close();
+    }
+  }
+
+  /**
+   * Test the method isAsynchronous().
+   * 
+   * @throws IOException
+   *           if building the local index fails.
+   */
+  @Test
+  public void testIsAsynchronous() throws IOException {
+    MetadataKnowledge index = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml")));
+    Assert.assertFalse(new CachingMetadataKnowledge(index).isAsynchronous());
+    Assert.assertFalse(new CachingMetadataKnowledge(
+        new CachingMetadataKnowledge(index)).isAsynchronous());
+
+    index = new InvertedIndexMetadataKnowledge();
+    Assert.assertTrue(new CachingMetadataKnowledge(index).isAsynchronous());
+    Assert.assertTrue(new CachingMetadataKnowledge(
+        new CachingMetadataKnowledge(index)).isAsynchronous());
+  }
+}
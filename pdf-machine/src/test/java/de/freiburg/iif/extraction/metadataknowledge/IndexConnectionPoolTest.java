@@ -0,0 +1,326 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ * Tests for the methods in IndexConnectionPool.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class IndexConnectionPoolTest {
+
+  /**
+   * Test the method execute() with an index, that supports keep-alive.
+   *
+   * @throws Exception
+   *           if the test fails.
+   */
+  @Test
+  public void testExecuteKeepAlive() throws Exception {
+    FakeIndex index = new FakeIndex(true);
+    IndexConnectionPool pool = new IndexConnectionPool(2, 10000, 5000);
+    try {
+      for (int i = 0; i < 3; i++) {
+        URL url = new URL("http://localhost:" + index.getPort() + "/?nt=x" + i);
+        InputStream is = pool.execute(url);
+        Assert.assertEquals("<result hits=\"/?nt=x" + i + "\"/>\n",
+            IOUtils.toString(is, "UTF-8"));
+      }
+      // All requests were sent over a single connection.
+      Assert.assertEquals(1, index.getNumOfConnections());
+      Assert.assertEquals(1, pool.getNumOfIdleConnections());
+      Assert.assertTrue(index.requests.get(0).startsWith("GET /?nt=x0 HTTP/1.1"));
+    } finally {
+      pool.close();
+      index.close();
+    }
+    Assert.assertEquals(0, pool.getNumOfIdleConnections());
+  }
+
+  /**
+   * Test the method execute() with an index, that closes the connection after
+   * each response.
+   *
+   * @throws Exception
+   *           if the test fails.
+   */
+  @Test
+  public void testExecuteWithoutKeepAlive() throws Exception {
+    FakeIndex index = new FakeIndex(false);
+    IndexConnectionPool pool = new IndexConnectionPool(2, 10000, 5000);
+    try {
+      for (int i = 0; i < 2; i++) {
+        URL url = new URL("http://localhost:" + index.getPort() + "/?t=\u00e4" + i);
+        InputStream is = pool.execute(url);
+        Assert.assertEquals("<result hits=\"/?t=%C3%A4" + i + "\"/>\n",
+            IOUtils.toString(is, "UTF-8"));
+      }
+      Assert.assertEquals(2, index.getNumOfConnections());
+      Assert.assertEquals(0, pool.getNumOfIdleConnections());
+    } finally {
+      pool.close();
+      index.close();
+    }
+  }
+
+  /**
+   * Test the method evictIdleConnections().
+   *
+   * @throws Exception
+   *           if the test fails.
+   */
+  @Test
+  public void testEvictIdleConnections() throws Exception {
+    FakeIndex index = new FakeIndex(true);
+    IndexConnectionPool pool = new IndexConnectionPool(2, 0, 5000);
+    try {
+      URL url = new URL("http://localhost:" + index.getPort() + "/?nt=x");
+      pool.execute(url).close();
+      Assert.assertEquals(1, pool.getNumOfIdleConnections());
+      Thread.sleep(5);
+      pool.evictIdleConnections();
+      Assert.assertEquals(0, pool.getNumOfIdleConnections());
+    } finally {
+      pool.close();
+      index.close();
+    }
+  }
+
+  /**
+   * Test the method execute() with a pooled connection, that was closed by the
+   * index, and with a pooled connection, on which the response times out.
+   *
+   * @throws Exception
+   *           if the test fails.
+   */
+  @Test
+  public void testExecuteRetry() throws Exception {
+    // The index closes the connection after the first response.
+    FakeIndex index = new FakeIndex(true);
+    index.maxNumOfResponses = 1;
+    IndexConnectionPool pool = new IndexConnectionPool(2, 10000, 500);
+    try {
+      for (int i = 0; i < 2; i++) {
+        URL url = new URL("http://localhost:" + index.getPort() + "/?nt=x" + i);
+        Assert.assertEquals("<result hits=\"/?nt=x" + i + "\"/>\n",
+            IOUtils.toString(pool.execute(url), "UTF-8"));
+      }
+      // The second request was repeated on a new connection.
+      Assert.assertEquals(2, index.getNumOfConnections());
+    } finally {
+      pool.close();
+      index.close();
+    }
+
+    // The index doesn't answer the second request of a connection.
+    index = new FakeIndex(true);
+    index.maxNumOfResponses = 1;
+    index.isHanging = true;
+    pool = new IndexConnectionPool(2, 10000, 500);
+    try {
+      URL url = new URL("http://localhost:" + index.getPort() + "/?nt=x");
+      pool.execute(url).close();
+      try {
+        pool.execute(url);
+        Assert.fail();
+      } catch (SocketTimeoutException e) {
+        // The request isn't repeated after a read timeout.
+        Assert.assertEquals(1, index.getNumOfConnections());
+        Assert.assertEquals(2, index.requests.size());
+      }
+    } finally {
+      pool.close();
+      index.close();
+    }
+  }
+
+  /**
+   * Test the method execute() with a request, that is too long to keep the
+   * connection alive.
+   *
+   * @throws Exception
+   *           if the test fails.
+   */
+  @Test
+  public void testExecuteLongRequest() throws Exception {
+    FakeIndex index = new FakeIndex(true);
+    IndexConnectionPool pool = new IndexConnectionPool(2, 10000, 5000);
+    try {
+      StringBuilder query = new StringBuilder("/?q=");
+      int maxLength = IndexConnectionPool.MAX_KEEP_ALIVE_REQUEST_LENGTH;
+      while (query.length() < maxLength) {
+        query.append("Semantic+Search+");
+      }
+      URL url = new URL("http://localhost:" + index.getPort() + query);
+      Assert.assertEquals("<result hits=\"" + query + "\"/>\n",
+          IOUtils.toString(pool.execute(url), "UTF-8"));
+      // The connection isn't reused.
+      Assert.assertEquals(0, pool.getNumOfIdleConnections());
+      Assert.assertTrue(new String(pool.createRequest(url, false), "UTF-8")
+          .contains("Connection: close\r\n"));
+
+      url = new URL("http://localhost:" + index.getPort() + "/?q=x");
+      pool.execute(url).close();
+      Assert.assertEquals(1, pool.getNumOfIdleConnections());
+    } finally {
+      pool.close();
+      index.close();
+    }
+  }
+
+  /**
+   * Test the method getEncodedLength().
+   */
+  @Test
+  public void testGetEncodedLength() {
+    Assert.assertEquals(3, IndexConnectionPool.getEncodedLength("abc"));
+    // "\u00e4" is encoded as %C3%A4.
+    Assert.assertEquals(6, IndexConnectionPool.getEncodedLength("\u00e4"));
+    // A surrogate pair is encoded as a single character: %F0%9D%90%80.
+    Assert.assertEquals(12,
+        IndexConnectionPool.getEncodedLength("\ud835\udc00"));
+  }
+
+  /**
+   * A minimal index, that answers each request with its request path.
+   */
+  static class FakeIndex implements Runnable {
+    /** The server socket. */
+    ServerSocket server;
+    /** The flag that indicates whether to keep the connections alive. */
+    boolean keepAlive;
+    /** The received requests. */
+    List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    /** The number of accepted connections. */
+    int numOfConnections;
+    /** The maximal number of responses per connection. */
+    int maxNumOfResponses = Integer.MAX_VALUE;
+    /** The flag to keep the connection open after the last response. */
+    boolean isHanging;
+
+    /**
+     * Starts a new fake index on a free port.
+     *
+     * @param keepAlive
+     *          true, to keep the connections alive.
+     * @throws IOException
+     *           if starting the index fails.
+     */
+    FakeIndex(boolean keepAlive) throws IOException {
+      this.keepAlive = keepAlive;
+      this.server = new ServerSocket(0);
+      Thread thread = new Thread(this);
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          Socket socket = server.accept();
+          synchronized (this) {
+            numOfConnections++;
+          }
+          serve(socket);
+        }
+      } catch (IOException e) {
+        // The index was closed.
+      }
+    }
+
+    /**
+     * Serves the requests of the given connection.
+     *
+     * @param socket
+     *          the connection.
+     * @throws IOException
+     *           if reading or writing fails.
+     */
+    void serve(Socket socket) throws IOException {
+      BufferedReader in = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), "UTF-8"));
+      OutputStream out = socket.getOutputStream();
+      String requestLine;
+      int numOfResponses = 0;
+      while ((requestLine = in.readLine()) != null) {
+        requests.add(requestLine);
+        String line;
+        boolean keepConnectionAlive = keepAlive;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+          if (line.equalsIgnoreCase("Connection: close")) {
+            keepConnectionAlive = false;
+          }
+        }
+        if (numOfResponses++ == maxNumOfResponses) {
+          if (isHanging) {
+            // Wait, until the client closes the connection.
+            while (in.readLine() != null) {
+              // Ignore further requests.
+            }
+          }
+          break;
+        }
+        String path = requestLine.split(" ")[1];
+        String body = "<result hits=\"" + path + "\"/>\n";
+        StringBuilder response = new StringBuilder("HTTP/1.1 200 OK\n");
+        if (keepConnectionAlive) {
+          response.append("Content-Length: " + body.length() + "\n");
+          response.append("Connection: keep-alive\n");
+        }
+        response.append("\n").append(body);
+        out.write(response.toString().getBytes("UTF-8"));
+        out.flush();
+        if (!keepConnectionAlive) {
+          break;
+        }
+      }
+      socket.close();
+    }
+
+    /**
+     * Returns the port of the index.
+     *
+     * @return the port.
+     */
+    int getPort() {
+      return server.getLocalPort();
+    }
+
+    /**
+     * Returns the number of accepted connections.
+     *
+     * @return the number of accepted connections.
+     */
+    synchronized int getNumOfConnections() {
+      return numOfConnections;
+    }
+
+    /**
+     * Closes the index.
+     *
+     * @throws IOException
+     *           if closing fails.
+     */
+    void close() throws IOException {
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeField;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * Tests for the methods in IndexResponseParser.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class IndexResponseParserTest {
+  /** A response of the index with three records. */
+  protected static final String RESPONSE =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+      + "<!DOCTYPE dblp [\n<!ENTITY eacute  \"&#233;\" >\n]>\n"
+      + "<result hits=\"3\">\n"
+      + "<record score=\"4\" key=\"books/acm/kim95/Blakeley95\" "
+      + "title=\"OQL[C++]: Extending C++ with an Object &amp; Query.\" "
+      + "authors=\"Jos&eacute; A. Blakeley$Björn Buchhold\" "
+      + "year=\"1995\" journal=\"Modern Database Systems\" pages=\"69-88\" "
+      + "url=\"db/books/collections/kim95.html#Blakeley95\" ee=\"\"/>\n"
+      + "<record score=\"2.5\" key=\"k2\" title=\"T2\" authors=\"A$B$\" "
+      + "year=\"\" journal=\"\" pages=\"12-\" url=\"\" ee=\"http://x\"/>\n"
+      + "<record score=\"1\" key=\"k3\" title=\"T3\" authors=\"\" "
+      + "year=\"2001\" journal=\"J\" pages=\"7\" url=\"\" ee=\"\"/>\n"
+      + "</result>\n";
+
+  /**
+   * Test the method parseRecords().
+   * 
+   * @throws IOException
+   *           if parsing fails.
+   */
+  @Test
+  public void testParseRecords() throws IOException {
+    List<HasMetadata> records = IndexResponseParser.parseRecords(
+        toStream(RESPONSE), Integer.MAX_VALUE);
+    Assert.assertEquals(3, records.size());
+
+    HasMetadata record = records.get(0);
+    Assert.assertEquals(4.0, record.getScore());
+    Assert.assertEquals("books/acm/kim95/Blakeley95", record.getKey());
+    Assert.assertEquals("OQL[C++]: Extending C++ with an Object & Query.",
+        record.getTitle());
+    Assert.assertEquals(Arrays.asList("José A. Blakeley",
+        "Björn Buchhold"), record.getAuthors());
+    Assert.assertEquals(1995, record.getYear());
+    Assert.assertEquals("Modern Database Systems", record.getJournal());
+    Assert.assertEquals(69, record.getStartPage());
+    Assert.assertEquals(88, record.getEndPage());
+    Assert.assertEquals("db/books/collections/kim95.html#Blakeley95",
+        record.getUrl());
+    Assert.assertEquals("", record.getEe());
+
+    record = records.get(1);
+    Assert.assertEquals(2.5, record.getScore());
+    Assert.assertEquals(Arrays.asList("A", "B"), record.getAuthors());
+    Assert.assertEquals(-1, record.getYear());
+    Assert.assertEquals(-1, record.getStartPage());
+    Assert.assertEquals(-1, record.getEndPage());
+    Assert.assertEquals("http://x", record.getEe());
+
+    record = records.get(2);
+    Assert.assertEquals(Arrays.asList(""), record.getAuthors());
+    Assert.assertEquals(-1, record.getStartPage());
+
+    // Stop after the first records.
+    records = IndexResponseParser.parseRecords(toStream(RESPONSE), 2);
+    Assert.assertEquals(2, records.size());
+    Assert.assertEquals("k2", records.get(1).getKey());
+  }
+
+  /**
+   * Test the method parseRecords() with a projection of the fields.
+   * 
+   * @throws IOException
+   *           if parsing fails.
+   */
+  @Test
+  public void testParseRecordsWithFields() throws IOException {
+    List<HasMetadata> records = IndexResponseParser.parseRecords(
+        toStream(RESPONSE), Integer.MAX_VALUE,
+        MetadataKnowledgeField.SCORING_FIELDS);
+    Assert.assertEquals(3, records.size());
+
+    HasMetadata record = records.get(0);
+    Assert.assertEquals(4.0, record.getScore());
+    Assert.assertEquals("books/acm/kim95/Blakeley95", record.getKey());
+    Assert.assertEquals(1995, record.getYear());
+    Assert.assertEquals(69, record.getStartPage());
+    // The url and the ee aren't parsed.
+    Assert.assertNull(record.getUrl());
+    Assert.assertNull(records.get(1).getEe());
+
+    records = IndexResponseParser.parseRecords(toStream(RESPONSE), 1,
+        EnumSet.of(MetadataKnowledgeField.KEY));
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("books/acm/kim95/Blakeley95", records.get(0).getKey());
+    Assert.assertNull(records.get(0).getTitle());
+    Assert.assertTrue(records.get(0).getAuthors().isEmpty());
+  }
+
+  /**
+   * Test the methods parseNumOfHits() and parseBatchedNumOfHits().
+   * 
+   * @throws IOException
+   *           if parsing fails.
+   */
+  @Test
+  public void testParseNumOfHits() throws IOException {
+    Assert.assertEquals(42, IndexResponseParser.parseNumOfHits(toStream(
+        "<?xml version=\"1.0\"?>\n<result hits=\"42\">\n</result>\n")));
+
+    List<NumOfHits> hits = IndexResponseParser.parseBatchedNumOfHits(
+        toStream("<result terms=\"2\">\n<term nt=\"1\" na=\"2\"/>\n"
+            + "<term nt=\"30\" na=\"0\"/>\n</result>\n"));
+    Assert.assertEquals(2, hits.size());
+    Assert.assertEquals(1, hits.get(0).numOfTitleHits);
+    Assert.assertEquals(2, hits.get(0).numOfAuthorHits);
+    Assert.assertEquals(30, hits.get(1).numOfTitleHits);
+  }
+
+  /**
+   * Returns the utf-8 bytes of the given string as stream.
+   * 
+   * @param s
+   *          the string.
+   * @return the stream.
+   * @throws IOException
+   *           if encoding fails.
+   */
+  protected InputStream toStream(String s) throws IOException {
+    return new ByteArrayInputStream(s.getBytes("UTF-8"));
+  }
+}
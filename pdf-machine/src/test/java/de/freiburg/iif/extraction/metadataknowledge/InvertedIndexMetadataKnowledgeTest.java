@@ -1,6 +1,13 @@
 package de.freiburg.iif.extraction.metadataknowledge;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import junit.framework.Assert;
 
@@ -9,6 +16,7 @@ import org.junit.Test;
 import de.freiburg.iif.extraction.metadataknowledge.InvertedIndexMetadataKnowledge;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQuery;
 import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
 
 /**
  * Tests for the methods in InvertedIndexMetadataKnowledge.
@@ -43,4 +51,99 @@ public class InvertedIndexMetadataKnowledgeTest {
         + "/?t=Mission impossible&a=Obama Merkel Putin",
         mk.prepareIndexUrl(query).toString());
   }
+
+  /**
+   * Test the method getNumOfHits() for several words.
+   * 
+   * @throws IOException
+   *           if querying the index fails.
+   */
+  @Test
+  public void testGetNumOfHitsBatched() throws IOException {
+    final List<String> queries = new ArrayList<String>();
+    // Answer each batch with fixed hits, without querying the socket.
+    InvertedIndexMetadataKnowledge mk = new InvertedIndexMetadataKnowledge() {
+      @Override
+      protected InputStream queryIndex(URL url) throws IOException {
+        String query = url.toString();
+        queries.add(query);
+        int numOfWords = query.split("\\$").length;
+        StringBuilder sb = new StringBuilder();
+        sb.append("HTTP/1.1 200 OK\n\n<result terms=\"" + numOfWords + "\">\n");
+        for (int i = 0; i < numOfWords; i++) {
+          sb.append("<term nt=\"" + i + "\" na=\"" + (10 * i) + "\"/>\n");
+        }
+        sb.append("</result>\n");
+        return new ByteArrayInputStream(sb.toString().getBytes());
+      }
+    };
+
+    Map<String, NumOfHits> hits =
+        mk.getNumOfHits(Arrays.asList("Proceedings", "Korzen", "", "Korzen"),
+            0);
+    Assert.assertEquals(1, queries.size());
+    Assert.assertEquals(InvertedIndexMetadataKnowledge.host + ":"
+        + InvertedIndexMetadataKnowledge.port + "/?nb=Proceedings$Korzen",
+        queries.get(0));
+    Assert.assertEquals(3, hits.size());
+    Assert.assertEquals(0, hits.get("Proceedings").numOfTitleHits);
+    Assert.assertEquals(1, hits.get("Korzen").numOfTitleHits);
+    Assert.assertEquals(10, hits.get("Korzen").numOfAuthorHits);
+    Assert.assertEquals(0, hits.get("").numOfAuthorHits);
+
+    // Large batches are split into several requests.
+    queries.clear();
+    List<String> words = new ArrayList<String>();
+    for (int i = 0; i < 200; i++) {
+      words.add("Word" + i);
+    }
+    hits = mk.getNumOfHits(words, 0);
+    Assert.assertTrue(queries.size() > 1);
+    Assert.assertEquals(200, hits.size());
+  }
+
+  /**
+   * Test the method getNumOfHits() for several words with non-ascii
+   * characters, which are escaped in the request.
+   * 
+   * @throws IOException
+   *           if querying the index fails.
+   */
+  @Test
+  public void testGetNumOfHitsBatchedNonAscii() throws IOException {
+    final List<URL> queries = new ArrayList<URL>();
+    final InvertedIndexMetadataKnowledge mk =
+        new InvertedIndexMetadataKnowledge() {
+          @Override
+          protected InputStream queryIndex(URL url) throws IOException {
+            queries.add(url);
+            int numOfWords = url.toString().split("\\$").length;
+            StringBuilder sb = new StringBuilder();
+            sb.append("HTTP/1.1 200 OK\n\n<result terms=\"" + numOfWords
+                + "\">\n");
+            for (int i = 0; i < numOfWords; i++) {
+              sb.append("<term nt=\"1\" na=\"2\"/>\n");
+            }
+            sb.append("</result>\n");
+            return new ByteArrayInputStream(sb.toString().getBytes());
+          }
+        };
+
+    List<String> words = new ArrayList<String>();
+    for (int i = 0; i < 200; i++) {
+      words.add("M\u00fcller\u00e9\u00e8\u00e7\u00df" + i);
+    }
+    Map<String, NumOfHits> hits = mk.getNumOfHits(words, 0);
+    Assert.assertEquals(200, hits.size());
+    for (String word : words) {
+      Assert.assertEquals(2, hits.get(word).numOfAuthorHits);
+    }
+    // Each request, including the request line and the headers, fits into a
+    // single read of the socket of the index.
+    Assert.assertTrue(queries.size() > 1);
+    for (URL url : queries) {
+      int length = mk.connectionPool.createRequest(url).length;
+      Assert.assertTrue(length + " bytes", length <= 1024);
+    }
+  }
 }
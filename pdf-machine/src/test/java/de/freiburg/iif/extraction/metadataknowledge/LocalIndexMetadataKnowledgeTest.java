@@ -0,0 +1,155 @@
+package de.freiburg.iif.extraction.metadataknowledge;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQuery;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.MetadataKnowledgeQueryType;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
+import de.freiburg.iif.model.HasMetadata;
+
+/**
+ * Tests for the methods in LocalIndexMetadataKnowledge.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class LocalIndexMetadataKnowledgeTest {
+  /** The path to the test corpus. */
+  protected static final String DBLP_TEST_XML =
+      "/de/freiburg/iif/extraction/metadataknowledge/index/dblp.test.xml";
+  /** The metadata knowledge to test. */
+  protected static LocalIndexMetadataKnowledge mk;
+
+  /**
+   * Builds the index from the test corpus.
+   * 
+   * @throws IOException
+   *           if building the index fails.
+   */
+  @BeforeClass
+  public static void prepare() throws IOException {
+    mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(
+            LocalIndexMetadataKnowledgeTest.class
+                .getResourceAsStream(DBLP_TEST_XML)));
+  }
+
+  /**
+   * Test the method query() for a single parameter.
+   * 
+   * @throws IOException
+   *           if querying fails.
+   */
+  @Test
+  public void testQuery() throws IOException {
+    List<HasMetadata> records =
+        mk.query(MetadataKnowledgeQueryType.AUTHORS, "Blakeley", 0);
+    Assert.assertEquals(1, records.size());
+    HasMetadata record = records.get(0);
+    Assert.assertEquals("books/acm/kim95/Blakeley95", record.getKey());
+    Assert.assertEquals(1.0, record.getScore());
+    Assert.assertEquals(Arrays.asList("José A. Blakeley"),
+        record.getAuthors());
+    Assert.assertEquals("OQL[C++]: Extending C++ with an Object Query "
+        + "Capability.", record.getTitle());
+    Assert.assertEquals(1995, record.getYear());
+    Assert.assertEquals("Modern Database Systems", record.getJournal());
+    Assert.assertEquals(69, record.getStartPage());
+    Assert.assertEquals(88, record.getEndPage());
+
+    // Stopwords are ignored.
+    Assert.assertTrue(mk.query(MetadataKnowledgeQueryType.TITLE, "The Object",
+        0).isEmpty());
+
+    // The year is an "other" parameter, that matches all records of 1995.
+    records = mk.query(MetadataKnowledgeQueryType.YEAR, "1995", 0);
+    Assert.assertEquals(3, records.size());
+    // Records with equal scores are sorted by their order in the corpus.
+    Assert.assertEquals("books/acm/kim95/AnnevelinkACFHK95",
+        records.get(0).getKey());
+  }
+
+  /**
+   * Test the method query() for several parameters.
+   * 
+   * @throws IOException
+   *           if querying fails.
+   */
+  @Test
+  public void testQueryWithSeveralParams() throws IOException {
+    MetadataKnowledgeQuery query = new MetadataKnowledgeQuery();
+    query.add(MetadataKnowledgeQueryType.TITLE, "Language Databases");
+    query.add(MetadataKnowledgeQueryType.AUTHORS, "Kent Fishman");
+    query.create();
+    List<HasMetadata> records = mk.query(query, 0);
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("books/acm/kim95/AnnevelinkACFHK95",
+        records.get(0).getKey());
+    Assert.assertEquals(4.0, records.get(0).getScore());
+
+    // The lists of the parameters are intersected.
+    query = new MetadataKnowledgeQuery();
+    query.add(MetadataKnowledgeQueryType.TITLE, "Transaction Management");
+    query.add(MetadataKnowledgeQueryType.AUTHORS, "Kent");
+    query.create();
+    Assert.assertTrue(mk.query(query, 0).isEmpty());
+  }
+
+  /**
+   * Test the method query() with a limit and the query type KEY.
+   * 
+   * @throws IOException
+   *           if querying fails.
+   */
+  @Test
+  public void testQueryWithLimit() throws IOException {
+    MetadataKnowledgeQuery query = new MetadataKnowledgeQuery();
+    query.add(MetadataKnowledgeQueryType.YEAR, "1995");
+    query.create();
+    query.setLimit(2);
+    List<HasMetadata> records = mk.query(query, 0);
+    Assert.assertEquals(2, records.size());
+    Assert.assertEquals("books/acm/kim95/AnnevelinkACFHK95",
+        records.get(0).getKey());
+
+    records = mk.query(MetadataKnowledgeQueryType.KEY,
+        "books/acm/kim95/Blakeley95", 0);
+    Assert.assertEquals(1, records.size());
+    Assert.assertEquals("Modern Database Systems",
+        records.get(0).getJournal());
+    Assert.assertTrue(mk.query(MetadataKnowledgeQueryType.KEY, "unknown", 0)
+        .isEmpty());
+  }
+
+  /**
+   * Test the method getNumOfHits().
+   * 
+   * @throws IOException
+   *           if querying fails.
+   */
+  @Test
+  public void testGetNumOfHits() throws IOException {
+    Assert.assertEquals(1, mk.getNumOfHits(
+        MetadataKnowledgeQueryType.NUMOFHITS_AUTHORS, "José", 0));
+    Assert.assertEquals(0, mk.getNumOfHits(
+        MetadataKnowledgeQueryType.NUMOFHITS_TITLE, "Jose", 0));
+    Assert.assertEquals(1, mk.getNumOfHits(
+        MetadataKnowledgeQueryType.NUMOFHITS_TITLE, "Systems", 0));
+
+    Map<String, NumOfHits> hits =
+        mk.getNumOfHits(Arrays.asList("Kent", "Systems", "Proceedings"), 0);
+    Assert.assertEquals(3, hits.size());
+    Assert.assertEquals(1, hits.get("Kent").numOfAuthorHits);
+    Assert.assertEquals(0, hits.get("Kent").numOfTitleHits);
+    Assert.assertEquals(1, hits.get("Systems").numOfTitleHits);
+    Assert.assertEquals(0, hits.get("Proceedings").numOfTitleHits);
+  }
+}
@@ -0,0 +1,62 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.metadataknowledge.LocalIndexMetadataKnowledge;
+
+/**
+ * Tests for the methods in DblpImporter.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class DblpImporterTest {
+  /** The path to the test corpus. */
+  protected static final String DBLP_TEST_XML =
+      "/de/freiburg/iif/extraction/metadataknowledge/index/dblp.test.xml";
+
+  /**
+   * Test the method importXml() with several workers and tiny segments, such
+   * that the segments have to be merged.
+   * 
+   * @throws IOException
+   *           if importing fails.
+   */
+  @Test
+  public void testImportXml() throws IOException {
+    InMemoryIndex expected = LocalIndexMetadataKnowledge.buildIndex(
+        getClass().getResourceAsStream(DBLP_TEST_XML));
+    File file = File.createTempFile("index", ".bin");
+    file.deleteOnExit();
+    DblpImporter importer = new DblpImporter(2, 1, 10, null);
+    Assert.assertEquals(3, importer.importXml(
+        getClass().getResourceAsStream(DBLP_TEST_XML), file));
+    Assert.assertTrue(importer.segments.size() > 1);
+
+    MappedIndex index = new MappedIndex(file);
+    try {
+      Assert.assertEquals(expected.getNumOfRecords(), index.getNumOfRecords());
+      Assert.assertEquals(expected.getNumOfTerms(), index.getNumOfTerms());
+      for (String term : expected.getTerms()) {
+        Assert.assertTrue(term, Arrays.equals(expected.getPostings(term),
+            index.getPostings(term)));
+      }
+      for (int i = 0; i < expected.getNumOfRecords(); i++) {
+        Assert.assertEquals(expected.getRecord(i).key, index.getRecord(i).key);
+      }
+      Assert.assertEquals(3, index.getPostings("year:1995").length);
+    } finally {
+      index.close();
+    }
+    // The segments are deleted.
+    for (File segment : importer.segments) {
+      Assert.assertFalse(segment.exists());
+    }
+  }
+}
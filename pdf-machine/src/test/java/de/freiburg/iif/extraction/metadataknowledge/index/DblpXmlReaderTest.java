@@ -0,0 +1,75 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for the methods in DblpXmlReader.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class DblpXmlReaderTest {
+  /**
+   * Test the method next() with the character entities of the dblp.dtd.
+   *
+   * @throws IOException
+   *           if reading fails.
+   */
+  @Test
+  public void testNext() throws IOException {
+    DblpXmlReader reader = new DblpXmlReader(getClass().getResourceAsStream(
+        DblpImporterTest.DBLP_TEST_XML));
+    try {
+      boolean isEntityResolved = false;
+      IndexRecord record;
+      while ((record = reader.next()) != null) {
+        isEntityResolved |= record.authors.contains("Jos\u00e9 A. Blakeley");
+      }
+      Assert.assertTrue(isEntityResolved);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Test the method next() with an external entity, that must not be
+   * fetched.
+   *
+   * @throws IOException
+   *           if reading fails.
+   */
+  @Test
+  public void testNextWithExternalEntity() throws IOException {
+    File file = File.createTempFile("DblpXmlReaderTest", ".txt");
+    file.deleteOnExit();
+    OutputStream os = new FileOutputStream(file);
+    try {
+      os.write("secret".getBytes("UTF-8"));
+    } finally {
+      os.close();
+    }
+
+    String xml = "<?xml version=\"1.0\"?>\n"
+        + "<!DOCTYPE dblp [<!ENTITY ext SYSTEM \"" + file.toURI() + "\">]>\n"
+        + "<dblp><article key=\"a\"><title>Title &ext;</title></article>"
+        + "</dblp>";
+    DblpXmlReader reader =
+        new DblpXmlReader(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    try {
+      IndexRecord record = reader.next();
+      Assert.assertEquals("a", record.key);
+      Assert.assertEquals("Title ", record.title);
+      Assert.assertNull(reader.next());
+    } finally {
+      reader.close();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.metadataknowledge.LocalIndexMetadataKnowledge;
+
+/**
+ * Tests for the methods in MappedIndex.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class MappedIndexTest {
+  /** The path to the test corpus. */
+  protected static final String DBLP_TEST_XML =
+      "/de/freiburg/iif/extraction/metadataknowledge/index/dblp.test.xml";
+
+  /**
+   * Test the methods getPostings(), getNumOfPostings() and getRecord() on an
+   * index, written by MappedIndexWriter.
+   * 
+   * @throws IOException
+   *           if writing or reading the index fails.
+   */
+  @Test
+  public void testMappedIndex() throws IOException {
+    InMemoryIndex expected = LocalIndexMetadataKnowledge.buildIndex(
+        getClass().getResourceAsStream(DBLP_TEST_XML));
+    File file = File.createTempFile("index", ".bin");
+    file.deleteOnExit();
+    MappedIndexWriter.write(expected, file);
+
+    Assert.assertTrue(MappedIndex.isIndexFile(file));
+    MappedIndex index = new MappedIndex(file);
+    try {
+      Assert.assertEquals(expected.getNumOfRecords(), index.getNumOfRecords());
+      Assert.assertEquals(expected.getNumOfTerms(), index.getNumOfTerms());
+      for (String term : expected.getTerms()) {
+        Assert.assertTrue(term, Arrays.equals(expected.getPostings(term),
+            index.getPostings(term)));
+        Assert.assertEquals(expected.getNumOfPostings(term),
+            index.getNumOfPostings(term));
+        Assert.assertEquals(term, index.getTerm(index.getTermId(term)));
+      }
+      Assert.assertEquals(0, index.getPostings("nonexistent").length);
+      Assert.assertEquals(0, index.getNumOfPostings("nonexistent"));
+      Assert.assertEquals(-1, index.getTermId(""));
+
+      for (int i = 0; i < expected.getNumOfRecords(); i++) {
+        IndexRecord record = index.getRecord(i);
+        Assert.assertEquals(expected.getRecord(i).key, record.key);
+        Assert.assertEquals(expected.getRecord(i).authors, record.authors);
+        Assert.assertEquals(expected.getRecord(i).title, record.title);
+        Assert.assertEquals(expected.getRecord(i).pages, record.pages);
+        Assert.assertEquals(expected.getRecord(i).ee, record.ee);
+      }
+      Assert.assertEquals("José A. Blakeley", index.getRecord(1).authors);
+    } finally {
+      index.close();
+    }
+  }
+
+  /**
+   * Test the method addTerm() with terms in the wrong order.
+   * 
+   * @throws IOException
+   *           if writing the index fails.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddTermInWrongOrder() throws IOException {
+    File file = File.createTempFile("index", ".bin");
+    file.deleteOnExit();
+    try (MappedIndexWriter writer = new MappedIndexWriter(file)) {
+      writer.addTerm("b", new int[] { 0 });
+      writer.addTerm("a", new int[] { 0 });
+    }
+  }
+}
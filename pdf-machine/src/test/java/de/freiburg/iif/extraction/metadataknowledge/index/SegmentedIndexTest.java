@@ -0,0 +1,122 @@
+package de.freiburg.iif.extraction.metadataknowledge.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Tests for the methods in SegmentedIndex.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class SegmentedIndexTest {
+  /** The path to the test corpus. */
+  protected static final String DBLP_TEST_XML =
+      "/de/freiburg/iif/extraction/metadataknowledge/index/dblp.test.xml";
+  /** A delta, that changes a record of the test corpus and adds a record. */
+  protected static final String DELTA_XML = "<?xml version=\"1.0\"?>\n"
+      + "<dblp>\n"
+      + "<incollection key=\"books/acm/kim95/Blakeley95\">\n"
+      + "<author>Jose A. Blakeley</author>\n"
+      + "<title>Extending C++ with Queries.</title>\n"
+      + "<year>1996</year>\n"
+      + "</incollection>\n"
+      + "<article key=\"journals/x/Korzen13\">\n"
+      + "<author>Claudius Korzen</author>\n"
+      + "<title>Extracting Metadata.</title>\n"
+      + "<year>2013</year>\n"
+      + "</article>\n"
+      + "</dblp>\n";
+
+  /**
+   * Test the methods update(), delete() and compact().
+   * 
+   * @throws IOException
+   *           if updating the index fails.
+   */
+  @Test
+  public void testUpdate() throws IOException {
+    File dir = File.createTempFile("index", "");
+    dir.delete();
+    try {
+      SegmentedIndex index = new SegmentedIndex(dir);
+      Assert.assertEquals(0, index.getNumOfRecords());
+      index.update(getClass().getResourceAsStream(DBLP_TEST_XML), null);
+      Assert.assertEquals(3, index.getNumOfRecords());
+      Assert.assertEquals(3, index.getPostings("year:1995").length);
+      Index before = index.getSnapshot();
+
+      index.update(new ByteArrayInputStream(DELTA_XML.getBytes("UTF-8")),
+          null);
+      Assert.assertEquals(2, index.getNumOfSegments());
+      Assert.assertEquals(4, index.getNumOfRecords());
+      // The old version of the changed record is deleted.
+      Assert.assertEquals(2, index.getPostings("year:1995").length);
+      Assert.assertEquals(2, index.getNumOfPostings("year:1995"));
+      Assert.assertEquals(0, index.getPostings("oql").length);
+      int[] ids = index.getPostings("extending");
+      Assert.assertEquals(1, ids.length);
+      Assert.assertEquals("Extending C++ with Queries.",
+          index.getRecord(ids[0]).title);
+      // The old snapshot isn't affected.
+      Assert.assertEquals(3, before.getPostings("year:1995").length);
+
+      index.delete(Collections.singletonList(
+          "books/acm/kim95/AnnevelinkACFHK95"));
+      Assert.assertEquals(3, index.getNumOfRecords());
+      Assert.assertEquals(1, index.getPostings("year:1995").length);
+
+      Assert.assertTrue(index.compact());
+      Assert.assertEquals(1, index.getNumOfSegments());
+      Assert.assertEquals(3, index.getNumOfRecords());
+      Assert.assertEquals(1, index.getPostings("year:1995").length);
+      ids = index.getPostings("korzen");
+      Assert.assertEquals(1, ids.length);
+      Assert.assertEquals("journals/x/Korzen13", index.getRecord(ids[0]).key);
+      index.close();
+
+      // The updates are persisted.
+      index = new SegmentedIndex(dir);
+      Assert.assertEquals(3, index.getNumOfRecords());
+      Assert.assertTrue(Arrays.equals(ids, index.getPostings("korzen")));
+      Assert.assertEquals(2, dir.list().length);
+      index.close();
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
+  /**
+   * Test the method importIncoming().
+   * 
+   * @throws IOException
+   *           if updating the index fails.
+   */
+  @Test
+  public void testImportIncoming() throws IOException {
+    File dir = File.createTempFile("index", "");
+    dir.delete();
+    try {
+      SegmentedIndex index = new SegmentedIndex(dir);
+      File incoming = new File(dir, SegmentedIndex.INCOMING_DIR);
+      FileUtils.copyInputStreamToFile(getClass().getResourceAsStream(
+          DBLP_TEST_XML), new File(incoming, "1.xml"));
+      FileUtils.writeStringToFile(new File(incoming, "2.deleted"),
+          "books/acm/kim95/Blakeley95\n", "UTF-8");
+      Assert.assertEquals(2, index.importIncoming());
+      Assert.assertEquals(2, index.getNumOfRecords());
+      Assert.assertEquals(0, incoming.list().length);
+      index.close();
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+}
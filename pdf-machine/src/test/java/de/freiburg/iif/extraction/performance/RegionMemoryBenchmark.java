@@ -0,0 +1,133 @@
+package de.freiburg.iif.extraction.performance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.exceptions.COSVisitorException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import de.freiburg.iif.extraction.stripper.PdfBoxStripper;
+import de.freiburg.iif.model.Region;
+
+/**
+ * Main class to measure the memory, that is retained by the extracted lines
+ * of a document (the regions including their texts and geometries). A
+ * document with the given number of pages is generated, its lines are
+ * extracted several times and the growth of the used heap is divided by the
+ * number of the extracted lines.
+ *
+ * @author Claudius Korzen
+ */
+public class RegionMemoryBenchmark {
+  /** The default number of pages of the generated document. */
+  protected static final int DEFAULT_NUM_OF_PAGES = 50;
+  /** The number of lines per page of the generated document. */
+  protected static final int NUM_OF_LINES_PER_PAGE = 40;
+  /** The number of extractions, whose lines are retained at once. */
+  protected static final int NUM_OF_EXTRACTIONS = 5;
+
+  /**
+   * The main method.
+   *
+   * @param args
+   *          the arguments (optional: the number of pages of the document).
+   * @throws Exception
+   *           if generating or extracting the document fails.
+   */
+  public static void main(String[] args) throws Exception {
+    int numOfPages =
+        args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_OF_PAGES;
+    File file = File.createTempFile("RegionMemoryBenchmark", ".pdf");
+    file.deleteOnExit();
+    createDocument(file, numOfPages);
+
+    PdfBoxStripper stripper = new PdfBoxStripper();
+    // Warm up, such that the classes and fonts are loaded.
+    stripper.extractLines(file, 1, Integer.MAX_VALUE, true);
+
+    List<List<Region>> extractions = new ArrayList<List<Region>>();
+    long usedBefore = getUsedMemory();
+    int numOfLines = 0;
+    for (int i = 0; i < NUM_OF_EXTRACTIONS; i++) {
+      List<Region> lines =
+          stripper.extractLines(file, 1, Integer.MAX_VALUE, true);
+      numOfLines += lines.size();
+      extractions.add(lines);
+    }
+    long usedAfter = getUsedMemory();
+
+    System.out.println("Pages:           " + numOfPages);
+    System.out.println("Extracted lines: " + numOfLines);
+    System.out.println("Retained bytes:  " + (usedAfter - usedBefore));
+    System.out.println("Bytes per line:  " + (usedAfter - usedBefore)
+        / Math.max(1, numOfLines));
+    // Keep the lines reachable until the memory was measured.
+    System.out.println("(" + extractions.size() + " extractions)");
+  }
+
+  /**
+   * Returns the used heap memory, after the garbage collector was run.
+   *
+   * @return the used heap memory in bytes.
+   * @throws InterruptedException
+   *           if the thread is interrupted while waiting for the collector.
+   */
+  protected static long getUsedMemory() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    // Run the collector until the used memory doesn't shrink anymore.
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      Thread.sleep(50);
+      long currentlyUsed = runtime.totalMemory() - runtime.freeMemory();
+      if (currentlyUsed >= used) {
+        break;
+      }
+      used = currentlyUsed;
+    }
+    return used;
+  }
+
+  /**
+   * Creates a document with the given number of pages of text and saves it
+   * to the given file.
+   *
+   * @param file
+   *          the file to save the document to.
+   * @param numOfPages
+   *          the number of pages.
+   * @throws IOException
+   *           if creating the document fails.
+   * @throws COSVisitorException
+   *           if saving the document fails.
+   */
+  protected static void createDocument(File file, int numOfPages)
+    throws IOException, COSVisitorException {
+    PDDocument doc = new PDDocument();
+    try {
+      for (int page = 1; page <= numOfPages; page++) {
+        PDPage pdPage = new PDPage();
+        doc.addPage(pdPage);
+        PDPageContentStream stream = new PDPageContentStream(doc, pdPage);
+        stream.beginText();
+        stream.setFont(PDType1Font.HELVETICA, 10);
+        stream.moveTextPositionByAmount(72, 720);
+        for (int line = 1; line <= NUM_OF_LINES_PER_PAGE; line++) {
+          stream.drawString("[" + line + "] A. Author, B. Author. A title of "
+              + "the reference on page " + page + ". In: Proceedings, 2012.");
+          stream.moveTextPositionByAmount(0, -16);
+        }
+        stream.endText();
+        stream.close();
+      }
+      doc.save(file.getAbsolutePath());
+    } finally {
+      doc.close();
+    }
+  }
+}
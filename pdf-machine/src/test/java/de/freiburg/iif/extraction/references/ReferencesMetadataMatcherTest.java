@@ -2,17 +2,31 @@ package de.freiburg.iif.extraction.references;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.apache.pdfbox.exceptions.COSVisitorException;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.util.PDFTextStripper;
 import org.junit.Test;
 
+import de.freiburg.iif.extraction.metadataknowledge.LocalIndexMetadataKnowledge;
+import de.freiburg.iif.extraction.metadataknowledge.MetadataKnowledge.NumOfHits;
 import de.freiburg.iif.extraction.stripper.PdfBoxTextLineStripper;
+import de.freiburg.iif.extraction.stripper.PdfStripper;
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
+import de.freiburg.iif.model.DblpRecord;
 import de.freiburg.iif.model.HasMetadata;
 import de.freiburg.iif.model.Region;
+import de.freiburg.iif.model.Score;
+import de.freiburg.iif.utils.ReferenceScorer;
 
 /**
  * Tests for the methods in ReferencesMetadataMatcher
@@ -224,4 +238,544 @@ public class ReferencesMetadataMatcherTest {
       }
     }
   }
+
+  /**
+   * Test the method selectLeadingRecord(): the result must equal the first
+   * record with the highest total score among all leading records.
+   */
+  @Test
+  public void testSelectLeadingRecord() {
+    ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher();
+    String reference = "[3] H. Bast, C. Korzen. Semantic Search on Text and "
+        + "Knowledge Bases. In: Foundations and Trends in Information "
+        + "Retrieval, 2014, pp. 119-271.";
+
+    List<HasMetadata> records = new ArrayList<HasMetadata>();
+    records.add(createRecord("A1", "Query Processing on Large Graphs",
+        "Sigmod", 2014, "Hannah Bast"));
+    records.add(createRecord("A2", "Semantic Search on Texts", "Foundations",
+        2014, "Hannah Bast", "Claudius Korzen"));
+    records.add(createRecord("A3", "Semantic Search on Text and Knowledge "
+        + "Bases", "Foundations and Trends in Information Retrieval", 2014,
+        "Hannah Bast", "Claudius Korzen"));
+    records.add(createRecord("A4", "Semantic Search on Text and Knowledge "
+        + "Bases", "Foundations and Trends in Information Retrieval", 2014,
+        "Hannah Bast", "Claudius Korzen"));
+    records.add(createRecord("A5", "Efficient Text Indexing", "VLDB", 2009,
+        "Elmar Haussmann"));
+
+    HasMetadata match = matcher.selectLeadingRecord(records, reference);
+    Assert.assertEquals("A3", match.getKey());
+    Assert.assertEquals(getBestRecord(matcher, records, reference), match);
+    Assert.assertTrue(matcher.getNumOfPrunedRecords() > 0);
+
+    records.remove(2);
+    records.remove(2);
+    match = matcher.selectLeadingRecord(records, reference);
+    Assert.assertEquals(getBestRecord(matcher, records, reference), match);
+  }
+
+  /**
+   * Test the method matchReferences(): the references must be matched in
+   * parallel with the same results (in the same order) as sequentially.
+   * 
+   * @throws IOException
+   *           if matching the references fails.
+   */
+  @Test
+  public void testMatchReferences() throws IOException {
+    LocalIndexMetadataKnowledge mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml")));
+    List<String> references = new ArrayList<String>();
+    references.add("[1] Y. Breitbart, H. Garcia-Molina, A. Silberschatz. "
+        + "Transaction Management in Multidatabase Systems. In: Modern "
+        + "Database Systems, 1995, pp. 573-591.");
+    references.add("");
+    references.add("[2] J. A. Blakeley. OQL[C++]: Extending C++ with an "
+        + "Object Query Capability. In: Modern Database Systems, 1995, "
+        + "pp. 69-88.");
+    references.add("[3] H. Bast. Efficient Query Processing, 2010.");
+    references.add("[4] J. Annevelink, R. Ahad, A. Carlson, D. H. Fishman, "
+        + "M. L. Heytens, W. Kent. Object SQL - A Language for the Design "
+        + "and Implementation of Object Databases. 1995, pp. 42-68.");
+
+    ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher(mk);
+    matcher.setParallelism(1);
+    List<HasMetadata> expected = matcher.matchReferences(references);
+    matcher.setParallelism(4);
+    List<HasMetadata> matches = matcher.matchReferences(references);
+
+    Assert.assertEquals(references.size(), matches.size());
+    for (int i = 0; i < matches.size(); i++) {
+      Assert.assertEquals(getKey(expected.get(i)), getKey(matches.get(i)));
+    }
+    Assert.assertEquals("books/acm/kim95/BreitbartGS95",
+        getKey(matches.get(0)));
+    Assert.assertNull(matches.get(1));
+    Assert.assertEquals("books/acm/kim95/Blakeley95", getKey(matches.get(2)));
+    Assert.assertNull(getKey(matches.get(3)));
+    Assert.assertEquals("books/acm/kim95/AnnevelinkACFHK95",
+        getKey(matches.get(4)));
+  }
+
+  /**
+   * Test the method getNumOfHits(Collection), that looks up the words only
+   * once per document.
+   * 
+   * @throws IOException
+   *           if querying the metadata knowledge fails.
+   */
+  @Test
+  public void testGetNumOfHits() throws IOException {
+    final List<String> requestedWords = new ArrayList<String>();
+    LocalIndexMetadataKnowledge mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml"))) {
+      @Override
+      public Map<String, NumOfHits> getNumOfHits(Collection<String> words,
+        int minWaitInterval) throws IOException {
+        requestedWords.addAll(words);
+        return super.getNumOfHits(words, minWaitInterval);
+      }
+    };
+    ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher(mk);
+
+    Map<String, NumOfHits> hits =
+        matcher.getNumOfHits(Arrays.asList("Breitbart", "Systems"));
+    Assert.assertEquals(Arrays.asList("Breitbart", "Systems"), requestedWords);
+    Assert.assertTrue(hits.get("Breitbart").numOfAuthorHits > 0);
+    Assert.assertTrue(hits.get("Systems").numOfTitleHits > 0);
+
+    // Only the new word is looked up.
+    requestedWords.clear();
+    Map<String, NumOfHits> hits2 =
+        matcher.getNumOfHits(Arrays.asList("Systems", "Breitbart", "Blakeley"));
+    Assert.assertEquals(Arrays.asList("Blakeley"), requestedWords);
+    Assert.assertSame(hits.get("Systems"), hits2.get("Systems"));
+
+    // A new document looks up the words again.
+    requestedWords.clear();
+    matcher.match(createLines("References"), false, false, 0);
+    matcher.getNumOfHits(Arrays.asList("Systems"));
+    Assert.assertEquals(Arrays.asList("Systems"), requestedWords);
+  }
+
+  /**
+   * Test the method match(List<Region>, ...) with a single matcher, that is
+   * shared by several threads.
+   * 
+   * @throws Exception
+   *           if matching the documents fails.
+   */
+  @Test
+  public void testMatchConcurrently() throws Exception {
+    LocalIndexMetadataKnowledge mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml")));
+    final ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher(mk);
+    matcher.setParallelism(2);
+
+    final List<List<Region>> documents = new ArrayList<List<Region>>();
+    documents.add(createLines("References", "[1] Y. Breitbart, H. "
+        + "Garcia-Molina, A. Silberschatz. Transaction Management in "
+        + "Multidatabase Systems. In: Modern Database Systems, 1995."));
+    documents.add(createLines("Introduction", "References", "[1] J. A. "
+        + "Blakeley. OQL[C++]: Extending C++ with an Object Query "
+        + "Capability. In: Modern Database Systems, 1995, pp. 69-88."));
+    documents.add(createLines("Abstract", "No references."));
+
+    // Match the documents one after another.
+    final List<List<String>> expectedKeys = new ArrayList<List<String>>();
+    final List<String> expectedFulltexts = new ArrayList<String>();
+    for (List<Region> document : documents) {
+      expectedKeys.add(getKeys(matcher.match(document, false, false, 0)));
+      expectedFulltexts.add(matcher.getFulltext());
+      Assert.assertSame(document, matcher.getLines());
+    }
+
+    // Match the documents concurrently with the same matcher.
+    final List<Throwable> errors =
+        Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 6; t++) {
+      final int i = t % documents.size();
+      Thread thread = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int k = 0; k < 10; k++) {
+              List<String> keys =
+                  getKeys(matcher.match(documents.get(i), false, false, 0));
+              Assert.assertEquals(expectedKeys.get(i), keys);
+              Assert.assertEquals(expectedFulltexts.get(i),
+                  matcher.getFulltext());
+              Assert.assertSame(documents.get(i), matcher.getLines());
+            }
+          } catch (Throwable e) {
+            errors.add(e);
+          }
+        }
+      };
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertTrue(errors.toString(), errors.isEmpty());
+  }
+
+  /**
+   * Test the method match(PDDocument, ...) in the reverse scan mode.
+   * 
+   * @throws IOException
+   *           if matching the document fails.
+   */
+  @Test
+  public void testMatchFromEnd() throws IOException {
+    LocalIndexMetadataKnowledge mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml")));
+    ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher(mk);
+    matcher.setParallelism(1);
+    List<List<Region>> pages = new ArrayList<List<Region>>();
+    pages.add(createLines("Introduction", "Some text."));
+    pages.add(createLines("More text."));
+    pages.add(createLines("References", "[1] Y. Breitbart, H. "
+        + "Garcia-Molina, A. Silberschatz. Transaction Management in "
+        + "Multidatabase Systems. In: Modern Database Systems, 1995."));
+    pages.add(createLines("[2] J. A. Blakeley. OQL[C++]: Extending C++ with "
+        + "an Object Query Capability. In: Modern Database Systems, 1995."));
+    PagesStripper stripper = new PagesStripper(pages);
+    matcher.ex = stripper;
+
+    List<String> expectedKeys = getKeys(matcher.match(
+        stripper.extractLines((PDDocument) null, 1, 4, true), false, false,
+        0));
+    String expectedFulltext = matcher.getFulltext();
+
+    matcher.setReverseScan(true);
+    stripper.extractedPages.clear();
+    File file = File.createTempFile("ReferencesMetadataMatcherTest", ".pdf");
+    file.deleteOnExit();
+    try {
+      createDocument(pages.size()).save(file.getAbsolutePath());
+    } catch (COSVisitorException e) {
+      throw new IOException(e);
+    }
+    List<HasMetadata> records = matcher.match(file, false, false, 0);
+    Assert.assertEquals(expectedKeys, getKeys(records));
+    // Only the pages of the bibliography were extracted.
+    Assert.assertEquals(Arrays.asList(4, 3), stripper.extractedPages);
+    Assert.assertEquals(3, matcher.getLines().size());
+    // The other pages are extracted from the file for the fulltext.
+    Assert.assertEquals(expectedFulltext, matcher.getFulltext());
+    Assert.assertEquals(Arrays.asList(4, 3, 1, 2), stripper.extractedPages);
+
+    // A document, that can't be reloaded, is closed after the text of the
+    // other pages was extracted.
+    stripper.extractedPages.clear();
+    ClosableDocument doc = createDocument(pages.size());
+    records = matcher.match(doc, false, false, 0);
+    Assert.assertEquals(expectedKeys, getKeys(records));
+    Assert.assertEquals(Arrays.asList(4, 3, 1, 2), stripper.extractedPages);
+    Assert.assertTrue(doc.isClosed);
+    Assert.assertEquals(expectedFulltext, matcher.getFulltext());
+
+    // A document without a bibliography header is extracted completely.
+    stripper.extractedPages.clear();
+    pages.remove(2);
+    matcher.match(createDocument(pages.size()), false, false, 0);
+    Assert.assertEquals(Arrays.asList(3, 2, 1), stripper.extractedPages);
+
+    // The document is closed, if the extraction fails.
+    matcher.ex = new PagesStripper(null);
+    doc = createDocument(pages.size());
+    try {
+      matcher.match(doc, false, false, 0);
+      Assert.fail();
+    } catch (NullPointerException e) {
+      Assert.assertTrue(doc.isClosed);
+    }
+  }
+
+  /**
+   * Test the method match(PDDocument, ...), that streams the pages of the
+   * document.
+   * 
+   * @throws IOException
+   *           if matching the document fails.
+   */
+  @Test
+  public void testMatchStreamed() throws IOException {
+    LocalIndexMetadataKnowledge mk = new LocalIndexMetadataKnowledge(
+        LocalIndexMetadataKnowledge.buildIndex(getClass().getResourceAsStream(
+            "/de/freiburg/iif/extraction/metadataknowledge/index/"
+                + "dblp.test.xml")));
+    ReferencesMetadataMatcher matcher = new ReferencesMetadataMatcher(mk);
+    matcher.setParallelism(1);
+    List<List<Region>> pages = new ArrayList<List<Region>>();
+    pages.add(createLines("Introduction", "Some text."));
+    pages.add(createLines("More text."));
+    pages.add(createLines("References", "[1] Y. Breitbart, H. "
+        + "Garcia-Molina, A. Silberschatz. Transaction Management in "
+        + "Multidatabase Systems. In: Modern Database Systems, 1995."));
+    pages.add(createLines("[2] J. A. Blakeley. OQL[C++]: Extending C++ with "
+        + "an Object Query Capability. In: Modern Database Systems, 1995."));
+    PagesStripper stripper = new PagesStripper(pages);
+    matcher.ex = stripper;
+
+    List<String> expectedKeys = getKeys(matcher.match(
+        stripper.extractLines((PDDocument) null, 1, 4, true), false, false,
+        0));
+    String expectedFulltext = matcher.getFulltext();
+
+    List<HasMetadata> records =
+        matcher.match(createDocument(pages.size()), false, false, 0);
+    Assert.assertEquals(expectedKeys, getKeys(records));
+    // Only the lines from the page of the bibliography header are kept.
+    Assert.assertEquals(3, matcher.getLines().size());
+    Assert.assertEquals("References", matcher.getLines().get(0).getText());
+    Assert.assertEquals(expectedFulltext, matcher.getFulltext());
+
+    // With several bibliography headers, the lines from the first page with a
+    // header are kept, like on matching the lines.
+    pages.get(0).add(1, createLines("References").get(0));
+    List<String> keysOfLastBibliography = expectedKeys;
+    expectedKeys = getKeys(matcher.match(
+        stripper.extractLines((PDDocument) null, 1, 4, true), false, false,
+        0));
+    expectedFulltext = matcher.getFulltext();
+    records = matcher.match(createDocument(pages.size()), false, false, 0);
+    Assert.assertEquals(expectedKeys, getKeys(records));
+    Assert.assertEquals(7, matcher.getLines().size());
+    Assert.assertEquals(1, matcher.getLines().get(0).getPageNumber());
+    Assert.assertEquals(expectedFulltext, matcher.getFulltext());
+
+    // On matching from the end, the lines from the last page with a header
+    // are kept.
+    matcher.setReverseScan(true);
+    records = matcher.match(createDocument(pages.size()), false, false, 0);
+    Assert.assertEquals(keysOfLastBibliography, getKeys(records));
+    Assert.assertEquals(3, matcher.getLines().size());
+    Assert.assertEquals(3, matcher.getLines().get(0).getPageNumber());
+    Assert.assertEquals(expectedFulltext, matcher.getFulltext());
+  }
+
+  /**
+   * Creates an empty document with the given number of pages.
+   * 
+   * @param numOfPages
+   *          the number of pages.
+   * @return the document.
+   * @throws IOException
+   *           if creating the document fails.
+   */
+  protected ClosableDocument createDocument(int numOfPages)
+    throws IOException {
+    ClosableDocument doc = new ClosableDocument();
+    for (int i = 0; i < numOfPages; i++) {
+      doc.addPage(new PDPage());
+    }
+    return doc;
+  }
+
+  /**
+   * Creates the lines of a document with the given texts.
+   * 
+   * @param texts
+   *          the texts of the lines.
+   * @return the lines.
+   */
+  protected List<Region> createLines(String... texts) {
+    List<Region> lines = new ArrayList<Region>();
+    for (int i = 0; i < texts.length; i++) {
+      Region line = new Region(50, 100 + 12 * i, 400, 10);
+      line.setXOfLineEnd(450);
+      line.setPageNumber(1);
+      line.setText(texts[i]);
+      lines.add(line);
+    }
+    return lines;
+  }
+
+  /**
+   * Returns the keys of the given records.
+   * 
+   * @param records
+   *          the records.
+   * @return the keys of the records.
+   */
+  protected List<String> getKeys(List<HasMetadata> records) {
+    List<String> keys = new ArrayList<String>();
+    for (HasMetadata record : records) {
+      keys.add(getKey(record));
+    }
+    return keys;
+  }
+
+  /**
+   * Returns the key of the given record.
+   * 
+   * @param record
+   *          the record.
+   * @return the key of the record (or null, if the record is null).
+   */
+  protected String getKey(HasMetadata record) {
+    return record != null ? record.getKey() : null;
+  }
+
+  /**
+   * Returns the first record with the highest total score among all leading
+   * records, by scoring all records.
+   *
+   * @param matcher
+   *          the matcher.
+   * @param records
+   *          the records.
+   * @param reference
+   *          the reference.
+   * @return the best record or null, if there is no leading record.
+   */
+  protected HasMetadata getBestRecord(ReferencesMetadataMatcher matcher,
+    List<HasMetadata> records, String reference) {
+    ReferenceScorer scorer = new ReferenceScorer(reference);
+    HasMetadata best = null;
+    float bestScore = 0;
+    for (HasMetadata record : records) {
+      Score score = scorer.score(record);
+      float totalScore = matcher.getTotalScore(score);
+      if (matcher.isLeading(score) && totalScore > bestScore) {
+        best = record;
+        bestScore = totalScore;
+      }
+    }
+    return best != null ? best : matcher.selectLeadingRecord(null, reference);
+  }
+
+  /**
+   * Creates a record with the given metadata.
+   *
+   * @param key
+   *          the key.
+   * @param title
+   *          the title.
+   * @param journal
+   *          the journal.
+   * @param year
+   *          the year.
+   * @param authors
+   *          the authors.
+   * @return the record.
+   */
+  protected DblpRecord createRecord(String key, String title, String journal,
+    int year, String... authors) {
+    DblpRecord record = new DblpRecord();
+    record.setKey(key);
+    record.setTitle(title);
+    record.setJournal(journal);
+    record.setYear(year);
+    record.setAuthors(Arrays.asList(authors));
+    return record;
+  }
+
+  /**
+   * A PDDocument, that records, whether it was closed.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class ClosableDocument extends PDDocument {
+    /** The flag to indicate, whether the document was closed. */
+    protected boolean isClosed;
+
+    /**
+     * The constructor.
+     * 
+     * @throws IOException
+     *           if creating the document fails.
+     */
+    protected ClosableDocument() throws IOException {
+      super();
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      isClosed = true;
+    }
+  }
+
+  /**
+   * A PdfStripper, that returns the given lines for each page and records the
+   * extracted pages.
+   * 
+   * @author Claudius Korzen
+   * 
+   */
+  protected static class PagesStripper implements PdfStripper {
+    /** The lines of the pages. */
+    protected List<List<Region>> pages;
+    /** The numbers of the extracted pages. */
+    protected List<Integer> extractedPages;
+
+    /**
+     * The constructor.
+     * 
+     * @param pages
+     *          the lines of the pages.
+     */
+    protected PagesStripper(List<List<Region>> pages) {
+      this.pages = pages;
+      this.extractedPages = new ArrayList<Integer>();
+    }
+
+    @Override
+    public List<Region> extractLines(File file, int startPage, int endPage,
+      boolean splitLines) {
+      return extractPageLines(null, startPage, endPage, splitLines);
+    }
+
+    @Override
+    public List<Region> extractLines(PDDocument doc, int startPage,
+      int endPage, boolean splitLines) {
+      return extractPageLines(doc, startPage, endPage, splitLines);
+    }
+
+    @Override
+    public List<Region> extractPageLines(PDDocument doc, int startPage,
+      int endPage, boolean splitLines) {
+      List<Region> lines = new ArrayList<Region>();
+      for (int page = startPage; page <= Math.min(endPage, pages.size());
+          page++) {
+        extractedPages.add(page);
+        for (Region line : pages.get(page - 1)) {
+          line.setPageNumber(page);
+          lines.add(line);
+        }
+      }
+      return lines;
+    }
+
+    @Override
+    public void extractPageLines(PDDocument doc, int startPage, int endPage,
+      boolean splitLines, PageListener listener) throws IOException {
+      for (int page = startPage; page <= Math.min(endPage, pages.size());
+          page++) {
+        listener.pageExtracted(page,
+            extractPageLines(doc, page, page, splitLines));
+      }
+    }
+
+    @Override
+    public void importMetadata(File file, HasMetadata record,
+      String outputDir) {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
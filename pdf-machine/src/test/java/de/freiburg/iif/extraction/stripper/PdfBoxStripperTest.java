@@ -0,0 +1,145 @@
+package de.freiburg.iif.extraction.stripper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.edit.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.stripper.PdfStripper.PageListener;
+import de.freiburg.iif.model.Region;
+
+/**
+ * Tests for the methods in PdfBoxStripper.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class PdfBoxStripperTest {
+  /** The number of pages of the test document. */
+  protected static final int NUM_OF_PAGES = 7;
+
+  /**
+   * Test the method extractLines() with several threads against the
+   * sequential extraction.
+   *
+   * @throws Exception
+   *           if creating or extracting the document fails.
+   */
+  @Test
+  public void testExtractLinesInParallel() throws Exception {
+    File file = File.createTempFile("PdfBoxStripperTest", ".pdf");
+    file.deleteOnExit();
+    PDDocument doc = createDocument();
+    doc.save(file.getAbsolutePath());
+    doc.close();
+
+    PdfBoxStripper stripper = new PdfBoxStripper();
+    List<Region> expected =
+        stripper.extractLines(file, 1, Integer.MAX_VALUE, true);
+    Assert.assertFalse(expected.isEmpty());
+    Assert.assertEquals(1, expected.get(0).getPageNumber());
+    Assert.assertEquals(NUM_OF_PAGES,
+        expected.get(expected.size() - 1).getPageNumber());
+
+    for (int parallelism = 2; parallelism <= NUM_OF_PAGES + 1; parallelism++) {
+      stripper.setParallelism(parallelism);
+      assertEquals(expected,
+          stripper.extractLines(file, 1, Integer.MAX_VALUE, true));
+      assertEquals(expected, stripper.extractLines(PDDocument.load(file), 1,
+          Integer.MAX_VALUE, true));
+    }
+
+    // Extract a subrange of the pages.
+    stripper.setParallelism(1);
+    List<Region> expectedRange = stripper.extractLines(file, 2, 5, true);
+    stripper.setParallelism(3);
+    assertEquals(expectedRange, stripper.extractLines(file, 2, 5, true));
+    Assert.assertEquals(2, expectedRange.get(0).getPageNumber());
+  }
+
+  /**
+   * Test the method extractPageLines(), that passes the lines page by page to
+   * a listener.
+   * 
+   * @throws Exception
+   *           if creating or extracting the document fails.
+   */
+  @Test
+  public void testExtractPageLinesStreamed() throws Exception {
+    PDDocument doc = createDocument();
+    try {
+      PdfBoxStripper stripper = new PdfBoxStripper();
+      List<Region> expected = stripper.extractPageLines(doc, 2, 6, true);
+
+      final List<Integer> pageNumbers = new ArrayList<Integer>();
+      final List<Region> lines = new ArrayList<Region>();
+      stripper.extractPageLines(doc, 2, 6, true, new PageListener() {
+        @Override
+        public void pageExtracted(int pageNumber, List<Region> linesOfPage) {
+          pageNumbers.add(pageNumber);
+          for (Region line : linesOfPage) {
+            Assert.assertEquals(pageNumber, line.getPageNumber());
+          }
+          lines.addAll(linesOfPage);
+        }
+      });
+      Assert.assertEquals(Arrays.asList(2, 3, 4, 5, 6), pageNumbers);
+      assertEquals(expected, lines);
+    } finally {
+      doc.close();
+    }
+  }
+
+  /**
+   * Asserts, that the given lists of lines have the same texts and pages.
+   *
+   * @param expected
+   *          the expected lines.
+   * @param actual
+   *          the actual lines.
+   */
+  protected void assertEquals(List<Region> expected, List<Region> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getText(), actual.get(i).getText());
+      Assert.assertEquals(expected.get(i).getPageNumber(),
+          actual.get(i).getPageNumber());
+      Assert.assertEquals(expected.get(i).getY(), actual.get(i).getY());
+    }
+  }
+
+  /**
+   * Creates a document with some lines of text on each page.
+   *
+   * @return the document.
+   * @throws Exception
+   *           if creating the document fails.
+   */
+  protected PDDocument createDocument() throws Exception {
+    PDDocument doc = new PDDocument();
+    for (int page = 1; page <= NUM_OF_PAGES; page++) {
+      PDPage pdPage = new PDPage();
+      doc.addPage(pdPage);
+      PDPageContentStream stream = new PDPageContentStream(doc, pdPage);
+      stream.beginText();
+      stream.setFont(PDType1Font.HELVETICA, 10);
+      stream.moveTextPositionByAmount(72, 700);
+      for (int line = 1; line <= 20; line++) {
+        stream.drawString("This is the line " + line + " of the page " + page
+            + " of the document.");
+        stream.moveTextPositionByAmount(0, -14);
+      }
+      stream.endText();
+      stream.close();
+    }
+    return doc;
+  }
+}
@@ -0,0 +1,119 @@
+package de.freiburg.iif.extraction.stripper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.apache.pdfbox.util.TextPosition;
+import org.junit.Test;
+
+import de.freiburg.iif.extraction.stripper.PdfBoxTextStripper.CharacterGrid;
+
+/**
+ * Tests for the methods in PdfBoxTextStripper.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class PdfBoxTextStripperTest {
+  /**
+   * Test the method CharacterGrid.containsOverlapping() against a linear scan
+   * of all positions.
+   */
+  @Test
+  public void testContainsOverlapping() {
+    Random random = new Random(42);
+    CharacterGrid grid = new CharacterGrid();
+    List<TextPosition> positions = new ArrayList<TextPosition>();
+    for (int i = 0; i < 2000; i++) {
+      // Round the coordinates, such that there are many exact neighbours.
+      float x = Math.round(random.nextFloat() * 600 * 4) / 4f;
+      float y = Math.round(random.nextFloat() * 800 * 4) / 4f;
+      float tolerance = random.nextFloat() * 4;
+      if (i % 100 == 0) {
+        // A tolerance, that covers many cells.
+        tolerance = 300;
+      }
+      boolean expected = false;
+      for (TextPosition position : positions) {
+        expected |= within(position.getX(), x, tolerance)
+            && within(position.getY(), y, tolerance);
+      }
+      Assert.assertEquals(expected, grid.containsOverlapping(x, y, tolerance));
+
+      TextPosition position = new Position(x, y);
+      positions.add(position);
+      grid.add(position);
+    }
+
+    Assert.assertTrue(grid.containsOverlapping(positions.get(0).getX(),
+        positions.get(0).getY(), 0.1f));
+    Assert.assertFalse(grid.containsOverlapping(positions.get(0).getX(),
+        positions.get(0).getY(), 0));
+    Assert.assertFalse(grid.containsOverlapping(-100, -100, 1));
+
+    // Positions with infinite coordinates never overlap.
+    grid.add(new Position(Float.POSITIVE_INFINITY, 10));
+    Assert.assertFalse(grid.containsOverlapping(Float.POSITIVE_INFINITY, 10,
+        1));
+    Assert.assertFalse(grid.containsOverlapping(1e30f, 10, 1));
+  }
+
+  /**
+   * Returns true, if the given numbers are within the given variance.
+   *
+   * @param first
+   *          the first number.
+   * @param second
+   *          the second number.
+   * @param variance
+   *          the allowed variance.
+   * @return true, if the numbers are within the variance.
+   */
+  protected boolean within(float first, float second, float variance) {
+    return second < first + variance && second > first - variance;
+  }
+
+  /**
+   * A TextPosition with the given coordinates.
+   *
+   * @author Claudius Korzen
+   *
+   */
+  protected static class Position extends TextPosition {
+    /** The x-coordinate. */
+    protected float x;
+    /** The y-coordinate. */
+    protected float y;
+
+    /**
+     * The constructor.
+     *
+     * @param x
+     *          the x-coordinate.
+     * @param y
+     *          the y-coordinate.
+     */
+    protected Position(float x, float y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public float getX() {
+      return x;
+    }
+
+    @Override
+    public float getY() {
+      return y;
+    }
+
+    @Override
+    public String getCharacter() {
+      return "e";
+    }
+  }
+}
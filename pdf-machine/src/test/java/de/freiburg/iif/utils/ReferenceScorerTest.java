@@ -0,0 +1,185 @@
+package de.freiburg.iif.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import de.freiburg.iif.model.DblpRecord;
+import de.freiburg.iif.model.Score;
+import de.freiburg.iif.utils.ReferenceScorer.QueryProfile;
+
+/**
+ * Tests for the methods in ReferenceScorer.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class ReferenceScorerTest {
+  /** The reference to score the records against. */
+  protected static final String REFERENCE = "[12] H. Bast, C. Korzen. "
+      + "Semantic Search on Text and Knowledge Bases. In: Foundations and "
+      + "Trends in Information Retrieval, 2014, pp. 119-271.";
+
+  /**
+   * Test the method score().
+   */
+  @Test
+  public void testScore() {
+    ReferenceScorer scorer = new ReferenceScorer(REFERENCE);
+
+    DblpRecord record = new DblpRecord();
+    record.setTitle("Semantic Search on Text and Knowledge Bases");
+    record.setAuthors(Arrays.asList("Hannah Bast", "Claudius Korzen"));
+    record.setJournal("Foundations and Trends in Information Retrieval");
+    record.setYear(2014);
+    record.setStartPage(119);
+    record.setEndPage(271);
+
+    Score score = scorer.score(record);
+    Assert.assertEquals(1f, score.titleScore);
+    Assert.assertEquals(1f, score.authorScore);
+    Assert.assertEquals(1f, score.journalScore);
+    Assert.assertEquals(1f, score.yearScore);
+    Assert.assertEquals(1f, score.pageScore);
+
+    record = new DblpRecord();
+    record.setTitle("Sematic Serch on Txt");
+    record.setAuthors(Arrays.asList("Hannah Bast", "Elmar Haussmann"));
+    record.setJournal("SIGIR");
+    record.setYear(2010);
+    record.setStartPage(13);
+    record.setEndPage(17);
+
+    score = scorer.score(record);
+    Assert.assertEquals(scoreSmithWaterman(record.getTitle(), REFERENCE),
+        score.titleScore);
+    Assert.assertEquals((scoreSmithWaterman("Bast", firstHalf())
+        + scoreSmithWaterman("Haussmann", firstHalf())) / 2,
+        score.authorScore);
+    Assert.assertEquals(scoreSmithWaterman("SIGIR", REFERENCE),
+        score.journalScore);
+    Assert.assertEquals(0f, score.yearScore);
+    Assert.assertEquals(-1f, score.pageScore);
+
+    Assert.assertNull(scorer.score(null));
+  }
+
+  /**
+   * Test the method score() with an empty reference.
+   */
+  @Test
+  public void testScoreEmptyReference() {
+    DblpRecord record = new DblpRecord();
+    record.setTitle("Semantic Search");
+    Score score = new ReferenceScorer("").score(record);
+    Assert.assertEquals(0f, score.titleScore);
+    Assert.assertEquals(1f, score.yearScore);
+  }
+
+  /**
+   * Test the method getUpperBound().
+   */
+  @Test
+  public void testGetUpperBound() {
+    ReferenceScorer scorer = new ReferenceScorer(REFERENCE);
+    String[] words = REFERENCE.split(" ");
+    String[] otherWords = { "Query", "Processing", "Bast", "Sigir", "Texts",
+      "Korzan", "Information", "Semantics", "Databases", "2014" };
+
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      DblpRecord record = new DblpRecord();
+      record.setTitle(randomText(random, words, otherWords, 8));
+      record.setJournal(randomText(random, words, otherWords, 4));
+      record.setAuthors(Arrays.asList(randomText(random, words, otherWords, 2),
+          randomText(random, words, otherWords, 2)));
+      record.setYear(2013 + random.nextInt(3));
+
+      Score score = scorer.score(record);
+      Score upperBound = scorer.getUpperBound(record);
+      Assert.assertTrue(upperBound.titleScore >= score.titleScore);
+      Assert.assertTrue(upperBound.authorScore >= score.authorScore);
+      Assert.assertTrue(upperBound.journalScore >= score.journalScore);
+      Assert.assertEquals(score.yearScore, upperBound.yearScore);
+      Assert.assertEquals(score.pageScore, upperBound.pageScore);
+    }
+
+    // An unrelated title is rejected.
+    DblpRecord record = new DblpRecord();
+    record.setTitle("Efficient Query Processing for Large Graphs");
+    Assert.assertTrue(scorer.getUpperBound(record).titleScore <= 0.75f);
+  }
+
+  /**
+   * Test the method QueryProfile.align(): the rows of the scalar alignment are
+   * only created, if the scalar alignment is used.
+   */
+  @Test
+  public void testQueryProfileAlign() {
+    char[] reference = StringSimilarity.toLowerCaseChars(REFERENCE);
+    QueryProfile profile = new QueryProfile(reference);
+    Assert.assertNotNull(profile.striped);
+    Assert.assertNull(profile.asciiRows);
+
+    char[] text = StringSimilarity.toLowerCaseChars("Semantic Search on "
+        + "Texts and Knowledge Bases, Foundations and Trends, 2014");
+    int score = profile.align(text);
+    Assert.assertNull(profile.asciiRows);
+    Assert.assertEquals(score, profile.alignScalar(text));
+    Assert.assertNotNull(profile.asciiRows);
+    Assert.assertEquals(
+        StringSimilarity.smithWaterman(text, reference, null, null), score);
+  }
+
+  /**
+   * Returns a random text, made up of the given words.
+   *
+   * @param random
+   *          the random generator.
+   * @param words
+   *          the words of the reference.
+   * @param otherWords
+   *          some other words.
+   * @param numOfWords
+   *          the maximal number of words.
+   * @return the random text.
+   */
+  protected String randomText(Random random, String[] words,
+    String[] otherWords, int numOfWords) {
+    StringBuilder sb = new StringBuilder();
+    int n = 1 + random.nextInt(numOfWords);
+    for (int i = 0; i < n; i++) {
+      String[] source = random.nextBoolean() ? words : otherWords;
+      sb.append(source[random.nextInt(source.length)]);
+      sb.append(" ");
+    }
+    return sb.toString().trim();
+  }
+
+  /**
+   * Returns the first half of the reference.
+   *
+   * @return the first half of the reference.
+   */
+  protected String firstHalf() {
+    return REFERENCE.substring(0, REFERENCE.length() / 2);
+  }
+
+  /**
+   * Returns the normalized Smith Waterman score of the given strings, as
+   * computed by StringSimilarity.
+   *
+   * @param text
+   *          the text to score.
+   * @param reference
+   *          the reference.
+   * @return the normalized score.
+   */
+  protected float scoreSmithWaterman(String text, String reference) {
+    return StringSimilarity.smithWaterman(text, reference)[0]
+        / StringSimilarity.getMaxSmithWatermanScore(text);
+  }
+}
@@ -0,0 +1,73 @@
+package de.freiburg.iif.utils;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for the methods in SegmentedLruCache.
+ * 
+ * @author Claudius Korzen
+ * 
+ */
+public class SegmentedLruCacheTest {
+
+  /**
+   * Test the methods get() and put().
+   */
+  @Test
+  public void testGetAndPut() {
+    SegmentedLruCache<String, Integer> cache =
+        new SegmentedLruCache<String, Integer>(10, 1);
+    Assert.assertNull(cache.get("Proceedings"));
+    cache.put("Proceedings", 42);
+    Assert.assertEquals(Integer.valueOf(42), cache.get("Proceedings"));
+    cache.put("Proceedings", 43);
+    Assert.assertEquals(Integer.valueOf(43), cache.get("Proceedings"));
+    Assert.assertEquals(1, cache.size());
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(0, cache.getEvictionCount());
+  }
+
+  /**
+   * Test the eviction policy: entries, that were accessed several times,
+   * survive a scan of entries, that are accessed only once.
+   */
+  @Test
+  public void testEviction() {
+    SegmentedLruCache<String, Integer> cache =
+        new SegmentedLruCache<String, Integer>(10, 1);
+    cache.put("Proceedings", 1);
+    cache.put("Conference", 2);
+    cache.get("Proceedings");
+    cache.get("Conference");
+
+    for (int i = 0; i < 100; i++) {
+      cache.put("word" + i, i);
+    }
+
+    Assert.assertEquals(10, cache.size());
+    Assert.assertEquals(92, cache.getEvictionCount());
+    Assert.assertEquals(Integer.valueOf(1), cache.get("Proceedings"));
+    Assert.assertEquals(Integer.valueOf(2), cache.get("Conference"));
+    Assert.assertEquals(Integer.valueOf(99), cache.get("word99"));
+    Assert.assertNull(cache.get("word0"));
+  }
+
+  /**
+   * Test the cache with several segments.
+   */
+  @Test
+  public void testSegments() {
+    SegmentedLruCache<Integer, Integer> cache =
+        new SegmentedLruCache<Integer, Integer>(100, 4);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+    }
+    Assert.assertEquals(100, cache.size());
+    Assert.assertEquals(900, cache.getEvictionCount());
+    cache.clear();
+    Assert.assertEquals(0, cache.size());
+  }
+}
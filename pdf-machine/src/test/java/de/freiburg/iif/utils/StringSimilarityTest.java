@@ -0,0 +1,205 @@
+package de.freiburg.iif.utils;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for the methods in StringSimilarity.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class StringSimilarityTest {
+  /** Some pairs of strings to compare. */
+  protected static final String[][] PAIRS = {
+    { "Korzen", "C. Korzen and H. Bast. Semantic search on text." },
+    { "Semantic Search", "C. Korzen and H. Bast. Semantic search on text." },
+    { "abc", "xyz" },
+    { "aaa", "aaaa" },
+    { "Proceedings of the VLDB", "Proc. VLDB 2012, pages 1-12" },
+    { "a", "a" },
+  };
+
+  /**
+   * Test the method smithWaterman(String, String).
+   */
+  @Test
+  public void testSmithWaterman() {
+    for (String[] pair : PAIRS) {
+      float[] expected = smithWatermanMatrix(pair[0], pair[1]);
+      float[] result = StringSimilarity.smithWaterman(pair[0], pair[1]);
+      Assert.assertEquals(expected[0], result[0]);
+      Assert.assertEquals(expected[1], result[1]);
+      Assert.assertEquals(expected[2], result[2]);
+    }
+
+    float[] result = StringSimilarity.smithWaterman("", "abc");
+    Assert.assertEquals(0f, result[0]);
+    Assert.assertEquals(-1f, result[1]);
+    Assert.assertEquals(-1f, result[2]);
+
+    result = StringSimilarity.smithWaterman(null, null);
+    Assert.assertEquals(0f, result[0]);
+    Assert.assertEquals(-1f, result[1]);
+    Assert.assertEquals(-1f, result[2]);
+
+    result = StringSimilarity.smithWaterman("abc", "xyz");
+    Assert.assertEquals(0f, result[0]);
+    Assert.assertEquals(0f, result[1]);
+    Assert.assertEquals(0f, result[2]);
+  }
+
+  /**
+   * Test the method smithWaterman(char[], char[], int[], int[]) with a
+   * caller-supplied buffer, that is reused for several calls.
+   */
+  @Test
+  public void testSmithWatermanWithBuffer() {
+    int[] row = new int[64];
+    int[] end = new int[2];
+    for (String[] pair : PAIRS) {
+      float[] expected = smithWatermanMatrix(pair[0], pair[1]);
+      int score = StringSimilarity.smithWaterman(
+          StringSimilarity.toLowerCaseChars(pair[0]),
+          StringSimilarity.toLowerCaseChars(pair[1]), row, end);
+      Assert.assertEquals((int) expected[0], score);
+      Assert.assertEquals((int) expected[1], end[0]);
+      Assert.assertEquals((int) expected[2], end[1]);
+    }
+
+    // A buffer, that is too small, is replaced by the buffer of the thread.
+    int score = StringSimilarity.smithWaterman(
+        StringSimilarity.toLowerCaseChars("Semantic Search"),
+        StringSimilarity.toLowerCaseChars("on semantic search"), new int[1],
+        null);
+    Assert.assertEquals(30, score);
+  }
+
+  /**
+   * Test the method levenshtein(String, String).
+   */
+  @Test
+  public void testLevenshtein() {
+    for (String[] pair : PAIRS) {
+      Assert.assertEquals(levenshteinMatrix(pair[0], pair[1]),
+          StringSimilarity.levenshtein(pair[0], pair[1]));
+    }
+    Assert.assertEquals(3f, StringSimilarity.levenshtein("", "abc"));
+    Assert.assertEquals(0f, StringSimilarity.levenshtein("", ""));
+    Assert.assertEquals(1f, StringSimilarity.levenshtein("Kitten", "kitte"));
+    Assert.assertEquals(-1f, StringSimilarity.levenshtein(null, "abc"));
+
+    // Strings, that need several 64-bit blocks.
+    Random random = new Random(42);
+    for (int i = 0; i < 100; i++) {
+      String s1 = randomString(random, random.nextInt(200));
+      String s2 = randomString(random, random.nextInt(200));
+      Assert.assertEquals(levenshteinMatrix(s1, s2),
+          StringSimilarity.levenshtein(s1, s2));
+    }
+  }
+
+  /**
+   * Test the method levenshtein(String, String, int).
+   */
+  @Test
+  public void testLevenshteinWithBound() {
+    Random random = new Random(23);
+    for (int i = 0; i < 100; i++) {
+      String s1 = randomString(random, random.nextInt(150));
+      String s2 = randomString(random, random.nextInt(150));
+      int distance = (int) levenshteinMatrix(s1, s2);
+      int maxDistance = random.nextInt(150);
+      int expected = distance <= maxDistance ? distance : maxDistance + 1;
+      Assert.assertEquals(expected,
+          StringSimilarity.levenshtein(s1, s2, maxDistance));
+    }
+    Assert.assertEquals(3, StringSimilarity.levenshtein("a", "abcdef", 2));
+    Assert.assertEquals(-1, StringSimilarity.levenshtein("a", null, 2));
+  }
+
+  /**
+   * Returns a random string of the given length over a small alphabet.
+   *
+   * @param random
+   *          the random generator.
+   * @param length
+   *          the length of the string.
+   * @return the random string.
+   */
+  protected String randomString(Random random, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append("abcdeABC \u00e4\u03b1".charAt(random.nextInt(11)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Computes the Levenshtein-distance with the full matrix, in order to check
+   * the results of the bit-parallel implementation.
+   *
+   * @param s1
+   *          the first string.
+   * @param s2
+   *          the second string.
+   * @return the Levenshtein-distance.
+   */
+  protected float levenshteinMatrix(String s1, String s2) {
+    char[] c1 = s1.toLowerCase().toCharArray();
+    char[] c2 = s2.toLowerCase().toCharArray();
+    int[][] matrix = new int[c1.length + 1][c2.length + 1];
+    for (int i = 0; i <= c1.length; i++) {
+      matrix[i][0] = i;
+    }
+    for (int j = 0; j <= c2.length; j++) {
+      matrix[0][j] = j;
+    }
+    for (int i = 1; i <= c1.length; i++) {
+      for (int j = 1; j <= c2.length; j++) {
+        int costs = c1[i - 1] == c2[j - 1] ? 0 : 1;
+        matrix[i][j] = Math.min(matrix[i - 1][j - 1] + costs,
+            Math.min(matrix[i - 1][j] + 1, matrix[i][j - 1] + 1));
+      }
+    }
+    return matrix[c1.length][c2.length];
+  }
+
+  /**
+   * Computes the Smith Waterman similarity with the full matrix, in order to
+   * check the results of the linear-space implementation.
+   *
+   * @param s1
+   *          the first string.
+   * @param s2
+   *          the second string.
+   * @return the score and the end positions in s1 and s2.
+   */
+  protected float[] smithWatermanMatrix(String s1, String s2) {
+    char[] c1 = s1.toLowerCase().toCharArray();
+    char[] c2 = s2.toLowerCase().toCharArray();
+    float[] result = new float[3];
+    if (c1.length == 0 || c2.length == 0) {
+      result[1] = -1;
+      result[2] = -1;
+      return result;
+    }
+    float[][] matrix = new float[c1.length + 1][c2.length + 1];
+    for (int i = 1; i <= c1.length; i++) {
+      for (int j = 1; j <= c2.length; j++) {
+        float costs = c1[i - 1] == c2[j - 1] ? 2 : -1;
+        matrix[i][j] = Math.max(Math.max(0, matrix[i - 1][j - 1] + costs),
+            Math.max(matrix[i - 1][j] - 1, matrix[i][j - 1] - 1));
+        if (matrix[i][j] > result[0]) {
+          result[0] = matrix[i][j];
+          result[1] = i;
+          result[2] = j;
+        }
+      }
+    }
+    return result;
+  }
+}
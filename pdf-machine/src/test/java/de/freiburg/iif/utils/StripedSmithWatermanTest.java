@@ -0,0 +1,94 @@
+package de.freiburg.iif.utils;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests for the methods in StripedSmithWaterman.
+ *
+ * @author Claudius Korzen
+ *
+ */
+public class StripedSmithWatermanTest {
+  /**
+   * Test the method align(): the scores must equal the scores of
+   * StringSimilarity.smithWaterman().
+   */
+  @Test
+  public void testAlign() {
+    assertSameScore("semantic search on text", "[3] h. bast. semantic search");
+    assertSameScore("korzen", "c. korzen and h. bast");
+    assertSameScore("abc", "xyz");
+    assertSameScore("", "xyz");
+    assertSameScore("xyz", "");
+    assertSameScore("a", "a");
+    assertSameScore("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa", "aaaaaa");
+    assertSameScore("abäαcd", "αcd abä");
+
+    // Gaps, that cross the boundaries of the lanes.
+    assertSameScore("abcdefghijklmnop", "abcdxefghxijklxmnop");
+    assertSameScore("abcdxefghxijklxmnop", "abcdefghijklmnop");
+
+    // Short strings (8-bit lanes) and long strings (16-bit lanes).
+    Random random = new Random(42);
+    for (int i = 0; i < 500; i++) {
+      assertSameScore(randomString(random, random.nextInt(100)),
+          randomString(random, random.nextInt(100)));
+    }
+    for (int i = 0; i < 50; i++) {
+      String text = randomString(random, 100 + random.nextInt(300));
+      assertSameScore(text, text.substring(random.nextInt(50)));
+      assertSameScore(randomString(random, 100 + random.nextInt(300)),
+          randomString(random, 100 + random.nextInt(300)));
+    }
+  }
+
+  /**
+   * Test the method isApplicable().
+   */
+  @Test
+  public void testIsApplicable() {
+    Assert.assertTrue(StripedSmithWaterman.isApplicable(new char[100]));
+    Assert.assertFalse(StripedSmithWaterman.isApplicable(
+        new char[StripedSmithWaterman.MAX_QUERY_LENGTH + 1]));
+    Assert.assertFalse(StripedSmithWaterman.isApplicable(null));
+  }
+
+  /**
+   * Asserts, that the striped alignment of the given strings yields the same
+   * score as StringSimilarity.smithWaterman().
+   *
+   * @param query
+   *          the query.
+   * @param text
+   *          the text.
+   */
+  protected void assertSameScore(String query, String text) {
+    StripedSmithWaterman striped =
+        new StripedSmithWaterman(query.toCharArray());
+    int expected = StringSimilarity.smithWaterman(query.toCharArray(),
+        text.toCharArray(), null, null);
+    Assert.assertEquals(query + " / " + text, expected,
+        striped.align(text.toCharArray()));
+  }
+
+  /**
+   * Returns a random string of the given length over a small alphabet.
+   *
+   * @param random
+   *          the random generator.
+   * @param length
+   *          the length of the string.
+   * @return the random string.
+   */
+  protected String randomString(Random random, int length) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      sb.append("abcd ä".charAt(random.nextInt(6)));
+    }
+    return sb.toString();
+  }
+}